@@ -0,0 +1,79 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.gui.media;
+
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of the scaling of images smaller than the video panel.
+ *
+ * @author Sebastien Vincent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScaledImageBenchmark
+{
+    /**
+     * Width of the panel.
+     */
+    private static final int PANEL_WIDTH = 1920;
+
+    /**
+     * Height of the panel.
+     */
+    private static final int PANEL_HEIGHT = 1080;
+
+    /**
+     * Resolution of the images (width x height).
+     */
+    @Param({"320x240", "640x480", "1280x720"})
+    public String mResolution;
+
+    /**
+     * Image as converted from pictures.
+     */
+    private BufferedImage mImage = null;
+
+    /**
+     * Create the image.
+     */
+    @Setup
+    public void setUp()
+    {
+        String size[] = mResolution.split("x");
+
+        mImage = new BufferedImage(Integer.parseInt(size[0]),
+                Integer.parseInt(size[1]), BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    /**
+     * Scale the image to the panel size.
+     * @return scaled image
+     */
+    @Benchmark
+    public BufferedImage getScaledImage()
+    {
+        return VideoPanel.getScaledImage(mImage, PANEL_WIDTH, PANEL_HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.xuggle.xuggler.*;
+import com.xuggle.xuggler.video.*;
+
+/**
+ * Benchmark of the conversion of decoded pictures to images, as done for
+ * every picture displayed.
+ *
+ * @author Sebastien Vincent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConverterBenchmark
+{
+    /**
+     * Resolution of the pictures (width x height).
+     */
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String mResolution;
+
+    /**
+     * Picture converted.
+     */
+    private IVideoPicture mPicture = null;
+
+    /**
+     * Converter from YUV420P pictures.
+     */
+    private IConverter mConverter = null;
+
+    /**
+     * Create the picture and the converter.
+     */
+    @Setup
+    public void setUp()
+    {
+        String size[] = mResolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        mPicture = IVideoPicture.make(IPixelFormat.Type.YUV420P, width,
+                height);
+        mPicture.setComplete(true, IPixelFormat.Type.YUV420P, width, height,
+                0);
+        mConverter = MediaCore.createConverter(IPixelFormat.Type.YUV420P,
+                width, height);
+    }
+
+    /**
+     * Release the picture and the converter.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        mConverter.delete();
+        mPicture.delete();
+    }
+
+    /**
+     * Convert the picture.
+     * @return image
+     */
+    @Benchmark
+    public BufferedImage toImage()
+    {
+        return mConverter.toImage(mPicture);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Benchmark of the self-servicing media queues of MediaCore: a picture is
+ * offered to the video queue and polled and dispatched by its thread.
+ *
+ * The presentation clock and conversion are disabled so that only the
+ * hand off between the reader thread and the queue thread is measured.
+ *
+ * @author Sebastien Vincent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MediaQueueBenchmark
+{
+    /**
+     * Duration (in microseconds) between two pictures.
+     */
+    private static final long FRAME_DURATION = 40000;
+
+    /**
+     * Core whose video queue is benchmarked.
+     */
+    private MediaCore mCore = null;
+
+    /**
+     * Writer given as source of the pictures, never opened.
+     */
+    private IMediaWriter mSource = null;
+
+    /**
+     * Picture offered.
+     */
+    private IVideoPicture mPicture = null;
+
+    /**
+     * Timestamp of the next picture.
+     */
+    private long mTimeStamp = 0;
+
+    /**
+     * Create the core and the picture.
+     * @throws IOException if temporary file cannot be created
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        File file = File.createTempFile("xjplayer", ".mp4");
+
+        file.delete();
+        mCore = new MediaCore();
+        mCore.setClockEnabled(false);
+        mCore.setVideoConversion(false);
+        mSource = ToolFactory.makeWriter(file.getPath());
+        mPicture = IVideoPicture.make(IPixelFormat.Type.YUV420P, 320, 240);
+        mPicture.setComplete(true, IPixelFormat.Type.YUV420P, 320, 240, 0);
+    }
+
+    /**
+     * Drain and release the queues.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        mCore.onClose(new CloseEvent(mSource));
+        mPicture.delete();
+    }
+
+    /**
+     * Offer a picture to the video queue. Once the queue holds its
+     * capacity, offering waits for the queue thread to poll.
+     */
+    @Benchmark
+    public void offerPoll()
+    {
+        mTimeStamp += FRAME_DURATION;
+        mPicture.setTimeStamp(mTimeStamp);
+        mCore.onDecodedVideo(mSource, mPicture, 0);
+    }
+}
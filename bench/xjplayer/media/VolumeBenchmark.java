@@ -0,0 +1,77 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Benchmark of the volume adjustment loop applied to every audio sample.
+ *
+ * @author Sebastien Vincent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VolumeBenchmark
+{
+    /**
+     * Number of samples (per channel) of the buffer, 1152 for MP3 and 1024
+     * for AAC frames.
+     */
+    @Param({"1024", "1152", "4096"})
+    public int mSampleCount;
+
+    /**
+     * Stereo 16-bit samples adjusted.
+     */
+    private IAudioSamples mSamples = null;
+
+    /**
+     * Create the samples.
+     */
+    @Setup
+    public void setUp()
+    {
+        mSamples = IAudioSamples.make(mSampleCount, 2);
+        mSamples.setComplete(true, mSampleCount, 44100, 2,
+                IAudioSamples.Format.FMT_S16, 0);
+    }
+
+    /**
+     * Release the samples.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        mSamples.delete();
+    }
+
+    /**
+     * Adjust the volume of the samples.
+     */
+    @Benchmark
+    public void adjustVolume()
+    {
+        MediaControl.adjustVolume(mSamples, 0.5);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.util;
+
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of the formatting of log records.
+ *
+ * @author Sebastien Vincent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogFormatterBenchmark
+{
+    /**
+     * Formatter.
+     */
+    private final LogFormatter mFormatter = new LogFormatter();
+
+    /**
+     * Record formatted.
+     */
+    private LogRecord mRecord = null;
+
+    /**
+     * Create the record.
+     */
+    @Setup
+    public void setUp()
+    {
+        mRecord = new LogRecord(Level.WARNING,
+                "WARNING: No audio line out available");
+        mRecord.setSourceClassName("xjplayer.media.MediaCore");
+        mRecord.setSourceMethodName("getJavaSoundLine");
+    }
+
+    /**
+     * Format a record.
+     * @return formatted record
+     */
+    @Benchmark
+    public String format()
+    {
+        return mFormatter.format(mRecord);
+    }
+}
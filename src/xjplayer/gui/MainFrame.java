@@ -139,6 +139,16 @@ public class MainFrame extends JFrame
      */
     private MediaPanel mMediaPanel = null;
 
+    /**
+     * If the frame is iconified.
+     */
+    private boolean mIconified = false;
+
+    /**
+     * If the frame is hidden (in systray).
+     */
+    private boolean mHidden = false;
+
     /**
      * Constructor.
      * @param title frame title
@@ -174,6 +184,20 @@ public class MainFrame extends JFrame
         getContentPane().add(mainPanel);
 
         addWindowListener(this);
+        addComponentListener(new ComponentAdapter()
+                {
+                    public void componentHidden(ComponentEvent event)
+                    {
+                        mHidden = true;
+                        updateVideoSuspended();
+                    }
+
+                    public void componentShown(ComponentEvent event)
+                    {
+                        mHidden = false;
+                        updateVideoSuspended();
+                    }
+                });
         validate();
         pack();
     }
@@ -330,6 +354,18 @@ public class MainFrame extends JFrame
         System.exit(0);
     }
 
+    /**
+     * Suspend video when nobody can see it (frame hidden or iconified) and
+     * resume it otherwise.
+     */
+    private void updateVideoSuspended()
+    {
+        if(mMediaPanel != null)
+        {
+            mMediaPanel.setVideoSuspended(mIconified || mHidden);
+        }
+    }
+
     /**
      * Set text in the task bar.
      * @param text text to set
@@ -418,6 +454,8 @@ public class MainFrame extends JFrame
      */
     public void windowDeiconified(WindowEvent event)
     {
+        mIconified = false;
+        updateVideoSuspended();
     }
 
     /**
@@ -427,6 +465,8 @@ public class MainFrame extends JFrame
      */
     public void windowIconified(WindowEvent event)
     {
+        mIconified = true;
+        updateVideoSuspended();
     }
 
     /**
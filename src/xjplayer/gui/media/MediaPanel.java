@@ -90,6 +90,26 @@ public class MediaPanel extends JPanel
      */
     private JButton mBtnPlayPause = new JButton(mIconPlay);
 
+    /**
+     * Step backward button.
+     */
+    private JButton mBtnStepBack = new JButton("<|");
+
+    /**
+     * Step forward button.
+     */
+    private JButton mBtnStepForward = new JButton("|>");
+
+    /**
+     * Rewind button.
+     */
+    private JButton mBtnRewind = new JButton("<<");
+
+    /**
+     * Fast forward button.
+     */
+    private JButton mBtnFastForward = new JButton(">>");
+
     /**
      * Open media button.
      */
@@ -163,12 +183,30 @@ public class MediaPanel extends JPanel
 
         mControl.addVideoListener(mPanelVideo);
         mControl.addVideoListener(this);
+        mPanelVideo.setPlaybackStats(
+                mControl.getMediaCore().getPlaybackStats());
         mPanelVideo.addKeyListener(new KeyAdapter()
                 {
                     public void keyPressed(KeyEvent event)
                     {
                         if(event.getSource() == mPanelVideo)
                         {
+                            /* toggle on-screen statistics */
+                            if(event.getKeyCode() == KeyEvent.VK_I)
+                            {
+                                mPanelVideo.setOverlayVisible(
+                                        !mPanelVideo.isOverlayVisible());
+                            }
+                            else if(event.getKeyCode() == KeyEvent.VK_COMMA)
+                            {
+                                stepFrame(false);
+                            }
+                            else if(event.getKeyCode() ==
+                                    KeyEvent.VK_PERIOD)
+                            {
+                                stepFrame(true);
+                            }
+
                             if(mFullScreen)
                             {
                                 if(event.getKeyCode() == KeyEvent.VK_ESCAPE)
@@ -189,6 +227,22 @@ public class MediaPanel extends JPanel
         mBtnStop.setAlignmentX(Component.CENTER_ALIGNMENT);
         mBtnStop.addActionListener(this);
         mBtnStop.setSize(mBtnStop.getMinimumSize());
+        mBtnStepBack.setAlignmentX(Component.CENTER_ALIGNMENT);
+        mBtnStepBack.addActionListener(this);
+        mBtnStepBack.setSize(mBtnStepBack.getMinimumSize());
+        mBtnStepBack.setEnabled(false);
+        mBtnStepForward.setAlignmentX(Component.CENTER_ALIGNMENT);
+        mBtnStepForward.addActionListener(this);
+        mBtnStepForward.setSize(mBtnStepForward.getMinimumSize());
+        mBtnStepForward.setEnabled(false);
+        mBtnRewind.setAlignmentX(Component.CENTER_ALIGNMENT);
+        mBtnRewind.addActionListener(this);
+        mBtnRewind.setSize(mBtnRewind.getMinimumSize());
+        mBtnRewind.setEnabled(false);
+        mBtnFastForward.setAlignmentX(Component.CENTER_ALIGNMENT);
+        mBtnFastForward.addActionListener(this);
+        mBtnFastForward.setSize(mBtnFastForward.getMinimumSize());
+        mBtnFastForward.setEnabled(false);
         mBtnOpen.setAlignmentX(Component.CENTER_ALIGNMENT);
         mBtnOpen.addActionListener(this);
         mBtnOpen.setSize(mBtnOpen.getMinimumSize());
@@ -227,7 +281,11 @@ public class MediaPanel extends JPanel
         mTxtSeek.setEnabled(false);
 
         panelBtn.add(mBtnStop);
+        panelBtn.add(mBtnRewind);
+        panelBtn.add(mBtnStepBack);
         panelBtn.add(mBtnPlayPause);
+        panelBtn.add(mBtnStepForward);
+        panelBtn.add(mBtnFastForward);
         panelBtn.add(mBtnOpen);
         panelBtn.add(mSliderVolume);
 
@@ -258,6 +316,10 @@ public class MediaPanel extends JPanel
 
         mBtnStop = null;
         mBtnPlayPause = null;
+        mBtnStepBack = null;
+        mBtnStepForward = null;
+        mBtnRewind = null;
+        mBtnFastForward = null;
         mBtnOpen = null;
 
         mSliderSeek = null;
@@ -265,6 +327,7 @@ public class MediaPanel extends JPanel
 
         mTxtSeek = null;
 
+        mControl.dispose();
         mControl = null;
         mPanelVideo = null;
     }
@@ -318,10 +381,44 @@ public class MediaPanel extends JPanel
         mControl.setVolume(100);
         mBtnPlayPause.setIcon(mIconPause);
         mBtnPlayPause.setEnabled(true);
+        mBtnStepBack.setEnabled(true);
+        mBtnStepForward.setEnabled(true);
+        mBtnRewind.setEnabled(true);
+        mBtnFastForward.setEnabled(true);
         mSliderSeek.setEnabled(true);
         mSliderVolume.setEnabled(true);
     }
 
+    /**
+     * Load a playlist, its medias will be played one after another.
+     * @param playlist playlist to load
+     */
+    public void loadPlaylist(Playlist playlist)
+    {
+        unloadMedia();
+        mControl.loadPlaylist(playlist);
+        mControl.start();
+        mControl.setVolume(100);
+        mBtnPlayPause.setIcon(mIconPause);
+        mBtnPlayPause.setEnabled(true);
+        mBtnStepBack.setEnabled(true);
+        mBtnStepForward.setEnabled(true);
+        mBtnRewind.setEnabled(true);
+        mBtnFastForward.setEnabled(true);
+        mSliderSeek.setEnabled(true);
+        mSliderVolume.setEnabled(true);
+    }
+
+    /**
+     * Suspend or resume video, for example when the window is not visible.
+     * Audio keeps playing.
+     * @param suspended true to suspend video, false to resume it
+     */
+    public void setVideoSuspended(boolean suspended)
+    {
+        mControl.setVideoSuspended(suspended);
+    }
+
     /**
      * Unload media.
      */
@@ -329,6 +426,10 @@ public class MediaPanel extends JPanel
     {
         mBtnPlayPause.setIcon(mIconPlay);
         mBtnPlayPause.setEnabled(false);
+        mBtnStepBack.setEnabled(false);
+        mBtnStepForward.setEnabled(false);
+        mBtnRewind.setEnabled(false);
+        mBtnFastForward.setEnabled(false);
         mControl.unloadMedia();
         mSliderSeek.setValue(0);
         mTxtSeek.setText("00:00 / 00:00");
@@ -350,13 +451,29 @@ public class MediaPanel extends JPanel
 
         /* default filter is all files */
         chooser.setFileFilter(defaultFilter);
-        chooser.setMultiSelectionEnabled(false);
+        chooser.setMultiSelectionEnabled(true);
 
         if(chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
         {
+            java.io.File[] files = chooser.getSelectedFiles();
+
             try
             {
-                loadMedia(chooser.getSelectedFile().toString());
+                if(files.length > 1)
+                {
+                    /* several files selected, play them as a playlist */
+                    Playlist playlist = new Playlist();
+
+                    for(java.io.File file : files)
+                    {
+                        playlist.add(file.toString());
+                    }
+                    loadPlaylist(playlist);
+                }
+                else
+                {
+                    loadMedia(chooser.getSelectedFile().toString());
+                }
             }
             catch(Exception e)
             {
@@ -436,6 +553,22 @@ public class MediaPanel extends JPanel
             mHasSeekSlider = false;
             mCurrentTime = 0;
         }
+        else if(src == mBtnStepBack)
+        {
+            stepFrame(false);
+        }
+        else if(src == mBtnStepForward)
+        {
+            stepFrame(true);
+        }
+        else if(src == mBtnRewind)
+        {
+            trickPlay(false);
+        }
+        else if(src == mBtnFastForward)
+        {
+            trickPlay(true);
+        }
         else if(src == mBtnOpen)
         {
             showOpenFile();
@@ -444,6 +577,48 @@ public class MediaPanel extends JPanel
         repaint();
     }
 
+    /**
+     * Pause media and display the next or previous frame.
+     * @param forward true to step forward, false to step backward
+     */
+    private void stepFrame(boolean forward)
+    {
+        if(mControl.getState() == MediaState.STOPPED)
+        {
+            return;
+        }
+
+        mControl.stepFrame(forward);
+        mBtnPlayPause.setIcon(mIconPlay);
+    }
+
+    /**
+     * Start fast forward or rewind, or double its speed up to 32x and then
+     * go back to 4x.
+     * @param forward true to fast forward, false to rewind
+     */
+    private void trickPlay(boolean forward)
+    {
+        int speed = mControl.getTrickPlay();
+
+        if(mControl.getState() == MediaState.STOPPED)
+        {
+            return;
+        }
+
+        if(speed == 0 || (speed > 0) != forward || Math.abs(speed) >= 32)
+        {
+            speed = 4;
+        }
+        else
+        {
+            speed = Math.abs(speed) * 2;
+        }
+
+        mControl.setTrickPlay(forward ? speed : -speed);
+        mBtnPlayPause.setIcon(mIconPlay);
+    }
+
     /**
      * Callback when slider change its state.
      * @param event ChangeEvent received
@@ -0,0 +1,277 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.gui.media;
+
+import java.awt.*;
+import java.awt.font.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import xjplayer.media.*;
+
+/**
+ * On-screen display of playback statistics drawn over the video.
+ *
+ * Statistics are sampled at most once per second. Each line of text is
+ * laid out once into a <tt>GlyphVector</tt> when it changes, so that
+ * painting the overlay with every frame only draws cached glyphs.
+ *
+ * @author Sebastien Vincent
+ */
+class StatsOverlay
+{
+    /**
+     * Interval (in nanoseconds) between two samples of statistics.
+     */
+    private static final long SAMPLE_INTERVAL =
+        TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS);
+
+    /**
+     * Margin (in pixels) around the text.
+     */
+    private static final int MARGIN = 6;
+
+    /**
+     * Font of the text.
+     */
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN,
+            12);
+
+    /**
+     * Background of the overlay.
+     */
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+    /**
+     * Statistics displayed, null if none.
+     */
+    private PlaybackStats mStats = null;
+
+    /**
+     * Size of the source images.
+     */
+    private final Dimension mSourceSize = new Dimension();
+
+    /**
+     * Size of the displayed images.
+     */
+    private final Dimension mDisplaySize = new Dimension();
+
+    /**
+     * Time (System.nanoTime()) of the last sample, 0 if none.
+     */
+    private long mLastSample = 0;
+
+    /**
+     * Video frames decoded at last sample.
+     */
+    private long mLastDecoded = 0;
+
+    /**
+     * Video frames converted at last sample.
+     */
+    private long mLastConverted = 0;
+
+    /**
+     * Video frames presented at last sample.
+     */
+    private long mLastPresented = 0;
+
+    /**
+     * Text of the lines displayed.
+     */
+    private final java.util.List<String> mLines = new ArrayList<String>();
+
+    /**
+     * Glyphs of the lines displayed, laid out for mContext.
+     */
+    private final java.util.List<GlyphVector> mGlyphs =
+        new ArrayList<GlyphVector>();
+
+    /**
+     * Rendering context the glyphs have been laid out for.
+     */
+    private FontRenderContext mContext = null;
+
+    /**
+     * Set the statistics displayed.
+     * @param stats statistics or null to display nothing
+     */
+    public void setStats(PlaybackStats stats)
+    {
+        mStats = stats;
+        mLastSample = 0;
+    }
+
+    /**
+     * Set the size of source and displayed images.
+     * @param sourceWidth width of source images
+     * @param sourceHeight height of source images
+     * @param displayWidth width of displayed images
+     * @param displayHeight height of displayed images
+     */
+    public void setSizes(int sourceWidth, int sourceHeight, int displayWidth,
+            int displayHeight)
+    {
+        mSourceSize.setSize(sourceWidth, sourceHeight);
+        mDisplaySize.setSize(displayWidth, displayHeight);
+    }
+
+    /**
+     * Paint the overlay in the upper left corner.
+     * @param g graphics object that is able to paint
+     */
+    public void paint(Graphics2D g)
+    {
+        long now = System.nanoTime();
+
+        if(mStats == null)
+        {
+            return;
+        }
+
+        if(mLastSample == 0 || now - mLastSample >= SAMPLE_INTERVAL)
+        {
+            sample(now);
+        }
+
+        FontRenderContext context = g.getFontRenderContext();
+
+        if(!context.equals(mContext))
+        {
+            mContext = context;
+            mGlyphs.clear();
+        }
+
+        /* lay out only the lines that changed */
+        for(int i = 0 ; i < mLines.size() ; i++)
+        {
+            if(i >= mGlyphs.size())
+            {
+                mGlyphs.add(null);
+            }
+            if(mGlyphs.get(i) == null)
+            {
+                mGlyphs.set(i, FONT.createGlyphVector(context,
+                            mLines.get(i)));
+            }
+        }
+
+        LineMetrics metrics = FONT.getLineMetrics("", context);
+        int lineHeight = (int)Math.ceil(metrics.getHeight());
+        int width = 0;
+
+        for(GlyphVector glyphs : mGlyphs)
+        {
+            width = Math.max(width,
+                    (int)Math.ceil(glyphs.getLogicalBounds().getWidth()));
+        }
+
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, width + 2 * MARGIN,
+                lineHeight * mGlyphs.size() + 2 * MARGIN);
+
+        g.setColor(Color.WHITE);
+        for(int i = 0 ; i < mGlyphs.size() ; i++)
+        {
+            g.drawGlyphVector(mGlyphs.get(i), MARGIN,
+                    MARGIN + i * lineHeight + metrics.getAscent());
+        }
+    }
+
+    /**
+     * Sample statistics and update the text of the lines.
+     * @param now current time (System.nanoTime())
+     */
+    private void sample(long now)
+    {
+        PlaybackStats stats = mStats;
+        long decoded = stats.getVideoFramesDecoded();
+        long converted = stats.getVideoFramesConverted();
+        long presented = stats.getVideoFramesPresented();
+        double elapsed = (now - mLastSample) / (double)SAMPLE_INTERVAL;
+        long queues[][] = stats.getQueueDepths();
+        int i = 0;
+
+        if(mLastSample != 0)
+        {
+            setLine(i++, String.format("Source  %dx%d  Display %dx%d",
+                        mSourceSize.width, mSourceSize.height,
+                        mDisplaySize.width, mDisplaySize.height));
+            setLine(i++, String.format(
+                        "Decode %5.1f  Convert %5.1f  Present %5.1f fps",
+                        (decoded - mLastDecoded) / elapsed,
+                        (converted - mLastConverted) / elapsed,
+                        (presented - mLastPresented) / elapsed));
+            setLine(i++, String.format(
+                        "Dropped video %d late %d early  audio %d late",
+                        stats.getVideoFramesDroppedLate(),
+                        stats.getVideoFramesDroppedEarly(),
+                        stats.getAudioFramesDroppedLate()));
+
+            for(long queue[] : queues)
+            {
+                setLine(i++, String.format("Queue #%d %6d ms %6d KB",
+                            queue[0], queue[1], queue[2] / 1024));
+            }
+
+            setLine(i++, String.format("A/V drift %+d ms",
+                        stats.getAVOffset()));
+        }
+
+        while(mLines.size() > i)
+        {
+            mLines.remove(mLines.size() - 1);
+        }
+        while(mGlyphs.size() > i)
+        {
+            mGlyphs.remove(mGlyphs.size() - 1);
+        }
+
+        mLastSample = now;
+        mLastDecoded = decoded;
+        mLastConverted = converted;
+        mLastPresented = presented;
+    }
+
+    /**
+     * Set the text of a line, its glyphs are laid out again only if the
+     * text changed.
+     * @param index index of the line
+     * @param text text of the line
+     */
+    private void setLine(int index, String text)
+    {
+        if(index < mLines.size())
+        {
+            if(!mLines.get(index).equals(text))
+            {
+                mLines.set(index, text);
+                if(index < mGlyphs.size())
+                {
+                    mGlyphs.set(index, null);
+                }
+            }
+        }
+        else
+        {
+            mLines.add(text);
+        }
+    }
+}
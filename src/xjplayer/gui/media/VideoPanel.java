@@ -24,6 +24,7 @@ import java.awt.geom.*;
 
 import javax.swing.*;
 
+import xjplayer.media.*;
 import xjplayer.media.event.*;
 
 /**
@@ -55,6 +56,26 @@ public class VideoPanel extends JPanel
      */
     private boolean resized = false;
 
+    /**
+     * Width of the source image.
+     */
+    private int mSourceWidth = 0;
+
+    /**
+     * Height of the source image.
+     */
+    private int mSourceHeight = 0;
+
+    /**
+     * On-screen display of playback statistics.
+     */
+    private final StatsOverlay mOverlay = new StatsOverlay();
+
+    /**
+     * If the on-screen display is shown.
+     */
+    private boolean mOverlayVisible = false;
+
     /**
      * Constructor.
      */
@@ -91,6 +112,13 @@ public class VideoPanel extends JPanel
             int y = (height - mImage.getHeight()) / 2;
 
             g.drawImage(mImage, x, y, null);
+
+            if(mOverlayVisible)
+            {
+                mOverlay.setSizes(mSourceWidth, mSourceHeight,
+                        mImage.getWidth(), mImage.getHeight());
+                mOverlay.paint((Graphics2D)g);
+            }
         }
         else
         {
@@ -98,6 +126,34 @@ public class VideoPanel extends JPanel
         }
     }
 
+    /**
+     * Set the statistics shown by the on-screen display.
+     * @param stats playback statistics or null
+     */
+    public void setPlaybackStats(PlaybackStats stats)
+    {
+        mOverlay.setStats(stats);
+    }
+
+    /**
+     * Show or hide the on-screen display of playback statistics.
+     * @param visible true to show it
+     */
+    public void setOverlayVisible(boolean visible)
+    {
+        mOverlayVisible = visible;
+        repaint();
+    }
+
+    /**
+     * Returns if the on-screen display of playback statistics is shown.
+     * @return true if it is shown, false otherwise
+     */
+    public boolean isOverlayVisible()
+    {
+        return mOverlayVisible;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -106,6 +162,12 @@ public class VideoPanel extends JPanel
         BufferedImage image = event.getImage();
         Dimension panelSize = getSize();
 
+        if(image != null)
+        {
+            mSourceWidth = image.getWidth();
+            mSourceHeight = image.getHeight();
+        }
+
         if(image != null && (image.getWidth() < panelSize.width &&
                     image.getHeight() < panelSize.height))
         {
@@ -145,7 +207,7 @@ public class VideoPanel extends JPanel
      * @param type BufferedImage type
      * @return scaled <tt>BufferedImage</tt>
      */
-    private static BufferedImage getScaledImage(BufferedImage src, int width,
+    static BufferedImage getScaledImage(BufferedImage src, int width,
             int height, int type)
     {
         double scaleWidth = width / ((double)src.getWidth());
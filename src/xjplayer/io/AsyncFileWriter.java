@@ -0,0 +1,539 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * Writes files in a dedicated I/O thread so that writers never block on
+ * storage.
+ *
+ * Bytes written to a channel returned by open() are copied into a pool of
+ * direct buffers and queued; the I/O thread writes them with a
+ * FileChannel. If the pool is exhausted (storage slower than writers), the
+ * bytes are dropped and counted instead of waiting, and the file is then
+ * incomplete: the channel of the file reports it so that the caller can
+ * discard the file. The channel also reports files the I/O thread failed
+ * to write.
+ *
+ * @author Sebastien Vincent
+ */
+public class AsyncFileWriter implements Runnable
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(AsyncFileWriter.class.getName());
+
+    /**
+     * Default size of a buffer of the pool.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default number of buffers of the pool (8 MB).
+     */
+    private static final int DEFAULT_BUFFER_COUNT = 128;
+
+    /**
+     * Free buffers.
+     */
+    private final BlockingQueue<ByteBuffer> mFreeBuffers;
+
+    /**
+     * Operations to run in the I/O thread.
+     */
+    private final BlockingQueue<Operation> mOperations =
+        new LinkedBlockingQueue<Operation>();
+
+    /**
+     * The I/O thread.
+     */
+    private final Thread mThread;
+
+    /**
+     * Number of bytes dropped.
+     */
+    private final AtomicLong mDroppedBytes = new AtomicLong(0);
+
+    /**
+     * Number of bytes written to files.
+     */
+    private final AtomicLong mWrittenBytes = new AtomicLong(0);
+
+    /**
+     * If the writer has been shut down.
+     */
+    private volatile boolean mShutdown = false;
+
+    /**
+     * Constructor.
+     */
+    public AsyncFileWriter()
+    {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * Constructor.
+     * @param bufferSize size of a buffer of the pool
+     * @param bufferCount number of buffers of the pool
+     */
+    public AsyncFileWriter(int bufferSize, int bufferCount)
+    {
+        mFreeBuffers = new ArrayBlockingQueue<ByteBuffer>(bufferCount);
+        for(int i = 0 ; i < bufferCount ; i++)
+        {
+            mFreeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        mThread = new Thread(this, "AsyncFileWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Open a file for writing. The file is created (or truncated) by the
+     * I/O thread.
+     * @param file file to write
+     * @return channel whose writes never block
+     */
+    public AsyncChannel open(File file)
+    {
+        return new FileChannelWriter(new FileTarget(file));
+    }
+
+    /**
+     * Delete a file once the operations queued before are done.
+     * @param file file to delete
+     */
+    public void delete(File file)
+    {
+        mOperations.add(new Operation(new FileTarget(file), null, true));
+    }
+
+    /**
+     * Wait until all queued operations are done.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void sync() throws InterruptedException
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        synchronized(this)
+        {
+            if(mShutdown)
+            {
+                latch = null;
+            }
+            else
+            {
+                mOperations.add(new Operation(latch));
+            }
+        }
+
+        /* the thread stops once the operations queued before the shutdown
+         * are done
+         */
+        if(latch == null)
+        {
+            mThread.join();
+        }
+        else
+        {
+            latch.await();
+        }
+    }
+
+    /**
+     * Stop the I/O thread once the queued operations are done.
+     */
+    public synchronized void shutdown()
+    {
+        if(!mShutdown)
+        {
+            mShutdown = true;
+            mOperations.add(new Operation(null, null));
+        }
+    }
+
+    /**
+     * Get the number of bytes dropped because the I/O thread was late.
+     * @return number of bytes dropped
+     */
+    public long getDroppedBytes()
+    {
+        return mDroppedBytes.get();
+    }
+
+    /**
+     * Get the number of bytes written to files.
+     * @return number of bytes written
+     */
+    public long getWrittenBytes()
+    {
+        return mWrittenBytes.get();
+    }
+
+    /**
+     * Entry point of the I/O thread.
+     */
+    public void run()
+    {
+        while(true)
+        {
+            Operation operation = null;
+
+            try
+            {
+                operation = mOperations.take();
+            }
+            catch(InterruptedException e)
+            {
+                break;
+            }
+
+            if(operation.mLatch != null)
+            {
+                operation.mLatch.countDown();
+                continue;
+            }
+
+            if(operation.mTarget == null)
+            {
+                break;
+            }
+
+            operation.run();
+
+            if(operation.mBuffer != null)
+            {
+                mFreeBuffers.add(operation.mBuffer);
+            }
+        }
+    }
+
+    /**
+     * Channel of a file written by the I/O thread. It is not thread-safe,
+     * like the muxer writing to it.
+     *
+     * @author Sebastien Vincent
+     */
+    public interface AsyncChannel extends WritableByteChannel
+    {
+        /**
+         * Get the number of bytes written to this channel and dropped
+         * because the I/O thread was late.
+         * @return number of bytes dropped, the file is incomplete if not 0
+         */
+        public long getDroppedBytes();
+
+        /**
+         * Returns if the I/O thread failed to write or close the file (disk
+         * full, ...), the file is then incomplete. It is known only once the
+         * I/O thread has written the bytes, possibly after close().
+         * @return true if writing the file failed
+         */
+        public boolean isFailed();
+    }
+
+    /**
+     * Channel that queues its writes for the I/O thread.
+     *
+     * @author Sebastien Vincent
+     */
+    private class FileChannelWriter implements AsyncChannel
+    {
+        /**
+         * File written.
+         */
+        private final FileTarget mTarget;
+
+        /**
+         * If the channel is open.
+         */
+        private boolean mOpen = true;
+
+        /**
+         * Number of bytes dropped.
+         */
+        private long mDropped = 0;
+
+        /**
+         * Constructor.
+         * @param target file written
+         */
+        public FileChannelWriter(FileTarget target)
+        {
+            mTarget = target;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int write(ByteBuffer src)
+        {
+            int length = src.remaining();
+
+            while(src.hasRemaining())
+            {
+                ByteBuffer buffer = mFreeBuffers.poll();
+
+                if(buffer == null || mShutdown)
+                {
+                    mDroppedBytes.addAndGet(src.remaining());
+                    mDropped += src.remaining();
+                    src.position(src.limit());
+                    break;
+                }
+
+                int limit = src.limit();
+
+                buffer.clear();
+                src.limit(src.position() + Math.min(src.remaining(),
+                            buffer.remaining()));
+                buffer.put(src);
+                src.limit(limit);
+                buffer.flip();
+                mOperations.add(new Operation(mTarget, buffer));
+            }
+            return length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isOpen()
+        {
+            return mOpen;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public long getDroppedBytes()
+        {
+            return mDropped;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isFailed()
+        {
+            return mTarget.mFailed;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void close()
+        {
+            if(mOpen)
+            {
+                mOpen = false;
+                mOperations.add(new Operation(mTarget, null));
+            }
+        }
+    }
+
+    /**
+     * A file written by the I/O thread.
+     *
+     * @author Sebastien Vincent
+     */
+    private class FileTarget
+    {
+        /**
+         * The file.
+         */
+        private final File mFile;
+
+        /**
+         * Channel of the file, opened on first write.
+         */
+        private FileChannel mChannel = null;
+
+        /**
+         * If writing failed, further writes are ignored.
+         */
+        private volatile boolean mFailed = false;
+
+        /**
+         * Constructor.
+         * @param file the file
+         */
+        public FileTarget(File file)
+        {
+            mFile = file;
+        }
+
+        /**
+         * Write a buffer to the file.
+         * @param buffer buffer to write
+         */
+        public void write(ByteBuffer buffer)
+        {
+            if(mFailed)
+            {
+                return;
+            }
+
+            try
+            {
+                if(mChannel == null)
+                {
+                    mChannel = new FileOutputStream(mFile).getChannel();
+                }
+
+                while(buffer.hasRemaining())
+                {
+                    mWrittenBytes.addAndGet(mChannel.write(buffer));
+                }
+            }
+            catch(IOException e)
+            {
+                logger.warning("Cannot write " + mFile + ": " + e);
+                mFailed = true;
+            }
+        }
+
+        /**
+         * Close the file.
+         */
+        public void close()
+        {
+            try
+            {
+                if(mChannel == null)
+                {
+                    /* nothing written, still create the file */
+                    mChannel = new FileOutputStream(mFile).getChannel();
+                }
+                mChannel.close();
+            }
+            catch(IOException e)
+            {
+                logger.warning("Cannot close " + mFile + ": " + e);
+                mFailed = true;
+            }
+        }
+
+        /**
+         * Delete the file.
+         */
+        public void delete()
+        {
+            if(mFile.exists() && !mFile.delete())
+            {
+                logger.warning("Cannot delete " + mFile);
+            }
+        }
+    }
+
+    /**
+     * Operation queued for the I/O thread.
+     *
+     * @author Sebastien Vincent
+     */
+    private static class Operation
+    {
+        /**
+         * Target file, null to stop the thread.
+         */
+        private final FileTarget mTarget;
+
+        /**
+         * Buffer to write, null to close the file.
+         */
+        private final ByteBuffer mBuffer;
+
+        /**
+         * If the file has to be deleted.
+         */
+        private final boolean mDelete;
+
+        /**
+         * Latch to count down (sync), null otherwise.
+         */
+        private final CountDownLatch mLatch;
+
+        /**
+         * Constructor.
+         * @param target target file
+         * @param buffer buffer to write or null to close the file
+         */
+        public Operation(FileTarget target, ByteBuffer buffer)
+        {
+            this(target, buffer, false);
+        }
+
+        /**
+         * Constructor.
+         * @param target target file
+         * @param buffer buffer to write or null
+         * @param delete true to delete the file
+         */
+        public Operation(FileTarget target, ByteBuffer buffer,
+                boolean delete)
+        {
+            mTarget = target;
+            mBuffer = buffer;
+            mDelete = delete;
+            mLatch = null;
+        }
+
+        /**
+         * Constructor of a sync operation.
+         * @param latch latch to count down
+         */
+        public Operation(CountDownLatch latch)
+        {
+            mTarget = null;
+            mBuffer = null;
+            mDelete = false;
+            mLatch = latch;
+        }
+
+        /**
+         * Run the operation.
+         */
+        public void run()
+        {
+            if(mDelete)
+            {
+                mTarget.delete();
+            }
+            else if(mBuffer != null)
+            {
+                mTarget.write(mBuffer);
+            }
+            else
+            {
+                mTarget.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.logging.*;
+
+/**
+ * Bounded on-disk cache of media chunks with LRU eviction.
+ *
+ * Each chunk is stored in its own file named after a hash of its key. The
+ * cache survives restarts: existing files are indexed at construction in
+ * the order of their last access (file modification time).
+ *
+ * @author Sebastien Vincent
+ */
+public class DiskChunkCache
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(DiskChunkCache.class.getName());
+
+    /**
+     * Extension of chunk files.
+     */
+    private static final String EXTENSION = ".chunk";
+
+    /**
+     * Directory of chunk files.
+     */
+    private final File mDirectory;
+
+    /**
+     * Maximum size (in bytes) of the cache.
+     */
+    private final long mMaxSize;
+
+    /**
+     * Chunk files and their size in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> mEntries =
+        new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Current size (in bytes) of the cache.
+     */
+    private long mSize = 0;
+
+    /**
+     * Number of chunks found in the cache.
+     */
+    private long mHits = 0;
+
+    /**
+     * Number of chunks not found in the cache.
+     */
+    private long mMisses = 0;
+
+    /**
+     * Constructor.
+     * @param directory directory of chunk files, created if needed
+     * @param maxSize maximum size (in bytes) of the cache
+     */
+    public DiskChunkCache(File directory, long maxSize)
+    {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            logger.warning("Cannot create cache directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Get the key of a chunk.
+     * @param url URL of the media
+     * @param version version of the media (ETag, ...)
+     * @param index index of the chunk
+     * @return key of the chunk
+     */
+    public static String getKey(String url, String version, long index)
+    {
+        return url + "\n" + version + "\n" + index;
+    }
+
+    /**
+     * Get a chunk.
+     * @param key key of the chunk
+     * @return content of the chunk or null if not in cache
+     */
+    public synchronized byte[] get(String key)
+    {
+        String name = getFileName(key);
+        File file = new File(mDirectory, name);
+
+        if(mEntries.get(name) == null)
+        {
+            mMisses++;
+            return null;
+        }
+
+        try
+        {
+            byte data[] = readFile(file);
+
+            /* keep access order across restarts */
+            file.setLastModified(System.currentTimeMillis());
+            mHits++;
+            return data;
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot read cache file " + file + ": " + e);
+            remove(name);
+            mMisses++;
+            return null;
+        }
+    }
+
+    /**
+     * Put a chunk, least recently used chunks are evicted if needed.
+     * @param key key of the chunk
+     * @param data content of the chunk
+     */
+    public synchronized void put(String key, byte data[])
+    {
+        String name = getFileName(key);
+        File file = new File(mDirectory, name);
+        File tmp = new File(mDirectory, name + ".tmp");
+
+        if(data.length > mMaxSize)
+        {
+            return;
+        }
+
+        remove(name);
+
+        try
+        {
+            FileOutputStream out = new FileOutputStream(tmp);
+
+            try
+            {
+                out.write(data);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if(!tmp.renameTo(file))
+            {
+                throw new IOException("cannot rename " + tmp);
+            }
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot write cache file " + file + ": " + e);
+            tmp.delete();
+            return;
+        }
+
+        mEntries.put(name, (long)data.length);
+        mSize += data.length;
+        evict();
+    }
+
+    /**
+     * Get current size of the cache.
+     * @return size in bytes
+     */
+    public synchronized long getSize()
+    {
+        return mSize;
+    }
+
+    /**
+     * Get number of chunks in the cache.
+     * @return number of chunks
+     */
+    public synchronized int getCount()
+    {
+        return mEntries.size();
+    }
+
+    /**
+     * Get the ratio of chunks found in the cache.
+     * @return hit rate between 0 and 1
+     */
+    public synchronized double getHitRate()
+    {
+        long total = mHits + mMisses;
+
+        return (total == 0) ? 0.0 : (double)mHits / total;
+    }
+
+    /**
+     * Remove all chunks.
+     */
+    public synchronized void clear()
+    {
+        for(String name : new ArrayList<String>(mEntries.keySet()))
+        {
+            remove(name);
+        }
+    }
+
+    /**
+     * Index the chunk files of the directory.
+     */
+    private void load()
+    {
+        File files[] = mDirectory.listFiles();
+
+        if(files == null)
+        {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>()
+                {
+                    public int compare(File f1, File f2)
+                    {
+                        long m1 = f1.lastModified();
+                        long m2 = f2.lastModified();
+
+                        return (m1 < m2) ? -1 : ((m1 == m2) ? 0 : 1);
+                    }
+                });
+
+        for(File file : files)
+        {
+            String name = file.getName();
+
+            if(name.endsWith(EXTENSION))
+            {
+                mEntries.put(name, file.length());
+                mSize += file.length();
+            }
+            else if(name.endsWith(EXTENSION + ".tmp"))
+            {
+                /* interrupted write */
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Evict least recently used chunks until the cache fits its maximum
+     * size.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+
+        while(mSize > mMaxSize && it.hasNext())
+        {
+            Map.Entry<String, Long> entry = it.next();
+
+            mSize -= entry.getValue();
+            it.remove();
+            new File(mDirectory, entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * Remove a chunk.
+     * @param name file name of the chunk
+     */
+    private void remove(String name)
+    {
+        Long size = mEntries.remove(name);
+
+        if(size != null)
+        {
+            mSize -= size;
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    /**
+     * Get the file name of a chunk.
+     * @param key key of the chunk
+     * @return file name
+     */
+    private static String getFileName(String key)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder name = new StringBuilder();
+
+            for(byte b : digest.digest(key.getBytes("UTF-8")))
+            {
+                name.append(String.format("%02x", b & 0xff));
+            }
+            return name.append(EXTENSION).toString();
+        }
+        catch(GeneralSecurityException e)
+        {
+            throw new RuntimeException(e);
+        }
+        catch(UnsupportedEncodingException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read a whole file.
+     * @param file the file
+     * @return content of the file
+     * @throws IOException if file cannot be read
+     */
+    private static byte[] readFile(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+        try
+        {
+            byte data[] = new byte[(int)file.length()];
+
+            in.readFully(data);
+            return data;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.net.*;
+import java.util.logging.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Xuggler protocol handler that reads HTTP medias by chunks with range
+ * requests, and keeps fetched chunks in a DiskChunkCache.
+ *
+ * Chunks are keyed by URL, ETag (or Last-Modified date if the server does
+ * not send an ETag) and length, so they are reused across seeks, replays
+ * and sessions as long as the media does not change. Medias without ETag
+ * nor Last-Modified date are not cached.
+ *
+ * URL are of the form httpcache:http://host/path.
+ *
+ * @author Sebastien Vincent
+ */
+public class HttpProtocolHandler implements IURLProtocolHandler
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(HttpProtocolHandler.class.getName());
+
+    /**
+     * Default size of a chunk.
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Timeout (in milliseconds) of connections and reads.
+     */
+    private static final int TIMEOUT = 15000;
+
+    /**
+     * Cache of chunks.
+     */
+    private final DiskChunkCache mCache;
+
+    /**
+     * Size of a chunk.
+     */
+    private final int mChunkSize;
+
+    /**
+     * URL of the media.
+     */
+    private String mUrl = null;
+
+    /**
+     * Version of the media (ETag, ...), null if unknown.
+     */
+    private String mVersion = null;
+
+    /**
+     * Size of the media, -1 if unknown.
+     */
+    private long mSize = -1;
+
+    /**
+     * Current position in the media.
+     */
+    private long mPosition = 0;
+
+    /**
+     * Chunk being read.
+     */
+    private byte mChunk[] = null;
+
+    /**
+     * Index of the chunk being read.
+     */
+    private long mChunkIndex = -1;
+
+    /**
+     * Constructor.
+     * @param cache cache of chunks
+     */
+    public HttpProtocolHandler(DiskChunkCache cache)
+    {
+        this(cache, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param cache cache of chunks
+     * @param chunkSize size of a chunk
+     */
+    HttpProtocolHandler(DiskChunkCache cache, int chunkSize)
+    {
+        mCache = cache;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Get the HTTP URL of an httpcache URL.
+     * @param url httpcache URL
+     * @return HTTP URL
+     */
+    static String getResource(String url)
+    {
+        return url.substring(url.indexOf(':') + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int open(String url, int flags)
+    {
+        HttpURLConnection connection = null;
+
+        if(flags != URL_RDONLY_MODE)
+        {
+            logger.warning("Only read mode is supported: " + url);
+            return -1;
+        }
+
+        mUrl = getResource(url);
+        mPosition = 0;
+        mChunk = null;
+        mChunkIndex = -1;
+
+        try
+        {
+            connection = openConnection("HEAD");
+
+            if(connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+            {
+                logger.warning("Cannot open " + mUrl + ": " +
+                        connection.getResponseCode());
+                return -1;
+            }
+
+            mSize = getContentLength(connection);
+            mVersion = getVersion(connection);
+            return 0;
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot open " + mUrl + ": " + e);
+            return -1;
+        }
+        finally
+        {
+            if(connection != null)
+            {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] buf, int size)
+    {
+        int offset = 0;
+
+        if(mUrl == null)
+        {
+            return -1;
+        }
+
+        try
+        {
+            while(offset < size && (mSize < 0 || mPosition < mSize))
+            {
+                long index = mPosition / mChunkSize;
+                int position = (int)(mPosition % mChunkSize);
+                int length = 0;
+
+                if(index != mChunkIndex)
+                {
+                    mChunk = getChunk(index);
+                    mChunkIndex = index;
+                }
+
+                length = Math.min(size - offset, mChunk.length - position);
+                if(length <= 0)
+                {
+                    /* short last chunk of a media of unknown size */
+                    break;
+                }
+
+                System.arraycopy(mChunk, position, buf, offset, length);
+                offset += length;
+                mPosition += length;
+            }
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot read " + mUrl + ": " + e);
+            return (offset > 0) ? offset : -1;
+        }
+
+        /* 0 means end of file */
+        return offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int write(byte[] buf, int size)
+    {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long seek(long offset, int whence)
+    {
+        long position = 0;
+
+        switch(whence)
+        {
+        case SEEK_SET:
+            position = offset;
+            break;
+        case SEEK_CUR:
+            position = mPosition + offset;
+            break;
+        case SEEK_END:
+            if(mSize < 0)
+            {
+                return -1;
+            }
+            position = mSize + offset;
+            break;
+        case SEEK_SIZE:
+            return mSize;
+        default:
+            return -1;
+        }
+
+        if(position < 0)
+        {
+            return -1;
+        }
+
+        mPosition = position;
+        return mPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int close()
+    {
+        mUrl = null;
+        mChunk = null;
+        mChunkIndex = -1;
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isStreamed(String url, int flags)
+    {
+        /* range requests make it seekable */
+        return false;
+    }
+
+    /**
+     * Get a chunk from the cache or from the server.
+     * @param index index of the chunk
+     * @return content of the chunk
+     * @throws IOException if chunk cannot be fetched
+     */
+    private byte[] getChunk(long index) throws IOException
+    {
+        String key = null;
+        byte chunk[] = null;
+
+        if(mVersion == null)
+        {
+            return fetchChunk(index);
+        }
+
+        key = DiskChunkCache.getKey(mUrl, mVersion + "/" + mSize, index);
+        chunk = mCache.get(key);
+
+        if(chunk == null)
+        {
+            chunk = fetchChunk(index);
+
+            /* a short chunk that is not the last one is not cached */
+            if(chunk.length == mChunkSize ||
+                    (mSize >= 0 && index * mChunkSize + chunk.length == mSize))
+            {
+                mCache.put(key, chunk);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Fetch a chunk with a range request.
+     * @param index index of the chunk
+     * @return content of the chunk
+     * @throws IOException if chunk cannot be fetched
+     */
+    private byte[] fetchChunk(long index) throws IOException
+    {
+        long start = index * mChunkSize;
+        long end = start + mChunkSize - 1;
+        HttpURLConnection connection = openConnection("GET");
+
+        if(mSize >= 0)
+        {
+            end = Math.min(end, mSize - 1);
+        }
+
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+
+        try
+        {
+            int code = connection.getResponseCode();
+            InputStream in = null;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int)(end - start + 1));
+            byte buf[] = new byte[8192];
+            long remaining = end - start + 1;
+            int len = 0;
+
+            /* past the end of a media of unknown size */
+            if(code == 416)
+            {
+                return new byte[0];
+            }
+
+            if(code != HttpURLConnection.HTTP_PARTIAL &&
+                    code != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("HTTP error " + code);
+            }
+
+            if(mVersion != null && !mVersion.equals(getVersion(connection)))
+            {
+                throw new IOException("media has changed on server");
+            }
+
+            in = connection.getInputStream();
+            try
+            {
+                /* server without range support sends the whole media */
+                if(code == HttpURLConnection.HTTP_OK)
+                {
+                    skipFully(in, start);
+                }
+
+                while(remaining > 0 && (len = in.read(buf, 0,
+                                (int)Math.min(buf.length, remaining))) > 0)
+                {
+                    out.write(buf, 0, len);
+                    remaining -= len;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Open a connection to the media.
+     * @param method HTTP method
+     * @return connection
+     * @throws IOException if connection cannot be opened
+     */
+    private HttpURLConnection openConnection(String method) throws IOException
+    {
+        HttpURLConnection connection =
+            (HttpURLConnection)new URL(mUrl).openConnection();
+
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        return connection;
+    }
+
+    /**
+     * Get the length of the media from a response.
+     * @param connection connection
+     * @return length or -1 if unknown
+     */
+    private static long getContentLength(HttpURLConnection connection)
+    {
+        String length = connection.getHeaderField("Content-Length");
+
+        try
+        {
+            return (length != null) ? Long.parseLong(length.trim()) : -1;
+        }
+        catch(NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the version of the media from a response.
+     * @param connection connection
+     * @return ETag, or Last-Modified date if there is no ETag, or null if
+     * none is known
+     */
+    private static String getVersion(HttpURLConnection connection)
+    {
+        String etag = connection.getHeaderField("ETag");
+        String date = connection.getHeaderField("Last-Modified");
+
+        if(etag != null)
+        {
+            return etag;
+        }
+        return (date != null) ? "date:" + date : null;
+    }
+
+    /**
+     * Skip bytes of a stream.
+     * @param in the stream
+     * @param count number of bytes to skip
+     * @throws IOException if bytes cannot be skipped
+     */
+    private static void skipFully(InputStream in, long count)
+        throws IOException
+    {
+        while(count > 0)
+        {
+            long skipped = in.skip(count);
+
+            if(skipped <= 0)
+            {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+}
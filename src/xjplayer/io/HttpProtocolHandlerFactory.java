@@ -0,0 +1,123 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Factory of HttpProtocolHandler for the httpcache protocol.
+ *
+ * All handlers share the same chunk cache, by default 512 MB in the
+ * .xjplayer/cache directory of the user.
+ *
+ * @author Sebastien Vincent
+ */
+public class HttpProtocolHandlerFactory implements IURLProtocolHandlerFactory
+{
+    /**
+     * Protocol name.
+     */
+    public static final String PROTOCOL = "httpcache";
+
+    /**
+     * Default maximum size (in bytes) of the cache.
+     */
+    private static final long DEFAULT_CACHE_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * If the factory has been registered.
+     */
+    private static boolean mRegistered = false;
+
+    /**
+     * Cache shared by handlers.
+     */
+    private static DiskChunkCache mCache = null;
+
+    /**
+     * Register the factory to Xuggler, does nothing if already done.
+     */
+    public static synchronized void register()
+    {
+        if(!mRegistered)
+        {
+            URLProtocolManager.getManager().registerFactory(PROTOCOL,
+                    new HttpProtocolHandlerFactory());
+            mRegistered = true;
+        }
+    }
+
+    /**
+     * Get the URL to read an HTTP URL through the cache.
+     * @param url HTTP URL
+     * @return URL
+     */
+    public static String getURL(String url)
+    {
+        return PROTOCOL + ":" + url;
+    }
+
+    /**
+     * Returns if an URL can be read by this protocol.
+     * @param url URL
+     * @return true if URL is an HTTP URL, false otherwise
+     */
+    public static boolean isHttp(String url)
+    {
+        String lower = url.toLowerCase();
+
+        return lower.startsWith("http://") || lower.startsWith("https://");
+    }
+
+    /**
+     * Set the cache shared by handlers.
+     * @param cache cache
+     */
+    public static synchronized void setCache(DiskChunkCache cache)
+    {
+        mCache = cache;
+    }
+
+    /**
+     * Get the cache shared by handlers, create the default one if needed.
+     * @return cache
+     */
+    public static synchronized DiskChunkCache getCache()
+    {
+        if(mCache == null)
+        {
+            File directory = new File(System.getProperty("user.home"),
+                    ".xjplayer" + File.separator + "cache");
+
+            mCache = new DiskChunkCache(directory, DEFAULT_CACHE_SIZE);
+        }
+        return mCache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public IURLProtocolHandler getHandler(String protocol, String url,
+            int flags)
+    {
+        return new HttpProtocolHandler(getCache());
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.logging.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Xuggler protocol handler that reads local files through memory mapping.
+ *
+ * The file is mapped by segments (lazily, so files bigger than 2 GB are
+ * supported) and reads are served by bulk copies from the mapped buffers,
+ * without system call once a segment is mapped.
+ *
+ * URL are of the form mmap:/path/to/file or mmap:///path/to/file.
+ *
+ * @author Sebastien Vincent
+ */
+public class MappedFileProtocolHandler implements IURLProtocolHandler
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(MappedFileProtocolHandler.class.getName());
+
+    /**
+     * Default size of a mapped segment.
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Size of a mapped segment.
+     */
+    private final int mSegmentSize;
+
+    /**
+     * File name.
+     */
+    private final String mFileName;
+
+    /**
+     * File being read.
+     */
+    private RandomAccessFile mFile = null;
+
+    /**
+     * Channel of the file.
+     */
+    private FileChannel mChannel = null;
+
+    /**
+     * Mapped segments, null if not yet mapped.
+     */
+    private MappedByteBuffer mSegments[] = null;
+
+    /**
+     * Size of the file.
+     */
+    private long mSize = 0;
+
+    /**
+     * Current position in the file.
+     */
+    private long mPosition = 0;
+
+    /**
+     * Constructor.
+     * @param fileName name of the file
+     */
+    public MappedFileProtocolHandler(String fileName)
+    {
+        this(fileName, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param fileName name of the file
+     * @param segmentSize size of a mapped segment
+     */
+    MappedFileProtocolHandler(String fileName, int segmentSize)
+    {
+        mFileName = fileName;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * Get the file name of a mmap URL.
+     * @param url URL (mmap:/path or mmap:///path)
+     * @return file name
+     */
+    static String getFileName(String url)
+    {
+        int index = url.indexOf("://");
+
+        if(index > 0)
+        {
+            return url.substring(index + 3);
+        }
+
+        index = url.indexOf(':');
+
+        /* keep Windows drive letters (C:\...) */
+        if(index > 1)
+        {
+            return url.substring(index + 1);
+        }
+        return url;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int open(String url, int flags)
+    {
+        if(flags != URL_RDONLY_MODE)
+        {
+            logger.warning("Only read mode is supported: " + url);
+            return -1;
+        }
+
+        try
+        {
+            mFile = new RandomAccessFile(mFileName, "r");
+            mChannel = mFile.getChannel();
+            mSize = mChannel.size();
+            mSegments = new MappedByteBuffer[
+                (int)((mSize + mSegmentSize - 1) / mSegmentSize)];
+            mPosition = 0;
+            return 0;
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot open " + mFileName + ": " + e);
+            close();
+            return -1;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] buf, int size)
+    {
+        int offset = 0;
+
+        if(mSegments == null)
+        {
+            return -1;
+        }
+
+        try
+        {
+            while(offset < size && mPosition < mSize)
+            {
+                ByteBuffer segment = getSegment(
+                        (int)(mPosition / mSegmentSize));
+                int position = (int)(mPosition % mSegmentSize);
+                int length = Math.min(size - offset,
+                        segment.limit() - position);
+
+                segment.position(position);
+                segment.get(buf, offset, length);
+                offset += length;
+                mPosition += length;
+            }
+        }
+        catch(IOException e)
+        {
+            logger.warning("Cannot read " + mFileName + ": " + e);
+            return -1;
+        }
+
+        /* 0 means end of file */
+        return offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int write(byte[] buf, int size)
+    {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long seek(long offset, int whence)
+    {
+        long position = 0;
+
+        if(mSegments == null)
+        {
+            return -1;
+        }
+
+        switch(whence)
+        {
+        case SEEK_SET:
+            position = offset;
+            break;
+        case SEEK_CUR:
+            position = mPosition + offset;
+            break;
+        case SEEK_END:
+            position = mSize + offset;
+            break;
+        case SEEK_SIZE:
+            return mSize;
+        default:
+            return -1;
+        }
+
+        if(position < 0)
+        {
+            return -1;
+        }
+
+        mPosition = position;
+        return mPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int close()
+    {
+        int ret = 0;
+
+        /* mapped segments are unmapped when garbage collected */
+        mSegments = null;
+        mChannel = null;
+
+        if(mFile != null)
+        {
+            try
+            {
+                mFile.close();
+            }
+            catch(IOException e)
+            {
+                ret = -1;
+            }
+            mFile = null;
+        }
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isStreamed(String url, int flags)
+    {
+        return false;
+    }
+
+    /**
+     * Get a segment, map it if needed.
+     * @param index index of the segment
+     * @return mapped segment
+     * @throws IOException if segment cannot be mapped
+     */
+    private MappedByteBuffer getSegment(int index) throws IOException
+    {
+        MappedByteBuffer segment = mSegments[index];
+
+        if(segment == null)
+        {
+            long start = (long)index * mSegmentSize;
+
+            segment = mChannel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(mSegmentSize, mSize - start));
+            mSegments[index] = segment;
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Factory of MappedFileProtocolHandler for the mmap protocol.
+ *
+ * @author Sebastien Vincent
+ */
+public class MappedFileProtocolHandlerFactory
+    implements IURLProtocolHandlerFactory
+{
+    /**
+     * Protocol name.
+     */
+    public static final String PROTOCOL = "mmap";
+
+    /**
+     * If the factory has been registered.
+     */
+    private static boolean mRegistered = false;
+
+    /**
+     * Register the factory to Xuggler, does nothing if already done.
+     */
+    public static synchronized void register()
+    {
+        if(!mRegistered)
+        {
+            URLProtocolManager.getManager().registerFactory(PROTOCOL,
+                    new MappedFileProtocolHandlerFactory());
+            mRegistered = true;
+        }
+    }
+
+    /**
+     * Get the URL to read a local file with the mmap protocol.
+     * @param fileName file name
+     * @return URL
+     */
+    public static String getURL(String fileName)
+    {
+        return PROTOCOL + ":" + fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public IURLProtocolHandler getHandler(String protocol, String url,
+            int flags)
+    {
+        return new MappedFileProtocolHandler(
+                MappedFileProtocolHandler.getFileName(url));
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.logging.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Xuggler protocol handler that reads ahead another handler in a
+ * dedicated I/O thread, so that the demuxer rarely blocks on storage.
+ *
+ * Upcoming bytes are kept in a ring of direct buffers. The I/O thread
+ * keeps a window of bytes ahead of the read position; this window starts
+ * small and grows each time the demuxer has to wait (stall), up to the
+ * ring size. Bytes already read stay in the ring until overwritten, so
+ * short backward seeks are also served from memory.
+ *
+ * URL are of the form readahead:URL, for example readahead:/path/to/file
+ * or readahead:mmap:/path/to/file.
+ *
+ * @author Sebastien Vincent
+ */
+public class ReadAheadProtocolHandler implements IURLProtocolHandler
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(ReadAheadProtocolHandler.class.getName());
+
+    /**
+     * Default size of a buffer of the ring.
+     */
+    private static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * Default number of buffers of the ring (16 MB).
+     */
+    private static final int DEFAULT_BLOCK_COUNT = 64;
+
+    /**
+     * Default initial read-ahead window (4 MB).
+     */
+    private static final int DEFAULT_WINDOW = 4 * 1024 * 1024;
+
+    /**
+     * Handler that really reads the media.
+     */
+    private final IURLProtocolHandler mSource;
+
+    /**
+     * Size of a buffer of the ring.
+     */
+    private final int mBlockSize;
+
+    /**
+     * Ring of direct buffers.
+     */
+    private final ByteBuffer mBlocks[];
+
+    /**
+     * Total size of the ring.
+     */
+    private final long mCapacity;
+
+    /**
+     * The lock.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * Condition signaled when data has been read or consumed.
+     */
+    private final Condition mCondition = mLock.newCondition();
+
+    /**
+     * Position of the first byte available in the ring.
+     */
+    private long mStart = 0;
+
+    /**
+     * Position after the last byte available in the ring.
+     */
+    private long mEnd = 0;
+
+    /**
+     * Read position of the demuxer.
+     */
+    private long mPosition = 0;
+
+    /**
+     * Number of bytes to read ahead of the read position.
+     */
+    private long mWindow;
+
+    /**
+     * Size of the media, -1 if unknown.
+     */
+    private long mSize = -1;
+
+    /**
+     * If the source has to be moved to mEnd before reading.
+     */
+    private boolean mSeekRequested = false;
+
+    /**
+     * Incremented on each seek out of the ring, data read before a seek is
+     * then discarded.
+     */
+    private int mGeneration = 0;
+
+    /**
+     * If the source reached its end.
+     */
+    private boolean mEndOfFile = false;
+
+    /**
+     * If the source failed.
+     */
+    private boolean mError = false;
+
+    /**
+     * If the handler is closed.
+     */
+    private boolean mClosed = true;
+
+    /**
+     * I/O thread.
+     */
+    private Thread mThread = null;
+
+    /**
+     * Number of reads served without waiting.
+     */
+    private long mHits = 0;
+
+    /**
+     * Number of reads that had to wait for the I/O thread.
+     */
+    private long mMisses = 0;
+
+    /**
+     * Total time (in nanoseconds) reads waited for the I/O thread.
+     */
+    private long mStallTime = 0;
+
+    /**
+     * Constructor.
+     * @param source handler that really reads the media
+     */
+    public ReadAheadProtocolHandler(IURLProtocolHandler source)
+    {
+        this(source, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor.
+     * @param source handler that really reads the media
+     * @param blockSize size of a buffer of the ring
+     * @param blockCount number of buffers of the ring
+     * @param window initial read-ahead window
+     */
+    ReadAheadProtocolHandler(IURLProtocolHandler source, int blockSize,
+            int blockCount, long window)
+    {
+        mSource = source;
+        mBlockSize = blockSize;
+        mBlocks = new ByteBuffer[blockCount];
+        mCapacity = (long)blockSize * blockCount;
+        mWindow = Math.min(window, getMaxWindow());
+    }
+
+    /**
+     * Get the URL read ahead.
+     * @param url readahead URL
+     * @return URL read ahead
+     */
+    static String getResource(String url)
+    {
+        return url.substring(url.indexOf(':') + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int open(String url, int flags)
+    {
+        int ret = 0;
+
+        if(flags != URL_RDONLY_MODE)
+        {
+            logger.warning("Only read mode is supported: " + url);
+            return -1;
+        }
+
+        ret = mSource.open(getResource(url), flags);
+        if(ret < 0)
+        {
+            return ret;
+        }
+
+        for(int i = 0 ; i < mBlocks.length ; i++)
+        {
+            if(mBlocks[i] == null)
+            {
+                mBlocks[i] = ByteBuffer.allocateDirect(mBlockSize);
+            }
+        }
+
+        mSize = mSource.seek(0, SEEK_SIZE);
+        mStart = 0;
+        mEnd = 0;
+        mPosition = 0;
+        mEndOfFile = false;
+        mError = false;
+        mSeekRequested = false;
+        mClosed = false;
+
+        mThread = new Thread("ReadAhead")
+        {
+            public void run()
+            {
+                readAhead();
+            }
+        };
+        mThread.setDaemon(true);
+        mThread.start();
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] buf, int size)
+    {
+        int offset = 0;
+
+        mLock.lock();
+        try
+        {
+            if(mClosed)
+            {
+                return -1;
+            }
+
+            /* out of the ring: restart reading ahead from the position */
+            if(mPosition < mStart || mPosition > mEnd)
+            {
+                mStart = mPosition;
+                mEnd = mPosition;
+                mEndOfFile = false;
+                mSeekRequested = true;
+                mGeneration++;
+                mCondition.signalAll();
+            }
+
+            if(mPosition < mEnd || mEndOfFile || mError)
+            {
+                mHits++;
+            }
+            else
+            {
+                long start = System.nanoTime();
+
+                /* stall: wait for data and enlarge the window */
+                mMisses++;
+                mWindow = Math.min(mWindow * 2, getMaxWindow());
+                while(!mClosed && !mError && !mEndOfFile && mPosition >= mEnd)
+                {
+                    mCondition.awaitUninterruptibly();
+                }
+                mStallTime += System.nanoTime() - start;
+            }
+
+            if(mError && mPosition >= mEnd)
+            {
+                return -1;
+            }
+
+            while(offset < size && mPosition < mEnd)
+            {
+                ByteBuffer block = getBlock(mPosition);
+                int position = (int)(mPosition % mBlockSize);
+                int length = (int)Math.min(Math.min(size - offset,
+                            mBlockSize - position), mEnd - mPosition);
+
+                block.position(position);
+                block.get(buf, offset, length);
+                offset += length;
+                mPosition += length;
+            }
+
+            /* room for the I/O thread */
+            mCondition.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+
+        /* 0 means end of file */
+        return offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int write(byte[] buf, int size)
+    {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long seek(long offset, int whence)
+    {
+        long position = 0;
+
+        mLock.lock();
+        try
+        {
+            switch(whence)
+            {
+            case SEEK_SET:
+                position = offset;
+                break;
+            case SEEK_CUR:
+                position = mPosition + offset;
+                break;
+            case SEEK_END:
+                if(mSize < 0)
+                {
+                    return -1;
+                }
+                position = mSize + offset;
+                break;
+            case SEEK_SIZE:
+                return mSize;
+            default:
+                return -1;
+            }
+
+            if(position < 0)
+            {
+                return -1;
+            }
+
+            /* the I/O thread moves the source on next read if needed */
+            mPosition = position;
+            return mPosition;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int close()
+    {
+        Thread thread = null;
+
+        mLock.lock();
+        try
+        {
+            if(mClosed)
+            {
+                return 0;
+            }
+            mClosed = true;
+            thread = mThread;
+            mThread = null;
+            mCondition.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+
+        try
+        {
+            thread.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.info("Read-ahead: hit rate " + (int)(getHitRate() * 100) +
+                "%, stall time " + getStallTime() + " ms");
+        return mSource.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isStreamed(String url, int flags)
+    {
+        return mSource.isStreamed(getResource(url), flags);
+    }
+
+    /**
+     * Get the ratio of reads served without waiting for the I/O thread.
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate()
+    {
+        mLock.lock();
+        try
+        {
+            long total = mHits + mMisses;
+
+            return (total == 0) ? 1.0 : (double)mHits / total;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Get the total time reads waited for the I/O thread.
+     * @return stall time in milliseconds
+     */
+    public long getStallTime()
+    {
+        mLock.lock();
+        try
+        {
+            return TimeUnit.NANOSECONDS.toMillis(mStallTime);
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Get the current read-ahead window.
+     * @return window in bytes
+     */
+    public long getWindow()
+    {
+        mLock.lock();
+        try
+        {
+            return mWindow;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum read-ahead window. A buffer of the ring is kept so
+     * that the I/O thread never overwrites bytes not yet read.
+     * @return maximum window in bytes
+     */
+    private long getMaxWindow()
+    {
+        return mCapacity - mBlockSize;
+    }
+
+    /**
+     * Get the buffer of the ring that holds a position.
+     * @param position position in the media
+     * @return buffer
+     */
+    private ByteBuffer getBlock(long position)
+    {
+        return mBlocks[(int)((position % mCapacity) / mBlockSize)];
+    }
+
+    /**
+     * Entry point of the I/O thread: fill the ring ahead of the read
+     * position.
+     */
+    private void readAhead()
+    {
+        byte buf[] = new byte[mBlockSize];
+
+        while(true)
+        {
+            long end = 0;
+            long seekTo = -1;
+            int generation = 0;
+            int length = 0;
+            int ret = 0;
+
+            mLock.lock();
+            try
+            {
+                while(!mClosed && !mSeekRequested &&
+                        (mEndOfFile || mError ||
+                         mEnd - mPosition >= mWindow))
+                {
+                    mCondition.awaitUninterruptibly();
+                }
+
+                if(mClosed)
+                {
+                    return;
+                }
+
+                if(mSeekRequested)
+                {
+                    mSeekRequested = false;
+                    seekTo = mEnd;
+                }
+
+                end = mEnd;
+                generation = mGeneration;
+
+                /* read up to the end of the buffer of the ring */
+                length = (int)(mBlockSize - (end % mBlockSize));
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+
+            /* blocking I/O is done without holding the lock */
+            if(seekTo >= 0 && mSource.seek(seekTo, SEEK_SET) < 0)
+            {
+                ret = -1;
+            }
+            else
+            {
+                ret = mSource.read(buf, length);
+            }
+
+            mLock.lock();
+            try
+            {
+                /* a seek out of the ring occurred while reading */
+                if(generation != mGeneration)
+                {
+                    continue;
+                }
+
+                if(ret < 0)
+                {
+                    mError = true;
+                }
+                else if(ret == 0)
+                {
+                    mEndOfFile = true;
+                }
+                else
+                {
+                    ByteBuffer block = getBlock(end);
+
+                    block.position((int)(end % mBlockSize));
+                    block.put(buf, 0, ret);
+                    mEnd += ret;
+                    mStart = Math.max(mStart, mEnd - mCapacity);
+                }
+                mCondition.signalAll();
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+        }
+    }
+}
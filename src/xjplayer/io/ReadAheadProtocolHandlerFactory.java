@@ -0,0 +1,121 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.util.concurrent.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Factory of ReadAheadProtocolHandler for the readahead protocol.
+ *
+ * The URL following "readahead:" is read by the handler registered for
+ * its protocol, or as a file if it has none.
+ *
+ * @author Sebastien Vincent
+ */
+public class ReadAheadProtocolHandlerFactory
+    implements IURLProtocolHandlerFactory
+{
+    /**
+     * Protocol name.
+     */
+    public static final String PROTOCOL = "readahead";
+
+    /**
+     * If the factory has been registered.
+     */
+    private static boolean mRegistered = false;
+
+    /**
+     * Handlers opened, by URL, to get their statistics.
+     */
+    private static final ConcurrentMap<String, ReadAheadProtocolHandler>
+        mHandlers = new ConcurrentHashMap<String, ReadAheadProtocolHandler>();
+
+    /**
+     * Register the factory to Xuggler, does nothing if already done.
+     */
+    public static synchronized void register()
+    {
+        if(!mRegistered)
+        {
+            URLProtocolManager.getManager().registerFactory(PROTOCOL,
+                    new ReadAheadProtocolHandlerFactory());
+            mRegistered = true;
+        }
+    }
+
+    /**
+     * Get the URL to read ahead another URL.
+     * @param url URL or file name
+     * @return URL
+     */
+    public static String getURL(String url)
+    {
+        return PROTOCOL + ":" + url;
+    }
+
+    /**
+     * Get the handler that reads an URL, to get its statistics. If the URL
+     * is opened several times, the handler created last is returned.
+     * @param url URL returned by getURL()
+     * @return handler or null if the URL is not being read
+     */
+    public static ReadAheadProtocolHandler getOpenHandler(String url)
+    {
+        return mHandlers.get(url);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public IURLProtocolHandler getHandler(String protocol, final String url,
+            int flags)
+    {
+        String resource = ReadAheadProtocolHandler.getResource(url);
+        IURLProtocolHandler source = null;
+
+        /* protocol of the URL read ahead (not a Windows drive letter) */
+        if(resource.indexOf(':') > 1)
+        {
+            source = URLProtocolManager.getManager().getHandler(resource,
+                    flags);
+        }
+
+        if(source == null)
+        {
+            source = new FileProtocolHandler(resource);
+        }
+
+        ReadAheadProtocolHandler handler =
+            new ReadAheadProtocolHandler(source)
+        {
+            @Override
+            public int close()
+            {
+                mHandlers.remove(url, this);
+                return super.close();
+            }
+        };
+
+        mHandlers.put(url, handler);
+        return handler;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains input classes such as Xuggler protocol handlers
+ * used to read medias.
+ */
+package xjplayer.io;
@@ -18,12 +18,15 @@
 
 package xjplayer.main;
 
+import java.io.*;
 import java.util.logging.*;
 
 import javax.swing.*;
 
 import xjplayer.util.*;
 import xjplayer.gui.*;
+import xjplayer.media.*;
+import xjplayer.tools.*;
 
 /**
  * Application launcher.
@@ -57,6 +60,17 @@ public final class Main
      */
     public static final int EXIT_FAILURE = 1;
 
+    /**
+     * System property with the file to which a trace of the media pipeline
+     * is written on exit. Tracing is disabled if not set.
+     */
+    public static final String TRACE_PROPERTY = "xjplayer.trace";
+
+    /**
+     * System property with the number of events kept in the trace.
+     */
+    public static final String TRACE_SIZE_PROPERTY = "xjplayer.trace.size";
+
     /**
      * Entry point of the program.
      * @param argv array containing command line parameter
@@ -70,13 +84,64 @@ public final class Main
                 " (" + OSUtils.getOSArch() + "-bit - " +
                 OSUtils.getOSArchName() + ")");
 
+        if(System.getProperty(TRACE_PROPERTY) != null)
+        {
+            PipelineTrace.start(Integer.getInteger(TRACE_SIZE_PROPERTY,
+                    PipelineTrace.DEFAULT_CAPACITY));
+        }
+
         /* register a cleanup exit point */
         Runtime.getRuntime().addShutdownHook(new CleanupThread());
 
+        /* headless commands */
+        if(argv.length > 0)
+        {
+            System.exit(runCommand(argv) ? EXIT_SUCCESS : EXIT_FAILURE);
+        }
+
         /* create the GUI in the Event Dispatch Thread (EDT) */
         SwingUtilities.invokeLater(new GUIBuilderThread());
     }
 
+    /**
+     * Run a headless command.
+     * @param argv name of the command followed by its arguments
+     * @return true if the command succeeded, false otherwise
+     */
+    private static boolean runCommand(String argv[])
+    {
+        String command = argv[0];
+        String args[] = new String[argv.length - 1];
+
+        System.arraycopy(argv, 1, args, 0, args.length);
+
+        /* images are drawn off-screen, no display is needed */
+        System.setProperty("java.awt.headless", "true");
+
+        if(command.equals(TranscodeCommand.NAME))
+        {
+            return TranscodeCommand.run(args);
+        }
+        else if(command.equals(RemuxCommand.NAME))
+        {
+            return RemuxCommand.run(args);
+        }
+        else if(command.equals(ThumbnailCommand.NAME))
+        {
+            return ThumbnailCommand.run(args);
+        }
+        else if(command.equals(BenchmarkCommand.NAME))
+        {
+            return BenchmarkCommand.run(args);
+        }
+
+        System.err.println("Unknown command: " + command);
+        System.err.println("Commands: " + TranscodeCommand.NAME + ", " +
+                RemuxCommand.NAME + ", " + ThumbnailCommand.NAME + ", " +
+                BenchmarkCommand.NAME);
+        return false;
+    }
+
     /**
      * GUI Builder thread.
      *
@@ -158,6 +223,22 @@ public final class Main
         {
             logger.info("Exiting...");
 
+            String trace = System.getProperty(TRACE_PROPERTY);
+
+            if(trace != null && PipelineTrace.isEnabled())
+            {
+                PipelineTrace.stop();
+                try
+                {
+                    PipelineTrace.dump(new File(trace));
+                    logger.info("Pipeline trace written to " + trace);
+                }
+                catch(IOException e)
+                {
+                    logger.warning("Cannot write pipeline trace: " + e);
+                }
+            }
+
             /* run the garbage collector */
             System.gc();
         }
@@ -0,0 +1,215 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import xjplayer.media.event.*;
+
+/**
+ * Video listener that delivers events to another listener on its own
+ * thread, so that a slow listener cannot delay the presentation of the
+ * next frames.
+ *
+ * Pending events are kept in a bounded queue. When it is full the oldest
+ * pending image is dropped. The end of video is never dropped: it evicts a
+ * pending image, or waits for room if only end of video events are pending.
+ *
+ * @author Sebastien Vincent
+ */
+class AsyncVideoListener implements VideoListener
+{
+    /**
+     * Default number of pending events.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * Time (in seconds) before the idle delivery thread exits.
+     */
+    private static final long KEEP_ALIVE = 10;
+
+    /**
+     * Listener notified.
+     */
+    private final VideoListener mListener;
+
+    /**
+     * Executor that notifies the listener.
+     */
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Number of events dropped.
+     */
+    private final AtomicLong mDropped = new AtomicLong(0);
+
+    /**
+     * Constructor.
+     * @param listener listener to notify
+     * @param capacity maximum number of pending events
+     */
+    public AsyncVideoListener(final VideoListener listener, int capacity)
+    {
+        mListener = listener;
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "VideoListener-" +
+                                listener.getClass().getSimpleName());
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler()
+                {
+                    public void rejectedExecution(Runnable r,
+                            ThreadPoolExecutor executor)
+                    {
+                        reject(r, executor);
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Make room for an event that did not fit in the queue. The oldest
+     * pending image is evicted. If none is pending, a new image is dropped
+     * and an end of video waits for room.
+     * @param r rejected event
+     * @param executor executor that rejected it
+     */
+    private void reject(Runnable r, ThreadPoolExecutor executor)
+    {
+        if(executor.isShutdown())
+        {
+            return;
+        }
+
+        BlockingQueue<Runnable> queue = executor.getQueue();
+
+        for(Runnable pending : queue)
+        {
+            if(!(pending instanceof EndOfVideoTask) && queue.remove(pending))
+            {
+                mDropped.incrementAndGet();
+                executor.execute(r);
+                return;
+            }
+        }
+
+        if(!(r instanceof EndOfVideoTask))
+        {
+            mDropped.incrementAndGet();
+            return;
+        }
+
+        try
+        {
+            queue.put(r);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the listener notified.
+     * @return listener
+     */
+    public VideoListener getListener()
+    {
+        return mListener;
+    }
+
+    /**
+     * Get the number of events dropped because the listener was too slow.
+     * @return number of events
+     */
+    public long getDropped()
+    {
+        return mDropped.get();
+    }
+
+    /**
+     * Stop notifying the listener. Pending events are discarded.
+     */
+    public void shutdown()
+    {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void newImage(final NewImageEvent event)
+    {
+        mExecutor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        mListener.newImage(event);
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void endOfVideo(final VideoEvent event)
+    {
+        mExecutor.execute(new EndOfVideoTask(event));
+    }
+
+    /**
+     * Task that notifies the end of video. It is never dropped.
+     *
+     * @author Sebastien Vincent
+     */
+    private class EndOfVideoTask implements Runnable
+    {
+        /**
+         * Event to deliver.
+         */
+        private final VideoEvent mEvent;
+
+        /**
+         * Constructor.
+         * @param event event to deliver
+         */
+        public EndOfVideoTask(VideoEvent event)
+        {
+            mEvent = event;
+        }
+
+        /**
+         * Notify the listener.
+         */
+        public void run()
+        {
+            mListener.endOfVideo(mEvent);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+/**
+ * Changes the playback rate of signed 16-bit little-endian PCM audio by
+ * linear interpolation between frames, so that audio follows a clock
+ * running slightly faster or slower without the clicks of cutting or
+ * repeating samples.
+ *
+ * Each buffer is stretched so that its first and last frames are kept:
+ * consecutive buffers join as they did before conversion.
+ *
+ * @author Sebastien Vincent
+ */
+class AudioRateConverter
+{
+    /**
+     * Size of a sample in bytes.
+     */
+    private static final int SAMPLE_SIZE = 2;
+
+    /**
+     * Constructor.
+     */
+    private AudioRateConverter()
+    {
+    }
+
+    /**
+     * Get the number of frames a buffer is converted to.
+     * @param frames number of frames of the buffer
+     * @param rate playback rate, greater than 1 to play faster
+     * @return number of frames after conversion
+     */
+    static int getOutputFrames(int frames, double rate)
+    {
+        return (int)Math.round(frames / rate);
+    }
+
+    /**
+     * Convert audio samples to another playback rate.
+     * @param data samples
+     * @param size size of the samples in bytes
+     * @param channels number of channels
+     * @param rate playback rate, greater than 1 to play faster
+     * @return converted samples
+     */
+    static byte[] convert(byte data[], int size, int channels, double rate)
+    {
+        int frameSize = SAMPLE_SIZE * channels;
+        int frames = size / frameSize;
+        int length = getOutputFrames(frames, rate);
+        byte out[] = new byte[length * frameSize];
+        double step = (length > 1) ? (frames - 1) / (double)(length - 1) : 0;
+
+        for(int i = 0 ; i < length ; i++)
+        {
+            double position = i * step;
+            int index = Math.min((int)position, Math.max(frames - 2, 0));
+            int next = Math.min(index + 1, frames - 1);
+            double fraction = Math.min(position - index, 1.0);
+
+            for(int c = 0 ; c < channels ; c++)
+            {
+                int offset = c * SAMPLE_SIZE;
+                int first = getSample(data, index * frameSize + offset);
+                int second = getSample(data, next * frameSize + offset);
+
+                setSample(out, i * frameSize + offset,
+                        (int)Math.round(first + (second - first) * fraction));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Read a sample.
+     * @param data samples
+     * @param offset offset of the sample in bytes
+     * @return sample value
+     */
+    private static int getSample(byte data[], int offset)
+    {
+        return (data[offset] & 0xff) | (data[offset + 1] << 8);
+    }
+
+    /**
+     * Write a sample.
+     * @param data samples
+     * @param offset offset of the sample in bytes
+     * @param value sample value
+     */
+    private static void setSample(byte data[], int offset, int value)
+    {
+        data[offset] = (byte)value;
+        data[offset + 1] = (byte)(value >> 8);
+    }
+}
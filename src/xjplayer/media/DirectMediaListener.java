@@ -0,0 +1,53 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Listener that receives decoded media directly from the reader, without
+ * mediatool events (direct mode).
+ *
+ * Samples and pictures belong to the reader which reuses them once
+ * released, so a reference has to be kept (copyReference()) to use them
+ * after the method returns.
+ *
+ * @author Sebastien Vincent
+ */
+interface DirectMediaListener
+{
+    /**
+     * Indicates that audio samples have been decoded.
+     * @param source reader that decoded the samples
+     * @param samples decoded audio samples
+     * @param streamIndex index of the audio stream
+     */
+    public void onDecodedAudio(IMediaCoder source, IAudioSamples samples,
+            int streamIndex);
+
+    /**
+     * Indicates that a video picture has been decoded.
+     * @param source reader that decoded the picture
+     * @param picture decoded video picture
+     * @param streamIndex index of the video stream
+     */
+    public void onDecodedVideo(IMediaCoder source, IVideoPicture picture,
+            int streamIndex);
+}
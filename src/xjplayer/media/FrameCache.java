@@ -0,0 +1,391 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.awt.image.*;
+import java.util.*;
+
+/**
+ * Memory-bounded LRU cache of decoded GOPs (group of pictures, from one
+ * key frame to the next).
+ *
+ * A GOP covers the timestamps from its first picture to the picture that
+ * follows its last one. When the images kept exceed the maximum size, the
+ * least recently used GOPs are evicted; the GOP just added is always kept.
+ * GOPs too large for the cache are decoded with a GopBuilder, which keeps
+ * only part of them.
+ *
+ * @author Sebastien Vincent
+ */
+class FrameCache
+{
+    /**
+     * Maximum size (in bytes) of the images kept.
+     */
+    private final long mMaxBytes;
+
+    /**
+     * Size (in bytes) of the images kept.
+     */
+    private long mBytes = 0;
+
+    /**
+     * GOPs by timestamp of their first picture.
+     */
+    private final TreeMap<Long, Gop> mGops = new TreeMap<Long, Gop>();
+
+    /**
+     * GOPs from the least to the most recently used.
+     */
+    private final LinkedHashMap<Long, Gop> mRecent =
+        new LinkedHashMap<Long, Gop>(16, 0.75f, true);
+
+    /**
+     * Constructor.
+     * @param maxBytes maximum size (in bytes) of the images kept
+     */
+    public FrameCache(long maxBytes)
+    {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Get the maximum size of the images kept.
+     * @return size in bytes
+     */
+    public long getMaxBytes()
+    {
+        return mMaxBytes;
+    }
+
+    /**
+     * Get the size of an image.
+     * @param image image
+     * @return size in bytes
+     */
+    static long getBytes(BufferedImage image)
+    {
+        return (long)image.getWidth() * image.getHeight() *
+            image.getColorModel().getPixelSize() / 8;
+    }
+
+    /**
+     * Get the GOP that covers a timestamp.
+     * @param timeStamp timestamp in microseconds
+     * @return GOP or null if not cached
+     */
+    public synchronized Gop get(long timeStamp)
+    {
+        Map.Entry<Long, Gop> entry = mGops.floorEntry(timeStamp);
+
+        if(entry == null || timeStamp >= entry.getValue().getEnd())
+        {
+            return null;
+        }
+
+        /* update access order */
+        mRecent.get(entry.getKey());
+        return entry.getValue();
+    }
+
+    /**
+     * Add a GOP and evict the least recently used ones if needed.
+     * @param gop GOP to add
+     */
+    public synchronized void put(Gop gop)
+    {
+        Gop old = mGops.put(gop.getStart(), gop);
+
+        if(old != null)
+        {
+            mBytes -= old.getBytes();
+        }
+        mRecent.put(gop.getStart(), gop);
+        mBytes += gop.getBytes();
+
+        Iterator<Gop> it = mRecent.values().iterator();
+
+        while(mBytes > mMaxBytes && it.hasNext())
+        {
+            Gop eldest = it.next();
+
+            if(eldest == gop)
+            {
+                break;
+            }
+
+            it.remove();
+            mGops.remove(eldest.getStart());
+            mBytes -= eldest.getBytes();
+        }
+    }
+
+    /**
+     * Remove all GOPs.
+     */
+    public synchronized void clear()
+    {
+        mGops.clear();
+        mRecent.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Get the number of GOPs kept.
+     * @return number of GOPs
+     */
+    public synchronized int size()
+    {
+        return mGops.size();
+    }
+
+    /**
+     * Get the size of the images kept.
+     * @return size in bytes
+     */
+    public synchronized long getBytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * Decoded pictures of a GOP in presentation order.
+     *
+     * @author Sebastien Vincent
+     */
+    static class Gop
+    {
+        /**
+         * Timestamps (in microseconds) of the pictures, ascending.
+         */
+        private final long mTimeStamps[];
+
+        /**
+         * Images of the pictures.
+         */
+        private final BufferedImage mImages[];
+
+        /**
+         * Timestamp (in microseconds) of the picture that follows the last
+         * one, Long.MAX_VALUE if it is the last picture of the media.
+         */
+        private final long mEnd;
+
+        /**
+         * Size (in bytes) of the images.
+         */
+        private final long mBytes;
+
+        /**
+         * Constructor.
+         * @param frames images by timestamp (in microseconds), not empty
+         * @param end timestamp of the picture that follows the last one,
+         * Long.MAX_VALUE if it is the last picture of the media
+         */
+        public Gop(SortedMap<Long, BufferedImage> frames, long end)
+        {
+            long bytes = 0;
+            int i = 0;
+
+            mTimeStamps = new long[frames.size()];
+            mImages = new BufferedImage[frames.size()];
+            for(Map.Entry<Long, BufferedImage> entry : frames.entrySet())
+            {
+                BufferedImage image = entry.getValue();
+
+                mTimeStamps[i] = entry.getKey();
+                mImages[i++] = image;
+                bytes += FrameCache.getBytes(image);
+            }
+            mEnd = end;
+            mBytes = bytes;
+        }
+
+        /**
+         * Get the timestamp of the first picture.
+         * @return timestamp in microseconds
+         */
+        public long getStart()
+        {
+            return mTimeStamps[0];
+        }
+
+        /**
+         * Get the timestamp of the picture that follows the last one.
+         * @return timestamp in microseconds, Long.MAX_VALUE if the GOP ends
+         * the media
+         */
+        public long getEnd()
+        {
+            return mEnd;
+        }
+
+        /**
+         * Get the number of pictures.
+         * @return number of pictures
+         */
+        public int size()
+        {
+            return mTimeStamps.length;
+        }
+
+        /**
+         * Get the index of the picture displayed at a timestamp.
+         * @param timeStamp timestamp in microseconds
+         * @return index of the last picture whose timestamp is lower or
+         * equal, 0 if timestamp is before the first picture
+         */
+        public int indexOf(long timeStamp)
+        {
+            int index = Arrays.binarySearch(mTimeStamps, timeStamp);
+
+            if(index < 0)
+            {
+                index = -index - 2;
+            }
+            return Math.max(0, index);
+        }
+
+        /**
+         * Get the timestamp of a picture.
+         * @param index index of the picture
+         * @return timestamp in microseconds
+         */
+        public long getTimeStamp(int index)
+        {
+            return mTimeStamps[index];
+        }
+
+        /**
+         * Get the image of a picture.
+         * @param index index of the picture
+         * @return image
+         */
+        public BufferedImage getImage(int index)
+        {
+            return mImages[index];
+        }
+
+        /**
+         * Get the size of the images.
+         * @return size in bytes
+         */
+        public long getBytes()
+        {
+            return mBytes;
+        }
+    }
+
+    /**
+     * Pictures of a GOP being decoded, kept within a maximum size: when it
+     * is exceeded, the first pictures are dropped.
+     *
+     * @author Sebastien Vincent
+     */
+    static class GopBuilder
+    {
+        /**
+         * Maximum size (in bytes) of the images kept.
+         */
+        private final long mMaxBytes;
+
+        /**
+         * Images by timestamp (in microseconds).
+         */
+        private final TreeMap<Long, BufferedImage> mFrames =
+            new TreeMap<Long, BufferedImage>();
+
+        /**
+         * Size (in bytes) of the images kept.
+         */
+        private long mBytes = 0;
+
+        /**
+         * Constructor.
+         * @param maxBytes maximum size (in bytes) of the images kept, at
+         * least one image is kept whatever its size
+         */
+        public GopBuilder(long maxBytes)
+        {
+            mMaxBytes = maxBytes;
+        }
+
+        /**
+         * Returns if adding an image would drop the first pictures.
+         * @param image image to add
+         * @return true if the image does not fit
+         */
+        public boolean isFull(BufferedImage image)
+        {
+            return !mFrames.isEmpty() &&
+                mBytes + FrameCache.getBytes(image) > mMaxBytes;
+        }
+
+        /**
+         * Add a picture, dropping the first pictures if it does not fit.
+         * @param timeStamp timestamp (in microseconds) of the picture
+         * @param image image of the picture
+         */
+        public void add(long timeStamp, BufferedImage image)
+        {
+            while(isFull(image))
+            {
+                mBytes -= FrameCache.getBytes(
+                        mFrames.pollFirstEntry().getValue());
+            }
+
+            BufferedImage old = mFrames.put(timeStamp, image);
+
+            if(old != null)
+            {
+                mBytes -= FrameCache.getBytes(old);
+            }
+            mBytes += FrameCache.getBytes(image);
+        }
+
+        /**
+         * Returns if no picture has been added.
+         * @return true if there is no picture
+         */
+        public boolean isEmpty()
+        {
+            return mFrames.isEmpty();
+        }
+
+        /**
+         * Get the size of the images kept.
+         * @return size in bytes
+         */
+        public long getBytes()
+        {
+            return mBytes;
+        }
+
+        /**
+         * Create the GOP of the pictures kept.
+         * @param end timestamp of the picture that follows the last one,
+         * Long.MAX_VALUE if it is the last picture of the media
+         * @return GOP
+         */
+        public Gop build(long end)
+        {
+            return new Gop(mFrames, end);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.awt.image.*;
+
+import com.xuggle.xuggler.*;
+import com.xuggle.xuggler.video.*;
+
+/**
+ * Random access to the frames of the first video stream of a media.
+ *
+ * To get the frame at a timestamp, the container seeks to the preceding
+ * key frame and decodes forward. Every GOP decoded on the way is kept in a
+ * memory-bounded LRU cache, so that stepping, scrubbing or going back to a
+ * recent position does not decode again. Only the part of a GOP around the
+ * timestamp is kept if the whole GOP does not fit in the cache.
+ *
+ * Pictures are converted with the same converter as MediaCore.
+ *
+ * @author Sebastien Vincent
+ */
+public class FrameSource
+{
+    /**
+     * Default maximum size (in bytes) of the decoded frames kept.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Container of the media.
+     */
+    private final IContainer mContainer;
+
+    /**
+     * Index of the video stream.
+     */
+    private final int mStreamIndex;
+
+    /**
+     * Decoder of the video stream.
+     */
+    private final IStreamCoder mCoder;
+
+    /**
+     * Converter of decoded pictures.
+     */
+    private final IConverter mConverter;
+
+    /**
+     * Picture decoded.
+     */
+    private final IVideoPicture mPicture;
+
+    /**
+     * Packet read.
+     */
+    private final IPacket mPacket;
+
+    /**
+     * Decoded GOPs.
+     */
+    private final FrameCache mCache;
+
+    /**
+     * Number of requests served from the cache.
+     */
+    private long mHits = 0;
+
+    /**
+     * Number of requests that needed decoding.
+     */
+    private long mMisses = 0;
+
+    /**
+     * Constructor with the default cache size.
+     * @param url media file/URL/...
+     * @throws IllegalArgumentException if media cannot be opened or has no
+     * video
+     */
+    public FrameSource(String url)
+    {
+        this(url, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param url media file/URL/...
+     * @param cacheSize maximum size (in bytes) of the decoded frames kept
+     * @throws IllegalArgumentException if media cannot be opened or has no
+     * video
+     */
+    public FrameSource(String url, long cacheSize)
+    {
+        int index = -1;
+
+        mContainer = IContainer.make();
+        if(mContainer.open(url, IContainer.Type.READ, null) < 0)
+        {
+            throw new IllegalArgumentException("Cannot open " + url);
+        }
+
+        for(int i = 0 ; i < mContainer.getNumStreams() && index == -1 ; i++)
+        {
+            if(mContainer.getStream(i).getStreamCoder().getCodecType() ==
+                    ICodec.Type.CODEC_TYPE_VIDEO)
+            {
+                index = i;
+            }
+        }
+
+        if(index == -1)
+        {
+            mContainer.close();
+            throw new IllegalArgumentException("No video in " + url);
+        }
+
+        mStreamIndex = index;
+        mCoder = mContainer.getStream(index).getStreamCoder();
+        if(mCoder.open() < 0)
+        {
+            mContainer.close();
+            throw new IllegalArgumentException("Cannot decode " + url);
+        }
+
+        mConverter = MediaCore.createConverter(mCoder.getPixelType(),
+                mCoder.getWidth(), mCoder.getHeight());
+        mPicture = IVideoPicture.make(mCoder.getPixelType(),
+                mCoder.getWidth(), mCoder.getHeight());
+        mPacket = IPacket.make();
+        mCache = new FrameCache(cacheSize);
+    }
+
+    /**
+     * Get the width of the frames.
+     * @return width
+     */
+    public int getWidth()
+    {
+        return mCoder.getWidth();
+    }
+
+    /**
+     * Get the height of the frames.
+     * @return height
+     */
+    public int getHeight()
+    {
+        return mCoder.getHeight();
+    }
+
+    /**
+     * Get the duration of the media.
+     * @return duration in microseconds or Global.NO_PTS if unknown
+     */
+    public long getDuration()
+    {
+        return mContainer.getDuration();
+    }
+
+    /**
+     * Get the frame displayed at a timestamp.
+     * @param timeStamp timestamp in microseconds
+     * @return the last frame whose timestamp is lower or equal (the first
+     * frame if timestamp is before it), null if no frame can be decoded
+     */
+    public synchronized Frame getFrame(long timeStamp)
+    {
+        FrameCache.Gop gop = getGop(timeStamp);
+
+        return (gop != null) ? getFrame(gop, gop.indexOf(timeStamp)) : null;
+    }
+
+    /**
+     * Get the frame that follows the one displayed at a timestamp.
+     * @param timeStamp timestamp in microseconds
+     * @return next frame or null if there is none
+     */
+    public synchronized Frame getNextFrame(long timeStamp)
+    {
+        FrameCache.Gop gop = getGop(timeStamp);
+        int index = 0;
+
+        if(gop == null)
+        {
+            return null;
+        }
+
+        index = gop.indexOf(timeStamp);
+        if(timeStamp < gop.getStart())
+        {
+            return getFrame(gop, 0);
+        }
+        else if(index + 1 < gop.size())
+        {
+            return getFrame(gop, index + 1);
+        }
+        else if(gop.getEnd() == Long.MAX_VALUE)
+        {
+            return null;
+        }
+
+        gop = getGop(gop.getEnd());
+        return (gop != null) ? getFrame(gop, 0) : null;
+    }
+
+    /**
+     * Get the frame that precedes the one displayed at a timestamp.
+     * @param timeStamp timestamp in microseconds
+     * @return previous frame or null if there is none
+     */
+    public synchronized Frame getPreviousFrame(long timeStamp)
+    {
+        FrameCache.Gop gop = getGop(timeStamp);
+        FrameCache.Gop previous = null;
+        int index = 0;
+
+        if(gop == null)
+        {
+            return null;
+        }
+
+        index = gop.indexOf(timeStamp);
+        if(index > 0)
+        {
+            return getFrame(gop, index - 1);
+        }
+
+        previous = getGop(gop.getStart() - 1);
+        if(previous == null || previous.getStart() >= gop.getStart())
+        {
+            return null;
+        }
+        return getFrame(previous, previous.size() - 1);
+    }
+
+    /**
+     * Get the number of requests served from the cache.
+     * @return number of requests
+     */
+    public synchronized long getCacheHits()
+    {
+        return mHits;
+    }
+
+    /**
+     * Get the number of requests that needed decoding.
+     * @return number of requests
+     */
+    public synchronized long getCacheMisses()
+    {
+        return mMisses;
+    }
+
+    /**
+     * Release the decoded frames and close the media.
+     */
+    public synchronized void close()
+    {
+        mCache.clear();
+        mPacket.delete();
+        mPicture.delete();
+        mConverter.delete();
+        mCoder.close();
+        mContainer.close();
+    }
+
+    /**
+     * Get a frame of a GOP.
+     * @param gop GOP
+     * @param index index of the frame in the GOP
+     * @return frame
+     */
+    private static Frame getFrame(FrameCache.Gop gop, int index)
+    {
+        return new Frame(gop.getTimeStamp(index), gop.getImage(index));
+    }
+
+    /**
+     * Get the GOP that covers a timestamp, from the cache or by decoding.
+     * @param timeStamp timestamp in microseconds
+     * @return GOP or null if no frame can be decoded
+     */
+    private FrameCache.Gop getGop(long timeStamp)
+    {
+        FrameCache.Gop gop = mCache.get(timeStamp);
+
+        if(gop != null)
+        {
+            mHits++;
+            return gop;
+        }
+
+        mMisses++;
+        return decode(timeStamp);
+    }
+
+    /**
+     * Seek to the key frame before a timestamp and decode GOPs until the
+     * one that covers it. All GOPs decoded are cached.
+     *
+     * Pictures are kept within half of the cache size, so that a long GOP
+     * of large pictures does not exhaust memory: the first pictures are
+     * dropped until the timestamp is reached, then decoding stops.
+     * @param timeStamp timestamp in microseconds
+     * @return GOP that covers timestamp, the last one decoded if timestamp
+     * is after the end of media, or null if no frame can be decoded
+     */
+    private FrameCache.Gop decode(long timeStamp)
+    {
+        FrameCache.GopBuilder frames = null;
+        FrameCache.Gop last = null;
+
+        mContainer.seekKeyFrame(-1, Long.MIN_VALUE, timeStamp, timeStamp, 0);
+
+        while(mContainer.readNextPacket(mPacket) >= 0)
+        {
+            int offset = 0;
+
+            if(mPacket.getStreamIndex() != mStreamIndex)
+            {
+                continue;
+            }
+
+            while(offset < mPacket.getSize())
+            {
+                int rv = mCoder.decodeVideo(mPicture, mPacket, offset);
+                long pts = mPicture.getTimeStamp();
+                BufferedImage image = null;
+
+                if(rv < 0)
+                {
+                    break;
+                }
+
+                offset += rv;
+                if(!mPicture.isComplete())
+                {
+                    continue;
+                }
+
+                if(mPicture.isKeyFrame())
+                {
+                    if(frames != null && !frames.isEmpty())
+                    {
+                        last = frames.build(pts);
+                        mCache.put(last);
+                        if(timeStamp < pts)
+                        {
+                            return last;
+                        }
+                    }
+                    frames = new FrameCache.GopBuilder(
+                            mCache.getMaxBytes() / 2);
+                }
+
+                /* pictures still in the decoder from before the seek are
+                 * dropped until the key frame
+                 */
+                if(frames == null)
+                {
+                    continue;
+                }
+
+                image = mConverter.toImage(mPicture);
+                if(frames.isFull(image) && timeStamp < pts)
+                {
+                    /* the pictures kept cover timestamp */
+                    last = frames.build(pts);
+                    mCache.put(last);
+                    return last;
+                }
+                frames.add(pts, image);
+            }
+        }
+
+        if(frames != null && !frames.isEmpty())
+        {
+            last = frames.build(Long.MAX_VALUE);
+            mCache.put(last);
+        }
+        return last;
+    }
+
+    /**
+     * Decoded frame.
+     *
+     * @author Sebastien Vincent
+     */
+    public static final class Frame
+    {
+        /**
+         * Timestamp (in microseconds) of the frame.
+         */
+        private final long mTimeStamp;
+
+        /**
+         * Image of the frame.
+         */
+        private final BufferedImage mImage;
+
+        /**
+         * Constructor.
+         * @param timeStamp timestamp in microseconds
+         * @param image image of the frame
+         */
+        Frame(long timeStamp, BufferedImage image)
+        {
+            mTimeStamp = timeStamp;
+            mImage = image;
+        }
+
+        /**
+         * Get the timestamp of the frame.
+         * @return timestamp in microseconds
+         */
+        public long getTimeStamp()
+        {
+            return mTimeStamp;
+        }
+
+        /**
+         * Get the image of the frame. It is shared with the cache and must
+         * not be modified.
+         * @return image
+         */
+        public BufferedImage getImage()
+        {
+            return mImage;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+/**
+ * Jitter buffer policy for live sources.
+ *
+ * It estimates the jitter of media arrival (as RTP does: mean deviation of
+ * the difference between arrival spacing and timestamp spacing) and
+ * derives the delay playback should keep behind the newest media. Given
+ * the current latency, it tells at which rate to play to converge to this
+ * delay, or when latency is so far from it that playback has to jump to
+ * the live edge.
+ *
+ * All times are in microseconds.
+ *
+ * @author Sebastien Vincent
+ */
+public class JitterBuffer
+{
+    /**
+     * Default minimum delay.
+     */
+    public static final long DEFAULT_MIN_DELAY = 100000;
+
+    /**
+     * Default maximum delay.
+     */
+    public static final long DEFAULT_MAX_DELAY = 2000000;
+
+    /**
+     * Number of jitters kept as delay.
+     */
+    private static final int JITTER_FACTOR = 4;
+
+    /**
+     * Rate deviation used to catch up or slow down.
+     */
+    private static final double RATE_STEP = 0.03;
+
+    /**
+     * Tolerance around the target delay before changing rate.
+     */
+    private static final double TOLERANCE = 0.25;
+
+    /**
+     * Minimum delay.
+     */
+    private final long mMinDelay;
+
+    /**
+     * Maximum delay.
+     */
+    private final long mMaxDelay;
+
+    /**
+     * Estimated jitter.
+     */
+    private double mJitter = 0;
+
+    /**
+     * Timestamp of the last media arrived.
+     */
+    private long mLastTimeStamp = -1;
+
+    /**
+     * Arrival time of the last media.
+     */
+    private long mLastArrival = -1;
+
+    /**
+     * Newest timestamp arrived.
+     */
+    private long mNewestTimeStamp = -1;
+
+    /**
+     * Constructor.
+     */
+    public JitterBuffer()
+    {
+        this(DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Constructor.
+     * @param minDelay minimum delay
+     * @param maxDelay maximum delay
+     */
+    public JitterBuffer(long minDelay, long maxDelay)
+    {
+        mMinDelay = minDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * Record arrival of media.
+     * @param timeStamp timestamp of the media
+     * @param arrival arrival time (wall clock)
+     */
+    public synchronized void onArrival(long timeStamp, long arrival)
+    {
+        if(mLastArrival >= 0 && timeStamp > mLastTimeStamp)
+        {
+            long deviation = (arrival - mLastArrival) -
+                (timeStamp - mLastTimeStamp);
+
+            mJitter += (Math.abs(deviation) - mJitter) / 16;
+        }
+
+        /* media of several streams interleave, only consider increasing
+         * timestamps for spacing
+         */
+        if(timeStamp > mLastTimeStamp)
+        {
+            mLastTimeStamp = timeStamp;
+            mLastArrival = arrival;
+        }
+
+        mNewestTimeStamp = Math.max(mNewestTimeStamp, timeStamp);
+    }
+
+    /**
+     * Forget arrival history (new media, seek, ...).
+     */
+    public synchronized void reset()
+    {
+        mJitter = 0;
+        mLastTimeStamp = -1;
+        mLastArrival = -1;
+        mNewestTimeStamp = -1;
+    }
+
+    /**
+     * Get the estimated jitter.
+     * @return jitter
+     */
+    public synchronized long getJitter()
+    {
+        return (long)mJitter;
+    }
+
+    /**
+     * Get the newest timestamp arrived.
+     * @return newest timestamp or -1 if nothing arrived
+     */
+    public synchronized long getNewestTimeStamp()
+    {
+        return mNewestTimeStamp;
+    }
+
+    /**
+     * Get the delay playback should keep behind the newest media.
+     * @return target delay
+     */
+    public synchronized long getTargetDelay()
+    {
+        long delay = mMinDelay + JITTER_FACTOR * (long)mJitter;
+
+        return Math.min(delay, mMaxDelay);
+    }
+
+    /**
+     * Get the playback rate that makes latency converge to the target
+     * delay.
+     * @param latency current latency (newest timestamp minus playback
+     * position)
+     * @return playback rate, 1.0 for normal speed
+     */
+    public synchronized double getRate(long latency)
+    {
+        long target = getTargetDelay();
+
+        if(latency > target * (1 + TOLERANCE))
+        {
+            return 1 + RATE_STEP;
+        }
+        else if(latency < target * (1 - TOLERANCE))
+        {
+            return 1 - RATE_STEP;
+        }
+        return 1.0;
+    }
+
+    /**
+     * Returns if latency is too far from the target delay to converge by
+     * rate adjustment: playback is too late (after a stall) or has no
+     * media to play.
+     * @param latency current latency (newest timestamp minus playback
+     * position)
+     * @return true if playback has to jump to the live edge
+     */
+    public synchronized boolean isOffLiveEdge(long latency)
+    {
+        return latency < 0 || latency > 2 * mMaxDelay;
+    }
+}
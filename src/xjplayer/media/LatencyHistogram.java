@@ -0,0 +1,156 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Histogram of durations with power of two buckets, recorded without lock
+ * nor allocation from the media threads.
+ *
+ * Bucket i counts durations d (in microseconds) such that
+ * 2^(i-1) <= d < 2^i, bucket 0 counts durations under 1 microsecond and
+ * the last bucket counts all longer durations.
+ *
+ * @author Sebastien Vincent
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of buckets (last one starts at about 8 seconds).
+     */
+    public static final int BUCKET_COUNT = 25;
+
+    /**
+     * Buckets.
+     */
+    private final AtomicLongArray mBuckets =
+        new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Sum of recorded durations in nanoseconds.
+     */
+    private final AtomicLong mTotal = new AtomicLong(0);
+
+    /**
+     * Constructor.
+     */
+    public LatencyHistogram()
+    {
+    }
+
+    /**
+     * Record a duration.
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.max(nanos / 1000, 0);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+
+        mBuckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+        mTotal.addAndGet(nanos);
+    }
+
+    /**
+     * Get the counts of all buckets.
+     * @return counts, indexed by bucket
+     */
+    public long[] getCounts()
+    {
+        long counts[] = new long[BUCKET_COUNT];
+
+        for(int i = 0 ; i < BUCKET_COUNT ; i++)
+        {
+            counts[i] = mBuckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Get the number of durations recorded.
+     * @return number of durations
+     */
+    public long getCount()
+    {
+        long count = 0;
+
+        for(int i = 0 ; i < BUCKET_COUNT ; i++)
+        {
+            count += mBuckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the mean duration.
+     * @return mean duration in microseconds, 0 if nothing was recorded
+     */
+    public double getMean()
+    {
+        long count = getCount();
+
+        return (count == 0) ? 0 : mTotal.get() / 1000.0 / count;
+    }
+
+    /**
+     * Get a percentile, rounded up to the upper bound of its bucket.
+     * @param percentile percentile (0 to 100)
+     * @return duration in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long counts[] = getCounts();
+        long count = 0;
+        long rank = 0;
+
+        for(long c : counts)
+        {
+            count += c;
+        }
+
+        if(count == 0)
+        {
+            return 0;
+        }
+
+        rank = (long)Math.ceil(count * percentile / 100);
+        for(int i = 0 ; i < BUCKET_COUNT ; i++)
+        {
+            rank -= counts[i];
+            if(rank <= 0)
+            {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Forget all recorded durations.
+     */
+    public void reset()
+    {
+        for(int i = 0 ; i < BUCKET_COUNT ; i++)
+        {
+            mBuckets.set(i, 0);
+        }
+        mTotal.set(0);
+    }
+}
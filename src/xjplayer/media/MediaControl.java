@@ -18,12 +18,20 @@
 
 package xjplayer.media;
 
+import java.io.*;
 import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import java.lang.management.*;
+
+import javax.management.*;
 
 import com.xuggle.mediatool.*;
 import com.xuggle.mediatool.event.*;
 import com.xuggle.xuggler.*;
 
+import xjplayer.io.*;
 import xjplayer.media.event.*;
 
 /**
@@ -34,6 +42,17 @@ import xjplayer.media.event.*;
  */
 public class MediaControl
 {
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(MediaControl.class.getName());
+
+    /**
+     * Number of instances, used to name their statistics MBean.
+     */
+    private static final AtomicInteger mInstances = new AtomicInteger(0);
+
     /**
      * Object that will decode media.
      */
@@ -50,9 +69,9 @@ public class MediaControl
     private String mMedia = null;
 
     /**
-     * Xuggler media reader.
+     * Media reader.
      */
-    private IMediaReader mReader = null;
+    private SelectiveMediaReader mReader = null;
 
     /**
      * Volume adjustor.
@@ -70,10 +89,144 @@ public class MediaControl
     private final Object mSyncThread = new Object();
 
     /**
-     * Constructor.
+     * If the media thread waits for play or stop while paused, guarded by
+     * mSyncThread.
+     */
+    private boolean mThreadWaiting = false;
+
+    /**
+     * Playlist being played, null if a single media is loaded.
+     */
+    private Playlist mPlaylist = null;
+
+    /**
+     * Preloader of the next playlist media.
+     */
+    private MediaPreloader mPreloader = null;
+
+    /**
+     * Preferred language for the default audio track.
+     */
+    private String mPreferredLanguage = null;
+
+    /**
+     * If compressed video packets are queued instead of decoded pictures.
+     */
+    private boolean mLowMemory = false;
+
+    /**
+     * If medias are live sources.
+     */
+    private boolean mLiveMode = false;
+
+    /**
+     * If decoded media go directly from the reader to the core, without
+     * mediatool events.
+     */
+    private boolean mDirectMode = false;
+
+    /**
+     * If local medias are read ahead by a dedicated I/O thread.
+     */
+    private boolean mReadAhead = false;
+
+    /**
+     * If video decoding and display are suspended.
+     */
+    private volatile boolean mVideoSuspended = false;
+
+    /**
+     * Timeshift buffer that records live medias, null if none.
+     */
+    private TimeshiftBuffer mTimeshift = null;
+
+    /**
+     * Live media recorded in background while playing from the timeshift
+     * buffer, null if playing live.
+     */
+    private String mLiveMedia = null;
+
+    /**
+     * Thread that records the live media while playing from the timeshift
+     * buffer.
+     */
+    private RecorderThread mRecorder = null;
+
+    /**
+     * Sequence number of the last segment added to the timeshift playlist.
+     */
+    private int mLastSegment = -1;
+
+    /**
+     * Recording position (in microseconds) when live media was paused.
+     */
+    private long mPausePosition = Global.NO_PTS;
+
+    /**
+     * Random access to the frames of the media when stepping, null if not
+     * stepping.
+     */
+    private FrameSource mFrameSource = null;
+
+    /**
+     * Timestamp (in microseconds) of the frame stepped to, Global.NO_PTS
+     * if not stepping.
+     */
+    private long mStepPosition = Global.NO_PTS;
+
+    /**
+     * Thread displaying key frames when fast forwarding or rewinding, null
+     * if not in trick play.
+     */
+    private TrickPlayer mTrickPlayer = null;
+
+    /**
+     * Name of the statistics MBean, null if not registered.
+     */
+    private ObjectName mStatsName = null;
+
+    /**
+     * Constructor. Playback statistics are registered as a JMX MBean named
+     * xjplayer:type=PlaybackStats,id=N.
      */
     public MediaControl()
     {
+        try
+        {
+            ObjectName name = new ObjectName("xjplayer:type=PlaybackStats,id=" +
+                    mInstances.incrementAndGet());
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    mCore.getPlaybackStats(), name);
+            mStatsName = name;
+        }
+        catch(JMException e)
+        {
+            logger.warning("Cannot register playback statistics: " + e);
+        }
+    }
+
+    /**
+     * Unload media and unregister playback statistics. This object cannot
+     * be used anymore.
+     */
+    public void dispose()
+    {
+        unloadMedia();
+
+        if(mStatsName != null)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        mStatsName);
+            }
+            catch(JMException e)
+            {
+                logger.warning("Cannot unregister playback statistics: " + e);
+            }
+            mStatsName = null;
+        }
     }
 
     /**
@@ -94,42 +247,636 @@ public class MediaControl
         return mState;
     }
 
-    /**
-     * Load a media (file, URL, ...).
-     * @param media media file/URL/...
-     */
-    public void loadMedia(String media)
-    {
-        unloadMedia();
-        mMedia = media;
+    /**
+     * Load a media (file, URL, ...).
+     * @param media media file/URL/...
+     */
+    public void loadMedia(String media)
+    {
+        unloadMedia();
+        openMedia(media);
+    }
+
+    /**
+     * Load a playlist. Its medias will be played one after another without
+     * gap, starting with the current one.
+     * @param playlist playlist to play
+     */
+    public void loadPlaylist(Playlist playlist)
+    {
+        unloadMedia();
+        mPlaylist = playlist;
+        openMedia(playlist.getCurrent());
+    }
+
+    /**
+     * Get the playlist being played.
+     * @return playlist or null if a single media is loaded
+     */
+    public Playlist getPlaylist()
+    {
+        return mPlaylist;
+    }
+
+    /**
+     * Unload media and release resource.
+     */
+    public void unloadMedia()
+    {
+        stopRecording();
+        stopTrickPlay();
+        stop();
+        closeFrameSource();
+        mMedia = null;
+        mReader = null;
+        mThread = null;
+        mVolumeAdjustor = null;
+        mPlaylist = null;
+    }
+
+    /**
+     * Create reader and listener chain for a media.
+     * @param media media file/URL/...
+     */
+    private void openMedia(String media)
+    {
+        closeFrameSource();
+        mMedia = media;
+
+        mVolumeAdjustor = new VolumeAdjustor(0.1);
+        mCore.setLowMemory(mLowMemory);
+        mCore.setLiveMode(mLiveMode);
+        mReader = createReader(mMedia);
+        mReader.addListener(mVolumeAdjustor);
+        mVolumeAdjustor.addListener(mCore);
+
+        if(mTimeshift != null && mLiveMedia == null)
+        {
+            mReader.setPacketTee(mTimeshift);
+        }
+    }
+
+    /**
+     * Create a media reader.
+     * @param media media file/URL/...
+     * @return media reader
+     */
+    private SelectiveMediaReader createReader(String media)
+    {
+        SelectiveMediaReader reader = new SelectiveMediaReader(
+                getReaderURL(media));
+
+        reader.setAddDynamicStreams(true);
+        reader.setPreferredLanguage(mPreferredLanguage);
+        reader.setVideoSuspended(mVideoSuspended);
+        reader.setVideoPacketListener(mCore.isLowMemory() ? mCore : null);
+        reader.setDirectListener(mDirectMode ? mVolumeAdjustor : null);
+        reader.setPlaybackStats(mCore.getPlaybackStats());
+        return reader;
+    }
+
+    /**
+     * Get the URL the reader opens for a media: local files are read
+     * through memory mapping, HTTP medias through the disk cache, and both
+     * in background if read-ahead is enabled.
+     * @param media media file/URL/...
+     * @return URL to open
+     */
+    private String getReaderURL(String media)
+    {
+        if(new File(media).isFile())
+        {
+            MappedFileProtocolHandlerFactory.register();
+            media = MappedFileProtocolHandlerFactory.getURL(media);
+        }
+        else if(HttpProtocolHandlerFactory.isHttp(media))
+        {
+            HttpProtocolHandlerFactory.register();
+            media = HttpProtocolHandlerFactory.getURL(media);
+        }
+        else
+        {
+            /* let FFmpeg handle other protocols */
+            return media;
+        }
+
+        if(mReadAhead)
+        {
+            ReadAheadProtocolHandlerFactory.register();
+            media = ReadAheadProtocolHandlerFactory.getURL(media);
+        }
+        return media;
+    }
+
+    /**
+     * Set read-ahead mode: local and HTTP medias are read ahead by a
+     * dedicated I/O thread so that playback does not stall on slow or
+     * networked storage.
+     * It applies to medias loaded afterwards.
+     * @param readAhead true to enable read-ahead, false otherwise
+     */
+    public synchronized void setReadAhead(boolean readAhead)
+    {
+        mReadAhead = readAhead;
+    }
+
+    /**
+     * Returns if read-ahead mode is enabled.
+     * @return true if read-ahead mode is enabled, false otherwise
+     */
+    public synchronized boolean isReadAhead()
+    {
+        return mReadAhead;
+    }
+
+    /**
+     * Set direct mode: decoded media are passed from the reader to the core
+     * by direct calls instead of mediatool events, and the reader reuses
+     * its packet, samples and pictures. It applies to medias loaded
+     * afterwards.
+     * @param directMode true to enable direct mode, false otherwise
+     */
+    public synchronized void setDirectMode(boolean directMode)
+    {
+        mDirectMode = directMode;
+    }
+
+    /**
+     * Returns if direct mode is enabled.
+     * @return true if direct mode is enabled, false otherwise
+     */
+    public synchronized boolean isDirectMode()
+    {
+        return mDirectMode;
+    }
+
+    /**
+     * Set low-memory mode: video is buffered as compressed packets and
+     * decoded just in time instead of being buffered as decoded pictures.
+     * It applies to medias loaded afterwards.
+     * @param lowMemory true to enable low-memory mode, false otherwise
+     */
+    public synchronized void setLowMemory(boolean lowMemory)
+    {
+        mLowMemory = lowMemory;
+    }
+
+    /**
+     * Returns if low-memory mode is enabled.
+     * @return true if low-memory mode is enabled, false otherwise
+     */
+    public synchronized boolean isLowMemory()
+    {
+        return mLowMemory;
+    }
+
+    /**
+     * Set live mode: medias are live sources (network streams, capture,
+     * ...) played behind an adaptive jitter buffer with bounded latency
+     * instead of being buffered one second ahead. It applies to medias
+     * loaded afterwards.
+     * @param liveMode true to enable live mode, false otherwise
+     */
+    public synchronized void setLiveMode(boolean liveMode)
+    {
+        mLiveMode = liveMode;
+    }
+
+    /**
+     * Returns if live mode is enabled.
+     * @return true if live mode is enabled, false otherwise
+     */
+    public synchronized boolean isLiveMode()
+    {
+        return mLiveMode;
+    }
+
+    /**
+     * Set the timeshift buffer that records live medias while they are
+     * played, so that they can be paused and moved back in time. It
+     * applies to medias loaded afterwards.
+     * @param timeshift timeshift buffer or null to disable timeshift
+     */
+    public synchronized void setTimeshift(TimeshiftBuffer timeshift)
+    {
+        mTimeshift = timeshift;
+    }
+
+    /**
+     * Get the timeshift buffer.
+     * @return timeshift buffer or null if timeshift is disabled
+     */
+    public synchronized TimeshiftBuffer getTimeshift()
+    {
+        return mTimeshift;
+    }
+
+    /**
+     * Returns if media is played from the timeshift buffer (the live media
+     * being recorded in background).
+     * @return true if media is played from the timeshift buffer, false
+     * otherwise
+     */
+    public synchronized boolean isTimeshifted()
+    {
+        return mLiveMedia != null;
+    }
+
+    /**
+     * Play the live media from a position of the timeshift buffer. The
+     * live media goes on being recorded, and is played live again once
+     * the timeshift buffer has been played up to its end (or goLive() is
+     * called).
+     * @param timeStamp position (in microseconds, see
+     * TimeshiftBuffer.getStart() and getEnd())
+     * @return true if playback moved to the position, false if it is out
+     * of the buffered window
+     */
+    public boolean seekTimeshift(long timeStamp)
+    {
+        TimeshiftBuffer timeshift = getTimeshift();
+        List<TimeshiftBuffer.Segment> segments = null;
+        Playlist playlist = new Playlist();
+        TimeshiftBuffer.Segment first = null;
+
+        if(timeshift == null || mReader == null)
+        {
+            return false;
+        }
+
+        segments = timeshift.getSegments();
+        for(TimeshiftBuffer.Segment segment : segments)
+        {
+            if(first == null && timeStamp <= segment.getEnd())
+            {
+                first = segment;
+            }
+
+            if(first != null)
+            {
+                playlist.add(segment.getFile().getPath());
+                mLastSegment = segment.getSequence();
+            }
+        }
+
+        if(first == null || timeStamp < first.getStart())
+        {
+            return false;
+        }
+
+        if(!isTimeshifted())
+        {
+            /* keep recording the live media in background */
+            SelectiveMediaReader live = detachReader();
+
+            live.setRecordOnly(true);
+            synchronized(this)
+            {
+                mLiveMedia = mMedia;
+                mRecorder = new RecorderThread(live);
+                mRecorder.start();
+            }
+        }
+        else
+        {
+            stop();
+        }
+
+        mPlaylist = playlist;
+        openMedia(playlist.getCurrent());
+        mReader.open();
+
+        IContainer container = mReader.getContainer();
+        long position = timeStamp - first.getStart();
+
+        if(container.getStartTime() != Global.NO_PTS)
+        {
+            position += container.getStartTime();
+        }
+        container.seekKeyFrame(-1, Long.MIN_VALUE, position, position, 0);
+
+        synchronized(this)
+        {
+            mState = MediaState.PAUSED;
+        }
+        start();
+        return true;
+    }
+
+    /**
+     * Stop playing from the timeshift buffer and play the live media
+     * again.
+     */
+    public void goLive()
+    {
+        String live = stopRecording();
+
+        if(live != null)
+        {
+            loadMedia(live);
+            start();
+        }
+    }
+
+    /**
+     * Stop recording the live media in background.
+     * @return live media that was recorded or null if not timeshifted
+     */
+    private String stopRecording()
+    {
+        String live = null;
+        RecorderThread recorder = null;
+
+        synchronized(this)
+        {
+            live = mLiveMedia;
+            recorder = mRecorder;
+            mLiveMedia = null;
+            mRecorder = null;
+        }
+
+        if(recorder != null)
+        {
+            recorder.terminate();
+        }
+        return live;
+    }
+
+    /**
+     * Stop the media thread and detach the current reader from the core
+     * without closing it.
+     * @return the reader
+     */
+    private SelectiveMediaReader detachReader()
+    {
+        SelectiveMediaReader reader = null;
+        MediaThread thread = null;
+
+        synchronized(this)
+        {
+            reader = mReader;
+            thread = mThread;
+            mThread = null;
+            mState = MediaState.STOPPED;
+        }
+
+        cancelPreload();
+        synchronized(mSyncThread)
+        {
+            mSyncThread.notifyAll();
+        }
+
+        if(thread != null)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        reader.removeListener(mVolumeAdjustor);
+        reader.setDirectListener(null);
+        mCore.discard();
+        return reader;
+    }
+
+    /**
+     * Append segments recorded since the timeshift playlist was built.
+     */
+    private void appendTimeshiftSegments()
+    {
+        if(mLiveMedia == null || mTimeshift == null)
+        {
+            return;
+        }
+
+        for(TimeshiftBuffer.Segment segment : mTimeshift.getSegments())
+        {
+            if(segment.getSequence() > mLastSegment)
+            {
+                mPlaylist.add(segment.getFile().getPath());
+                mLastSegment = segment.getSequence();
+            }
+        }
+    }
+
+    /**
+     * Suspend or resume video (audio-only mode). While suspended, video
+     * packets are not decoded and pictures are not converted nor displayed;
+     * audio keeps playing. On resume, video restarts at the next key frame.
+     * @param suspended true to suspend video, false to resume it
+     */
+    public void setVideoSuspended(boolean suspended)
+    {
+        SelectiveMediaReader reader = mReader;
+
+        mVideoSuspended = suspended;
+        mCore.setVideoSuspended(suspended);
+        if(reader != null)
+        {
+            reader.setVideoSuspended(suspended);
+        }
+    }
+
+    /**
+     * Returns if video is suspended.
+     * @return true if video is suspended, false otherwise
+     */
+    public boolean isVideoSuspended()
+    {
+        return mVideoSuspended;
+    }
+
+    /**
+     * Get audio and video tracks of the current media. Media has to be
+     * started.
+     * @return list of tracks
+     */
+    public List<Track> getTracks()
+    {
+        SelectiveMediaReader reader = mReader;
+
+        if(reader == null)
+        {
+            return new ArrayList<Track>();
+        }
+        return reader.getTracks();
+    }
+
+    /**
+     * Select the audio or video track to play. Only selected tracks are
+     * decoded. This can be done while playing.
+     * @param type CODEC_TYPE_AUDIO or CODEC_TYPE_VIDEO
+     * @param streamIndex index of the stream,
+     * SelectiveMediaReader.DEFAULT_TRACK or SelectiveMediaReader.NO_TRACK
+     */
+    public void selectTrack(ICodec.Type type, int streamIndex)
+    {
+        SelectiveMediaReader reader = mReader;
+
+        if(reader != null)
+        {
+            reader.selectTrack(type, streamIndex);
+        }
+    }
+
+    /**
+     * Get the selected track of a type.
+     * @param type CODEC_TYPE_AUDIO or CODEC_TYPE_VIDEO
+     * @return index of the selected stream or SelectiveMediaReader.NO_TRACK
+     */
+    public int getSelectedTrack(ICodec.Type type)
+    {
+        SelectiveMediaReader reader = mReader;
+
+        if(reader == null)
+        {
+            return SelectiveMediaReader.NO_TRACK;
+        }
+        return reader.getSelectedTrack(type);
+    }
+
+    /**
+     * Set the preferred language of the default audio track. It applies to
+     * the current media and the following ones.
+     * @param language ISO 639 language code or null for no preference
+     */
+    public void setPreferredLanguage(String language)
+    {
+        SelectiveMediaReader reader = mReader;
+
+        mPreferredLanguage = language;
+        if(reader != null)
+        {
+            reader.setPreferredLanguage(language);
+        }
+    }
+
+    /**
+     * Start preloading the next playlist media, if any.
+     */
+    private synchronized void preloadNext()
+    {
+        String next = null;
+
+        if(mPlaylist == null || mState == MediaState.STOPPED ||
+                mPreloader != null)
+        {
+            return;
+        }
+
+        appendTimeshiftSegments();
+        next = mPlaylist.peekNext();
+        if(next != null)
+        {
+            mPreloader = new MediaPreloader(createReader(next));
+            mPreloader.start();
+            mCore.setContinuation(true);
+        }
+    }
+
+    /**
+     * Cancel preloading of the next playlist media.
+     */
+    private void cancelPreload()
+    {
+        MediaPreloader preloader = null;
+
+        synchronized(this)
+        {
+            preloader = mPreloader;
+            mPreloader = null;
+        }
+
+        mCore.setContinuation(false);
+        if(preloader != null)
+        {
+            preloader.cancel();
+        }
+    }
+
+    /**
+     * Switch to the preloaded playlist media once the current one ended.
+     * Medias that cannot be opened are skipped.
+     * @return reader of the new current media or null if there is no more
+     * media to play
+     */
+    private SelectiveMediaReader switchToNextMedia()
+    {
+        int attempts = (mPlaylist != null) ? mPlaylist.size() : 0;
+
+        while(attempts-- > 0)
+        {
+            MediaPreloader preloader = null;
+
+            synchronized(this)
+            {
+                preloader = mPreloader;
+                mPreloader = null;
+
+                if(preloader == null || mState == MediaState.STOPPED)
+                {
+                    break;
+                }
+
+                mMedia = mPlaylist.next();
+            }
+
+            /* prepare the following media before replaying the preloaded
+             * one as it may already have reached its end
+             */
+            preloadNext();
+
+            if(!preloader.handOff(mVolumeAdjustor))
+            {
+                logger.warning("Skip media " + mMedia);
+                continue;
+            }
+
+            synchronized(this)
+            {
+                mReader = preloader.getReader();
+                mReader.setVideoSuspended(mVideoSuspended);
+                mCore.getPlaybackStats().setReadAheadHandler(
+                        ReadAheadProtocolHandlerFactory.getOpenHandler(
+                            mReader.getUrl()));
+            }
 
-        mVolumeAdjustor = new VolumeAdjustor(0.1);
-        mReader = ToolFactory.makeReader(mMedia);
-        mReader.setAddDynamicStreams(true);
-        mReader.addListener(mVolumeAdjustor);
-        mVolumeAdjustor.addListener(mCore);
+            if(!preloader.isEndOfMedia())
+            {
+                return preloader.getReader();
+            }
+        }
+
+        cancelPreload();
+        mCore.abortContinuation();
+        return null;
     }
 
     /**
-     * Unload media and release resource.
+     * Add a video listener that will be notified when
+     * a new image is available.
+     * @param listener video listener to add
      */
-    public void unloadMedia()
+    public void addVideoListener(VideoListener listener)
     {
-        stop();
-        mMedia = null;
-        mReader = null;
-        mThread = null;
-        mVolumeAdjustor = null;
+        mCore.addVideoListener(listener);
     }
 
     /**
      * Add a video listener that will be notified when
      * a new image is available.
      * @param listener video listener to add
+     * @param async true to notify the listener on its own thread, dropping
+     * the oldest events if it is too slow, false to notify it inline
      */
-    public void addVideoListener(VideoListener listener)
+    public void addVideoListener(VideoListener listener, boolean async)
     {
-        mCore.addVideoListener(listener);
+        mCore.addVideoListener(listener, async);
     }
 
     /**
@@ -146,11 +893,56 @@ public class MediaControl
      */
     public void start()
     {
+        boolean resume = false;
+        long position = stopTrickPlay();
+
+        synchronized(this)
+        {
+            resume = mState == MediaState.PAUSED && mReader.isRecordOnly();
+
+            /* resume from the key frame trick play stopped at */
+            if(position != Global.NO_PTS)
+            {
+                mStepPosition = position;
+            }
+            position = mStepPosition;
+            mStepPosition = Global.NO_PTS;
+        }
+
+        /* resume from the frame stepped to: once the reader is paused, seek
+         * and rebase the core on the media that follows the seek
+         */
+        if(position != Global.NO_PTS)
+        {
+            waitMediaThread();
+            synchronized(this)
+            {
+                mReader.getContainer().seekKeyFrame(-1, Long.MIN_VALUE,
+                        position, position, 0);
+            }
+            mCore.rebase();
+        }
+
+        /* live media has been recorded while paused, go on from where it
+         * was paused if it is already in the timeshift buffer
+         */
+        if(resume)
+        {
+            if(seekTimeshift(mPausePosition))
+            {
+                return;
+            }
+            mReader.setRecordOnly(false);
+        }
+
         synchronized(this)
         {
             if(mState == MediaState.STOPPED)
             {
                 mReader.open();
+                mCore.getPlaybackStats().setReadAheadHandler(
+                        ReadAheadProtocolHandlerFactory.getOpenHandler(
+                            mReader.getUrl()));
             }
 
             mState = MediaState.STARTED;
@@ -162,6 +954,7 @@ public class MediaControl
         {
             mThread = new MediaThread(mReader);
             mThread.start();
+            preloadNext();
         }
         else
         {
@@ -172,11 +965,62 @@ public class MediaControl
         }
     }
 
+    /**
+     * Pause media and drop the media already queued, so that queued frames
+     * are not presented over the ones displayed by stepping or trick play
+     * and the position of the last frame presented does not move anymore.
+     * Playback will resume from that frame unless another position is set.
+     */
+    private void holdPlayback()
+    {
+        pause();
+        waitMediaThread();
+        mCore.discardPending();
+
+        synchronized(this)
+        {
+            if(mStepPosition == Global.NO_PTS)
+            {
+                mStepPosition = mCore.getVideoPts();
+            }
+        }
+    }
+
+    /**
+     * Wait for the media thread to wait for play or stop once paused. Media
+     * it is offering is discarded so that it does not stay blocked on a
+     * full queue.
+     */
+    private void waitMediaThread()
+    {
+        Thread thread = mThread;
+
+        synchronized(mSyncThread)
+        {
+            while(thread != null && thread.isAlive() && !mThreadWaiting)
+            {
+                mCore.discardPending();
+
+                try
+                {
+                    mSyncThread.wait(10);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Stop media.
      */
     public void stop()
     {
+        stopTrickPlay();
+
         synchronized(this)
         {
             if(mState == MediaState.STOPPED)
@@ -185,10 +1029,13 @@ public class MediaControl
             }
 
             mState = MediaState.STOPPED;
+            mStepPosition = Global.NO_PTS;
         }
 
+        cancelPreload();
         mThread = null;
         mReader.close();
+        mCore.abortContinuation();
 
         synchronized(mSyncThread)
         {
@@ -207,8 +1054,190 @@ public class MediaControl
             if(mState == MediaState.STARTED)
             {
                 mState = MediaState.PAUSED;
+
+                if(mTimeshift != null && mReader.getPacketTee() == mTimeshift)
+                {
+                    mPausePosition = mTimeshift.getPosition();
+                }
+            }
+        }
+    }
+
+    /**
+     * Pause media and display the next or previous frame.
+     *
+     * Frames are decoded by a FrameSource on the media, that keeps the
+     * GOPs decoded: stepping back through a GOP does not decode it again.
+     * Playback resumes from the key frame before the frame stepped to.
+     * @param forward true to step to the next frame, false to the previous
+     * one
+     * @return true if a frame has been displayed, false if there is none or
+     * media cannot be stepped (stopped, live, ...)
+     */
+    public boolean stepFrame(boolean forward)
+    {
+        FrameSource source = null;
+        FrameSource.Frame frame = null;
+        long position = Global.NO_PTS;
+
+        synchronized(this)
+        {
+            if(mState == MediaState.STOPPED || mMedia == null || mLiveMode ||
+                    mLiveMedia != null)
+            {
+                return false;
+            }
+        }
+
+        holdPlayback();
+        setTrickPlay(0);
+
+        synchronized(this)
+        {
+            if(mFrameSource == null)
+            {
+                try
+                {
+                    mFrameSource = new FrameSource(mMedia);
+                }
+                catch(IllegalArgumentException e)
+                {
+                    logger.warning("Cannot step " + mMedia + ": " + e);
+                    return false;
+                }
+            }
+            source = mFrameSource;
+            position = (mStepPosition != Global.NO_PTS) ? mStepPosition :
+                mCore.getVideoPts();
+        }
+
+        if(position == Global.NO_PTS)
+        {
+            frame = source.getFrame(0);
+        }
+        else
+        {
+            frame = forward ? source.getNextFrame(position) :
+                source.getPreviousFrame(position);
+        }
+
+        if(frame == null)
+        {
+            return false;
+        }
+
+        synchronized(this)
+        {
+            mStepPosition = frame.getTimeStamp();
+        }
+        mCore.fireNewImageEvent(new NewImageEvent(mCore, frame.getImage(),
+                    frame.getTimeStamp()));
+        return true;
+    }
+
+    /**
+     * Fast forward or rewind by displaying key frames only.
+     *
+     * Media is paused, which mutes audio, while a TrickPlayer reads the
+     * media on its own container: audio and non key frame video packets are
+     * skipped without being decoded. start() resumes playback from the last
+     * key frame displayed.
+     * @param speed speed between 4 and 32 (clamped), negative to rewind, 0
+     * or 1 to stop trick play and pause on the last key frame displayed
+     * @return true if trick play is running, false if it has been stopped
+     * or media cannot be fast forwarded (stopped, live, ...)
+     */
+    public boolean setTrickPlay(int speed)
+    {
+        long position = Global.NO_PTS;
+
+        if(speed == 0 || speed == 1)
+        {
+            position = stopTrickPlay();
+            synchronized(this)
+            {
+                if(position != Global.NO_PTS)
+                {
+                    mStepPosition = position;
+                }
+            }
+            return false;
+        }
+
+        synchronized(this)
+        {
+            if(mState == MediaState.STOPPED || mMedia == null || mLiveMode ||
+                    mLiveMedia != null)
+            {
+                return false;
             }
+
+            if(mTrickPlayer != null && mTrickPlayer.isAlive())
+            {
+                mTrickPlayer.setSpeed(speed);
+                return true;
+            }
+        }
+
+        holdPlayback();
+
+        synchronized(this)
+        {
+            position = (mStepPosition != Global.NO_PTS) ? mStepPosition :
+                mCore.getVideoPts();
+            mTrickPlayer = new TrickPlayer(mMedia, mCore,
+                    (position == Global.NO_PTS) ? 0 : position, speed);
+            mTrickPlayer.start();
+        }
+        return true;
+    }
+
+    /**
+     * Get the trick play speed.
+     * @return speed, negative when rewinding, 0 if not in trick play
+     */
+    public synchronized int getTrickPlay()
+    {
+        if(mTrickPlayer == null || !mTrickPlayer.isAlive())
+        {
+            return 0;
+        }
+
+        return mTrickPlayer.getSpeed();
+    }
+
+    /**
+     * Stop trick play.
+     * @return timestamp (in microseconds) of the last key frame displayed
+     * or Global.NO_PTS if not in trick play
+     */
+    private long stopTrickPlay()
+    {
+        TrickPlayer player = null;
+
+        synchronized(this)
+        {
+            player = mTrickPlayer;
+            mTrickPlayer = null;
+        }
+
+        /* do not hold the lock while joining as the player notifies the
+         * video listeners
+         */
+        return (player == null) ? Global.NO_PTS : player.terminate();
+    }
+
+    /**
+     * Release the frames decoded for stepping.
+     */
+    private synchronized void closeFrameSource()
+    {
+        if(mFrameSource != null)
+        {
+            mFrameSource.close();
+            mFrameSource = null;
         }
+        mStepPosition = Global.NO_PTS;
     }
 
     /**
@@ -225,6 +1254,8 @@ public class MediaControl
         IContainer container = mReader.getContainer();
         long position = (container.getFileSize() * percent) / 100;
 
+        mStepPosition = Global.NO_PTS;
+
         /* seek for all streams in the media */
         for(int i = 0 ; i < container.getNumStreams() ; i++)
         {
@@ -288,13 +1319,13 @@ public class MediaControl
         /**
          * Media reader.
          */
-        private IMediaReader mReader = null;
+        private SelectiveMediaReader mReader = null;
 
         /**
          * Constructor.
          * @param reader media reader
          */
-        public MediaThread(IMediaReader reader)
+        public MediaThread(SelectiveMediaReader reader)
         {
             setName("MediaThread");
             mReader = reader;
@@ -305,13 +1336,34 @@ public class MediaControl
          */
         public void run()
         {
-            while(mState != MediaState.STOPPED && mReader.readPacket() == null)
+            while(mState != MediaState.STOPPED)
             {
+                if(mReader.readPacket() != null)
+                {
+                    /* end of media, go on with the next playlist media */
+                    mReader = switchToNextMedia();
+                    if(mReader == null)
+                    {
+                        break;
+                    }
+                }
+
+                if(mState == MediaState.PAUSED &&
+                        mReader.getPacketTee() != null)
+                {
+                    /* keep recording the live media while paused */
+                    mReader.setRecordOnly(true);
+                    continue;
+                }
+
                 if(mState == MediaState.PAUSED)
                 {
                     /* wait until stop or play */
                     synchronized(mSyncThread)
                     {
+                        mThreadWaiting = true;
+                        mSyncThread.notifyAll();
+
                         try
                         {
                             mSyncThread.wait();
@@ -319,18 +1371,112 @@ public class MediaControl
                         catch(Exception e)
                         {
                         }
+                        finally
+                        {
+                            mThreadWaiting = false;
+                        }
                     }
                 }
             }
+
+            /* timeshift buffer has been played up to its end */
+            if(mReader == null && mState != MediaState.STOPPED &&
+                    isTimeshifted())
+            {
+                goLive();
+            }
+        }
+    }
+
+    /**
+     * Thread that records the live media in background while playing from
+     * the timeshift buffer.
+     *
+     * @author Sebastien Vincent
+     */
+    private static class RecorderThread extends Thread
+    {
+        /**
+         * Reader of the live media in record-only mode.
+         */
+        private final SelectiveMediaReader mReader;
+
+        /**
+         * If recording has been stopped.
+         */
+        private volatile boolean mStopped = false;
+
+        /**
+         * Constructor.
+         * @param reader reader of the live media in record-only mode
+         */
+        public RecorderThread(SelectiveMediaReader reader)
+        {
+            setName("RecorderThread");
+            setDaemon(true);
+            mReader = reader;
+        }
+
+        /**
+         * Entry point of the thread.
+         */
+        public void run()
+        {
+            while(!mStopped)
+            {
+                if(mReader.readPacket() != null)
+                {
+                    /* end of live media */
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Stop recording and close the live media.
+         */
+        public void terminate()
+        {
+            mStopped = true;
+
+            try
+            {
+                join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if(mReader.isOpen())
+            {
+                mReader.close();
+            }
         }
     }
 
+    /**
+     * Adjust volume of 16-bit audio samples in place.
+     * @param samples audio samples
+     * @param volume the volume muliplier
+     */
+    static void adjustVolume(IAudioSamples samples, double volume)
+    {
+        // get the raw audio byes and adjust it's value
+
+        ShortBuffer buffer = samples.getByteBuffer().asShortBuffer();
+
+        for (int i = 0; i < buffer.limit(); ++i)
+            buffer.put(i, (short)(buffer.get(i) * volume));
+    }
+
     /**
      * Create a tool which adjusts the volume of audio by some constant factor.
      *
      * @author Xuggle
      */
     private class VolumeAdjustor extends MediaToolAdapter
+        implements DirectMediaListener
     {
         /**
          * The amount to adjust the volume by.
@@ -364,16 +1510,45 @@ public class MediaControl
         @Override
         public void onAudioSamples(IAudioSamplesEvent event)
         {
-            // get the raw audio byes and adjust it's value
-
-            ShortBuffer buffer = event.getAudioSamples().getByteBuffer().
-                asShortBuffer();
-            for (int i = 0; i < buffer.limit(); ++i)
-                buffer.put(i, (short)(buffer.get(i) * mVolume));
+            adjust(event.getAudioSamples());
 
             // call parent which will pass the audio onto next tool in chain
 
             super.onAudioSamples(event);
         }
+
+        /**
+         * Adjust volume and pass the samples to the core (direct mode).
+         * @param source reader that decoded the samples
+         * @param samples decoded audio samples
+         * @param streamIndex index of the audio stream
+         */
+        public void onDecodedAudio(IMediaCoder source, IAudioSamples samples,
+                int streamIndex)
+        {
+            adjust(samples);
+            mCore.onDecodedAudio(source, samples, streamIndex);
+        }
+
+        /**
+         * Pass the picture to the core (direct mode).
+         * @param source reader that decoded the picture
+         * @param picture decoded video picture
+         * @param streamIndex index of the video stream
+         */
+        public void onDecodedVideo(IMediaCoder source, IVideoPicture picture,
+                int streamIndex)
+        {
+            mCore.onDecodedVideo(source, picture, streamIndex);
+        }
+
+        /**
+         * Adjust volume of audio samples.
+         * @param samples audio samples
+         */
+        private void adjust(IAudioSamples samples)
+        {
+            adjustVolume(samples, mVolume);
+        }
     }
 }
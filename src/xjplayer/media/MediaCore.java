@@ -48,6 +48,7 @@ import xjplayer.media.event.*;
  * @author Xuggle
  */
 public class MediaCore extends MediaListenerAdapter
+    implements VideoPacketListener, DirectMediaListener
 {
     /**
      * The logger.
@@ -82,6 +83,20 @@ public class MediaCore extends MediaListenerAdapter
     private static final long DEFAULT_VIDEO_LATE_WINDOW =
         TIME_UNIT.convert(50, MILLISECONDS);
 
+    /**
+     * Time (in low-memory mode) by which video packets are decoded ahead of
+     * their presentation.
+     */
+    private static final long LOW_MEMORY_VIDEO_LOOKAHEAD =
+        TIME_UNIT.convert(200, MILLISECONDS);
+
+    /**
+     * Late time window of video packets, they are never dropped as
+     * following pictures depend on them.
+     */
+    private static final long VIDEO_PACKET_LATE_WINDOW =
+        TIME_UNIT.convert(Long.MAX_VALUE, MILLISECONDS);
+
     /**
      * Default audio early time window, before which audio is delayed.
      */
@@ -94,6 +109,36 @@ public class MediaCore extends MediaListenerAdapter
     private static final long DEFAULT_AUDIO_LATE_WINDOW =
         TIME_UNIT.convert(Long.MAX_VALUE, MILLISECONDS);
 
+    /**
+     * Minimum interval (in nanoseconds) between two reports of late media
+     * dropped by a queue.
+     */
+    private static final long DROP_REPORT_INTERVAL =
+        NANOSECONDS.convert(5000, MILLISECONDS);
+
+    /**
+     * Capacity of media buffers in live mode, large enough to never block
+     * the reader below the latency that makes playback jump to the live
+     * edge.
+     */
+    private static final long LIVE_QUEUE_CAPACITY =
+        2 * JitterBuffer.DEFAULT_MAX_DELAY + TIME_UNIT.convert(1000,
+                MILLISECONDS);
+
+    /**
+     * Audio early time window in live mode, audio follows the clock as
+     * video does.
+     */
+    private static final long LIVE_AUDIO_EARLY_WINDOW =
+        TIME_UNIT.convert(100, MILLISECONDS);
+
+    /**
+     * Audio late time window in live mode, late audio (after a stall) is
+     * dropped to keep up with the live edge.
+     */
+    private static final long LIVE_AUDIO_LATE_WINDOW =
+        TIME_UNIT.convert(100, MILLISECONDS);
+
     /**
      * Start clock time.
      */
@@ -107,7 +152,7 @@ public class MediaCore extends MediaListenerAdapter
     /**
      * The authoratative data line used play media.
      */
-    private SourceDataLine mDataLine = null;
+    private volatile SourceDataLine mDataLine = null;
 
     /**
      * Audio lines.
@@ -125,20 +170,30 @@ public class MediaCore extends MediaListenerAdapter
      * Video queues.
      */
     private final Map<Integer, VideoQueue> mVideoQueues =
-        new HashMap<Integer, VideoQueue>();
+        new ConcurrentHashMap<Integer, VideoQueue>();
+
+    /**
+     * Video packet queues (low-memory mode).
+     */
+    private final Map<Integer, PacketQueue> mPacketQueues =
+        new ConcurrentHashMap<Integer, PacketQueue>();
 
     /**
      * Audio queues.
      */
     private final Map<Integer, AudioQueue> mAudioQueues =
-        new HashMap<Integer, AudioQueue>();
+        new ConcurrentHashMap<Integer, AudioQueue>();
 
     /**
      * List of video listeners, typically panels that wait
-     * images to display.
+     * images to display. Asynchronous listeners are wrapped in
+     * AsyncVideoListener.
+     *
+     * It is modified from the GUI and iterated on the queue threads, so
+     * it is copied on write.
      */
-    private List<VideoListener> mListeners =
-        new ArrayList<VideoListener>();
+    private final List<VideoListener> mListeners =
+        new CopyOnWriteArrayList<VideoListener>();
 
     /**
      * Is this viewer in the process of closing.
@@ -155,6 +210,123 @@ public class MediaCore extends MediaListenerAdapter
      */
     private boolean mResetted = false;
 
+    /**
+     * If the next media will be played right after the current one (gapless
+     * playback). In that case, closing the current media keeps audio lines,
+     * queues and clock alive.
+     */
+    private volatile boolean mContinuation = false;
+
+    /**
+     * If compressed video packets are queued instead of decoded pictures.
+     */
+    private volatile boolean mLowMemory = false;
+
+    /**
+     * If the media is a live source played with a jitter buffer.
+     */
+    private volatile boolean mLiveMode = false;
+
+    /**
+     * Jitter buffer policy of live mode.
+     */
+    private final JitterBuffer mJitterBuffer = new JitterBuffer();
+
+    /**
+     * Lock of the live clock.
+     */
+    private final Object mLiveLock = new Object();
+
+    /**
+     * If the live clock runs (it starts with the first media received).
+     */
+    private boolean mLiveStarted = false;
+
+    /**
+     * Media time of the live clock at mLiveWallBase.
+     */
+    private long mLiveClockBase = 0;
+
+    /**
+     * Wall time (in microseconds) at which the live clock was last
+     * rebased.
+     */
+    private long mLiveWallBase = 0;
+
+    /**
+     * Rate of the live clock.
+     */
+    private volatile double mLiveRate = 1.0;
+
+    /**
+     * If video is not displayed (window hidden, ...). Pictures still queued
+     * are then dropped without being converted.
+     */
+    private volatile boolean mVideoSuspended = false;
+
+    /**
+     * If media is presented at its timestamp, otherwise it is presented as
+     * soon as it is dequeued (benchmark).
+     */
+    private volatile boolean mClockEnabled = true;
+
+    /**
+     * If audio samples are written to Java Sound lines, otherwise they are
+     * discarded.
+     */
+    private volatile boolean mAudioOutput = true;
+
+    /**
+     * If pictures are converted to images and notified to video listeners.
+     */
+    private volatile boolean mVideoConversion = true;
+
+    /**
+     * If the current media has been closed and the next one is expected to
+     * continue on the same lines and clock.
+     */
+    private boolean mContinuing = false;
+
+    /**
+     * Offset (in microseconds) added to timestamps of the current media so
+     * that it starts where the previous one ended.
+     */
+    private long mTimeOffset = 0;
+
+    /**
+     * If the offset is computed from the first timestamp of the current
+     * media (medias such as MPEG-TS do not start at 0).
+     */
+    private boolean mTimeOffsetPending = true;
+
+    /**
+     * End timestamp (in microseconds, offset included) of the latest media
+     * data received.
+     */
+    private long mEndTimeStamp = 0;
+
+    /**
+     * Playback statistics.
+     */
+    private final PlaybackStats mStats = new PlaybackStats(this);
+
+    /**
+     * End timestamp (in microseconds) of the latest samples written to the
+     * authoritative audio line.
+     */
+    private volatile long mAudioEndTimeStamp = Global.NO_PTS;
+
+    /**
+     * Timestamp (in microseconds) of the latest picture displayed.
+     */
+    private volatile long mVideoTimeStamp = Global.NO_PTS;
+
+    /**
+     * Timestamp (in microseconds, in media time) of the latest picture
+     * displayed.
+     */
+    private volatile long mVideoPts = Global.NO_PTS;
+
     /**
      * Constructor.
      */
@@ -163,29 +335,157 @@ public class MediaCore extends MediaListenerAdapter
     }
 
     /**
-     * Add a video listeners.
+     * Get playback statistics.
+     * @return playback statistics
+     */
+    public PlaybackStats getPlaybackStats()
+    {
+        return mStats;
+    }
+
+    /**
+     * Get the depth of queues of each stream.
+     * @return map of stream index to duration (in microseconds) and size
+     * (in bytes) of the media queued, sorted by stream index
+     */
+    Map<Integer, long[]> getQueueDepths()
+    {
+        Map<Integer, long[]> depths = new TreeMap<Integer, long[]>();
+        List<SelfServicingMediaQueue> queues =
+            new ArrayList<SelfServicingMediaQueue>();
+
+        queues.addAll(mAudioQueues.values());
+        queues.addAll(mVideoQueues.values());
+        queues.addAll(mPacketQueues.values());
+
+        for(SelfServicingMediaQueue queue : queues)
+        {
+            long depth[] = depths.get(queue.getStreamIndex());
+
+            if(depth == null)
+            {
+                depth = new long[2];
+                depths.put(queue.getStreamIndex(), depth);
+            }
+            depth[0] += queue.getDepthTime();
+            depth[1] += queue.getDepthBytes();
+        }
+        return depths;
+    }
+
+    /**
+     * Get the timestamp of the latest picture displayed.
+     * @return timestamp (in microseconds) of the picture in its media, or
+     * Global.NO_PTS if no picture has been displayed
+     */
+    public long getVideoPts()
+    {
+        return mVideoPts;
+    }
+
+    /**
+     * Get the offset between audio being heard and video being displayed.
+     * @return offset in microseconds, positive if audio is ahead of video,
+     * 0 if media has no audio or no video
+     */
+    long getAVOffset()
+    {
+        SourceDataLine line = mDataLine;
+        long audio = mAudioEndTimeStamp;
+        long video = mVideoTimeStamp;
+
+        if(audio == Global.NO_PTS || video == Global.NO_PTS)
+        {
+            return 0;
+        }
+
+        /* samples still in the line have not been heard, discarded ones
+         * are "heard" as soon as presented
+         */
+        if(line != null)
+        {
+            AudioFormat format = line.getFormat();
+            long buffered = line.getBufferSize() - line.available();
+
+            audio -= (long)(buffered / format.getFrameSize() /
+                    format.getFrameRate() * 1000000);
+        }
+        return audio - video;
+    }
+
+    /**
+     * Add a video listeners notified inline by the presentation thread.
      * @param listener listener to add
      */
     public void addVideoListener(VideoListener listener)
     {
-        if(!mListeners.contains(listener))
+        addVideoListener(listener, false);
+    }
+
+    /**
+     * Add a video listeners.
+     *
+     * An asynchronous listener is notified on its own thread so that it
+     * cannot delay the presentation. If it is too slow, the oldest pending
+     * events are dropped.
+     * @param listener listener to add
+     * @param async true to notify the listener on its own thread, false to
+     * notify it inline
+     */
+    public synchronized void addVideoListener(VideoListener listener,
+            boolean async)
+    {
+        if(indexOfVideoListener(listener) != -1)
         {
-            mListeners.add(listener);
+            return;
         }
+
+        mListeners.add(async ? new AsyncVideoListener(listener,
+                    AsyncVideoListener.DEFAULT_CAPACITY) : listener);
     }
 
     /**
      * Remove a video listeners.
      * @param listener listener to remove
      */
-    public void removeVideoListener(VideoListener listener)
+    public synchronized void removeVideoListener(VideoListener listener)
     {
-        if(mListeners.contains(listener))
+        int index = indexOfVideoListener(listener);
+
+        if(index == -1)
+        {
+            return;
+        }
+
+        VideoListener l = mListeners.remove(index);
+
+        if(l instanceof AsyncVideoListener)
         {
-            mListeners.remove(listener);
+            ((AsyncVideoListener)l).shutdown();
         }
     }
 
+    /**
+     * Get the index of a video listener, possibly wrapped for asynchronous
+     * delivery.
+     * @param listener listener
+     * @return index in mListeners or -1 if not found
+     */
+    private int indexOfVideoListener(VideoListener listener)
+    {
+        for(int i = 0 ; i < mListeners.size() ; i++)
+        {
+            VideoListener l = mListeners.get(i);
+
+            if(l == listener || (l instanceof AsyncVideoListener &&
+                        ((AsyncVideoListener)l).getListener() == listener))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Notify all listeners that a new image is available.
      * @param event NewImageEvent to fire
@@ -210,6 +510,234 @@ public class MediaCore extends MediaListenerAdapter
         }
     }
 
+    /**
+     * Set whether the next media will directly follow the current one.
+     * If true, the end of the current media does not release audio lines,
+     * queues and clock, and the timestamps of the next media are shifted so
+     * that it starts exactly when the current one ends.
+     * @param continuation true if a media follows the current one
+     */
+    public void setContinuation(boolean continuation)
+    {
+        mContinuation = continuation;
+    }
+
+    /**
+     * Set low-memory mode. Video is then queued as compressed packets that
+     * are decoded just in time, with a small look-ahead of decoded
+     * pictures. It applies to video streams added afterwards, the reader
+     * has to hand video packets to this object (see VideoPacketListener).
+     * @param lowMemory true to queue packets, false to queue pictures
+     */
+    public void setLowMemory(boolean lowMemory)
+    {
+        mLowMemory = lowMemory;
+    }
+
+    /**
+     * Returns if low-memory mode is enabled.
+     * @return true if low-memory mode is enabled, false otherwise
+     */
+    public boolean isLowMemory()
+    {
+        return mLowMemory;
+    }
+
+    /**
+     * Set live mode. The clock then starts from the first media received,
+     * delayed by a jitter buffer sized from the variance of media arrival,
+     * runs slightly faster or slower to keep latency around this delay and
+     * jumps to the live edge after stalls. It applies to streams added
+     * afterwards.
+     * @param liveMode true for live sources, false otherwise
+     */
+    public void setLiveMode(boolean liveMode)
+    {
+        mLiveMode = liveMode;
+    }
+
+    /**
+     * Returns if live mode is enabled.
+     * @return true if live mode is enabled, false otherwise
+     */
+    public boolean isLiveMode()
+    {
+        return mLiveMode;
+    }
+
+    /**
+     * Get the jitter buffer policy of live mode.
+     * @return jitter buffer
+     */
+    public JitterBuffer getJitterBuffer()
+    {
+        return mJitterBuffer;
+    }
+
+    /**
+     * Get the latency of live playback.
+     * @return time (in microseconds) between the newest media received and
+     * the playback position, 0 if not in live mode
+     */
+    public long getLiveLatency()
+    {
+        long newest = mJitterBuffer.getNewestTimeStamp();
+
+        if(!mLiveMode || newest == -1)
+        {
+            return 0;
+        }
+
+        synchronized(mLiveLock)
+        {
+            return newest - getLiveTime(getWallTime());
+        }
+    }
+
+    /**
+     * Suspend or resume video display. While suspended, queued pictures are
+     * neither converted nor notified to video listeners.
+     * @param suspended true to suspend video display, false to resume it
+     */
+    public void setVideoSuspended(boolean suspended)
+    {
+        mVideoSuspended = suspended;
+    }
+
+    /**
+     * Enable or disable the presentation clock. When disabled, media is
+     * never delayed nor dropped: it is presented as soon as it is decoded.
+     * It is used to measure decode and convert throughput.
+     * @param enabled true to present media at its timestamp
+     */
+    public void setClockEnabled(boolean enabled)
+    {
+        mClockEnabled = enabled;
+    }
+
+    /**
+     * Returns if the presentation clock is enabled.
+     * @return true if media is presented at its timestamp
+     */
+    public boolean isClockEnabled()
+    {
+        return mClockEnabled;
+    }
+
+    /**
+     * Enable or disable audio output. When disabled, no Java Sound line is
+     * opened and audio samples are discarded when presented, so media can
+     * be played on a system without audio device. It applies to the streams
+     * opened afterwards.
+     * @param enabled true to write audio samples to Java Sound lines
+     */
+    public void setAudioOutput(boolean enabled)
+    {
+        mAudioOutput = enabled;
+    }
+
+    /**
+     * Returns if audio output is enabled.
+     * @return true if audio samples are written to Java Sound lines
+     */
+    public boolean isAudioOutput()
+    {
+        return mAudioOutput;
+    }
+
+    /**
+     * Enable or disable video conversion. When disabled, pictures are
+     * counted as presented but neither converted nor notified to video
+     * listeners.
+     * @param enabled true to convert pictures to images
+     */
+    public void setVideoConversion(boolean enabled)
+    {
+        mVideoConversion = enabled;
+    }
+
+    /**
+     * Returns if video conversion is enabled.
+     * @return true if pictures are converted to images
+     */
+    public boolean isVideoConversion()
+    {
+        return mVideoConversion;
+    }
+
+    /**
+     * Release resources kept for a continuation that will not occur
+     * (next media could not be opened, playback stopped, ...).
+     */
+    void abortContinuation()
+    {
+        mContinuation = false;
+
+        if(mContinuing)
+        {
+            mContinuing = false;
+            release();
+        }
+    }
+
+    /**
+     * Drop all pending media and release queues and audio lines without
+     * waiting for them to be played. It is used when the reader feeding
+     * this object is detached without being closed (timeshift).
+     */
+    void discard()
+    {
+        Set<Integer> streams = new HashSet<Integer>();
+
+        streams.addAll(mAudioQueues.keySet());
+        streams.addAll(mAudioLines.keySet());
+        streams.addAll(mVideoQueues.keySet());
+        streams.addAll(mPacketQueues.keySet());
+
+        for(int streamIndex : streams)
+        {
+            closeAudioStream(streamIndex, true);
+            closeVideoStream(streamIndex, true);
+        }
+
+        mContinuation = false;
+        mContinuing = false;
+    }
+
+    /**
+     * Drop pending media without counting it as dropped, audio lines
+     * included. Queues and lines are kept for the media that follows a
+     * seek.
+     */
+    public void discardPending()
+    {
+        for(PacketQueue queue : mPacketQueues.values())
+            queue.discard();
+        for(VideoQueue queue : mVideoQueues.values())
+            queue.discard();
+        for(AudioQueue queue : mAudioQueues.values())
+            queue.discard();
+        for(SourceDataLine line : mAudioLines.values())
+            line.flush();
+    }
+
+    /**
+     * Present the media that follows a seek as if it followed the last
+     * media presented: pending media is dropped and the playback offset is
+     * computed again from the next media data, so that it is neither early
+     * (seek forward) nor late (seek backward). The reader must not feed
+     * this object meanwhile. Call resetTimeStamp() to resume the clock.
+     */
+    public void rebase()
+    {
+        discardPending();
+
+        mEndTimeStamp = mLastMediaTime;
+        mTimeOffsetPending = true;
+        mAudioEndTimeStamp = Global.NO_PTS;
+        mVideoTimeStamp = Global.NO_PTS;
+    }
+
     /**
      * Get media time.  This is time used to choose to delay, present, or
      * drop a media frame.
@@ -218,6 +746,15 @@ public class MediaCore extends MediaListenerAdapter
      */
     private long getMediaTime()
     {
+        if(mLiveMode)
+        {
+            synchronized(mLiveLock)
+            {
+                mLastMediaTime = getLiveTime(getWallTime());
+                return mLastMediaTime;
+            }
+        }
+
         long now = TIME_UNIT.convert(System.nanoTime(), NANOSECONDS);
 
         if(mResetted && mLastMediaTime != 0)
@@ -238,6 +775,89 @@ public class MediaCore extends MediaListenerAdapter
         return mLastMediaTime;
     }
 
+    /**
+     * Get wall clock time.
+     * @return wall clock time in microseconds
+     */
+    private static long getWallTime()
+    {
+        return TIME_UNIT.convert(System.nanoTime(), NANOSECONDS);
+    }
+
+    /**
+     * Get time of the live clock. Caller must hold mLiveLock.
+     * @param now wall clock time in microseconds
+     * @return media time of the live clock
+     */
+    private long getLiveTime(long now)
+    {
+        if(!mLiveStarted)
+        {
+            return mLiveClockBase;
+        }
+
+        return mLiveClockBase + (long)((now - mLiveWallBase) * mLiveRate);
+    }
+
+    /**
+     * Rebase the live clock. Caller must hold mLiveLock.
+     * @param now wall clock time in microseconds
+     * @param mediaTime media time at now
+     * @param rate rate of the clock from now on
+     */
+    private void rebaseLiveClock(long now, long mediaTime, double rate)
+    {
+        mLiveWallBase = now;
+        mLiveClockBase = mediaTime;
+        mLiveRate = rate;
+        mLiveStarted = true;
+    }
+
+    /**
+     * Record arrival of live media and adapt the live clock: start it
+     * delayed by the target delay, change its rate so that latency
+     * converges to the target delay or jump to the live edge when latency
+     * is out of reach.
+     * @param timeStamp timestamp of the media in microseconds
+     */
+    private void onLiveArrival(long timeStamp)
+    {
+        long now = getWallTime();
+
+        mJitterBuffer.onArrival(timeStamp, now);
+
+        long newest = mJitterBuffer.getNewestTimeStamp();
+        long target = mJitterBuffer.getTargetDelay();
+
+        synchronized(mLiveLock)
+        {
+            if(!mLiveStarted)
+            {
+                rebaseLiveClock(now, newest - target, 1.0);
+                return;
+            }
+
+            long mediaTime = getLiveTime(now);
+            long latency = newest - mediaTime;
+
+            if(mJitterBuffer.isOffLiveEdge(latency))
+            {
+                logger.info("Jump to live edge (latency " +
+                        MILLISECONDS.convert(latency, TIME_UNIT) + " ms)");
+                rebaseLiveClock(now, newest - target, 1.0);
+            }
+            else
+            {
+                double rate = mJitterBuffer.getRate(latency);
+
+                if(rate != mLiveRate)
+                {
+                    rebaseLiveClock(now, mediaTime, rate);
+                }
+            }
+        }
+    }
+
     /**
      * Get the audio queue for stream index. If not present, a new queue
      * will be created.
@@ -253,14 +873,15 @@ public class MediaCore extends MediaListenerAdapter
         AudioQueue queue = mAudioQueues.get(streamIndex);
         IStream stream = ((IMediaCoder)tool).getContainer().
             getStream(streamIndex);
-        SourceDataLine line = getJavaSoundLine(stream);
+        SourceDataLine line = mAudioOutput ? getJavaSoundLine(stream) : null;
 
-        // if no queue (and there is a line), create the queue
+        // if no queue (and there is a line or samples are discarded), create
+        // the queue
 
-        if(null == queue && line != null)
+        if(null == queue && (line != null || !mAudioOutput))
         {
-            queue = new AudioQueue(mAudioQueueCapacity, TIME_UNIT, stream,
-                    line);
+            queue = new AudioQueue(mLiveMode ? LIVE_QUEUE_CAPACITY :
+                    mAudioQueueCapacity, TIME_UNIT, stream, line);
             mAudioQueues.put(streamIndex, queue);
         }
 
@@ -279,12 +900,93 @@ public class MediaCore extends MediaListenerAdapter
 
         if(null == queue)
         {
-            queue = new VideoQueue(mVideoQueueCapacity, TIME_UNIT, streamIndex);
+            long capacity = mLowMemory ? LOW_MEMORY_VIDEO_LOOKAHEAD :
+                (mLiveMode ? LIVE_QUEUE_CAPACITY : mVideoQueueCapacity);
+
+            queue = new VideoQueue(capacity, TIME_UNIT, streamIndex);
             mVideoQueues.put(streamIndex, queue);
         }
         return queue;
     }
 
+    /**
+     * Get timestamp of a packet.
+     * @param packet the packet
+     * @return timestamp in microseconds (decoding timestamp if known) or
+     * Global.NO_PTS if unknown
+     */
+    public static long getPacketTimeStamp(IPacket packet)
+    {
+        long timeStamp = packet.getDts();
+        IRational timeBase = packet.getTimeBase();
+
+        if(timeStamp == Global.NO_PTS)
+        {
+            timeStamp = packet.getPts();
+        }
+
+        if(timeStamp == Global.NO_PTS || timeBase == null)
+        {
+            return Global.NO_PTS;
+        }
+        return (long)(timeStamp * timeBase.getDouble() *
+                TIME_UNIT.convert(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Create the converter of decoded pictures to the images displayed.
+     * @param type pixel format of the pictures
+     * @param width width of the pictures
+     * @param height height of the pictures
+     * @return converter
+     */
+    public static IConverter createConverter(IPixelFormat.Type type,
+            int width, int height)
+    {
+        return ConverterFactory.createConverter(
+                ConverterFactory.XUGGLER_BGR_24, type, width, height);
+    }
+
+    /**
+     * Let a packet queue decode and display its remaining packets then
+     * close it, without blocking the caller.
+     * @param queue packet queue
+     */
+    private void retirePacketQueue(final PacketQueue queue)
+    {
+        Thread t = new Thread("retire video packets")
+        {
+            public void run()
+            {
+                queue.flush();
+                queue.close();
+            }
+        };
+
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Get the format of the audio line that will play a stream.
+     * @param audioCoder coder of the audio stream
+     * @return audio format
+     */
+    private static AudioFormat getAudioFormat(IStreamCoder audioCoder)
+    {
+        // estabish the audio format, NOTE: xuggler defaults to signed
+        //16 bit samples
+
+        return new AudioFormat(
+                audioCoder.getSampleRate(),
+                (int) IAudioSamples
+                .findSampleBitDepth(audioCoder.getSampleFormat()),
+                audioCoder
+                .getChannels(),
+                true,
+                false);
+    }
+
     /**
      * Open a java audio line out to play the audio samples into.
      *
@@ -293,7 +995,6 @@ public class MediaCore extends MediaListenerAdapter
      */
     private SourceDataLine getJavaSoundLine(IStream stream)
     {
-        IStreamCoder audioCoder = stream.getStreamCoder();
         int streamIndex = stream.getIndex();
         SourceDataLine line = mAudioLines.get(streamIndex);
 
@@ -301,17 +1002,8 @@ public class MediaCore extends MediaListenerAdapter
         {
             try
             {
-                // estabish the audio format, NOTE: xuggler defaults to signed
-                //16 bit samples
-
-                AudioFormat audioFormat = new AudioFormat(
-                        audioCoder.getSampleRate(),
-                        (int) IAudioSamples
-                        .findSampleBitDepth(audioCoder.getSampleFormat()),
-                        audioCoder
-                        .getChannels(),
-                        true,
-                        false);
+                AudioFormat audioFormat = getAudioFormat(
+                        stream.getStreamCoder());
 
                 // create the audio line out
 
@@ -339,20 +1031,186 @@ public class MediaCore extends MediaListenerAdapter
         return line;
     }
 
+    /**
+     * Close audio queue and line of a stream.
+     * @param streamIndex index of the audio stream
+     * @param discard true to drop pending samples, false to play them
+     */
+    private void closeAudioStream(int streamIndex, boolean discard)
+    {
+        AudioQueue queue = mAudioQueues.remove(streamIndex);
+        SourceDataLine line = mAudioLines.remove(streamIndex);
+
+        if(queue != null)
+        {
+            if(discard)
+                queue.clear();
+            else
+                queue.flush();
+            queue.close();
+        }
+
+        if(line != null)
+        {
+            if(discard)
+                line.flush();
+            else
+                line.drain();
+            line.stop();
+            line.close();
+
+            if(line == mDataLine)
+            {
+                mDataLine = null;
+            }
+        }
+    }
+
+    /**
+     * Close video queue and converter of a stream.
+     * @param streamIndex index of the video stream
+     * @param discard true to drop pending pictures, false to display them
+     */
+    private void closeVideoStream(int streamIndex, boolean discard)
+    {
+        PacketQueue packetQueue = mPacketQueues.remove(streamIndex);
+        VideoQueue queue = mVideoQueues.remove(streamIndex);
+
+        if(packetQueue != null)
+        {
+            if(discard)
+                packetQueue.clear();
+            else
+                packetQueue.flush();
+            packetQueue.close();
+        }
+
+        if(queue != null)
+        {
+            if(discard)
+                queue.clear();
+            else
+                queue.flush();
+            queue.close();
+        }
+        mVideoConverters.remove(streamIndex);
+    }
+
+    /**
+     * Convert a timestamp of the current media to playback time, the first
+     * one giving the offset so that the media starts where the previous
+     * one ended (or at 0).
+     * @param timeStamp timestamp in microseconds
+     * @return timestamp in microseconds, offset included
+     */
+    private long toPlaybackTime(long timeStamp)
+    {
+        if(mTimeOffsetPending)
+        {
+            mTimeOffset = mEndTimeStamp - timeStamp;
+            mTimeOffsetPending = false;
+        }
+        return mTimeOffset + timeStamp;
+    }
+
+    /**
+     * Record the end timestamp of media data.
+     * @param timeStamp end timestamp in microseconds, offset included
+     */
+    private void updateEndTimeStamp(long timeStamp)
+    {
+        if(timeStamp > mEndTimeStamp)
+        {
+            mEndTimeStamp = timeStamp;
+        }
+    }
+
     /**
      * Play audio samples.
      *
      * @param stream the source stream of the audio
-     * @param line the audio line to play audio samples on
+     * @param line the audio line to play audio samples on, null if
+     * audio output is disabled
      * @param samples the audio samples
+     * @param timeStamp timestamp of the samples (offset included)
      */
     private void playAudio(IStream stream, SourceDataLine line,
-            IAudioSamples samples)
+            IAudioSamples samples, long timeStamp)
     {
         if(!mClosing)
         {
+            /* audio output disabled, samples are discarded when due as a
+             * line would play them, the audio early window being unbounded
+             */
+            if(line == null)
+            {
+                long delay = mClockEnabled ? timeStamp - getMediaTime() : 0;
+
+                if(delay > 0)
+                {
+                    try
+                    {
+                        TIME_UNIT.sleep(delay);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                mStats.onPresented(false);
+                if(mDataLine == null)
+                {
+                    mAudioEndTimeStamp = timeStamp + samples.getNextPts() -
+                        samples.getPts();
+                }
+                return;
+            }
+
             int size = samples.getSize();
-            line.write(samples.getData().getByteArray(0, size), 0, size);
+            byte[] data = samples.getData().getByteArray(0, size);
+            double rate = mLiveMode ? mLiveRate : 1.0;
+
+            /* line played everything written so far */
+            if(line.getLongFramePosition() > 0 &&
+                    line.available() == line.getBufferSize())
+            {
+                mStats.onAudioUnderrun();
+            }
+
+            mStats.onPresented(false);
+            if(line == mDataLine)
+            {
+                mAudioEndTimeStamp = timeStamp + samples.getNextPts() -
+                    samples.getPts();
+            }
+
+            long start = System.nanoTime();
+
+            if(rate == 1.0)
+            {
+                line.write(data, 0, size);
+            }
+            else if(line.getFormat().getSampleSizeInBits() != 16)
+            {
+                /* rare formats: the live clock jumps when drifting away */
+                line.write(data, 0, size);
+            }
+            else
+            {
+                /* follow the live clock rate by stretching the samples */
+                byte[] converted = AudioRateConverter.convert(data, size,
+                        line.getFormat().getChannels(), rate);
+
+                line.write(converted, 0, converted.length);
+            }
+
+            if(PipelineTrace.isEnabled())
+            {
+                PipelineTrace.record(PipelineTrace.Stage.WRITE,
+                        stream.getIndex(), samples.getTimeStamp(), start);
+            }
         }
     }
 
@@ -361,21 +1219,57 @@ public class MediaCore extends MediaListenerAdapter
      * image is available.
      *
      * @param picture picture to display on panel
+     * @param streamIndex index of the video stream
+     * @param timeStamp timestamp of the picture (offset included)
      */
-    private void displayVideoImage(IVideoPicture picture, int streamIndex)
+    private void displayVideoImage(IVideoPicture picture, int streamIndex,
+            long timeStamp)
     {
+        if(mVideoSuspended)
+        {
+            mStats.onSuspended();
+            return;
+        }
+
+        if(!mVideoConversion)
+        {
+            mStats.onPresented(true);
+            mVideoTimeStamp = timeStamp;
+            mVideoPts = picture.getTimeStamp();
+            return;
+        }
+
         /* convert if any */
         IConverter converter = mVideoConverters.get(streamIndex);
 
         if(converter != null)
         {
+            long start = System.nanoTime();
             BufferedImage image = converter.toImage(picture);
 
+            mStats.onConverted(System.nanoTime() - start);
+            mStats.onPresented(true);
+            mVideoTimeStamp = timeStamp;
+            mVideoPts = picture.getTimeStamp();
+
+            if(PipelineTrace.isEnabled())
+            {
+                PipelineTrace.record(PipelineTrace.Stage.CONVERT, streamIndex,
+                        picture.getTimeStamp(), start);
+            }
+
             NewImageEvent evt = new NewImageEvent(this, image,
                     picture.getTimeStamp());
 
             /* notify listeners */
+            start = System.nanoTime();
             fireNewImageEvent(evt);
+
+            if(PipelineTrace.isEnabled())
+            {
+                PipelineTrace.record(PipelineTrace.Stage.DISPATCH, streamIndex,
+                        evt.getPts(), start);
+            }
         }
     }
 
@@ -384,6 +1278,11 @@ public class MediaCore extends MediaListenerAdapter
      */
     private void flush()
     {
+        // decode all the video packets
+
+        for(PacketQueue queue : mPacketQueues.values())
+            queue.flush();
+
         // flush all the video queues
 
         for(VideoQueue queue : mVideoQueues.values())
@@ -407,6 +1306,22 @@ public class MediaCore extends MediaListenerAdapter
     {
         mStartClockTime = new AtomicLong(Global.NO_PTS);
         mResetted = true;
+        resetLiveClock();
+    }
+
+    /**
+     * Stop the live clock until media is received again, forgetting the
+     * arrival history.
+     */
+    private void resetLiveClock()
+    {
+        mJitterBuffer.reset();
+
+        synchronized(mLiveLock)
+        {
+            mLiveStarted = false;
+            mLiveRate = 1.0;
+        }
     }
 
     /**
@@ -416,8 +1331,23 @@ public class MediaCore extends MediaListenerAdapter
     public void onOpen(IOpenEvent event)
     {
         mContainer = event.getSource().getContainer();
+
+        if(mContinuing)
+        {
+            // previous media ended, keep clock running and start where it
+            // ended
+
+            mContinuing = false;
+            mTimeOffsetPending = true;
+            return;
+        }
+
         mStartClockTime = new AtomicLong(Global.NO_PTS);
         mLastMediaTime = 0;
+        mTimeOffset = 0;
+        mTimeOffsetPending = true;
+        mEndTimeStamp = 0;
+        resetLiveClock();
     }
 
     /**
@@ -425,6 +1355,24 @@ public class MediaCore extends MediaListenerAdapter
      */
     @Override
     public void onClose(ICloseEvent event)
+    {
+        if(mContinuation)
+        {
+            // next media will go on with the same lines, queues and clock
+
+            mContinuation = false;
+            mContinuing = true;
+            mContainer = null;
+            return;
+        }
+
+        release();
+    }
+
+    /**
+     * Flush and release all queues and audio lines.
+     */
+    private void release()
     {
         // note that we are closing
 
@@ -438,10 +1386,13 @@ public class MediaCore extends MediaListenerAdapter
 
         for(AudioQueue queue: mAudioQueues.values())
             queue.close();
+        for(PacketQueue queue: mPacketQueues.values())
+            queue.close();
         for(VideoQueue queue: mVideoQueues.values())
             queue.close();
 
         mAudioQueues.clear();
+        mPacketQueues.clear();
         mVideoQueues.clear();
 
         mVideoConverters.clear();
@@ -464,6 +1415,10 @@ public class MediaCore extends MediaListenerAdapter
         fireEndOfVideoEvent(evt);
 
         mLastMediaTime = 0;
+        mTimeOffset = 0;
+        mTimeOffsetPending = true;
+        mEndTimeStamp = 0;
+        mContinuing = false;
         mContainer = null;
         mClosing = false;
     }
@@ -481,30 +1436,102 @@ public class MediaCore extends MediaListenerAdapter
         IStreamCoder coder = stream.getStreamCoder();
         int streamIndex = event.getStreamIndex();
 
-        // if video stream and showing video, configure video stream
+        // if video stream and showing video, configure video stream
+
+        if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO)
+        {
+            // create a converter for this video stream, a previous media may
+            // have used this stream index for audio or another picture format
+
+            closeAudioStream(streamIndex, false);
+
+            IConverter converter = createConverter(coder.getPixelType(),
+                    coder.getWidth(), coder.getHeight());
+            mVideoConverters.put(streamIndex, converter);
+
+            // if real time establish video queue
+            VideoQueue videoQueue = getVideoQueue(streamIndex);
+
+            // in low-memory mode, packets are decoded by a packet queue, the
+            // one of a previous media ends on its own
+
+            if(mLowMemory)
+            {
+                PacketQueue packetQueue = mPacketQueues.remove(streamIndex);
+
+                if(packetQueue != null)
+                {
+                    retirePacketQueue(packetQueue);
+                }
+
+                packetQueue = new PacketQueue(stream, streamIndex, videoQueue);
+                mPacketQueues.put(streamIndex, packetQueue);
+            }
+        }
+        // if audio stream and playing audio, configure audio stream
+        else if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_AUDIO)
+        {
+            // a previous media may have used this stream index for video or
+            // another audio format
+
+            SourceDataLine line = mAudioLines.get(streamIndex);
+
+            closeVideoStream(streamIndex, false);
+            if(line != null && !line.getFormat().matches(getAudioFormat(coder)))
+            {
+                closeAudioStream(streamIndex, false);
+            }
+
+            // if real time establish audio queue
+            getAudioQueue(event.getSource(), streamIndex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Coders are closed while playing when their track is deselected, so
+     * pending media of the stream is dropped.
+     */
+    @Override
+    public void onCloseCoder(ICloseCoderEvent event)
+    {
+        int streamIndex = event.getStreamIndex();
+
+        closeAudioStream(streamIndex, true);
+        closeVideoStream(streamIndex, true);
+    }
 
-        if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO)
+    /**
+     * Queue a compressed video packet (low-memory mode), it will be decoded
+     * just before its presentation.
+     * @param packet video packet
+     */
+    public void onVideoPacket(IPacket packet)
+    {
+        PacketQueue queue = mPacketQueues.get(packet.getStreamIndex());
+
+        if(queue == null)
         {
-            // create a converter for this video stream
+            return;
+        }
 
-            IConverter converter = mVideoConverters.get(streamIndex);
-            if(null == converter)
-            {
-                converter = ConverterFactory.createConverter(
-                ConverterFactory.XUGGLER_BGR_24, coder.getPixelType(), coder
-                    .getWidth(), coder.getHeight());
-                mVideoConverters.put(streamIndex, converter);
-            }
+        long timeStamp = getPacketTimeStamp(packet);
 
-            // if real time establish video queue
-            getVideoQueue(streamIndex);
+        if(timeStamp == Global.NO_PTS)
+        {
+            timeStamp = queue.getLastTimeStamp();
         }
-        // if audio stream and playing audio, configure audio stream
-        else if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_AUDIO)
+        else
         {
-            // if real time establish audio queue
-            getAudioQueue(event.getSource(), streamIndex);
+            timeStamp = toPlaybackTime(timeStamp);
         }
+
+        updateEndTimeStamp(timeStamp);
+        if(mLiveMode)
+            onLiveArrival(timeStamp);
+        queue.offerMedia(packet, timeStamp, MICROSECONDS);
+        queue.setLastTimeStamp(timeStamp);
     }
 
     /**
@@ -513,24 +1540,37 @@ public class MediaCore extends MediaListenerAdapter
     @Override
     public void onVideoPicture(IVideoPictureEvent event)
     {
-        // verify container is defined
+        // if source does not posses a container then throw exception
 
-        if(null == mContainer)
-        {
-            // if source does not posses a container then throw exception
+        if(!(event.getSource() instanceof IMediaCoder))
+            throw new UnsupportedOperationException();
 
-            if(!(event.getSource() instanceof IMediaCoder))
-                throw new UnsupportedOperationException();
+        onDecodedVideo((IMediaCoder)event.getSource(), event.getPicture(),
+                event.getStreamIndex());
+    }
 
-            // establish container
+    /**
+     * Queue a decoded video picture for display.
+     * @param source reader that decoded the picture
+     * @param picture decoded video picture
+     * @param streamIndex index of the video stream
+     */
+    public void onDecodedVideo(IMediaCoder source, IVideoPicture picture,
+            int streamIndex)
+    {
+        // establish container
 
-            mContainer = ((IMediaCoder)event.getSource()).getContainer();
-        }
+        if(null == mContainer)
+            mContainer = source.getContainer();
 
         // if in real time, queue the video frame for viewing
 
-        getVideoQueue(event.getStreamIndex())
-            .offerMedia(event.getPicture(), event.getTimeStamp(), MICROSECONDS);
+        long timeStamp = toPlaybackTime(picture.getTimeStamp());
+
+        updateEndTimeStamp(timeStamp);
+        if(mLiveMode)
+            onLiveArrival(timeStamp);
+        getVideoQueue(streamIndex).offerMedia(picture, timeStamp, MICROSECONDS);
     }
 
     /**
@@ -539,34 +1579,44 @@ public class MediaCore extends MediaListenerAdapter
     @Override
     public void onAudioSamples(IAudioSamplesEvent event)
     {
-        // verify container is defined
-
-        if(null == mContainer)
-        {
-            // if source does not posses a container then throw exception
+        // if source does not posses a container then throw exception
 
-            if(!(event.getSource() instanceof IMediaCoder))
-                throw new UnsupportedOperationException();
-
-            // establish container
+        if(!(event.getSource() instanceof IMediaCoder))
+            throw new UnsupportedOperationException();
 
-            mContainer = ((IMediaCoder)event.getSource()).getContainer();
-        }
+        onDecodedAudio((IMediaCoder)event.getSource(),
+                event.getAudioSamples(), event.getStreamIndex());
+    }
 
-        // establish the audio samples
+    /**
+     * Queue decoded audio samples for playback.
+     * @param source reader that decoded the samples
+     * @param samples decoded audio samples
+     * @param streamIndex index of the audio stream
+     */
+    public void onDecodedAudio(IMediaCoder source, IAudioSamples samples,
+            int streamIndex)
+    {
+        // establish container
 
-        final IAudioSamples samples = event.getAudioSamples();
+        if(null == mContainer)
+            mContainer = source.getContainer();
 
         // establish audio queue
 
-        AudioQueue queue = getAudioQueue(event.getSource(),
-            event.getStreamIndex());
+        AudioQueue queue = getAudioQueue(source, streamIndex);
 
         // enqueue the audio samples
 
+        long timeStamp = toPlaybackTime(samples.getTimeStamp());
+
+        updateEndTimeStamp(timeStamp + TIME_UNIT.convert(
+                samples.getNextPts() - samples.getPts(), MICROSECONDS));
+
+        if(mLiveMode)
+            onLiveArrival(timeStamp);
         if(queue != null)
-            queue.offerMedia(samples, event.getTimeStamp(),
-                    event.getTimeUnit());
+            queue.offerMedia(samples, timeStamp, TIME_UNIT);
     }
 
     /**
@@ -605,7 +1655,10 @@ public class MediaCore extends MediaListenerAdapter
         public AudioQueue(long capacity, TimeUnit unit, IStream stream,
                 SourceDataLine sourceDataLine)
         {
-            super(TIME_UNIT.convert(capacity, unit), DEFAULT_AUDIO_EARLY_WINDOW,
+            super(TIME_UNIT.convert(capacity, unit),
+                    mLiveMode ? LIVE_AUDIO_EARLY_WINDOW :
+                    DEFAULT_AUDIO_EARLY_WINDOW,
+                    mLiveMode ? LIVE_AUDIO_LATE_WINDOW :
                     DEFAULT_AUDIO_LATE_WINDOW, TIME_UNIT, Thread.MIN_PRIORITY,
                     "audio stream " + stream.getIndex() + " " +
                     stream.getStreamCoder().getCodec().getLongName(),
@@ -621,7 +1674,7 @@ public class MediaCore extends MediaListenerAdapter
         {
             if(samples instanceof IAudioSamples)
             {
-                playAudio(mStream, mLine, (IAudioSamples)samples);
+                playAudio(mStream, mLine, (IAudioSamples)samples, timeStamp);
             }
         }
     }
@@ -660,6 +1713,14 @@ public class MediaCore extends MediaListenerAdapter
             mStreamIndex = streamIndex;
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        protected boolean isVideo()
+        {
+            return true;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -667,7 +1728,170 @@ public class MediaCore extends MediaListenerAdapter
         {
             if(picture instanceof IVideoPicture)
             {
-                displayVideoImage((IVideoPicture)picture, mStreamIndex);
+                displayVideoImage((IVideoPicture)picture, mStreamIndex,
+                        timeStamp);
+            }
+        }
+    }
+
+    /**
+     * A queue of compressed video packets (low-memory mode) which decodes
+     * them a bit before their presentation and feeds a video queue.
+     *
+     * @author Sebastien Vincent
+     */
+    private class PacketQueue extends SelfServicingMediaQueue
+    {
+        /**
+         * Decoder owned by this queue.
+         */
+        private IStreamCoder mCoder = null;
+
+        /**
+         * Video queue that displays decoded pictures.
+         */
+        private final VideoQueue mVideoQueue;
+
+        /**
+         * Timestamp of the last queued packet.
+         */
+        private long mLastTimeStamp = 0;
+
+        /**
+         * Construct queue and activate it's internal thread.
+         *
+         * @param stream the video stream
+         * @param streamIndex index of the stream
+         * @param videoQueue video queue that displays decoded pictures
+         */
+        public PacketQueue(IStream stream, int streamIndex,
+                VideoQueue videoQueue)
+        {
+            super(mVideoQueueCapacity, LOW_MEMORY_VIDEO_LOOKAHEAD,
+                    VIDEO_PACKET_LATE_WINDOW, TIME_UNIT, Thread.MIN_PRIORITY,
+                    "video packets ", streamIndex);
+            mVideoQueue = videoQueue;
+
+            // the reader does not decode video, use a decoder of our own
+
+            IStreamCoder coder = IStreamCoder.make(
+                    IStreamCoder.Direction.DECODING, stream.getStreamCoder());
+
+            if(coder.open() < 0)
+            {
+                logger.warning("Cannot open video decoder for stream " +
+                        streamIndex);
+                coder.delete();
+                coder = null;
+            }
+            mCoder = coder;
+        }
+
+        /**
+         * Get timestamp of the last queued packet.
+         * @return timestamp in microseconds
+         */
+        public long getLastTimeStamp()
+        {
+            return mLastTimeStamp;
+        }
+
+        /**
+         * Set timestamp of the last queued packet.
+         * @param timeStamp timestamp in microseconds
+         */
+        public void setLastTimeStamp(long timeStamp)
+        {
+            mLastTimeStamp = timeStamp;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected boolean isVideo()
+        {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void dispatch(IMediaData item, long timeStamp)
+        {
+            IPacket packet = (IPacket)item;
+            long packetTimeStamp = getPacketTimeStamp(packet);
+            long offset = 0;
+            int offsetData = 0;
+
+            if(mCoder == null)
+            {
+                return;
+            }
+
+            // offset of the media the packet belongs to
+
+            if(packetTimeStamp != Global.NO_PTS)
+            {
+                offset = timeStamp - packetTimeStamp;
+            }
+
+            while(offsetData < packet.getSize())
+            {
+                IVideoPicture picture = IVideoPicture.make(
+                        mCoder.getPixelType(), mCoder.getWidth(),
+                        mCoder.getHeight());
+
+                try
+                {
+                    long start = System.nanoTime();
+                    int rv = mCoder.decodeVideo(picture, packet, offsetData);
+                    long decodeTime = System.nanoTime() - start;
+
+                    if(PipelineTrace.isEnabled())
+                    {
+                        PipelineTrace.record(PipelineTrace.Stage.DECODE,
+                                getStreamIndex(), picture.getTimeStamp(),
+                                start, decodeTime);
+                    }
+
+                    if(rv < 0)
+                    {
+                        logger.warning("Stream " + packet.getStreamIndex() +
+                                ": cannot decode video packet");
+                        break;
+                    }
+                    offsetData += rv;
+
+                    if(picture.isComplete())
+                    {
+                        long pictureTimeStamp = offset + picture.getTimeStamp();
+
+                        mStats.onDecoded(true, decodeTime);
+                        mVideoQueue.offerMedia(picture, pictureTimeStamp,
+                                MICROSECONDS);
+                    }
+                    else
+                    {
+                        mStats.onDecodeTime(decodeTime);
+                    }
+                }
+                finally
+                {
+                    picture.delete();
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected void terminate()
+        {
+            if(mCoder != null)
+            {
+                mCoder.close();
+                mCoder.delete();
+                mCoder = null;
             }
         }
     }
@@ -731,6 +1955,28 @@ public class MediaCore extends MediaListenerAdapter
          */
         private boolean mIsInitialized = false;
 
+        /**
+         * Number of late items dropped since the last report.
+         */
+        private final AtomicLong mDroppedLate = new AtomicLong(0);
+
+        /**
+         * Time (System.nanoTime()) of the last report of late items
+         * dropped.
+         */
+        private final AtomicLong mLastDropReport =
+            new AtomicLong(System.nanoTime());
+
+        /**
+         * Size (in bytes) of the items in the queue.
+         */
+        private long mBytes = 0;
+
+        /**
+         * Timestamp of the newest item in the queue.
+         */
+        private long mNewestTimeStamp = 0;
+
         /**
          * Construct queue and activate it's internal thread.
          *
@@ -783,7 +2029,7 @@ public class MediaCore extends MediaListenerAdapter
                                 // while not done, and no item, wait for one
 
                                 while(!mDone &&
-                                        (delayedItem = mQueue.poll()) == null)
+                                        (delayedItem = poll()) == null)
                                 {
                                     try
                                     {
@@ -815,6 +2061,7 @@ public class MediaCore extends MediaListenerAdapter
                             if(null != delayedItem)
                             {
                                 IMediaData item = delayedItem.getItem();
+                                long waitStart = System.nanoTime();
 
                                 try
                                 {
@@ -825,6 +2072,12 @@ public class MediaCore extends MediaListenerAdapter
                                         long now = getMediaTime();
                                         long delta = delayedItem.getTimeStamp() - now;
 
+                                        /* no presentation clock, media is just right */
+                                        if(!mClockEnabled)
+                                        {
+                                            delta = 0;
+                                        }
+
                                         // if the media is too new and unripe, goldilocks sleeps
                                         // for a bit
 
@@ -847,9 +2100,11 @@ public class MediaCore extends MediaListenerAdapter
                                             // if the media is old and moldy, goldilocks says
                                             // "ick" and drops the media on the floor
 
+                                            traceWait(item, waitStart, delta);
+
                                             if(delta < -mLateWindow)
                                             {
-                                                logger.warning("Stream " + mStreamIndex + ": drop frame");
+                                                onDroppedLate();
                                             }
 
                                             // if the media is just right, goldilocks dispaches it
@@ -887,6 +2142,9 @@ public class MediaCore extends MediaListenerAdapter
                     }
                     finally
                     {
+                        reportDroppedLate(System.nanoTime() -
+                                mLastDropReport.get());
+                        terminate();
                     }
                 }
             };
@@ -946,6 +2204,181 @@ public class MediaCore extends MediaListenerAdapter
             }
         }
 
+        /**
+         * Remove and release all items of the queue without dispatching
+         * them.
+         */
+        public void clear()
+        {
+            mStats.onDroppedEarly(isVideo(), discard());
+        }
+
+        /**
+         * Remove and release all items of the queue without dispatching
+         * them nor counting them as dropped.
+         * @return number of items removed
+         */
+        public int discard()
+        {
+            mLock.lock();
+            try
+            {
+                DelayedItem<IMediaData> delayedItem = null;
+
+                int count = 0;
+
+                while((delayedItem = poll()) != null)
+                {
+                    delayedItem.getItem().delete();
+                    count++;
+                }
+
+                mCondition.signalAll();
+                return count;
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+        }
+
+        /**
+         * Trace the wait of an item for its presentation time, and its drop
+         * if it is late.
+         * @param item the item
+         * @param start time (System.nanoTime()) the item was dequeued
+         * @param delta time (in microseconds) until its presentation time,
+         * negative if late
+         */
+        private void traceWait(IMediaData item, long start, long delta)
+        {
+            if(!PipelineTrace.isEnabled())
+            {
+                return;
+            }
+
+            long timeStamp = item.getTimeStamp();
+
+            PipelineTrace.record(PipelineTrace.Stage.WAIT, mStreamIndex,
+                    timeStamp, start);
+            if(delta < -mLateWindow)
+            {
+                PipelineTrace.record(PipelineTrace.Stage.DROP, mStreamIndex,
+                        timeStamp, System.nanoTime(),
+                        NANOSECONDS.convert(-delta, TIME_UNIT));
+            }
+        }
+
+        /**
+         * Count a late item dropped and report drops if the last report is
+         * old enough. It does not allocate unless it reports.
+         */
+        private void onDroppedLate()
+        {
+            long now = System.nanoTime();
+            long last = mLastDropReport.get();
+
+            mStats.onDroppedLate(isVideo());
+            mDroppedLate.incrementAndGet();
+
+            if(now - last >= DROP_REPORT_INTERVAL &&
+                    mLastDropReport.compareAndSet(last, now))
+            {
+                reportDroppedLate(now - last);
+            }
+        }
+
+        /**
+         * Log the number of late items dropped since the last report.
+         * @param elapsed time (in nanoseconds) since the last report
+         */
+        private void reportDroppedLate(long elapsed)
+        {
+            long count = mDroppedLate.getAndSet(0);
+
+            if(count > 0 && logger.isLoggable(Level.WARNING))
+            {
+                logger.warning("Stream " + mStreamIndex + ": dropped " +
+                        count + " late frames in the last " +
+                        MILLISECONDS.convert(elapsed, NANOSECONDS) + " ms");
+            }
+        }
+
+        /**
+         * Remove the oldest item of the queue. Caller must hold the lock.
+         * @return oldest item or null if queue is empty
+         */
+        private DelayedItem<IMediaData> poll()
+        {
+            DelayedItem<IMediaData> delayedItem = mQueue.poll();
+
+            if(delayedItem != null)
+            {
+                mBytes -= delayedItem.getItem().getSize();
+            }
+            return delayedItem;
+        }
+
+        /**
+         * Get index of the stream this queue is servicing.
+         * @return stream index
+         */
+        public int getStreamIndex()
+        {
+            return mStreamIndex;
+        }
+
+        /**
+         * Get the duration of media in the queue.
+         * @return duration in microseconds
+         */
+        public long getDepthTime()
+        {
+            mLock.lock();
+            try
+            {
+                return mQueue.isEmpty() ? 0 :
+                    mNewestTimeStamp - mQueue.peek().getTimeStamp();
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+        }
+
+        /**
+         * Get the size of media in the queue.
+         * @return size in bytes
+         */
+        public long getDepthBytes()
+        {
+            mLock.lock();
+            try
+            {
+                return mBytes;
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+        }
+
+        /**
+         * Returns if items of this queue are video (for statistics).
+         * @return true for video, false for audio
+         */
+        protected boolean isVideo()
+        {
+            return false;
+        }
+
+        /**
+         * Called by the internal thread when it terminates.
+         */
+        protected void terminate()
+        {
+        }
+
         /**
          * Dispatch an item just removed from the queue.
          *
@@ -978,6 +2411,7 @@ public class MediaCore extends MediaListenerAdapter
             // convert time stamp to standar time unit
 
             long convertedTime = TIME_UNIT.convert(timeStamp, unit);
+            long start = System.nanoTime();
 
             // synchronized (SelfServicingMediaQueue.this)
 
@@ -1018,6 +2452,8 @@ public class MediaCore extends MediaListenerAdapter
 
                     mQueue.offer(new DelayedItem<IMediaData>(
                             item.copyReference(), convertedTime));
+                    mBytes += item.getSize();
+                    mNewestTimeStamp = convertedTime;
 
                     // debug("2     queue[%2d]: %s[%5d]",
                     // size(),
@@ -1033,6 +2469,12 @@ public class MediaCore extends MediaListenerAdapter
             {
                 mLock.unlock();
             }
+
+            if(PipelineTrace.isEnabled())
+            {
+                PipelineTrace.record(PipelineTrace.Stage.OFFER, mStreamIndex,
+                        item.getTimeStamp(), start);
+            }
         }
 
         /**
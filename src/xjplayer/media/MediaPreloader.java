@@ -0,0 +1,426 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.*;
+import java.util.logging.*;
+import java.util.concurrent.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Opens, probes and pre-decodes the beginning of a media in background so
+ * that it can be played right after the current one without gap.
+ *
+ * Decoded data are recorded and replayed to the real listener chain when
+ * the media is handed off.
+ *
+ * @author Sebastien Vincent
+ */
+class MediaPreloader extends MediaListenerAdapter
+    implements VideoPacketListener, Runnable
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(MediaPreloader.class.getName());
+
+    /**
+     * Duration (in microseconds) of media pre-decoded.
+     */
+    private static final long PRELOAD_DURATION =
+        TimeUnit.MICROSECONDS.convert(1000, TimeUnit.MILLISECONDS);
+
+    /**
+     * Media reader of the next media.
+     */
+    private final SelectiveMediaReader mReader;
+
+    /**
+     * Listener of video packets once handed off, null if the reader decodes
+     * video.
+     */
+    private final VideoPacketListener mPacketListener;
+
+    /**
+     * Listener of direct mode once handed off, null if the reader fires
+     * events. Events are recorded while preloading.
+     */
+    private final DirectMediaListener mDirectListener;
+
+    /**
+     * Recorded events in the order they have been received.
+     */
+    private final List<RecordedEvent> mEvents = new ArrayList<RecordedEvent>();
+
+    /**
+     * Preloading thread.
+     */
+    private final Thread mThread;
+
+    /**
+     * If preloading has been cancelled.
+     */
+    private volatile boolean mCancelled = false;
+
+    /**
+     * If media could not be opened or decoded.
+     */
+    private boolean mFailed = false;
+
+    /**
+     * If the whole media has been read while preloading.
+     */
+    private boolean mEndOfMedia = false;
+
+    /**
+     * Timestamp of the first decoded data.
+     */
+    private long mFirstTimeStamp = Global.NO_PTS;
+
+    /**
+     * Timestamp of the last decoded data.
+     */
+    private long mLastTimeStamp = Global.NO_PTS;
+
+    /**
+     * Constructor.
+     * @param reader media reader of the media to preload
+     */
+    public MediaPreloader(SelectiveMediaReader reader)
+    {
+        mReader = reader;
+        mPacketListener = reader.getVideoPacketListener();
+        if(mPacketListener != null)
+        {
+            mReader.setVideoPacketListener(this);
+        }
+        mDirectListener = reader.getDirectListener();
+        mReader.setDirectListener(null);
+        mThread = new Thread(this, "MediaPreloader");
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Start preloading in background.
+     */
+    public void start()
+    {
+        mThread.start();
+    }
+
+    /**
+     * Entry point of the preloading thread.
+     */
+    public void run()
+    {
+        try
+        {
+            mReader.addListener(this);
+            mReader.open();
+
+            while(!mCancelled && !isPrimed())
+            {
+                if(mReader.readPacket() != null)
+                {
+                    mEndOfMedia = true;
+                    break;
+                }
+            }
+        }
+        catch(RuntimeException e)
+        {
+            logger.warning("Cannot preload " + mReader.getUrl() + ": " + e);
+            mFailed = true;
+        }
+        finally
+        {
+            mReader.removeListener(this);
+        }
+    }
+
+    /**
+     * Get the reader of the preloaded media.
+     * @return media reader
+     */
+    public SelectiveMediaReader getReader()
+    {
+        return mReader;
+    }
+
+    /**
+     * Returns if the whole media has already been read. In that case the
+     * reader has been closed after the end of media.
+     * @return true if end of media has been reached, false otherwise
+     */
+    public boolean isEndOfMedia()
+    {
+        return mEndOfMedia;
+    }
+
+    /**
+     * Wait for the preloading to finish, replay all recorded events to
+     * listener and add listener to the reader.
+     * @param listener listener chain that will play the media
+     * @return true if media has been handed off, false if it could not be
+     * preloaded
+     */
+    public boolean handOff(IMediaListener listener)
+    {
+        join();
+
+        if(mFailed || mCancelled)
+        {
+            release();
+            return false;
+        }
+
+        for(RecordedEvent event : mEvents)
+        {
+            event.replay(listener);
+        }
+        release();
+
+        if(!mEndOfMedia)
+        {
+            if(mPacketListener != null)
+            {
+                mReader.setVideoPacketListener(mPacketListener);
+            }
+            mReader.setDirectListener(mDirectListener);
+            mReader.addListener(listener);
+        }
+        return true;
+    }
+
+    /**
+     * Cancel preloading and release resources.
+     */
+    public void cancel()
+    {
+        mCancelled = true;
+        join();
+        release();
+
+        if(mReader.isOpen())
+        {
+            mReader.close();
+        }
+    }
+
+    /**
+     * Wait for the preloading thread to finish.
+     */
+    private void join()
+    {
+        try
+        {
+            mThread.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Release recorded events.
+     */
+    private void release()
+    {
+        for(RecordedEvent event : mEvents)
+        {
+            event.release();
+        }
+        mEvents.clear();
+    }
+
+    /**
+     * Returns if enough media has been decoded.
+     * @return true if enough media has been decoded
+     */
+    private boolean isPrimed()
+    {
+        return mFirstTimeStamp != Global.NO_PTS &&
+            mLastTimeStamp - mFirstTimeStamp >= PRELOAD_DURATION;
+    }
+
+    /**
+     * Record timestamp of decoded data.
+     * @param timeStamp timestamp in microseconds
+     */
+    private void recordTimeStamp(long timeStamp)
+    {
+        if(mFirstTimeStamp == Global.NO_PTS)
+        {
+            mFirstTimeStamp = timeStamp;
+        }
+        mLastTimeStamp = Math.max(mLastTimeStamp, timeStamp);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onOpen(final IOpenEvent event)
+    {
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        listener.onOpen(event);
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAddStream(final IAddStreamEvent event)
+    {
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        listener.onAddStream(event);
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onVideoPicture(IVideoPictureEvent event)
+    {
+        /* keep a reference as the reader will release its own */
+        final IVideoPictureEvent copy = new VideoPictureEvent(
+                event.getSource(), event.getPicture().copyReference(),
+                event.getStreamIndex());
+
+        recordTimeStamp(event.getTimeStamp());
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        listener.onVideoPicture(copy);
+                    }
+
+                    public void release()
+                    {
+                        copy.getPicture().delete();
+                    }
+                });
+    }
+
+    /**
+     * Record a video packet (low-memory mode).
+     * @param packet video packet
+     */
+    public void onVideoPacket(IPacket packet)
+    {
+        /* keep a reference as the reader will release its own */
+        final IPacket copy = packet.copyReference();
+        long timeStamp = MediaCore.getPacketTimeStamp(packet);
+
+        if(timeStamp != Global.NO_PTS)
+        {
+            recordTimeStamp(timeStamp);
+        }
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        mPacketListener.onVideoPacket(copy);
+                    }
+
+                    public void release()
+                    {
+                        copy.delete();
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAudioSamples(IAudioSamplesEvent event)
+    {
+        /* keep a reference as the reader will release its own */
+        final IAudioSamplesEvent copy = new AudioSamplesEvent(
+                event.getSource(), event.getAudioSamples().copyReference(),
+                event.getStreamIndex());
+
+        recordTimeStamp(event.getTimeStamp());
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        listener.onAudioSamples(copy);
+                    }
+
+                    public void release()
+                    {
+                        copy.getAudioSamples().delete();
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClose(final ICloseEvent event)
+    {
+        mEvents.add(new RecordedEvent()
+                {
+                    public void replay(IMediaListener listener)
+                    {
+                        listener.onClose(event);
+                    }
+                });
+    }
+
+    /**
+     * Event received while preloading that will be replayed on hand off.
+     *
+     * @author Sebastien Vincent
+     */
+    private abstract static class RecordedEvent
+    {
+        /**
+         * Replay the event.
+         * @param listener listener to notify
+         */
+        public abstract void replay(IMediaListener listener);
+
+        /**
+         * Release resources held by the event.
+         */
+        public void release()
+        {
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Receives every packet read by a reader, before track selection and
+ * decoding (timeshift recording).
+ *
+ * @author Sebastien Vincent
+ */
+interface PacketTee
+{
+    /**
+     * Indicates that a packet has been read. It is called by the demux
+     * thread so it must not block. The packet is released (or reused) by
+     * the caller once this method returns.
+     * @param container container the packet has been read from
+     * @param packet the packet
+     */
+    public void onPacket(IContainer container, IPacket packet);
+}
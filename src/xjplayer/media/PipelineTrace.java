@@ -0,0 +1,364 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Trace of the media pipeline (read, decode, queue, present) to find where
+ * late frames lose their time.
+ *
+ * Each event records its stage, stream index, timestamp of the media,
+ * thread, start time and duration into a ring of primitive arrays
+ * allocated when tracing starts: recording neither locks nor allocates,
+ * and costs a volatile read when tracing is disabled. The ring keeps the
+ * latest events and is written as CSV by dump(), while the number and total
+ * duration of events are kept per stage for all events.
+ *
+ * @author Sebastien Vincent
+ */
+public final class PipelineTrace
+{
+    /**
+     * Stages of the pipeline.
+     */
+    public enum Stage
+    {
+        /**
+         * Packet read by the demuxer.
+         */
+        READ,
+
+        /**
+         * Packet decoded.
+         */
+        DECODE,
+
+        /**
+         * Media offered to a queue (reference copy and wait for room).
+         */
+        OFFER,
+
+        /**
+         * Queued media waiting for its presentation time.
+         */
+        WAIT,
+
+        /**
+         * Media dropped because it was late (duration is the lateness).
+         */
+        DROP,
+
+        /**
+         * Picture converted to an image.
+         */
+        CONVERT,
+
+        /**
+         * Image dispatched to video listeners.
+         */
+        DISPATCH,
+
+        /**
+         * Samples written to the audio line.
+         */
+        WRITE
+    }
+
+    /**
+     * Default number of events kept.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * Stages of the pipeline, indexed by ordinal.
+     */
+    private static final Stage STAGES[] = Stage.values();
+
+    /**
+     * Current ring, null if tracing is disabled.
+     */
+    private static volatile Ring mRing = null;
+
+    /**
+     * Constructor.
+     */
+    private PipelineTrace()
+    {
+    }
+
+    /**
+     * Start tracing, events previously recorded are discarded.
+     * @param capacity number of events kept (rounded to a power of two)
+     */
+    public static void start(int capacity)
+    {
+        mRing = new Ring(Integer.highestOneBit(Math.max(capacity, 2)));
+    }
+
+    /**
+     * Stop tracing. Recorded events are kept until the next start.
+     */
+    public static void stop()
+    {
+        Ring ring = mRing;
+
+        if(ring != null)
+        {
+            ring.mStopped = true;
+        }
+    }
+
+    /**
+     * Returns if tracing is enabled.
+     * @return true if events are recorded
+     */
+    public static boolean isEnabled()
+    {
+        Ring ring = mRing;
+
+        return ring != null && !ring.mStopped;
+    }
+
+    /**
+     * Record an event that ends now.
+     * @param stage stage of the pipeline
+     * @param streamIndex index of the stream
+     * @param timeStamp timestamp of the media (in microseconds)
+     * @param start start time of the event (System.nanoTime())
+     */
+    public static void record(Stage stage, int streamIndex, long timeStamp,
+            long start)
+    {
+        record(stage, streamIndex, timeStamp, start,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Record an event.
+     * @param stage stage of the pipeline
+     * @param streamIndex index of the stream
+     * @param timeStamp timestamp of the media (in microseconds)
+     * @param start start time of the event (System.nanoTime())
+     * @param duration duration of the event in nanoseconds
+     */
+    public static void record(Stage stage, int streamIndex, long timeStamp,
+            long start, long duration)
+    {
+        Ring ring = mRing;
+
+        if(ring == null || ring.mStopped)
+        {
+            return;
+        }
+
+        long sequence = ring.mNext.getAndIncrement();
+        int slot = (int)(sequence & (ring.mStages.length - 1));
+
+        ring.mSequences[slot] = -1;
+        ring.mStages[slot] = (byte)stage.ordinal();
+        ring.mStreams[slot] = streamIndex;
+        ring.mTimeStamps[slot] = timeStamp;
+        ring.mThreads[slot] = Thread.currentThread().getId();
+        ring.mStarts[slot] = start;
+        ring.mDurations[slot] = duration;
+        ring.mSequences[slot] = sequence;
+        ring.mCounts.incrementAndGet(stage.ordinal());
+        ring.mTimes.addAndGet(stage.ordinal(), duration);
+    }
+
+    /**
+     * Get the number of events recorded for a stage since tracing started.
+     * @param stage stage of the pipeline
+     * @return number of events, 0 if tracing has never been started
+     */
+    public static long getCount(Stage stage)
+    {
+        Ring ring = mRing;
+
+        return (ring == null) ? 0 : ring.mCounts.get(stage.ordinal());
+    }
+
+    /**
+     * Get the total duration of the events recorded for a stage since
+     * tracing started.
+     * @param stage stage of the pipeline
+     * @return total duration in nanoseconds, 0 if tracing has never been
+     * started
+     */
+    public static long getTime(Stage stage)
+    {
+        Ring ring = mRing;
+
+        return (ring == null) ? 0 : ring.mTimes.get(stage.ordinal());
+    }
+
+    /**
+     * Write recorded events as CSV, oldest first. Times are in
+     * microseconds, start times relative to the oldest event.
+     * @param out output
+     * @throws IOException if events cannot be written
+     */
+    public static void dump(Writer out) throws IOException
+    {
+        Ring ring = mRing;
+        PrintWriter writer = new PrintWriter(out);
+
+        writer.println("sequence,thread,stage,stream,timestamp,start,duration");
+        if(ring != null)
+        {
+            long next = ring.mNext.get();
+            long first = Math.max(0, next - ring.mStages.length);
+            long origin = -1;
+
+            for(long sequence = first ; sequence < next ; sequence++)
+            {
+                int slot = (int)(sequence & (ring.mStages.length - 1));
+
+                /* skip slots being written or already overwritten */
+                if(ring.mSequences[slot] != sequence)
+                {
+                    continue;
+                }
+
+                if(origin == -1)
+                {
+                    origin = ring.mStarts[slot];
+                }
+
+                writer.println(sequence + "," + ring.mThreads[slot] + "," +
+                        STAGES[ring.mStages[slot]] + "," +
+                        ring.mStreams[slot] + "," + ring.mTimeStamps[slot] +
+                        "," + (ring.mStarts[slot] - origin) / 1000 + "," +
+                        ring.mDurations[slot] / 1000);
+            }
+        }
+
+        writer.flush();
+        if(writer.checkError())
+        {
+            throw new IOException("Cannot write pipeline trace");
+        }
+    }
+
+    /**
+     * Write recorded events as CSV to a file.
+     * @param file file to write
+     * @throws IOException if events cannot be written
+     */
+    public static void dump(File file) throws IOException
+    {
+        Writer out = new BufferedWriter(new FileWriter(file));
+
+        try
+        {
+            dump(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Ring of events.
+     *
+     * @author Sebastien Vincent
+     */
+    private static final class Ring
+    {
+        /**
+         * Sequence number of the next event.
+         */
+        private final AtomicLong mNext = new AtomicLong(0);
+
+        /**
+         * Sequence number of events, -1 while being written.
+         */
+        private final long mSequences[];
+
+        /**
+         * Stage (ordinal) of events.
+         */
+        private final byte mStages[];
+
+        /**
+         * Stream index of events.
+         */
+        private final int mStreams[];
+
+        /**
+         * Media timestamp of events.
+         */
+        private final long mTimeStamps[];
+
+        /**
+         * Thread of events.
+         */
+        private final long mThreads[];
+
+        /**
+         * Start time of events.
+         */
+        private final long mStarts[];
+
+        /**
+         * Duration of events.
+         */
+        private final long mDurations[];
+
+        /**
+         * Number of events per stage (ordinal).
+         */
+        private final AtomicLongArray mCounts =
+            new AtomicLongArray(STAGES.length);
+
+        /**
+         * Total duration of events per stage (ordinal).
+         */
+        private final AtomicLongArray mTimes =
+            new AtomicLongArray(STAGES.length);
+
+        /**
+         * If recording is stopped.
+         */
+        private volatile boolean mStopped = false;
+
+        /**
+         * Constructor.
+         * @param capacity number of events (power of two)
+         */
+        Ring(int capacity)
+        {
+            mSequences = new long[capacity];
+            mStages = new byte[capacity];
+            mStreams = new int[capacity];
+            mTimeStamps = new long[capacity];
+            mThreads = new long[capacity];
+            mStarts = new long[capacity];
+            mDurations = new long[capacity];
+
+            for(int i = 0 ; i < capacity ; i++)
+            {
+                mSequences[i] = -1;
+            }
+        }
+    }
+}
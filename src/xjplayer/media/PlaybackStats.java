@@ -0,0 +1,427 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import xjplayer.io.*;
+
+/**
+ * Playback statistics of a MediaCore and its readers, exposed through JMX
+ * (see MediaControl).
+ *
+ * Counters are updated from the media threads without lock nor
+ * allocation.
+ *
+ * @author Sebastien Vincent
+ */
+public class PlaybackStats implements PlaybackStatsMBean
+{
+    /**
+     * Core whose queues and clock are observed.
+     */
+    private final MediaCore mCore;
+
+    /**
+     * Counters of video frames.
+     */
+    private final FrameCounters mVideo = new FrameCounters();
+
+    /**
+     * Counters of audio frames.
+     */
+    private final FrameCounters mAudio = new FrameCounters();
+
+    /**
+     * Decoding times.
+     */
+    private final LatencyHistogram mDecodeTimes = new LatencyHistogram();
+
+    /**
+     * Picture conversion times.
+     */
+    private final LatencyHistogram mConvertTimes = new LatencyHistogram();
+
+    /**
+     * Video frames not displayed while video display was suspended.
+     */
+    private final AtomicLong mVideoSuspended = new AtomicLong(0);
+
+    /**
+     * Audio line underruns.
+     */
+    private final AtomicLong mAudioUnderruns = new AtomicLong(0);
+
+    /**
+     * Time (in nanoseconds) spent reading packets.
+     */
+    private final AtomicLong mReadTime = new AtomicLong(0);
+
+    /**
+     * Read-ahead handler of the media being played, null if none.
+     */
+    private volatile ReadAheadProtocolHandler mReadAhead = null;
+
+    /**
+     * Constructor.
+     * @param core core whose queues and clock are observed
+     */
+    PlaybackStats(MediaCore core)
+    {
+        mCore = core;
+    }
+
+    /**
+     * Record a decoded frame.
+     * @param video true for a video frame, false for an audio one
+     * @param nanos decoding time in nanoseconds
+     */
+    void onDecoded(boolean video, long nanos)
+    {
+        getCounters(video).mDecoded.incrementAndGet();
+        mDecodeTimes.record(nanos);
+    }
+
+    /**
+     * Record the decoding time of a packet that did not complete a frame.
+     * @param nanos decoding time in nanoseconds
+     */
+    void onDecodeTime(long nanos)
+    {
+        mDecodeTimes.record(nanos);
+    }
+
+    /**
+     * Record a presented frame.
+     * @param video true for a video frame, false for an audio one
+     */
+    void onPresented(boolean video)
+    {
+        getCounters(video).mPresented.incrementAndGet();
+    }
+
+    /**
+     * Record a frame dropped because it was late.
+     * @param video true for a video frame, false for an audio one
+     */
+    void onDroppedLate(boolean video)
+    {
+        getCounters(video).mDroppedLate.incrementAndGet();
+    }
+
+    /**
+     * Record frames dropped before their presentation time.
+     * @param video true for video frames, false for audio ones
+     * @param count number of frames
+     */
+    void onDroppedEarly(boolean video, int count)
+    {
+        getCounters(video).mDroppedEarly.addAndGet(count);
+    }
+
+    /**
+     * Record a video frame not displayed because video display is
+     * suspended.
+     */
+    void onSuspended()
+    {
+        mVideoSuspended.incrementAndGet();
+    }
+
+    /**
+     * Record a picture conversion.
+     * @param nanos conversion time in nanoseconds
+     */
+    void onConverted(long nanos)
+    {
+        mConvertTimes.record(nanos);
+    }
+
+    /**
+     * Record an audio line underrun.
+     */
+    void onAudioUnderrun()
+    {
+        mAudioUnderruns.incrementAndGet();
+    }
+
+    /**
+     * Record the time spent reading a packet.
+     * @param nanos time in nanoseconds
+     */
+    void onRead(long nanos)
+    {
+        mReadTime.addAndGet(nanos);
+    }
+
+    /**
+     * Set the read-ahead handler of the media being played.
+     * @param handler handler or null if read-ahead is not used
+     */
+    void setReadAheadHandler(ReadAheadProtocolHandler handler)
+    {
+        mReadAhead = handler;
+    }
+
+    /**
+     * Get counters of a media type.
+     * @param video true for video, false for audio
+     * @return counters
+     */
+    private FrameCounters getCounters(boolean video)
+    {
+        return video ? mVideo : mAudio;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[][] getQueueDepths()
+    {
+        Map<Integer, long[]> depths = mCore.getQueueDepths();
+        long queues[][] = new long[depths.size()][];
+        int i = 0;
+
+        for(Map.Entry<Integer, long[]> entry : depths.entrySet())
+        {
+            long depth[] = entry.getValue();
+
+            queues[i++] = new long[] {entry.getKey(),
+                TimeUnit.MICROSECONDS.toMillis(depth[0]), depth[1]};
+        }
+        return queues;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesDecoded()
+    {
+        return mVideo.mDecoded.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesPresented()
+    {
+        return mVideo.mPresented.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesDroppedLate()
+    {
+        return mVideo.mDroppedLate.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesDroppedEarly()
+    {
+        return mVideo.mDroppedEarly.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesSuspended()
+    {
+        return mVideoSuspended.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getVideoFramesConverted()
+    {
+        return mConvertTimes.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAudioFramesDecoded()
+    {
+        return mAudio.mDecoded.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAudioFramesPresented()
+    {
+        return mAudio.mPresented.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAudioFramesDroppedLate()
+    {
+        return mAudio.mDroppedLate.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAudioFramesDroppedEarly()
+    {
+        return mAudio.mDroppedEarly.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAVOffset()
+    {
+        return TimeUnit.MICROSECONDS.toMillis(mCore.getAVOffset());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[] getDecodeTimeHistogram()
+    {
+        return mDecodeTimes.getCounts();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getDecodeTimeMean()
+    {
+        return mDecodeTimes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDecodeTime99thPercentile()
+    {
+        return mDecodeTimes.getPercentile(99);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long[] getConvertTimeHistogram()
+    {
+        return mConvertTimes.getCounts();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getConvertTimeMean()
+    {
+        return mConvertTimes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getConvertTime99thPercentile()
+    {
+        return mConvertTimes.getPercentile(99);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAudioUnderruns()
+    {
+        return mAudioUnderruns.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getReadTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(mReadTime.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getIOStallTime()
+    {
+        ReadAheadProtocolHandler handler = mReadAhead;
+
+        return (handler != null) ? handler.getStallTime() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void reset()
+    {
+        mVideo.reset();
+        mAudio.reset();
+        mDecodeTimes.reset();
+        mConvertTimes.reset();
+        mVideoSuspended.set(0);
+        mAudioUnderruns.set(0);
+        mReadTime.set(0);
+    }
+
+    /**
+     * Frame counters of a media type.
+     *
+     * @author Sebastien Vincent
+     */
+    private static class FrameCounters
+    {
+        /**
+         * Frames decoded.
+         */
+        private final AtomicLong mDecoded = new AtomicLong(0);
+
+        /**
+         * Frames presented.
+         */
+        private final AtomicLong mPresented = new AtomicLong(0);
+
+        /**
+         * Frames dropped because they were late.
+         */
+        private final AtomicLong mDroppedLate = new AtomicLong(0);
+
+        /**
+         * Frames dropped before their presentation time.
+         */
+        private final AtomicLong mDroppedEarly = new AtomicLong(0);
+
+        /**
+         * Reset counters.
+         */
+        public void reset()
+        {
+            mDecoded.set(0);
+            mPresented.set(0);
+            mDroppedLate.set(0);
+            mDroppedEarly.set(0);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+/**
+ * JMX interface of playback statistics of a MediaControl.
+ *
+ * Durations are in milliseconds unless stated otherwise, histograms are
+ * described in LatencyHistogram.
+ *
+ * @author Sebastien Vincent
+ */
+public interface PlaybackStatsMBean
+{
+    /**
+     * Get the depth of the queues of each stream, all taken at the same
+     * time.
+     * @return for each stream, an array of its index, the duration (in
+     * milliseconds) and the size (in bytes) of the media queued
+     */
+    public long[][] getQueueDepths();
+
+    /**
+     * Get the number of video frames decoded.
+     * @return number of frames
+     */
+    public long getVideoFramesDecoded();
+
+    /**
+     * Get the number of video frames presented.
+     * @return number of frames
+     */
+    public long getVideoFramesPresented();
+
+    /**
+     * Get the number of video frames dropped because they were late.
+     * @return number of frames
+     */
+    public long getVideoFramesDroppedLate();
+
+    /**
+     * Get the number of video frames dropped before their presentation
+     * time (track switch, seek, ...).
+     * @return number of frames
+     */
+    public long getVideoFramesDroppedEarly();
+
+    /**
+     * Get the number of video frames not displayed because video display
+     * was suspended.
+     * @return number of frames
+     */
+    public long getVideoFramesSuspended();
+
+    /**
+     * Get the number of video pictures converted to images.
+     * @return number of pictures
+     */
+    public long getVideoFramesConverted();
+
+    /**
+     * Get the number of audio frames (sample buffers) decoded.
+     * @return number of frames
+     */
+    public long getAudioFramesDecoded();
+
+    /**
+     * Get the number of audio frames presented.
+     * @return number of frames
+     */
+    public long getAudioFramesPresented();
+
+    /**
+     * Get the number of audio frames dropped because they were late.
+     * @return number of frames
+     */
+    public long getAudioFramesDroppedLate();
+
+    /**
+     * Get the number of audio frames dropped before their presentation
+     * time.
+     * @return number of frames
+     */
+    public long getAudioFramesDroppedEarly();
+
+    /**
+     * Get the offset between audio being heard and video being displayed.
+     * @return offset in milliseconds, positive if audio is ahead of video
+     */
+    public long getAVOffset();
+
+    /**
+     * Get the histogram of decoding times.
+     * @return counts of each bucket
+     */
+    public long[] getDecodeTimeHistogram();
+
+    /**
+     * Get the mean decoding time.
+     * @return mean in microseconds
+     */
+    public double getDecodeTimeMean();
+
+    /**
+     * Get the 99th percentile of decoding times.
+     * @return percentile in microseconds
+     */
+    public long getDecodeTime99thPercentile();
+
+    /**
+     * Get the histogram of picture conversion times.
+     * @return counts of each bucket
+     */
+    public long[] getConvertTimeHistogram();
+
+    /**
+     * Get the mean picture conversion time.
+     * @return mean in microseconds
+     */
+    public double getConvertTimeMean();
+
+    /**
+     * Get the 99th percentile of picture conversion times.
+     * @return percentile in microseconds
+     */
+    public long getConvertTime99thPercentile();
+
+    /**
+     * Get the number of times an audio line ran out of samples.
+     * @return number of underruns
+     */
+    public long getAudioUnderruns();
+
+    /**
+     * Get the time the demuxer spent reading packets (I/O and demuxing).
+     * @return time in milliseconds
+     */
+    public long getReadTime();
+
+    /**
+     * Get the time the demuxer waited for the read-ahead I/O thread.
+     * @return time in milliseconds, 0 if read-ahead is not used
+     */
+    public long getIOStallTime();
+
+    /**
+     * Reset counters and histograms.
+     */
+    public void reset();
+}
@@ -0,0 +1,198 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.*;
+
+/**
+ * Ordered list of medias played one after another by MediaControl.
+ *
+ * Accesses are synchronized as the list is typically modified from the
+ * GUI and read from the media thread.
+ *
+ * @author Sebastien Vincent
+ */
+public class Playlist
+{
+    /**
+     * Medias (file, URL, ...) of the playlist.
+     */
+    private final List<String> mItems = new ArrayList<String>();
+
+    /**
+     * Index of the current media.
+     */
+    private int mIndex = 0;
+
+    /**
+     * If the playlist restarts from the beginning once finished.
+     */
+    private boolean mRepeat = false;
+
+    /**
+     * Constructor.
+     */
+    public Playlist()
+    {
+    }
+
+    /**
+     * Constructor.
+     * @param items medias to add to the playlist
+     */
+    public Playlist(Collection<String> items)
+    {
+        mItems.addAll(items);
+    }
+
+    /**
+     * Add a media at the end of the playlist.
+     * @param media media file/URL/...
+     */
+    public synchronized void add(String media)
+    {
+        mItems.add(media);
+    }
+
+    /**
+     * Remove all medias from the playlist.
+     */
+    public synchronized void clear()
+    {
+        mItems.clear();
+        mIndex = 0;
+    }
+
+    /**
+     * Get number of medias in the playlist.
+     * @return number of medias
+     */
+    public synchronized int size()
+    {
+        return mItems.size();
+    }
+
+    /**
+     * Get media at the specified index.
+     * @param index index of the media
+     * @return media
+     */
+    public synchronized String get(int index)
+    {
+        return mItems.get(index);
+    }
+
+    /**
+     * Get index of the current media.
+     * @return index of the current media
+     */
+    public synchronized int getIndex()
+    {
+        return mIndex;
+    }
+
+    /**
+     * Set index of the current media.
+     * @param index index of the media
+     */
+    public synchronized void setIndex(int index)
+    {
+        if(index < 0 || index >= mItems.size())
+        {
+            throw new IndexOutOfBoundsException("Bad playlist index: " +
+                    index);
+        }
+
+        mIndex = index;
+    }
+
+    /**
+     * Set repeat mode.
+     * @param repeat true to restart from the beginning once finished
+     */
+    public synchronized void setRepeat(boolean repeat)
+    {
+        mRepeat = repeat;
+    }
+
+    /**
+     * Returns if the playlist is in repeat mode.
+     * @return true if the playlist is in repeat mode, false otherwise
+     */
+    public synchronized boolean isRepeat()
+    {
+        return mRepeat;
+    }
+
+    /**
+     * Get the current media.
+     * @return current media or null if playlist is empty
+     */
+    public synchronized String getCurrent()
+    {
+        if(mItems.isEmpty())
+        {
+            return null;
+        }
+
+        return mItems.get(mIndex);
+    }
+
+    /**
+     * Get the media that follows the current one without advancing.
+     * @return next media or null if current media is the last one
+     */
+    public synchronized String peekNext()
+    {
+        int index = getNextIndex();
+
+        return (index == -1) ? null : mItems.get(index);
+    }
+
+    /**
+     * Advance to the next media.
+     * @return new current media or null if current media was the last one
+     */
+    public synchronized String next()
+    {
+        int index = getNextIndex();
+
+        if(index == -1)
+        {
+            return null;
+        }
+
+        mIndex = index;
+        return mItems.get(mIndex);
+    }
+
+    /**
+     * Get index of the media that follows the current one.
+     * @return index of the next media or -1 if there is none
+     */
+    private int getNextIndex()
+    {
+        if(mIndex + 1 < mItems.size())
+        {
+            return mIndex + 1;
+        }
+
+        return (mRepeat && !mItems.isEmpty()) ? 0 : -1;
+    }
+}
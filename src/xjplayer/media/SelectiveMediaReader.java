@@ -0,0 +1,1084 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Media reader that only decodes one audio and one video track.
+ *
+ * Packets of the other streams are dropped right after being read, their
+ * decoder is never opened. When the selected track of a type changes, the
+ * coder of the old stream is closed and an ICloseCoderEvent is fired, then
+ * the new stream is added (IAddStreamEvent) as soon as its first packet is
+ * read. A newly selected video stream starts at its next key frame.
+ *
+ * Video packets can be handed to a VideoPacketListener instead of being
+ * decoded (low-memory mode); the video coder is then never opened.
+ *
+ * In direct mode, decoded media go straight to a DirectMediaListener: no
+ * event is allocated per packet, and the packet, samples and pictures are
+ * reused once released by the listener.
+ *
+ * Video can also be suspended: packets of the video track are then dropped
+ * until it is resumed, and decoding restarts at the next key frame.
+ *
+ * Parts of the code are taken from Xuggler's MediaReader.
+ *
+ * @author Sebastien Vincent
+ * @author Xuggle
+ */
+public class SelectiveMediaReader extends AMediaCoderMixin
+    implements IMediaReader
+{
+    /**
+     * Maximum number of samples or pictures kept for reuse in direct mode.
+     */
+    private static final int MAX_POOL_SIZE = 64;
+
+    /**
+     * Value to select the default track of a type.
+     */
+    public static final int DEFAULT_TRACK = -2;
+
+    /**
+     * Value to not play any track of a type.
+     */
+    public static final int NO_TRACK = -1;
+
+    /**
+     * Opened coders.
+     */
+    private final Map<Integer, IStreamCoder> mCoders =
+        new HashMap<Integer, IStreamCoder>();
+
+    /**
+     * Codec type of the known streams.
+     */
+    private final Map<Integer, ICodec.Type> mTypes =
+        new HashMap<Integer, ICodec.Type>();
+
+    /**
+     * If streams can be added dynamically.
+     */
+    private boolean mStreamsCanBeAddedDynamically = false;
+
+    /**
+     * If the stream meta data are queried on open.
+     */
+    private boolean mQueryStreamMetaData = true;
+
+    /**
+     * If the reader is closed only on end of file.
+     */
+    private boolean mCloseOnEofOnly = false;
+
+    /**
+     * Type of the BufferedImage to generate (not used, images are converted
+     * by MediaCore).
+     */
+    private int mBufferedImageType = -1;
+
+    /**
+     * Preferred language for the default audio track, null if none.
+     */
+    private volatile String mPreferredLanguage = null;
+
+    /**
+     * Audio stream requested by the user.
+     */
+    private volatile int mRequestedAudio = DEFAULT_TRACK;
+
+    /**
+     * Video stream requested by the user.
+     */
+    private volatile int mRequestedVideo = DEFAULT_TRACK;
+
+    /**
+     * Default audio stream.
+     */
+    private int mDefaultAudio = NO_TRACK;
+
+    /**
+     * Default video stream.
+     */
+    private int mDefaultVideo = NO_TRACK;
+
+    /**
+     * If default streams have to be found again.
+     */
+    private volatile boolean mResolveDefaults = true;
+
+    /**
+     * Audio stream being decoded.
+     */
+    private int mAudioStream = NO_TRACK;
+
+    /**
+     * Video stream being decoded.
+     */
+    private int mVideoStream = NO_TRACK;
+
+    /**
+     * Listener that receives video packets instead of decoded pictures,
+     * null to decode video.
+     */
+    private volatile VideoPacketListener mVideoPacketListener = null;
+
+    /**
+     * Listener that receives decoded media in direct mode, null to fire
+     * mediatool events.
+     */
+    private volatile DirectMediaListener mDirectListener = null;
+
+    /**
+     * Tee that receives every packet read (timeshift recording), null if
+     * none.
+     */
+    private volatile PacketTee mPacketTee = null;
+
+    /**
+     * If packets are only handed to the tee, without being decoded.
+     */
+    private volatile boolean mRecordOnly = false;
+
+    /**
+     * Statistics updated with decoding and read times, null if none.
+     */
+    private volatile PlaybackStats mStats = null;
+
+    /**
+     * Packet reused in direct mode.
+     */
+    private IPacket mPacket = null;
+
+    /**
+     * Audio samples reused in direct mode.
+     */
+    private final List<IAudioSamples> mSamplesPool =
+        new ArrayList<IAudioSamples>();
+
+    /**
+     * Video pictures reused in direct mode.
+     */
+    private final List<IVideoPicture> mPicturesPool =
+        new ArrayList<IVideoPicture>();
+
+    /**
+     * If video packets are dropped because video is suspended.
+     */
+    private volatile boolean mVideoSuspended = false;
+
+    /**
+     * If video packets are dropped until the next key frame.
+     */
+    private boolean mWaitVideoKeyFrame = false;
+
+    /**
+     * Constructor.
+     * @param url media file/URL/...
+     */
+    public SelectiveMediaReader(String url)
+    {
+        super(url, IContainer.make());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAddDynamicStreams(boolean streamsCanBeAddedDynamically)
+    {
+        mStreamsCanBeAddedDynamically = streamsCanBeAddedDynamically;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean canAddDynamicStreams()
+    {
+        return mStreamsCanBeAddedDynamically;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setQueryMetaData(boolean queryStreamMetaData)
+    {
+        mQueryStreamMetaData = queryStreamMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean willQueryMetaData()
+    {
+        return mQueryStreamMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCloseOnEofOnly(boolean closeOnEofOnly)
+    {
+        mCloseOnEofOnly = closeOnEofOnly;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean willCloseOnEofOnly()
+    {
+        return mCloseOnEofOnly;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBufferedImageTypeToGenerate(int bufferedImageType)
+    {
+        mBufferedImageType = bufferedImageType;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getBufferedImageTypeToGenerate()
+    {
+        return mBufferedImageType;
+    }
+
+    /**
+     * Set the preferred language used to choose the default audio track.
+     * @param language ISO 639 language code or null for no preference
+     */
+    public void setPreferredLanguage(String language)
+    {
+        mPreferredLanguage = language;
+        mResolveDefaults = true;
+    }
+
+    /**
+     * Select the audio or video track to decode. Can be called at any time,
+     * the change is applied before the next packet is read.
+     * @param type CODEC_TYPE_AUDIO or CODEC_TYPE_VIDEO
+     * @param streamIndex index of the stream, DEFAULT_TRACK or NO_TRACK
+     */
+    public void selectTrack(ICodec.Type type, int streamIndex)
+    {
+        if(type == ICodec.Type.CODEC_TYPE_AUDIO)
+        {
+            mRequestedAudio = streamIndex;
+        }
+        else if(type == ICodec.Type.CODEC_TYPE_VIDEO)
+        {
+            mRequestedVideo = streamIndex;
+        }
+        else
+        {
+            throw new IllegalArgumentException("Cannot select track of type " +
+                    type);
+        }
+    }
+
+    /**
+     * Suspend or resume video decoding, audio is not affected. Once
+     * resumed, video is decoded again from the next key frame.
+     * @param suspended true to drop video packets, false to decode them
+     */
+    public void setVideoSuspended(boolean suspended)
+    {
+        mVideoSuspended = suspended;
+    }
+
+    /**
+     * Set the listener that receives video packets instead of decoded
+     * pictures. The mode (decoding or not) has to be chosen before the
+     * reader is opened, only the listener can change afterwards.
+     * @param listener listener or null to decode video
+     */
+    void setVideoPacketListener(VideoPacketListener listener)
+    {
+        mVideoPacketListener = listener;
+    }
+
+    /**
+     * Get the listener that receives video packets.
+     * @return listener or null if video is decoded
+     */
+    VideoPacketListener getVideoPacketListener()
+    {
+        return mVideoPacketListener;
+    }
+
+    /**
+     * Set the listener of direct mode. Decoded media are then handed to it
+     * instead of being notified with mediatool events (only media events:
+     * open, close, add stream, ... are still notified).
+     * @param listener listener or null to fire mediatool events
+     */
+    void setDirectListener(DirectMediaListener listener)
+    {
+        mDirectListener = listener;
+    }
+
+    /**
+     * Get the listener of direct mode.
+     * @return listener or null if mediatool events are fired
+     */
+    DirectMediaListener getDirectListener()
+    {
+        return mDirectListener;
+    }
+
+    /**
+     * Set the tee that receives every packet read, before track selection
+     * and decoding.
+     * @param tee tee or null if none
+     */
+    void setPacketTee(PacketTee tee)
+    {
+        mPacketTee = tee;
+    }
+
+    /**
+     * Get the tee that receives every packet read.
+     * @return tee or null if none
+     */
+    PacketTee getPacketTee()
+    {
+        return mPacketTee;
+    }
+
+    /**
+     * Set the statistics updated with decoding and read times.
+     * @param stats statistics or null if none
+     */
+    void setPlaybackStats(PlaybackStats stats)
+    {
+        mStats = stats;
+    }
+
+    /**
+     * Set record-only mode: packets are handed to the tee but nothing is
+     * decoded. Once disabled, video is decoded again from the next key
+     * frame.
+     * @param recordOnly true to only record packets, false to decode them
+     */
+    void setRecordOnly(boolean recordOnly)
+    {
+        mRecordOnly = recordOnly;
+    }
+
+    /**
+     * Returns if record-only mode is enabled.
+     * @return true if packets are not decoded, false otherwise
+     */
+    boolean isRecordOnly()
+    {
+        return mRecordOnly;
+    }
+
+    /**
+     * Returns if video decoding is suspended.
+     * @return true if video decoding is suspended, false otherwise
+     */
+    public boolean isVideoSuspended()
+    {
+        return mVideoSuspended;
+    }
+
+    /**
+     * Get the selected track of a type.
+     * @param type CODEC_TYPE_AUDIO or CODEC_TYPE_VIDEO
+     * @return index of the selected stream or NO_TRACK
+     */
+    public synchronized int getSelectedTrack(ICodec.Type type)
+    {
+        if(type == ICodec.Type.CODEC_TYPE_AUDIO)
+        {
+            return mAudioStream;
+        }
+        else if(type == ICodec.Type.CODEC_TYPE_VIDEO)
+        {
+            return mVideoStream;
+        }
+        return NO_TRACK;
+    }
+
+    /**
+     * Get audio and video tracks of the media. Reader has to be opened.
+     * @return list of tracks
+     */
+    public List<Track> getTracks()
+    {
+        List<Track> tracks = new ArrayList<Track>();
+        IContainer container = getContainer();
+
+        if(!isOpen())
+        {
+            return tracks;
+        }
+
+        for(int i = 0 ; i < container.getNumStreams() ; i++)
+        {
+            IStream stream = container.getStream(i);
+            IStreamCoder coder = stream.getStreamCoder();
+            ICodec.Type type = coder.getCodecType();
+            ICodec codec = coder.getCodec();
+
+            if(type == ICodec.Type.CODEC_TYPE_AUDIO ||
+                    type == ICodec.Type.CODEC_TYPE_VIDEO)
+            {
+                tracks.add(new Track(i, type, stream.getLanguage(),
+                            (codec != null) ? codec.getName() : "unknown"));
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void open()
+    {
+        int rv = getContainer().open(getUrl(), IContainer.Type.READ, null,
+                mStreamsCanBeAddedDynamically, mQueryStreamMetaData);
+
+        if(rv < 0)
+        {
+            throw new RuntimeException("could not open: " + getUrl() + ": " +
+                    IError.make(rv).getDescription());
+        }
+
+        setShouldCloseContainer(true);
+        super.onOpen(new OpenEvent(this));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close()
+    {
+        for(IStreamCoder coder : mCoders.values())
+        {
+            if(coder.isOpen())
+            {
+                coder.close();
+            }
+            coder.delete();
+        }
+        mCoders.clear();
+        mTypes.clear();
+        releasePools();
+        mResolveDefaults = true;
+
+        synchronized(this)
+        {
+            mAudioStream = NO_TRACK;
+            mVideoStream = NO_TRACK;
+        }
+
+        if(getShouldCloseContainer())
+        {
+            int rv = getContainer().close();
+
+            if(rv < 0)
+            {
+                throw new RuntimeException("error " +
+                        IError.make(rv).getDescription() +
+                        ", failed close IContainer " + getContainer() +
+                        " for " + getUrl());
+            }
+            setShouldCloseContainer(false);
+        }
+
+        super.onClose(new CloseEvent(this));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public IError readPacket()
+    {
+        IPacket packet = null;
+        DirectMediaListener direct = mDirectListener;
+
+        /* packet is reused unless a listener may keep a reference */
+        boolean reusePacket = direct != null && mVideoPacketListener == null;
+
+        if(!isOpen())
+        {
+            open();
+        }
+
+        applyTrackSelection();
+
+        try
+        {
+            int rv = 0;
+            int streamIndex = 0;
+            IStreamCoder coder = null;
+
+            if(reusePacket)
+            {
+                if(mPacket == null)
+                {
+                    mPacket = IPacket.make();
+                }
+                packet = mPacket;
+            }
+            else
+            {
+                packet = IPacket.make();
+            }
+            PlaybackStats stats = mStats;
+            long start = System.nanoTime();
+
+            rv = getContainer().readNextPacket(packet);
+            if(stats != null)
+            {
+                stats.onRead(System.nanoTime() - start);
+            }
+
+            if(rv >= 0 && PipelineTrace.isEnabled())
+            {
+                PipelineTrace.record(PipelineTrace.Stage.READ,
+                        packet.getStreamIndex(),
+                        MediaCore.getPacketTimeStamp(packet), start);
+            }
+
+            if(rv < 0)
+            {
+                IError error = IError.make(rv);
+
+                if(!mCloseOnEofOnly ||
+                        error.getType() == IError.Type.ERROR_EOF)
+                {
+                    close();
+                }
+                return error;
+            }
+
+            if(direct == null)
+            {
+                super.onReadPacket(new ReadPacketEvent(this, packet));
+            }
+
+            PacketTee tee = mPacketTee;
+
+            if(tee != null)
+            {
+                tee.onPacket(getContainer(), packet);
+            }
+
+            /* a stream has been added dynamically, it may be a default
+             * one
+             */
+            streamIndex = packet.getStreamIndex();
+            if(!mTypes.containsKey(streamIndex))
+            {
+                mResolveDefaults = true;
+                applyTrackSelection();
+            }
+
+            /* drop packets of unselected streams before any decoding */
+            if(!isSelected(streamIndex, packet))
+            {
+                return null;
+            }
+
+            coder = getStreamCoder(streamIndex);
+            if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_AUDIO)
+            {
+                decodeAudio(coder, packet, direct);
+            }
+            else if(coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO)
+            {
+                VideoPacketListener listener = mVideoPacketListener;
+
+                if(listener != null)
+                {
+                    listener.onVideoPacket(packet);
+                }
+                else
+                {
+                    decodeVideo(coder, packet, direct);
+                }
+            }
+        }
+        finally
+        {
+            if(packet != null && !reusePacket)
+            {
+                packet.delete();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Apply track selection requested by the user.
+     */
+    private void applyTrackSelection()
+    {
+        int audio = mRequestedAudio;
+        int video = mRequestedVideo;
+
+        if(mResolveDefaults)
+        {
+            mResolveDefaults = false;
+            mDefaultAudio = findDefaultTrack(ICodec.Type.CODEC_TYPE_AUDIO);
+            mDefaultVideo = findDefaultTrack(ICodec.Type.CODEC_TYPE_VIDEO);
+        }
+
+        if(audio == DEFAULT_TRACK)
+        {
+            audio = mDefaultAudio;
+        }
+
+        if(video == DEFAULT_TRACK)
+        {
+            video = mDefaultVideo;
+        }
+
+        synchronized(this)
+        {
+            if(audio != mAudioStream)
+            {
+                closeStreamCoder(mAudioStream);
+                mAudioStream = audio;
+            }
+
+            if(video != mVideoStream)
+            {
+                closeStreamCoder(mVideoStream);
+                mVideoStream = video;
+                mWaitVideoKeyFrame = true;
+            }
+        }
+    }
+
+    /**
+     * Find the default track of a type: the first one, or for audio the
+     * first one in the preferred language if any.
+     * @param type CODEC_TYPE_AUDIO or CODEC_TYPE_VIDEO
+     * @return stream index or NO_TRACK if there is no track of this type
+     */
+    private int findDefaultTrack(ICodec.Type type)
+    {
+        int numStreams = getContainer().getNumStreams();
+        String language = mPreferredLanguage;
+        int found = NO_TRACK;
+
+        for(int i = 0 ; i < numStreams ; i++)
+        {
+            if(getStreamType(i) != type)
+            {
+                continue;
+            }
+
+            if(found == NO_TRACK)
+            {
+                found = i;
+            }
+
+            if(language == null || type != ICodec.Type.CODEC_TYPE_AUDIO)
+            {
+                break;
+            }
+
+            IStream stream = getContainer().getStream(i);
+            if(language.equalsIgnoreCase(stream.getLanguage()))
+            {
+                found = i;
+                break;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns if a packet belongs to a selected stream.
+     * @param streamIndex index of the stream
+     * @param packet the packet
+     * @return true if packet has to be decoded, false otherwise
+     */
+    private boolean isSelected(int streamIndex, IPacket packet)
+    {
+        if(mRecordOnly)
+        {
+            mWaitVideoKeyFrame = true;
+            return false;
+        }
+
+        if(streamIndex == mAudioStream)
+        {
+            return true;
+        }
+
+        if(streamIndex == mVideoStream)
+        {
+            if(mVideoSuspended)
+            {
+                /* resync on a key frame once resumed */
+                mWaitVideoKeyFrame = true;
+                return false;
+            }
+
+            if(mWaitVideoKeyFrame)
+            {
+                if(!packet.isKeyPacket())
+                {
+                    return false;
+                }
+                mWaitVideoKeyFrame = false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get codec type of a stream.
+     * @param streamIndex index of the stream
+     * @return codec type
+     */
+    private ICodec.Type getStreamType(int streamIndex)
+    {
+        ICodec.Type type = mTypes.get(streamIndex);
+
+        if(type == null)
+        {
+            IStream stream = getContainer().getStream(streamIndex);
+
+            type = stream.getStreamCoder().getCodecType();
+            mTypes.put(streamIndex, type);
+        }
+        return type;
+    }
+
+    /**
+     * Get the coder of a stream, open it and notify listeners that the
+     * stream has been added if needed. Video coder is not opened if video
+     * packets are handed to a VideoPacketListener.
+     * @param streamIndex index of the stream
+     * @return stream coder
+     */
+    private IStreamCoder getStreamCoder(int streamIndex)
+    {
+        IStreamCoder coder = mCoders.get(streamIndex);
+
+        if(coder == null)
+        {
+            IStream stream = getContainer().getStream(streamIndex);
+            boolean decode = false;
+
+            coder = stream.getStreamCoder();
+            decode = coder.getCodecType() != ICodec.Type.CODEC_TYPE_VIDEO ||
+                mVideoPacketListener == null;
+
+            if(decode && coder.open() < 0)
+            {
+                throw new RuntimeException("could not open coder for stream: " +
+                        streamIndex);
+            }
+
+            mCoders.put(streamIndex, coder);
+            super.onAddStream(new AddStreamEvent(this, streamIndex));
+
+            if(decode)
+            {
+                super.onOpenCoder(new OpenCoderEvent(this, streamIndex));
+            }
+        }
+        return coder;
+    }
+
+    /**
+     * Close the coder of a deselected stream and notify listeners.
+     * @param streamIndex index of the stream
+     */
+    private void closeStreamCoder(int streamIndex)
+    {
+        IStreamCoder coder = mCoders.remove(streamIndex);
+
+        if(coder != null)
+        {
+            if(coder.isOpen())
+            {
+                coder.close();
+            }
+            coder.delete();
+            super.onCloseCoder(new CloseCoderEvent(this, streamIndex));
+        }
+    }
+
+    /**
+     * Decode audio packet and notify listeners.
+     * @param coder audio stream coder
+     * @param packet audio packet
+     * @param direct listener of direct mode or null to fire events
+     */
+    private void decodeAudio(IStreamCoder coder, IPacket packet,
+            DirectMediaListener direct)
+    {
+        int offset = 0;
+
+        while(offset < packet.getSize())
+        {
+            IAudioSamples samples = (direct != null) ? getPooledSamples(coder) :
+                IAudioSamples.make(1024, coder.getChannels());
+
+            try
+            {
+                long start = System.nanoTime();
+                int rv = coder.decodeAudio(samples, packet, offset);
+
+                recordDecodeTime(false, samples.isComplete(),
+                        System.nanoTime() - start);
+                if(PipelineTrace.isEnabled())
+                {
+                    PipelineTrace.record(PipelineTrace.Stage.DECODE,
+                            packet.getStreamIndex(), samples.getTimeStamp(),
+                            start);
+                }
+
+                if(rv < 0)
+                {
+                    throw new RuntimeException("error " + rv +
+                            " decoding audio");
+                }
+                offset += rv;
+
+                if(samples.isComplete())
+                {
+                    if(direct != null)
+                    {
+                        direct.onDecodedAudio(this, samples,
+                                packet.getStreamIndex());
+                    }
+                    else
+                    {
+                        super.onAudioSamples(new AudioSamplesEvent(this,
+                                    samples, packet.getStreamIndex()));
+                    }
+                }
+            }
+            finally
+            {
+                if(direct == null)
+                {
+                    samples.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Record decoding time in statistics, if any.
+     * @param video true for video, false for audio
+     * @param complete true if a frame has been decoded
+     * @param nanos decoding time in nanoseconds
+     */
+    private void recordDecodeTime(boolean video, boolean complete,
+            long nanos)
+    {
+        PlaybackStats stats = mStats;
+
+        if(stats == null)
+        {
+            return;
+        }
+
+        if(complete)
+        {
+            stats.onDecoded(video, nanos);
+        }
+        else
+        {
+            stats.onDecodeTime(nanos);
+        }
+    }
+
+    /**
+     * Decode video packet and notify listeners.
+     * @param coder video stream coder
+     * @param packet video packet
+     * @param direct listener of direct mode or null to fire events
+     */
+    private void decodeVideo(IStreamCoder coder, IPacket packet,
+            DirectMediaListener direct)
+    {
+        int offset = 0;
+
+        while(offset < packet.getSize())
+        {
+            IVideoPicture picture = (direct != null) ?
+                getPooledPicture(coder) : IVideoPicture.make(
+                        coder.getPixelType(), coder.getWidth(),
+                        coder.getHeight());
+
+            try
+            {
+                long start = System.nanoTime();
+                int rv = coder.decodeVideo(picture, packet, offset);
+
+                recordDecodeTime(true, picture.isComplete(),
+                        System.nanoTime() - start);
+                if(PipelineTrace.isEnabled())
+                {
+                    PipelineTrace.record(PipelineTrace.Stage.DECODE,
+                            packet.getStreamIndex(), picture.getTimeStamp(),
+                            start);
+                }
+
+                if(rv < 0)
+                {
+                    throw new RuntimeException("error " + rv +
+                            " decoding video");
+                }
+                offset += rv;
+
+                if(picture.isComplete())
+                {
+                    if(direct != null)
+                    {
+                        direct.onDecodedVideo(this, picture,
+                                packet.getStreamIndex());
+                    }
+                    else
+                    {
+                        super.onVideoPicture(new VideoPictureEvent(this,
+                                    picture, packet.getStreamIndex()));
+                    }
+                }
+            }
+            finally
+            {
+                if(direct == null)
+                {
+                    picture.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get audio samples that nobody else references anymore, or new ones.
+     * New samples are kept in the pool unless it is full, in that case
+     * an entry still in use is dropped from the pool.
+     * @param coder audio stream coder
+     * @return audio samples to decode into
+     */
+    private IAudioSamples getPooledSamples(IStreamCoder coder)
+    {
+        IAudioSamples samples = null;
+
+        for(IAudioSamples s : mSamplesPool)
+        {
+            /* only the pool references it */
+            if(s.getCurrentRefCount() == 1 &&
+                    s.getChannels() == coder.getChannels())
+            {
+                return s;
+            }
+        }
+
+        samples = IAudioSamples.make(1024, coder.getChannels());
+        if(mSamplesPool.size() >= MAX_POOL_SIZE)
+        {
+            /* pool is full, drop an entry still in use */
+            mSamplesPool.remove(0).delete();
+        }
+        mSamplesPool.add(samples);
+        return samples;
+    }
+
+    /**
+     * Get a video picture that nobody else references anymore, or a new
+     * one. New pictures are kept in the pool unless it is full, in that
+     * case an entry still in use is dropped from the pool.
+     * @param coder video stream coder
+     * @return video picture to decode into
+     */
+    private IVideoPicture getPooledPicture(IStreamCoder coder)
+    {
+        IVideoPicture picture = null;
+
+        for(IVideoPicture p : mPicturesPool)
+        {
+            /* only the pool references it */
+            if(p.getCurrentRefCount() == 1 &&
+                    p.getPixelType() == coder.getPixelType() &&
+                    p.getWidth() == coder.getWidth() &&
+                    p.getHeight() == coder.getHeight())
+            {
+                return p;
+            }
+        }
+
+        picture = IVideoPicture.make(coder.getPixelType(), coder.getWidth(),
+                coder.getHeight());
+        if(mPicturesPool.size() >= MAX_POOL_SIZE)
+        {
+            /* pool is full, drop an entry still in use */
+            mPicturesPool.remove(0).delete();
+        }
+        mPicturesPool.add(picture);
+        return picture;
+    }
+
+    /**
+     * Release packet, samples and pictures kept for reuse.
+     */
+    private void releasePools()
+    {
+        for(IAudioSamples samples : mSamplesPool)
+        {
+            samples.delete();
+        }
+        mSamplesPool.clear();
+
+        for(IVideoPicture picture : mPicturesPool)
+        {
+            picture.delete();
+        }
+        mPicturesPool.clear();
+
+        if(mPacket != null)
+        {
+            mPacket.delete();
+            mPacket = null;
+        }
+    }
+
+    /**
+     * Get string representation of the reader.
+     * @return string representation
+     */
+    public String toString()
+    {
+        return "SelectiveMediaReader[" + getUrl() + "]";
+    }
+}
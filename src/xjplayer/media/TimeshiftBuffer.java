@@ -0,0 +1,541 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import com.xuggle.xuggler.*;
+
+import xjplayer.io.*;
+
+/**
+ * Timeshift buffer that records the packets read from a live source into a
+ * ring of segment files on disk, so that playback can be paused and moved
+ * back in time while the source is still recorded.
+ *
+ * Packets are remuxed (no re-encoding) into MPEG-TS segments starting on
+ * key frames. Muxing happens in the demux thread but bytes are written by
+ * an AsyncFileWriter, so recording never blocks on storage. If storage is
+ * too slow and bytes of a segment are dropped, or if writing it fails, the
+ * whole segment is discarded rather than played corrupted. The oldest
+ * segments are deleted once the ring is full.
+ *
+ * @author Sebastien Vincent
+ */
+public class TimeshiftBuffer implements PacketTee
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(TimeshiftBuffer.class.getName());
+
+    /**
+     * Default duration (in microseconds) of a segment.
+     */
+    public static final long DEFAULT_SEGMENT_DURATION = 4000000;
+
+    /**
+     * Default number of segments (30 minutes of media).
+     */
+    public static final int DEFAULT_SEGMENT_COUNT = 450;
+
+    /**
+     * Container format of segments.
+     */
+    private static final String SEGMENT_FORMAT = "mpegts";
+
+    /**
+     * Directory of segment files.
+     */
+    private final File mDirectory;
+
+    /**
+     * Minimum duration (in microseconds) of a segment.
+     */
+    private final long mSegmentDuration;
+
+    /**
+     * Maximum number of segments kept.
+     */
+    private final int mSegmentCount;
+
+    /**
+     * Writer of segment files.
+     */
+    private final AsyncFileWriter mWriter;
+
+    /**
+     * Complete segments, oldest first.
+     */
+    private final LinkedList<Segment> mSegments = new LinkedList<Segment>();
+
+    /**
+     * Segment being recorded.
+     */
+    private Segment mCurrent = null;
+
+    /**
+     * Muxer of the segment being recorded.
+     */
+    private IContainer mMuxer = null;
+
+    /**
+     * Number of segments discarded because bytes were dropped or could not
+     * be written.
+     */
+    private int mBrokenSegments = 0;
+
+    /**
+     * Container recorded.
+     */
+    private IContainer mSource = null;
+
+    /**
+     * If the container recorded has a video stream.
+     */
+    private boolean mHasVideo = false;
+
+    /**
+     * If the container recorded cannot be remuxed.
+     */
+    private boolean mFailed = false;
+
+    /**
+     * Sequence number of the next segment.
+     */
+    private int mSequence = 0;
+
+    /**
+     * If the buffer has been closed.
+     */
+    private boolean mClosed = false;
+
+    /**
+     * Constructor.
+     * @param directory directory of segment files
+     */
+    public TimeshiftBuffer(File directory)
+    {
+        this(directory, DEFAULT_SEGMENT_DURATION, DEFAULT_SEGMENT_COUNT);
+    }
+
+    /**
+     * Constructor.
+     * @param directory directory of segment files
+     * @param segmentDuration minimum duration (in microseconds) of a
+     * segment
+     * @param segmentCount maximum number of segments kept
+     */
+    public TimeshiftBuffer(File directory, long segmentDuration,
+            int segmentCount)
+    {
+        mDirectory = directory;
+        mSegmentDuration = segmentDuration;
+        mSegmentCount = segmentCount;
+        mWriter = new AsyncFileWriter();
+        mDirectory.mkdirs();
+    }
+
+    /**
+     * Record a packet. It is called by the demux thread.
+     * @param container container the packet has been read from
+     * @param packet the packet
+     */
+    public synchronized void onPacket(IContainer container, IPacket packet)
+    {
+        if(mClosed || (mFailed && container == mSource))
+        {
+            return;
+        }
+
+        long timeStamp = MediaCore.getPacketTimeStamp(packet);
+
+        if(container != mSource || mMuxer == null ||
+                (timeStamp != Global.NO_PTS &&
+                 timeStamp - mCurrent.getStart() >= mSegmentDuration &&
+                 isSegmentStart(container, packet)))
+        {
+            finishSegment();
+            if(timeStamp == Global.NO_PTS ||
+                    !startSegment(container, timeStamp))
+            {
+                return;
+            }
+        }
+
+        /* streams added after the segment started are not recorded */
+        if(packet.getStreamIndex() >= mMuxer.getNumStreams())
+        {
+            return;
+        }
+
+        if(timeStamp != Global.NO_PTS && timeStamp > mCurrent.mEnd)
+        {
+            mCurrent.mEnd = timeStamp;
+        }
+
+        if(mMuxer.writePacket(packet) < 0)
+        {
+            logger.fine("Cannot record packet of stream " +
+                    packet.getStreamIndex());
+        }
+    }
+
+    /**
+     * Get complete segments, oldest first.
+     * @return list of segments
+     */
+    public synchronized List<Segment> getSegments()
+    {
+        removeFailedSegments();
+        return new ArrayList<Segment>(mSegments);
+    }
+
+    /**
+     * Get the complete segment that contains a timestamp.
+     * @param timeStamp timestamp (in microseconds) of the recorded source
+     * @return segment or null if timestamp is out of the buffered window
+     */
+    public synchronized Segment getSegment(long timeStamp)
+    {
+        removeFailedSegments();
+        for(Segment segment : mSegments)
+        {
+            if(timeStamp >= segment.getStart() &&
+                    timeStamp <= segment.getEnd())
+            {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get start of the buffered window.
+     * @return timestamp (in microseconds) of the oldest media recorded or
+     * Global.NO_PTS if no segment is complete
+     */
+    public synchronized long getStart()
+    {
+        removeFailedSegments();
+        return mSegments.isEmpty() ? Global.NO_PTS :
+            mSegments.getFirst().getStart();
+    }
+
+    /**
+     * Get end of the buffered window.
+     * @return timestamp (in microseconds) of the newest media of complete
+     * segments or Global.NO_PTS if no segment is complete
+     */
+    public synchronized long getEnd()
+    {
+        removeFailedSegments();
+        return mSegments.isEmpty() ? Global.NO_PTS :
+            mSegments.getLast().getEnd();
+    }
+
+    /**
+     * Get the recording position.
+     * @return timestamp (in microseconds) of the newest packet recorded or
+     * Global.NO_PTS if nothing has been recorded
+     */
+    public synchronized long getPosition()
+    {
+        return (mCurrent != null) ? mCurrent.getEnd() : getEnd();
+    }
+
+    /**
+     * Get the number of bytes that could not be recorded because storage
+     * was too slow.
+     * @return number of bytes dropped
+     */
+    public long getDroppedBytes()
+    {
+        return mWriter.getDroppedBytes();
+    }
+
+    /**
+     * Get the number of segments discarded because storage was too slow or
+     * failed. They are missing from the buffered window.
+     * @return number of segments discarded
+     */
+    public synchronized int getBrokenSegments()
+    {
+        removeFailedSegments();
+        return mBrokenSegments;
+    }
+
+    /**
+     * Stop recording and delete all segments. The buffer cannot be used
+     * anymore.
+     */
+    public synchronized void close()
+    {
+        finishSegment();
+        mClosed = true;
+
+        for(Segment segment : mSegments)
+        {
+            mWriter.delete(segment.getFile());
+        }
+        mSegments.clear();
+        mWriter.shutdown();
+    }
+
+    /**
+     * Returns if a packet can start a segment: a video key frame or, for
+     * sources without video, any key packet.
+     * @param container container the packet has been read from
+     * @param packet the packet
+     * @return true if a segment can start with the packet
+     */
+    private boolean isSegmentStart(IContainer container, IPacket packet)
+    {
+        if(!packet.isKeyPacket())
+        {
+            return false;
+        }
+
+        return !mHasVideo || container.getStream(packet.getStreamIndex()).
+            getStreamCoder().getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO;
+    }
+
+    /**
+     * Start a new segment with the streams of a container.
+     * @param container container recorded
+     * @param timeStamp timestamp (in microseconds) of the first packet
+     * @return true if segment has been started, false if the container
+     * cannot be remuxed
+     */
+    private boolean startSegment(IContainer container, long timeStamp)
+    {
+        File file = new File(mDirectory, "timeshift-" + mSequence + ".ts");
+        AsyncFileWriter.AsyncChannel channel = mWriter.open(file);
+        IContainer muxer = IContainer.make();
+        IContainerFormat format = IContainerFormat.make();
+
+        if(container != mSource)
+        {
+            mSource = container;
+            mFailed = false;
+            mHasVideo = false;
+        }
+
+        format.setOutputFormat(SEGMENT_FORMAT, null, null);
+        if(muxer.open(channel, format) < 0)
+        {
+            logger.warning("Cannot create segment " + file);
+            mFailed = true;
+            return false;
+        }
+
+        for(int i = 0 ; i < container.getNumStreams() ; i++)
+        {
+            IStreamCoder source = container.getStream(i).getStreamCoder();
+            IStreamCoder coder = IStreamCoder.make(
+                    IStreamCoder.Direction.ENCODING, source);
+
+            if(source.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO)
+            {
+                mHasVideo = true;
+            }
+
+            muxer.addNewStream(i).setStreamCoder(coder);
+            coder.open();
+        }
+
+        if(muxer.writeHeader() < 0)
+        {
+            logger.warning("Cannot remux " + container.getURL() +
+                    ", timeshift disabled");
+            muxer.close();
+            mWriter.delete(file);
+            mFailed = true;
+            return false;
+        }
+
+        mMuxer = muxer;
+        mCurrent = new Segment(file, channel, mSequence++, timeStamp);
+        return true;
+    }
+
+    /**
+     * Finish the segment being recorded, if any, and delete the oldest
+     * segments if the ring is full.
+     */
+    private void finishSegment()
+    {
+        if(mMuxer == null)
+        {
+            return;
+        }
+
+        mMuxer.writeTrailer();
+        for(int i = 0 ; i < mMuxer.getNumStreams() ; i++)
+        {
+            mMuxer.getStream(i).getStreamCoder().close();
+        }
+        mMuxer.close();
+        mMuxer = null;
+
+        /* the muxer has written everything, a segment missing bytes would
+         * not play correctly
+         */
+        if(mCurrent.getChannel().getDroppedBytes() > 0)
+        {
+            logger.warning("Storage too slow, segment " +
+                    mCurrent.getSequence() + " discarded (" +
+                    mCurrent.getChannel().getDroppedBytes() +
+                    " bytes dropped)");
+            mWriter.delete(mCurrent.getFile());
+            mBrokenSegments++;
+        }
+        else
+        {
+            mSegments.add(mCurrent);
+        }
+        mCurrent = null;
+
+        while(mSegments.size() > mSegmentCount)
+        {
+            mWriter.delete(mSegments.removeFirst().getFile());
+        }
+    }
+
+    /**
+     * Discard the complete segments the I/O thread failed to write. This is
+     * known asynchronously, after the segment has been finished.
+     */
+    private void removeFailedSegments()
+    {
+        Iterator<Segment> it = mSegments.iterator();
+
+        while(it.hasNext())
+        {
+            Segment segment = it.next();
+
+            if(segment.getChannel().isFailed())
+            {
+                logger.warning("Cannot write segment " +
+                        segment.getSequence() + ", discarded");
+                it.remove();
+                mWriter.delete(segment.getFile());
+                mBrokenSegments++;
+            }
+        }
+    }
+
+    /**
+     * Segment file of the timeshift buffer.
+     *
+     * @author Sebastien Vincent
+     */
+    public static class Segment
+    {
+        /**
+         * Segment file.
+         */
+        private final File mFile;
+
+        /**
+         * Channel the segment is written to.
+         */
+        private final AsyncFileWriter.AsyncChannel mChannel;
+
+        /**
+         * Sequence number.
+         */
+        private final int mSequence;
+
+        /**
+         * Timestamp (in microseconds) of the first packet.
+         */
+        private final long mStart;
+
+        /**
+         * Timestamp (in microseconds) of the last packet.
+         */
+        private volatile long mEnd;
+
+        /**
+         * Constructor.
+         * @param file segment file
+         * @param channel channel the segment is written to
+         * @param sequence sequence number
+         * @param start timestamp of the first packet
+         */
+        Segment(File file, AsyncFileWriter.AsyncChannel channel,
+                int sequence, long start)
+        {
+            mFile = file;
+            mChannel = channel;
+            mSequence = sequence;
+            mStart = start;
+            mEnd = start;
+        }
+
+        /**
+         * Get segment file.
+         * @return segment file
+         */
+        public File getFile()
+        {
+            return mFile;
+        }
+
+        /**
+         * Get the channel the segment is written to.
+         * @return channel
+         */
+        AsyncFileWriter.AsyncChannel getChannel()
+        {
+            return mChannel;
+        }
+
+        /**
+         * Get sequence number, it increases with each segment.
+         * @return sequence number
+         */
+        public int getSequence()
+        {
+            return mSequence;
+        }
+
+        /**
+         * Get timestamp of the first packet.
+         * @return timestamp in microseconds
+         */
+        public long getStart()
+        {
+            return mStart;
+        }
+
+        /**
+         * Get timestamp of the last packet.
+         * @return timestamp in microseconds
+         */
+        public long getEnd()
+        {
+            return mEnd;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Description of an audio or video track (stream) of a media.
+ *
+ * @author Sebastien Vincent
+ */
+public class Track
+{
+    /**
+     * Index of the stream in the container.
+     */
+    private final int mIndex;
+
+    /**
+     * Type of the track (audio, video, ...).
+     */
+    private final ICodec.Type mType;
+
+    /**
+     * Language of the track, null if unknown.
+     */
+    private final String mLanguage;
+
+    /**
+     * Codec name.
+     */
+    private final String mCodecName;
+
+    /**
+     * Constructor.
+     * @param index index of the stream in the container
+     * @param type type of the track
+     * @param language language of the track or null if unknown
+     * @param codecName codec name
+     */
+    public Track(int index, ICodec.Type type, String language,
+            String codecName)
+    {
+        mIndex = index;
+        mType = type;
+        mLanguage = language;
+        mCodecName = codecName;
+    }
+
+    /**
+     * Get index of the stream in the container.
+     * @return stream index
+     */
+    public int getIndex()
+    {
+        return mIndex;
+    }
+
+    /**
+     * Get type of the track.
+     * @return type of the track
+     */
+    public ICodec.Type getType()
+    {
+        return mType;
+    }
+
+    /**
+     * Get language of the track.
+     * @return language or null if unknown
+     */
+    public String getLanguage()
+    {
+        return mLanguage;
+    }
+
+    /**
+     * Get codec name.
+     * @return codec name
+     */
+    public String getCodecName()
+    {
+        return mCodecName;
+    }
+
+    /**
+     * Get string representation of the track.
+     * @return string representation
+     */
+    public String toString()
+    {
+        return "#" + mIndex + " " + mType + " " + mCodecName +
+            (mLanguage != null ? " (" + mLanguage + ")" : "");
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import com.xuggle.xuggler.*;
+import com.xuggle.xuggler.video.*;
+
+import xjplayer.media.event.*;
+
+/**
+ * Fast forward and rewind by displaying key frames only.
+ *
+ * The media is read on its own container. Audio packets and video
+ * packets that are not key frames are skipped without being decoded, and
+ * key frames are displayed at the pace of the speed: a key frame t
+ * microseconds after the start position is displayed t / speed
+ * microseconds after trick play started. Key frames already late are not
+ * converted nor displayed. Rewinding seeks to the key frame before the
+ * one displayed.
+ *
+ * @author Sebastien Vincent
+ */
+class TrickPlayer extends Thread
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger =
+        Logger.getLogger(TrickPlayer.class.getName());
+
+    /**
+     * Lowest speed.
+     */
+    public static final int MIN_SPEED = 4;
+
+    /**
+     * Highest speed.
+     */
+    public static final int MAX_SPEED = 32;
+
+    /**
+     * Time (in microseconds) after which a key frame is too late to be
+     * displayed.
+     */
+    private static final long LATE_WINDOW =
+        TimeUnit.MICROSECONDS.convert(100, TimeUnit.MILLISECONDS);
+
+    /**
+     * Step (in microseconds) by which rewinding seeks back before the key
+     * frame displayed.
+     */
+    private static final long REWIND_STEP =
+        TimeUnit.MICROSECONDS.convert(500, TimeUnit.MILLISECONDS);
+
+    /**
+     * Media file/URL/...
+     */
+    private final String mUrl;
+
+    /**
+     * Core whose video listeners display the key frames.
+     */
+    private final MediaCore mCore;
+
+    /**
+     * Speed, negative to rewind.
+     */
+    private volatile int mSpeed;
+
+    /**
+     * If speed changed since the pace was computed.
+     */
+    private volatile boolean mSpeedChanged = false;
+
+    /**
+     * If trick play has been stopped.
+     */
+    private volatile boolean mStopped = false;
+
+    /**
+     * Timestamp (in microseconds) of the last key frame displayed.
+     */
+    private volatile long mPosition;
+
+    /**
+     * Constructor.
+     * @param url media file/URL/...
+     * @param core core whose video listeners display the key frames
+     * @param position start position in microseconds
+     * @param speed speed, negative to rewind
+     */
+    public TrickPlayer(String url, MediaCore core, long position, int speed)
+    {
+        setName("TrickPlayer");
+        setDaemon(true);
+        mUrl = url;
+        mCore = core;
+        mPosition = position;
+        mSpeed = clampSpeed(speed);
+    }
+
+    /**
+     * Clamp a speed between MIN_SPEED and MAX_SPEED, keeping its direction.
+     * @param speed speed, negative to rewind
+     * @return clamped speed
+     */
+    public static int clampSpeed(int speed)
+    {
+        int value = Math.min(MAX_SPEED, Math.max(MIN_SPEED,
+                    Math.abs(speed)));
+
+        return (speed < 0) ? -value : value;
+    }
+
+    /**
+     * Change the speed.
+     * @param speed speed, negative to rewind
+     */
+    public void setSpeed(int speed)
+    {
+        mSpeed = clampSpeed(speed);
+        mSpeedChanged = true;
+    }
+
+    /**
+     * Get the speed.
+     * @return speed, negative when rewinding
+     */
+    public int getSpeed()
+    {
+        return mSpeed;
+    }
+
+    /**
+     * Get the position.
+     * @return timestamp (in microseconds) of the last key frame displayed
+     */
+    public long getPosition()
+    {
+        return mPosition;
+    }
+
+    /**
+     * Stop trick play and wait for the thread to finish.
+     * @return timestamp (in microseconds) of the last key frame displayed
+     */
+    public long terminate()
+    {
+        mStopped = true;
+        interrupt();
+
+        try
+        {
+            join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return mPosition;
+    }
+
+    /**
+     * Entry point of the thread.
+     */
+    public void run()
+    {
+        IContainer container = IContainer.make();
+        IStreamCoder coder = null;
+        IConverter converter = null;
+        IVideoPicture picture = null;
+        IPacket packet = IPacket.make();
+        int index = -1;
+
+        try
+        {
+            if(container.open(mUrl, IContainer.Type.READ, null) < 0)
+            {
+                logger.warning("Cannot open " + mUrl + " for trick play");
+                return;
+            }
+
+            for(int i = 0 ; i < container.getNumStreams() && index == -1 ;
+                    i++)
+            {
+                if(container.getStream(i).getStreamCoder().getCodecType() ==
+                        ICodec.Type.CODEC_TYPE_VIDEO)
+                {
+                    index = i;
+                }
+            }
+
+            if(index == -1 ||
+                    container.getStream(index).getStreamCoder().open() < 0)
+            {
+                logger.warning("Cannot decode video of " + mUrl +
+                        " for trick play");
+                return;
+            }
+
+            coder = container.getStream(index).getStreamCoder();
+            converter = MediaCore.createConverter(coder.getPixelType(),
+                    coder.getWidth(), coder.getHeight());
+            picture = IVideoPicture.make(coder.getPixelType(),
+                    coder.getWidth(), coder.getHeight());
+
+            play(container, index, coder, converter, picture, packet);
+        }
+        catch(InterruptedException e)
+        {
+            /* stopped */
+        }
+        finally
+        {
+            packet.delete();
+            if(picture != null)
+            {
+                picture.delete();
+            }
+            if(converter != null)
+            {
+                converter.delete();
+            }
+            if(coder != null)
+            {
+                coder.close();
+            }
+            container.close();
+        }
+    }
+
+    /**
+     * Display key frames at the pace of the speed until stopped or the
+     * end (or beginning) of media is reached.
+     * @param container container of the media
+     * @param index index of the video stream
+     * @param coder opened decoder of the video stream
+     * @param converter converter of the pictures
+     * @param picture picture to decode into
+     * @param packet packet to read into
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void play(IContainer container, int index, IStreamCoder coder,
+            IConverter converter, IVideoPicture picture, IPacket packet)
+        throws InterruptedException
+    {
+        long wallStart = getWallTime();
+        long mediaStart = mPosition;
+        long rewindStep = REWIND_STEP;
+
+        container.seekKeyFrame(-1, Long.MIN_VALUE, mPosition, mPosition, 0);
+
+        while(!mStopped)
+        {
+            int speed = mSpeed;
+            long pts = 0;
+            long due = 0;
+
+            if(mSpeedChanged)
+            {
+                mSpeedChanged = false;
+                wallStart = getWallTime();
+                mediaStart = mPosition;
+            }
+
+            if(speed < 0)
+            {
+                long target = mPosition - rewindStep;
+
+                if(mPosition <= 0 || container.seekKeyFrame(-1,
+                            Long.MIN_VALUE, target, target, 0) < 0)
+                {
+                    break;
+                }
+            }
+
+            pts = decodeKeyFrame(container, index, coder, picture, packet);
+            if(pts == Global.NO_PTS)
+            {
+                /* end of media */
+                break;
+            }
+
+            if(speed < 0 && pts >= mPosition)
+            {
+                if(mPosition - rewindStep <= 0)
+                {
+                    /* already on the first key frame */
+                    break;
+                }
+
+                /* same key frame again, seek further back */
+                rewindStep *= 2;
+                continue;
+            }
+            rewindStep = REWIND_STEP;
+
+            due = wallStart + (pts - mediaStart) / speed;
+            while(!mStopped && !mSpeedChanged && getWallTime() < due)
+            {
+                TimeUnit.MICROSECONDS.sleep(due - getWallTime());
+            }
+
+            mPosition = pts;
+            if(getWallTime() - due <= LATE_WINDOW)
+            {
+                mCore.fireNewImageEvent(new NewImageEvent(mCore,
+                            converter.toImage(picture), pts));
+            }
+        }
+    }
+
+    /**
+     * Read packets until a video key frame and decode it. Other packets are
+     * skipped without being decoded.
+     * @param container container of the media
+     * @param index index of the video stream
+     * @param coder opened decoder of the video stream
+     * @param picture picture to decode into
+     * @param packet packet to read into
+     * @return timestamp (in microseconds) of the decoded picture or
+     * Global.NO_PTS at the end of media
+     */
+    private long decodeKeyFrame(IContainer container, int index,
+            IStreamCoder coder, IVideoPicture picture, IPacket packet)
+    {
+        while(!mStopped && container.readNextPacket(packet) >= 0)
+        {
+            int offset = 0;
+
+            if(packet.getStreamIndex() != index || !packet.isKey())
+            {
+                continue;
+            }
+
+            while(offset < packet.getSize())
+            {
+                int rv = coder.decodeVideo(picture, packet, offset);
+
+                if(rv < 0)
+                {
+                    break;
+                }
+
+                offset += rv;
+                if(picture.isComplete())
+                {
+                    return picture.getTimeStamp();
+                }
+            }
+        }
+        return Global.NO_PTS;
+    }
+
+    /**
+     * Get the wall clock time.
+     * @return time in microseconds
+     */
+    private static long getWallTime()
+    {
+        return TimeUnit.MICROSECONDS.convert(System.nanoTime(),
+                TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Listener that receives compressed video packets instead of decoded
+ * pictures (low-memory mode).
+ *
+ * @author Sebastien Vincent
+ */
+interface VideoPacketListener
+{
+    /**
+     * Indicates that a video packet of a selected stream has been read.
+     * The packet is released by the caller once this method returns, so a
+     * reference has to be kept to use it later.
+     * @param packet compressed video packet
+     */
+    public void onVideoPacket(IPacket packet);
+}
@@ -0,0 +1,119 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs media jobs (transcoding, remuxing, ...) concurrently on a pool of
+ * worker threads and reports the throughput of each job as it completes.
+ *
+ * @author Sebastien Vincent
+ */
+public class BatchTranscoder
+{
+    /**
+     * Worker threads.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Constructor with one worker per available processor.
+     */
+    public BatchTranscoder()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param threads number of worker threads
+     */
+    public BatchTranscoder(int threads)
+    {
+        mExecutor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * Run jobs and wait for their completion.
+     * @param jobs jobs to run
+     * @param out stream where each job report is printed as it completes,
+     * null to print nothing
+     * @return jobs in completion order
+     * @throws InterruptedException if interrupted while waiting, remaining
+     * jobs are cancelled
+     */
+    public List<MediaJob> run(Collection<? extends MediaJob> jobs,
+            PrintStream out) throws InterruptedException
+    {
+        CompletionService<MediaJob> service =
+            new ExecutorCompletionService<MediaJob>(mExecutor);
+        List<Future<MediaJob>> futures = new ArrayList<Future<MediaJob>>();
+        List<MediaJob> done = new ArrayList<MediaJob>();
+        long start = System.nanoTime();
+
+        for(MediaJob job : jobs)
+        {
+            futures.add(service.submit(job));
+        }
+
+        try
+        {
+            for(int i = 0 ; i < futures.size() ; i++)
+            {
+                MediaJob job = service.take().get();
+
+                done.add(job);
+                if(out != null)
+                {
+                    out.println(job.getReport());
+                }
+            }
+        }
+        catch(ExecutionException e)
+        {
+            /* MediaJob catches its own errors */
+            throw new IllegalStateException(e.getCause());
+        }
+        finally
+        {
+            for(Future<MediaJob> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+
+        if(out != null)
+        {
+            out.println(String.format("%d jobs in %.1f s", done.size(),
+                        (System.nanoTime() - start) / 1000000000.0));
+        }
+        return done;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown()
+    {
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import org.apache.commons.cli.*;
+
+/**
+ * Command line of the playback benchmark.
+ *
+ * @author Sebastien Vincent
+ */
+public final class BenchmarkCommand
+{
+    /**
+     * Name of the command.
+     */
+    public static final String NAME = "benchmark";
+
+    /**
+     * Constructor.
+     */
+    private BenchmarkCommand()
+    {
+    }
+
+    /**
+     * Get the options of the command.
+     * @return options
+     */
+    private static Options getOptions()
+    {
+        Options options = new Options();
+
+        options.addOption("h", "help", false, "print this help");
+        options.addOption("c", "clock", false,
+                "present media at its timestamp (real time playback)");
+        options.addOption("n", "no-convert", false,
+                "do not convert pictures to images");
+        options.addOption("l", "low-memory", false,
+                "decode video packets just before their presentation");
+        return options;
+    }
+
+    /**
+     * Print usage.
+     * @param options options of the command
+     */
+    private static void printUsage(Options options)
+    {
+        new HelpFormatter().printHelp(NAME + " [options] file...", options);
+    }
+
+    /**
+     * Run the command. Files are played one after another so that they do
+     * not compete for the processors.
+     * @param args arguments of the command
+     * @return true if all files have been played, false otherwise
+     */
+    public static boolean run(String args[])
+    {
+        Options options = getOptions();
+        CommandLine line = null;
+        boolean ret = true;
+
+        try
+        {
+            line = new GnuParser().parse(options, args);
+        }
+        catch(ParseException e)
+        {
+            System.err.println(e.getMessage());
+            printUsage(options);
+            return false;
+        }
+
+        if(line.hasOption("h") || line.getArgs().length == 0)
+        {
+            printUsage(options);
+            return line.hasOption("h");
+        }
+
+        for(String input : line.getArgs())
+        {
+            PlaybackBenchmark benchmark = new PlaybackBenchmark(input);
+
+            benchmark.setClockEnabled(line.hasOption("c"));
+            benchmark.setVideoConversion(!line.hasOption("n"));
+            benchmark.setLowMemory(line.hasOption("l"));
+
+            try
+            {
+                benchmark.run();
+                System.out.println(benchmark.getReport());
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            catch(RuntimeException e)
+            {
+                System.out.println(input + ": failed: " + e.getMessage());
+                ret = false;
+            }
+        }
+        return ret;
+    }
+}
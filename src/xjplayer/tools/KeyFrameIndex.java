@@ -0,0 +1,250 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.util.*;
+
+import com.xuggle.xuggler.*;
+
+import xjplayer.media.*;
+
+/**
+ * Timestamps of the key frames of the first video stream of a media,
+ * obtained by reading its packets without decoding them.
+ *
+ * Key frames are indexed by presentation timestamp, as decoded pictures
+ * are: with B-frames, pictures decoded after a key frame may be presented
+ * before it, from its decoding timestamp on.
+ *
+ * @author Sebastien Vincent
+ */
+public class KeyFrameIndex
+{
+    /**
+     * Index of the video stream, -1 if none.
+     */
+    private final int mStreamIndex;
+
+    /**
+     * Presentation timestamps (in microseconds) of the key frames in
+     * ascending order.
+     */
+    private final long mKeyFrames[];
+
+    /**
+     * Timestamp (in microseconds) of the first packet.
+     */
+    private final long mStart;
+
+    /**
+     * Timestamp (in microseconds) of the last packet.
+     */
+    private final long mEnd;
+
+    /**
+     * Constructor.
+     * @param streamIndex index of the video stream, -1 if none
+     * @param keyFrames timestamps of the key frames in ascending order
+     * @param start timestamp of the first packet
+     * @param end timestamp of the last packet
+     */
+    private KeyFrameIndex(int streamIndex, long keyFrames[], long start,
+            long end)
+    {
+        mStreamIndex = streamIndex;
+        mKeyFrames = keyFrames;
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Read all packets of a media and index its key frames.
+     * @param url media file/URL/...
+     * @return index
+     * @throws IllegalArgumentException if media cannot be opened
+     */
+    public static KeyFrameIndex scan(String url)
+    {
+        IContainer container = IContainer.make();
+        IPacket packet = IPacket.make();
+        int streamIndex = -1;
+        long start = Global.NO_PTS;
+        long end = Global.NO_PTS;
+        SortedSet<Long> keyFrames = new TreeSet<Long>();
+        long ret[] = null;
+        int i = 0;
+
+        if(container.open(url, IContainer.Type.READ, null) < 0)
+        {
+            throw new IllegalArgumentException("Cannot open " + url);
+        }
+
+        try
+        {
+            for(i = 0 ; i < container.getNumStreams() ; i++)
+            {
+                if(container.getStream(i).getStreamCoder().getCodecType() ==
+                        ICodec.Type.CODEC_TYPE_VIDEO)
+                {
+                    streamIndex = i;
+                    break;
+                }
+            }
+
+            while(container.readNextPacket(packet) >= 0)
+            {
+                long timeStamp = MediaCore.getPacketTimeStamp(packet);
+
+                if(timeStamp == Global.NO_PTS)
+                {
+                    continue;
+                }
+
+                start = (start == Global.NO_PTS) ? timeStamp :
+                    Math.min(start, timeStamp);
+                end = Math.max(end, timeStamp);
+
+                if(packet.getStreamIndex() == streamIndex &&
+                        packet.isKey())
+                {
+                    keyFrames.add(getPresentationTime(packet, timeStamp));
+                }
+            }
+        }
+        finally
+        {
+            packet.delete();
+            container.close();
+        }
+
+        ret = new long[keyFrames.size()];
+        i = 0;
+        for(long keyFrame : keyFrames)
+        {
+            ret[i++] = keyFrame;
+        }
+        return new KeyFrameIndex(streamIndex, ret, start, end);
+    }
+
+    /**
+     * Get the presentation timestamp of a packet.
+     * @param packet the packet
+     * @param timeStamp timestamp of the packet, returned if it has no
+     * presentation timestamp
+     * @return timestamp in microseconds
+     */
+    private static long getPresentationTime(IPacket packet, long timeStamp)
+    {
+        IRational timeBase = packet.getTimeBase();
+
+        if(packet.getPts() == Global.NO_PTS || timeBase == null)
+        {
+            return timeStamp;
+        }
+        return (long)(packet.getPts() * timeBase.getDouble() * 1000000);
+    }
+
+    /**
+     * Get the index of the indexed video stream.
+     * @return stream index or -1 if media has no video
+     */
+    public int getStreamIndex()
+    {
+        return mStreamIndex;
+    }
+
+    /**
+     * Get the presentation timestamps of the key frames.
+     * @return timestamps (in microseconds) in ascending order
+     */
+    public long[] getKeyFrames()
+    {
+        return mKeyFrames.clone();
+    }
+
+    /**
+     * Get the timestamp of the first packet.
+     * @return timestamp in microseconds or Global.NO_PTS if media is empty
+     */
+    public long getStart()
+    {
+        return mStart;
+    }
+
+    /**
+     * Get the timestamp of the last packet.
+     * @return timestamp in microseconds or Global.NO_PTS if media is empty
+     */
+    public long getEnd()
+    {
+        return mEnd;
+    }
+
+    /**
+     * Get the key frame at or before a timestamp.
+     * @param timeStamp timestamp in microseconds
+     * @return timestamp of the key frame or Global.NO_PTS if there is none
+     */
+    public long getKeyFrameBefore(long timeStamp)
+    {
+        int index = Arrays.binarySearch(mKeyFrames, timeStamp);
+
+        if(index < 0)
+        {
+            index = -index - 2;
+        }
+        return (index >= 0) ? mKeyFrames[index] : Global.NO_PTS;
+    }
+
+    /**
+     * Split the media in segments of about the same duration that start on
+     * key frames.
+     * @param count maximum number of segments
+     * @return boundaries (in microseconds) of the segments: segment i is
+     * [boundaries[i], boundaries[i + 1]), the last boundary is
+     * Long.MAX_VALUE
+     */
+    public long[] split(int count)
+    {
+        List<Long> boundaries = new ArrayList<Long>();
+        long ret[] = null;
+
+        boundaries.add(Long.MIN_VALUE);
+        for(int i = 1 ; i < count && mStart != Global.NO_PTS ; i++)
+        {
+            long keyFrame = getKeyFrameBefore(
+                    mStart + (mEnd - mStart) * i / count);
+
+            if(keyFrame != Global.NO_PTS &&
+                    keyFrame > boundaries.get(boundaries.size() - 1) &&
+                    keyFrame > mKeyFrames[0])
+            {
+                boundaries.add(keyFrame);
+            }
+        }
+        boundaries.add(Long.MAX_VALUE);
+
+        ret = new long[boundaries.size()];
+        for(int i = 0 ; i < ret.length ; i++)
+        {
+            ret[i] = boundaries.get(i);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless job that reads an input media and writes an output file, run by
+ * a BatchTranscoder.
+ *
+ * Errors are caught and kept so that one failing file does not stop the
+ * others.
+ *
+ * @author Sebastien Vincent
+ */
+public abstract class MediaJob implements Callable<MediaJob>
+{
+    /**
+     * Input media.
+     */
+    private final String mInput;
+
+    /**
+     * Output file.
+     */
+    private final String mOutput;
+
+    /**
+     * Elapsed time (in nanoseconds) of the job.
+     */
+    private long mElapsedTime = 0;
+
+    /**
+     * Error if the job failed, null otherwise.
+     */
+    private Throwable mError = null;
+
+    /**
+     * Constructor.
+     * @param input input media
+     * @param output output file
+     */
+    protected MediaJob(String input, String output)
+    {
+        mInput = input;
+        mOutput = output;
+    }
+
+    /**
+     * Get the input media.
+     * @return input media
+     */
+    public String getInput()
+    {
+        return mInput;
+    }
+
+    /**
+     * Get the output file.
+     * @return output file
+     */
+    public String getOutput()
+    {
+        return mOutput;
+    }
+
+    /**
+     * Run the job.
+     * @return this job
+     */
+    public MediaJob call()
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            execute();
+        }
+        catch(RuntimeException e)
+        {
+            mError = e;
+        }
+        mElapsedTime = System.nanoTime() - start;
+        return this;
+    }
+
+    /**
+     * Do the work of the job.
+     * @throws RuntimeException if the job fails
+     */
+    protected abstract void execute();
+
+    /**
+     * Returns if the job failed.
+     * @return true if the job failed, false otherwise
+     */
+    public boolean isFailed()
+    {
+        return mError != null;
+    }
+
+    /**
+     * Get the error of the job.
+     * @return error or null if the job succeeded
+     */
+    public Throwable getError()
+    {
+        return mError;
+    }
+
+    /**
+     * Get the elapsed time of the job.
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedTime()
+    {
+        return mElapsedTime;
+    }
+
+    /**
+     * Get the elapsed time of the job.
+     * @return elapsed time in seconds
+     */
+    protected double getSeconds()
+    {
+        return mElapsedTime / 1000000000.0;
+    }
+
+    /**
+     * Get the rate at which the output has been written.
+     * @return rate in KB/s
+     */
+    protected double getOutputRate()
+    {
+        double seconds = getSeconds();
+
+        return (seconds > 0) ? new File(mOutput).length() / 1024 / seconds :
+            0;
+    }
+
+    /**
+     * Get a report of the job.
+     * @return report with throughput
+     */
+    public String getReport()
+    {
+        if(mError != null)
+        {
+            return mInput + ": failed after " + String.format("%.1f s: %s",
+                    getSeconds(), mError.getMessage());
+        }
+        return mInput + " -> " + mOutput + ": " + getStatistics();
+    }
+
+    /**
+     * Get the statistics of a successful job.
+     * @return statistics with throughput
+     */
+    protected abstract String getStatistics();
+}
@@ -0,0 +1,471 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import xjplayer.media.*;
+import xjplayer.media.event.*;
+
+/**
+ * Plays a media headless through the whole MediaControl/MediaCore pipeline
+ * and measures its throughput.
+ *
+ * Audio samples are discarded instead of being written to a Java Sound
+ * line and no listener displays the images. By default the presentation
+ * clock is disabled so media is presented as soon as it is decoded: the
+ * frame rate is then the decode (and convert) throughput of the machine.
+ * Time spent in each stage of the pipeline is taken from PipelineTrace and
+ * memory allocated by all threads is sampled while playing.
+ *
+ * @author Sebastien Vincent
+ */
+public class PlaybackBenchmark
+{
+    /**
+     * Interval (in milliseconds) at which allocations and A/V offset are
+     * sampled.
+     */
+    private static final long SAMPLE_INTERVAL = 100;
+
+    /**
+     * Stages of the pipeline.
+     */
+    private static final PipelineTrace.Stage STAGES[] =
+        PipelineTrace.Stage.values();
+
+    /**
+     * Media to play.
+     */
+    private final String mMedia;
+
+    /**
+     * If media is presented at its timestamp (real time playback).
+     */
+    private boolean mClockEnabled = false;
+
+    /**
+     * If pictures are converted to images.
+     */
+    private boolean mVideoConversion = true;
+
+    /**
+     * If video packets are decoded just before their presentation.
+     */
+    private boolean mLowMemory = false;
+
+    /**
+     * Elapsed time (in nanoseconds) of the playback.
+     */
+    private long mElapsedTime = 0;
+
+    /**
+     * Number of video frames presented.
+     */
+    private long mVideoFrames = 0;
+
+    /**
+     * Number of audio frames presented.
+     */
+    private long mAudioFrames = 0;
+
+    /**
+     * Number of video frames dropped (late or early).
+     */
+    private long mVideoFramesDropped = 0;
+
+    /**
+     * Number of audio frames dropped (late or early).
+     */
+    private long mAudioFramesDropped = 0;
+
+    /**
+     * Largest A/V offset (absolute value in microseconds) sampled.
+     */
+    private long mMaxAVOffset = 0;
+
+    /**
+     * Bytes allocated by all threads while playing, -1 if unknown.
+     */
+    private long mAllocatedBytes = -1;
+
+    /**
+     * Number of events per stage of the pipeline.
+     */
+    private final long mStageCounts[] = new long[STAGES.length];
+
+    /**
+     * Total duration (in nanoseconds) of events per stage of the pipeline.
+     */
+    private final long mStageTimes[] = new long[STAGES.length];
+
+    /**
+     * Constructor.
+     * @param media media file/URL/... to play
+     */
+    public PlaybackBenchmark(String media)
+    {
+        mMedia = media;
+    }
+
+    /**
+     * Get the media played.
+     * @return media file/URL/...
+     */
+    public String getMedia()
+    {
+        return mMedia;
+    }
+
+    /**
+     * Enable or disable the presentation clock (disabled by default).
+     * @param enabled true to play at real time, false to present media as
+     * soon as it is decoded
+     */
+    public void setClockEnabled(boolean enabled)
+    {
+        mClockEnabled = enabled;
+    }
+
+    /**
+     * Enable or disable video conversion (enabled by default).
+     * @param enabled true to convert pictures to images
+     */
+    public void setVideoConversion(boolean enabled)
+    {
+        mVideoConversion = enabled;
+    }
+
+    /**
+     * Enable or disable low-memory mode (disabled by default).
+     * @param lowMemory true to decode video packets just before their
+     * presentation
+     */
+    public void setLowMemory(boolean lowMemory)
+    {
+        mLowMemory = lowMemory;
+    }
+
+    /**
+     * Play the media up to its end.
+     * @throws InterruptedException if interrupted while playing
+     * @throws RuntimeException if media cannot be played
+     */
+    public void run() throws InterruptedException
+    {
+        final CountDownLatch end = new CountDownLatch(1);
+        MediaControl control = new MediaControl();
+        MediaCore core = control.getMediaCore();
+        PlaybackStats stats = core.getPlaybackStats();
+        boolean trace = !PipelineTrace.isEnabled();
+        Map<Long, Long> startBytes = getThreadAllocatedBytes();
+        Map<Long, Long> bytes = new HashMap<Long, Long>();
+        long start = 0;
+
+        core.setClockEnabled(mClockEnabled);
+        core.setAudioOutput(false);
+        core.setVideoConversion(mVideoConversion);
+        control.setLowMemory(mLowMemory);
+        control.addVideoListener(new VideoListener()
+                {
+                    public void newImage(NewImageEvent event)
+                    {
+                    }
+
+                    public void endOfVideo(VideoEvent event)
+                    {
+                        end.countDown();
+                    }
+                });
+
+        if(trace)
+        {
+            /* only the per stage totals are needed */
+            PipelineTrace.start(2);
+        }
+
+        for(int i = 0 ; i < STAGES.length ; i++)
+        {
+            mStageCounts[i] = -PipelineTrace.getCount(STAGES[i]);
+            mStageTimes[i] = -PipelineTrace.getTime(STAGES[i]);
+        }
+
+        try
+        {
+            control.loadMedia(mMedia);
+            stats.reset();
+            start = System.nanoTime();
+            control.start();
+
+            while(!end.await(SAMPLE_INTERVAL, TimeUnit.MILLISECONDS))
+            {
+                mMaxAVOffset = Math.max(mMaxAVOffset,
+                        Math.abs(stats.getAVOffset()));
+                sampleAllocatedBytes(bytes);
+            }
+            mElapsedTime = System.nanoTime() - start;
+            sampleAllocatedBytes(bytes);
+        }
+        finally
+        {
+            control.dispose();
+
+            for(int i = 0 ; i < STAGES.length ; i++)
+            {
+                mStageCounts[i] += PipelineTrace.getCount(STAGES[i]);
+                mStageTimes[i] += PipelineTrace.getTime(STAGES[i]);
+            }
+
+            if(trace)
+            {
+                PipelineTrace.stop();
+            }
+        }
+
+        mVideoFrames = stats.getVideoFramesPresented();
+        mAudioFrames = stats.getAudioFramesPresented();
+        mVideoFramesDropped = stats.getVideoFramesDroppedLate() +
+            stats.getVideoFramesDroppedEarly();
+        mAudioFramesDropped = stats.getAudioFramesDroppedLate() +
+            stats.getAudioFramesDroppedEarly();
+
+        if(startBytes != null)
+        {
+            mAllocatedBytes = 0;
+            for(Map.Entry<Long, Long> entry : bytes.entrySet())
+            {
+                Long before = startBytes.get(entry.getKey());
+
+                mAllocatedBytes += entry.getValue() -
+                    (before != null ? before : 0);
+            }
+        }
+    }
+
+    /**
+     * Get the bytes allocated by each live thread.
+     * @return bytes allocated per thread identifier, null if the JVM cannot
+     * measure them
+     */
+    private static Map<Long, Long> getThreadAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Map<Long, Long> ret = new HashMap<Long, Long>();
+        long ids[] = null;
+        long bytes[] = null;
+
+        /* HotSpot extension, looked up so that other JVMs do not fail to
+         * link it
+         */
+        try
+        {
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+
+            if(!type.isInstance(bean) || !(Boolean)type.getMethod(
+                        "isThreadAllocatedMemorySupported").invoke(bean))
+            {
+                return null;
+            }
+
+            ids = bean.getAllThreadIds();
+            bytes = (long[])type.getMethod("getThreadAllocatedBytes",
+                    long[].class).invoke(bean, (Object)ids);
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+        catch(LinkageError e)
+        {
+            return null;
+        }
+
+        for(int i = 0 ; i < ids.length ; i++)
+        {
+            /* -1 for threads that died meanwhile */
+            if(bytes[i] >= 0)
+            {
+                ret.put(ids[i], bytes[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sample the bytes allocated by live threads. Threads of the pipeline
+     * end with the media, so the allocations of a thread are the last ones
+     * sampled before it ended.
+     * @param bytes bytes allocated per thread identifier, updated
+     */
+    private static void sampleAllocatedBytes(Map<Long, Long> bytes)
+    {
+        Map<Long, Long> sample = getThreadAllocatedBytes();
+
+        if(sample != null)
+        {
+            bytes.putAll(sample);
+        }
+    }
+
+    /**
+     * Get the elapsed time of the playback.
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedTime()
+    {
+        return mElapsedTime;
+    }
+
+    /**
+     * Get the number of video frames presented.
+     * @return number of video frames
+     */
+    public long getVideoFrames()
+    {
+        return mVideoFrames;
+    }
+
+    /**
+     * Get the number of audio frames presented.
+     * @return number of audio frames
+     */
+    public long getAudioFrames()
+    {
+        return mAudioFrames;
+    }
+
+    /**
+     * Get the number of video frames dropped.
+     * @return number of video frames dropped late or early
+     */
+    public long getVideoFramesDropped()
+    {
+        return mVideoFramesDropped;
+    }
+
+    /**
+     * Get the number of audio frames dropped.
+     * @return number of audio frames dropped late or early
+     */
+    public long getAudioFramesDropped()
+    {
+        return mAudioFramesDropped;
+    }
+
+    /**
+     * Get the largest A/V offset sampled while playing.
+     * @return absolute value of the offset in microseconds
+     */
+    public long getMaxAVOffset()
+    {
+        return mMaxAVOffset;
+    }
+
+    /**
+     * Get the video frame rate.
+     * @return video frames presented per second
+     */
+    public double getFramesPerSecond()
+    {
+        return (mElapsedTime > 0) ? mVideoFrames * 1000000000.0 /
+            mElapsedTime : 0;
+    }
+
+    /**
+     * Get the bytes allocated while playing.
+     * @return bytes allocated by all threads, -1 if the JVM cannot measure
+     * them
+     */
+    public long getAllocatedBytes()
+    {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * Get the allocation rate.
+     * @return MB allocated per second, -1 if the JVM cannot measure it
+     */
+    public double getAllocationRate()
+    {
+        if(mAllocatedBytes < 0 || mElapsedTime <= 0)
+        {
+            return -1;
+        }
+        return mAllocatedBytes / 1048576.0 * 1000000000.0 / mElapsedTime;
+    }
+
+    /**
+     * Get the number of events of a stage of the pipeline.
+     * @param stage stage of the pipeline
+     * @return number of events
+     */
+    public long getStageCount(PipelineTrace.Stage stage)
+    {
+        return mStageCounts[stage.ordinal()];
+    }
+
+    /**
+     * Get the time spent in a stage of the pipeline.
+     * @param stage stage of the pipeline
+     * @return total duration in nanoseconds
+     */
+    public long getStageTime(PipelineTrace.Stage stage)
+    {
+        return mStageTimes[stage.ordinal()];
+    }
+
+    /**
+     * Get a report of the benchmark.
+     * @return report with frame rate, allocation rate and time per stage
+     */
+    public String getReport()
+    {
+        StringBuilder report = new StringBuilder();
+        double allocationRate = getAllocationRate();
+
+        report.append(String.format("%s: %d video frames in %.2f s " +
+                    "(%.1f fps), %d audio frames, %d/%d dropped, ", mMedia,
+                    mVideoFrames, mElapsedTime / 1000000000.0,
+                    getFramesPerSecond(), mAudioFrames, mVideoFramesDropped,
+                    mAudioFramesDropped));
+        report.append((allocationRate < 0) ? "allocation rate unknown" :
+                String.format("%.1f MB/s allocated", allocationRate));
+        if(mClockEnabled)
+        {
+            report.append(String.format(", A/V offset up to %.1f ms",
+                        mMaxAVOffset / 1000.0));
+        }
+
+        for(PipelineTrace.Stage stage : STAGES)
+        {
+            long count = getStageCount(stage);
+            long time = getStageTime(stage);
+
+            if(count > 0)
+            {
+                report.append(String.format("%n  %-8s %8d events %10.1f ms " +
+                            "%8.1f us/event", stage.toString().toLowerCase(),
+                            count, time / 1000000.0, time / 1000.0 / count));
+            }
+        }
+        return report.toString();
+    }
+}
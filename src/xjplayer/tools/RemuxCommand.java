@@ -0,0 +1,202 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.cli.*;
+
+/**
+ * Command line of the remuxer: change the container of files or cut them
+ * without decoding.
+ *
+ * @author Sebastien Vincent
+ */
+public final class RemuxCommand
+{
+    /**
+     * Name of the command.
+     */
+    public static final String NAME = "remux";
+
+    /**
+     * Constructor.
+     */
+    private RemuxCommand()
+    {
+    }
+
+    /**
+     * Get the options of the command.
+     * @return options
+     */
+    private static Options getOptions()
+    {
+        Options options = new Options();
+
+        options.addOption("h", "help", false, "print this help");
+        options.addOption("o", "output", true,
+                "output directory (default: current directory)");
+        options.addOption("f", "format", true,
+                "output file extension (default: " +
+                TranscodeCommand.DEFAULT_FORMAT + ")");
+        options.addOption("b", "start", true,
+                "start of the cut ([[hh:]mm:]ss[.xxx]), moved back to the " +
+                "previous key frame");
+        options.addOption("e", "end", true,
+                "end of the cut ([[hh:]mm:]ss[.xxx]), moved forward to the " +
+                "next key frame");
+        options.addOption("j", "jobs", true,
+                "number of files remuxed concurrently " +
+                "(default: number of processors)");
+        return options;
+    }
+
+    /**
+     * Print usage.
+     * @param options options of the command
+     */
+    private static void printUsage(Options options)
+    {
+        new HelpFormatter().printHelp(NAME + " [options] file...", options);
+    }
+
+    /**
+     * Run the command.
+     * @param args arguments of the command
+     * @return true if all files have been remuxed, false otherwise
+     */
+    public static boolean run(String args[])
+    {
+        Options options = getOptions();
+        CommandLine line = null;
+        File dir = null;
+        String format = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        List<Remuxer> jobs = new ArrayList<Remuxer>();
+        BatchTranscoder pool = null;
+        Set<File> outputs = null;
+
+        try
+        {
+            line = new GnuParser().parse(options, args);
+            if(line.hasOption("j"))
+            {
+                threads = Integer.parseInt(line.getOptionValue("j"));
+            }
+            if(line.hasOption("b"))
+            {
+                start = parseTime(line.getOptionValue("b"));
+            }
+            if(line.hasOption("e"))
+            {
+                end = parseTime(line.getOptionValue("e"));
+            }
+        }
+        catch(ParseException e)
+        {
+            System.err.println(e.getMessage());
+            printUsage(options);
+            return false;
+        }
+        catch(NumberFormatException e)
+        {
+            System.err.println("Bad number: " + e.getMessage());
+            return false;
+        }
+
+        if(line.hasOption("h") || line.getArgs().length == 0)
+        {
+            printUsage(options);
+            return line.hasOption("h");
+        }
+
+        dir = new File(line.getOptionValue("o", "."));
+        format = line.getOptionValue("f", TranscodeCommand.DEFAULT_FORMAT);
+        outputs = new HashSet<File>();
+        for(String input : line.getArgs())
+        {
+            File output = TranscodeCommand.getOutput(input, dir, format);
+            Remuxer job = null;
+
+            if(!TranscodeCommand.checkOutput(input, output, outputs))
+            {
+                return false;
+            }
+
+            job = new Remuxer(input, output.getPath());
+            job.setRange(start, end);
+            jobs.add(job);
+        }
+
+        pool = new BatchTranscoder(threads);
+        try
+        {
+            for(MediaJob job : pool.run(jobs, System.out))
+            {
+                if(job.isFailed())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parse a time.
+     * @param time time as [[hh:]mm:]ss[.xxx]
+     * @return time in microseconds
+     * @throws NumberFormatException if time is malformed
+     */
+    static long parseTime(String time)
+    {
+        String fields[] = time.split(":");
+        double seconds = 0;
+
+        if(fields.length > 3)
+        {
+            throw new NumberFormatException(time);
+        }
+
+        for(int i = 0 ; i < fields.length ; i++)
+        {
+            double value = Double.parseDouble(fields[i]);
+
+            if(value < 0 || (i > 0 && value >= 60))
+            {
+                throw new NumberFormatException(time);
+            }
+            seconds = seconds * 60 + value;
+        }
+        return Math.round(seconds * 1000000);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.util.*;
+
+import com.xuggle.xuggler.*;
+
+import xjplayer.media.*;
+
+/**
+ * Remuxes a media to another container, optionally cut, by copying its
+ * packets with a StreamCopy: nothing is decoded nor encoded.
+ *
+ * Cut times are relative to the start of the media. Cuts are aligned on
+ * the key frames of the first video stream: the output starts at the key
+ * frame at or before the start of the cut and ends before the first key
+ * frame at or after its end. Timestamps are rebased so that the output
+ * starts at zero.
+ *
+ * @author Sebastien Vincent
+ */
+public class Remuxer extends MediaJob
+{
+    /**
+     * Start (in microseconds from the start of the media) of the cut,
+     * Long.MIN_VALUE if not cut.
+     */
+    private long mStart = Long.MIN_VALUE;
+
+    /**
+     * End (in microseconds from the start of the media) of the cut,
+     * Long.MAX_VALUE if not cut.
+     */
+    private long mEnd = Long.MAX_VALUE;
+
+    /**
+     * Number of packets copied.
+     */
+    private long mPackets = 0;
+
+    /**
+     * Number of bytes copied.
+     */
+    private long mBytes = 0;
+
+    /**
+     * Constructor.
+     * @param input input media
+     * @param output output file, its format is guessed from its name
+     */
+    public Remuxer(String input, String output)
+    {
+        super(input, output);
+    }
+
+    /**
+     * Cut the media.
+     * @param start start (in microseconds from the start of the media) of
+     * the cut, Long.MIN_VALUE for the beginning of media
+     * @param end end (in microseconds from the start of the media) of the
+     * cut, Long.MAX_VALUE for the end of media
+     */
+    public void setRange(long start, long end)
+    {
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Get the number of packets copied.
+     * @return number of packets
+     */
+    public long getPackets()
+    {
+        return mPackets;
+    }
+
+    /**
+     * Get the number of bytes copied.
+     * @return number of bytes
+     */
+    public long getBytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * Copy the packets.
+     */
+    protected void execute()
+    {
+        IContainer input = IContainer.make();
+        IPacket packet = IPacket.make();
+        StreamCopy copy = null;
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+
+        if(input.open(getInput(), IContainer.Type.READ, null) < 0)
+        {
+            packet.delete();
+            throw new IllegalArgumentException("Cannot open " + getInput());
+        }
+
+        try
+        {
+            /* timestamps of the media may not start at zero (MPEG-TS) */
+            long origin = input.getStartTime();
+
+            if(origin == Global.NO_PTS)
+            {
+                origin = 0;
+            }
+            if(mStart != Long.MIN_VALUE)
+            {
+                start = origin + mStart;
+            }
+            if(mEnd != Long.MAX_VALUE)
+            {
+                end = origin + mEnd;
+            }
+
+            if(start != Long.MIN_VALUE && input.seekKeyFrame(-1,
+                        Long.MIN_VALUE, start, start, 0) < 0)
+            {
+                throw new IllegalArgumentException("Cannot seek " +
+                        getInput());
+            }
+
+            copy = new StreamCopy(getOutput(), input);
+            copy(input, packet, copy, start, end);
+        }
+        finally
+        {
+            packet.delete();
+            if(copy != null)
+            {
+                copy.close();
+            }
+            input.close();
+        }
+    }
+
+    /**
+     * Copy the packets of the cut.
+     * @param input input container, positioned at the start of the cut
+     * @param packet packet to read into
+     * @param copy output
+     * @param cutStart timestamp (in microseconds) of the start of the cut,
+     * Long.MIN_VALUE if not cut
+     * @param cutEnd timestamp (in microseconds) of the end of the cut,
+     * Long.MAX_VALUE if not cut
+     */
+    private void copy(IContainer input, IPacket packet, StreamCopy copy,
+            long cutStart, long cutEnd)
+    {
+        int video = -1;
+        long origin = Global.NO_PTS;
+        long end = Global.NO_PTS;
+        Set<Integer> ended = new HashSet<Integer>();
+
+        for(int i = 0 ; i < input.getNumStreams() ; i++)
+        {
+            if(input.getStream(i).getStreamCoder().getCodecType() ==
+                    ICodec.Type.CODEC_TYPE_VIDEO)
+            {
+                video = i;
+                break;
+            }
+        }
+
+        /* without video, the cut ends at the requested end */
+        if(video == -1)
+        {
+            end = cutEnd;
+        }
+
+        while(input.readNextPacket(packet) >= 0)
+        {
+            int index = packet.getStreamIndex();
+            long timeStamp = MediaCore.getPacketTimeStamp(packet);
+
+            if(cutStart != Long.MIN_VALUE && origin == Global.NO_PTS)
+            {
+                /* the cut starts on the first video key frame */
+                if(timeStamp == Global.NO_PTS ||
+                        (video != -1 && (index != video || !packet.isKey())) ||
+                        (video == -1 && timeStamp < cutStart))
+                {
+                    continue;
+                }
+
+                origin = timeStamp;
+                copy.beginInput(-origin);
+            }
+
+            if(timeStamp != Global.NO_PTS)
+            {
+                if(origin != Global.NO_PTS && timeStamp < origin)
+                {
+                    continue;
+                }
+
+                /* the cut ends on the first video key frame after its end */
+                if(end == Global.NO_PTS && index == video &&
+                        packet.isKey() && timeStamp >= cutEnd)
+                {
+                    end = timeStamp;
+                }
+
+                if(end != Global.NO_PTS && timeStamp >= end)
+                {
+                    ended.add(index);
+                    if(ended.size() == input.getNumStreams())
+                    {
+                        break;
+                    }
+                    continue;
+                }
+            }
+
+            if(!ended.contains(index) && copy.write(packet))
+            {
+                mPackets++;
+                mBytes += packet.getSize();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getStatistics()
+    {
+        double seconds = getSeconds();
+
+        return String.format("%d packets in %.1f s (%.1f packets/s, " +
+                "%.1f MB/s)", mPackets, seconds,
+                (seconds > 0) ? mPackets / seconds : 0,
+                (seconds > 0) ? mBytes / 1048576.0 / seconds : 0);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Transcodes one media in parallel: the media is split in segments that
+ * start on key frames, the segments are transcoded concurrently on
+ * separate containers, then joined with a stream copy.
+ *
+ * @author Sebastien Vincent
+ */
+public class SegmentTranscoder
+{
+    /**
+     * Transcoding job of the whole media, used for its settings and
+     * report.
+     */
+    private final TranscodeJob mJob;
+
+    /**
+     * Maximum number of segments.
+     */
+    private final int mSegments;
+
+    /**
+     * Constructor.
+     * @param job job of the whole media
+     * @param segments maximum number of segments
+     */
+    public SegmentTranscoder(TranscodeJob job, int segments)
+    {
+        mJob = job;
+        mSegments = Math.max(1, segments);
+    }
+
+    /**
+     * Transcode the media.
+     * @param transcoder pool on which segments are transcoded
+     * @param out stream where the report is printed, null to print nothing
+     * @return true if the media has been transcoded, false otherwise
+     * @throws InterruptedException if interrupted
+     */
+    public boolean run(BatchTranscoder transcoder, PrintStream out)
+        throws InterruptedException
+    {
+        String output = mJob.getOutput();
+        String extension = output.substring(output.lastIndexOf('.') + 1);
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        long start = System.nanoTime();
+        long boundaries[] = null;
+
+        try
+        {
+            boundaries = KeyFrameIndex.scan(mJob.getInput()).split(mSegments);
+
+            for(int i = 0 ; i + 1 < boundaries.length ; i++)
+            {
+                File file = File.createTempFile("segment-" + i + "-",
+                        "." + extension);
+                TranscodeJob job = new TranscodeJob(mJob.getInput(),
+                        file.getPath());
+
+                file.deleteOnExit();
+                job.setVideoCodec(mJob.getVideoCodec());
+                job.setAudioCodec(mJob.getAudioCodec());
+                job.setRange(boundaries[i], boundaries[i + 1]);
+                jobs.add(job);
+            }
+
+            for(MediaJob job : transcoder.run(jobs, out))
+            {
+                if(job.isFailed())
+                {
+                    return false;
+                }
+            }
+
+            concat(jobs, output);
+            if(out != null)
+            {
+                out.println(String.format("%s -> %s: %d segments in %.1f s",
+                            mJob.getInput(), output, jobs.size(),
+                            (System.nanoTime() - start) / 1000000000.0));
+            }
+            return true;
+        }
+        catch(IOException e)
+        {
+            if(out != null)
+            {
+                out.println(mJob.getInput() + ": " + e.getMessage());
+            }
+            return false;
+        }
+        catch(IllegalArgumentException e)
+        {
+            if(out != null)
+            {
+                out.println(mJob.getInput() + ": " + e.getMessage());
+            }
+            return false;
+        }
+        finally
+        {
+            for(TranscodeJob job : jobs)
+            {
+                new File(job.getOutput()).delete();
+            }
+        }
+    }
+
+    /**
+     * Join transcoded segments with a stream copy.
+     * @param jobs jobs of the segments in media order
+     * @param output output file
+     */
+    private static void concat(List<TranscodeJob> jobs, String output)
+    {
+        StreamCopy copy = null;
+        IPacket packet = IPacket.make();
+
+        try
+        {
+            for(TranscodeJob job : jobs)
+            {
+                IContainer input = IContainer.make();
+
+                if(input.open(job.getOutput(), IContainer.Type.READ,
+                            null) < 0)
+                {
+                    throw new IllegalArgumentException("Cannot open " +
+                            job.getOutput());
+                }
+
+                try
+                {
+                    if(copy == null)
+                    {
+                        copy = new StreamCopy(output, input);
+                    }
+                    copy.beginInput();
+
+                    while(input.readNextPacket(packet) >= 0)
+                    {
+                        copy.write(packet);
+                    }
+                }
+                finally
+                {
+                    input.close();
+                }
+            }
+        }
+        finally
+        {
+            packet.delete();
+            if(copy != null)
+            {
+                copy.close();
+            }
+        }
+    }
+}
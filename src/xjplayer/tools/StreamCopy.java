@@ -0,0 +1,242 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import com.xuggle.xuggler.*;
+
+/**
+ * Writes packets read from one or more input containers to an output
+ * container without decoding them (stream copy).
+ *
+ * The output streams are created from the streams of a first input. The
+ * timestamps of each input can be shifted (to rebase a cut at zero for
+ * example), and the decoding timestamps of each stream are kept strictly
+ * increasing: if the packets of an input overlap the ones already
+ * written, they are shifted after them.
+ *
+ * Xuggler writes the header of a container only once the coders of its
+ * streams are open, so an encoder is opened for each stream with the
+ * parameters of the input stream. It never encodes anything, but copying
+ * a stream fails if there is no encoder for its codec.
+ *
+ * @author Sebastien Vincent
+ */
+public class StreamCopy
+{
+    /**
+     * Output container.
+     */
+    private final IContainer mOutput;
+
+    /**
+     * Last decoding timestamp written for each stream (in the time base of
+     * the stream).
+     */
+    private final long mLastDts[];
+
+    /**
+     * Offset of timestamps of the current input for each stream (in the
+     * time base of the stream), Global.NO_PTS if not known yet.
+     */
+    private final long mOffsets[];
+
+    /**
+     * Shift (in microseconds) of timestamps of the current input.
+     */
+    private long mShift = 0;
+
+    /**
+     * Time base of microseconds.
+     */
+    private final IRational mMicroseconds = IRational.make(1, 1000000);
+
+    /**
+     * Constructor.
+     * @param url output file/URL, its format is guessed from its name
+     * @param input container whose streams are copied
+     * @throws IllegalArgumentException if output cannot be created or a
+     * stream cannot be copied
+     */
+    public StreamCopy(String url, IContainer input)
+    {
+        int count = input.getNumStreams();
+
+        mOutput = IContainer.make();
+        if(mOutput.open(url, IContainer.Type.WRITE, null) < 0)
+        {
+            throw new IllegalArgumentException("Cannot create " + url);
+        }
+
+        for(int i = 0 ; i < count ; i++)
+        {
+            IStream source = input.getStream(i);
+            IStreamCoder coder = IStreamCoder.make(
+                    IStreamCoder.Direction.ENCODING, source.getStreamCoder());
+            IStream stream = mOutput.addNewStream(i);
+
+            stream.setStreamCoder(coder);
+            if(coder.open() < 0)
+            {
+                close();
+                throw new IllegalArgumentException("Cannot copy stream " +
+                        i + " (" + source.getStreamCoder().getCodecID() +
+                        ") of " + input.getURL() + " to " + url +
+                        ": no encoder to set up the stream");
+            }
+        }
+
+        if(mOutput.writeHeader() < 0)
+        {
+            close();
+            throw new IllegalArgumentException("Cannot copy streams of " +
+                    input.getURL() + " to " + url);
+        }
+
+        mLastDts = new long[count];
+        mOffsets = new long[count];
+        for(int i = 0 ; i < count ; i++)
+        {
+            mLastDts[i] = Global.NO_PTS;
+        }
+        beginInput();
+    }
+
+    /**
+     * Indicate that the next packets come from a new input, whose
+     * timestamps will be shifted if they overlap the packets already
+     * written.
+     */
+    public void beginInput()
+    {
+        beginInput(0);
+    }
+
+    /**
+     * Indicate that the next packets come from a new input.
+     * @param shift shift (in microseconds) added to the timestamps of the
+     * input, they are shifted more if they overlap the packets already
+     * written
+     */
+    public void beginInput(long shift)
+    {
+        mShift = shift;
+        for(int i = 0 ; i < mOffsets.length ; i++)
+        {
+            mOffsets[i] = Global.NO_PTS;
+        }
+    }
+
+    /**
+     * Get the output container.
+     * @return output container
+     */
+    public IContainer getOutput()
+    {
+        return mOutput;
+    }
+
+    /**
+     * Write a packet, its timestamps are converted to the time base of the
+     * output stream.
+     * @param packet packet read from the current input
+     * @return true if packet has been written, false if it does not belong
+     * to an output stream or cannot be written
+     */
+    public boolean write(IPacket packet)
+    {
+        int index = packet.getStreamIndex();
+        IRational timeBase = null;
+        long dts = 0;
+        long pts = 0;
+
+        if(index < 0 || index >= mOffsets.length)
+        {
+            return false;
+        }
+
+        timeBase = mOutput.getStream(index).getTimeBase();
+        dts = rescale(packet.getDts(), packet.getTimeBase(), timeBase);
+        pts = rescale(packet.getPts(), packet.getTimeBase(), timeBase);
+        if(dts == Global.NO_PTS)
+        {
+            dts = pts;
+        }
+
+        if(mOffsets[index] == Global.NO_PTS && dts != Global.NO_PTS)
+        {
+            long offset = rescale(mShift, mMicroseconds, timeBase);
+
+            mOffsets[index] = (mLastDts[index] != Global.NO_PTS &&
+                    dts + offset <= mLastDts[index]) ?
+                mLastDts[index] + 1 - dts : offset;
+        }
+
+        if(mOffsets[index] != Global.NO_PTS)
+        {
+            if(dts != Global.NO_PTS)
+            {
+                dts += mOffsets[index];
+                mLastDts[index] = dts;
+            }
+            if(pts != Global.NO_PTS)
+            {
+                pts += mOffsets[index];
+            }
+        }
+
+        packet.setTimeBase(timeBase);
+        packet.setDts(dts);
+        packet.setPts(pts);
+        return mOutput.writePacket(packet) >= 0;
+    }
+
+    /**
+     * Write the trailer and close the output.
+     */
+    public void close()
+    {
+        if(mOutput.isHeaderWritten())
+        {
+            mOutput.writeTrailer();
+        }
+
+        for(int i = 0 ; i < mOutput.getNumStreams() ; i++)
+        {
+            mOutput.getStream(i).getStreamCoder().close();
+        }
+        mOutput.close();
+    }
+
+    /**
+     * Convert a timestamp between time bases.
+     * @param timeStamp timestamp or Global.NO_PTS
+     * @param from time base of timestamp
+     * @param to time base of the result
+     * @return converted timestamp or Global.NO_PTS
+     */
+    static long rescale(long timeStamp, IRational from, IRational to)
+    {
+        if(timeStamp == Global.NO_PTS || from == null ||
+                from.compareTo(to) == 0)
+        {
+            return timeStamp;
+        }
+        return to.rescale(timeStamp, from);
+    }
+}
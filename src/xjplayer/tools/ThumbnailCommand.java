@@ -0,0 +1,184 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.cli.*;
+
+/**
+ * Command line of the thumbnail and contact sheet extractor.
+ *
+ * @author Sebastien Vincent
+ */
+public final class ThumbnailCommand
+{
+    /**
+     * Name of the command.
+     */
+    public static final String NAME = "thumbnails";
+
+    /**
+     * Default number of thumbnails.
+     */
+    public static final int DEFAULT_COUNT = 16;
+
+    /**
+     * Default width of thumbnails.
+     */
+    public static final int DEFAULT_WIDTH = 160;
+
+    /**
+     * Default image format.
+     */
+    public static final String DEFAULT_FORMAT = "jpg";
+
+    /**
+     * Constructor.
+     */
+    private ThumbnailCommand()
+    {
+    }
+
+    /**
+     * Get the options of the command.
+     * @return options
+     */
+    private static Options getOptions()
+    {
+        Options options = new Options();
+
+        options.addOption("h", "help", false, "print this help");
+        options.addOption("o", "output", true,
+                "output directory (default: current directory)");
+        options.addOption("f", "format", true,
+                "image format (default: " + DEFAULT_FORMAT + ")");
+        options.addOption("n", "count", true,
+                "number of thumbnails, 1 for a poster frame (default: " +
+                DEFAULT_COUNT + ")");
+        options.addOption("w", "width", true,
+                "width of thumbnails (default: " + DEFAULT_WIDTH + ")");
+        options.addOption("c", "columns", true,
+                "thumbnails per row (default: about square sheet)");
+        options.addOption("j", "jobs", true,
+                "number of files processed concurrently " +
+                "(default: number of processors)");
+        return options;
+    }
+
+    /**
+     * Print usage.
+     * @param options options of the command
+     */
+    private static void printUsage(Options options)
+    {
+        new HelpFormatter().printHelp(NAME + " [options] file...", options);
+    }
+
+    /**
+     * Run the command.
+     * @param args arguments of the command
+     * @return true if images have been written for all files, false
+     * otherwise
+     */
+    public static boolean run(String args[])
+    {
+        Options options = getOptions();
+        CommandLine line = null;
+        File dir = null;
+        String format = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int count = DEFAULT_COUNT;
+        int width = DEFAULT_WIDTH;
+        int columns = 0;
+        List<ThumbnailJob> jobs = new ArrayList<ThumbnailJob>();
+        BatchTranscoder pool = null;
+        Set<File> outputs = null;
+
+        try
+        {
+            line = new GnuParser().parse(options, args);
+            threads = Integer.parseInt(line.getOptionValue("j",
+                        String.valueOf(threads)));
+            count = Integer.parseInt(line.getOptionValue("n",
+                        String.valueOf(count)));
+            width = Integer.parseInt(line.getOptionValue("w",
+                        String.valueOf(width)));
+            columns = Integer.parseInt(line.getOptionValue("c", "0"));
+        }
+        catch(ParseException e)
+        {
+            System.err.println(e.getMessage());
+            printUsage(options);
+            return false;
+        }
+        catch(NumberFormatException e)
+        {
+            System.err.println("Bad number: " + e.getMessage());
+            return false;
+        }
+
+        if(line.hasOption("h") || line.getArgs().length == 0)
+        {
+            printUsage(options);
+            return line.hasOption("h");
+        }
+
+        dir = new File(line.getOptionValue("o", "."));
+        format = line.getOptionValue("f", DEFAULT_FORMAT);
+        outputs = new HashSet<File>();
+        for(String input : line.getArgs())
+        {
+            File output = TranscodeCommand.getOutput(input, dir, format);
+            ThumbnailJob job = null;
+
+            if(!TranscodeCommand.checkOutput(input, output, outputs))
+            {
+                return false;
+            }
+
+            job = new ThumbnailJob(input, output.getPath(), count, width);
+
+            job.setColumns(columns);
+            jobs.add(job);
+        }
+
+        pool = new BatchTranscoder(threads);
+        try
+        {
+            boolean ret = true;
+
+            for(MediaJob job : pool.run(jobs, System.out))
+            {
+                ret &= !job.isFailed();
+            }
+            return ret;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+import javax.imageio.*;
+
+import com.xuggle.xuggler.*;
+import com.xuggle.xuggler.video.*;
+
+import xjplayer.media.*;
+
+/**
+ * Extracts evenly spaced thumbnails of a media and tiles them into one
+ * image (contact sheet), or writes a single poster frame.
+ *
+ * For each thumbnail, the container seeks to the key frame before its
+ * position and only that frame is decoded. Pictures are scaled and
+ * converted by swscale (IVideoResampler) in one pass, then turned into
+ * images with the converter used by MediaCore.
+ *
+ * @author Sebastien Vincent
+ */
+public class ThumbnailJob extends MediaJob
+{
+    /**
+     * Space (in pixels) between thumbnails.
+     */
+    private static final int SPACING = 4;
+
+    /**
+     * Maximum number of packets read to decode a picture after a seek.
+     */
+    private static final int MAX_PACKETS = 256;
+
+    /**
+     * Number of thumbnails.
+     */
+    private final int mCount;
+
+    /**
+     * Width of thumbnails.
+     */
+    private final int mWidth;
+
+    /**
+     * Number of thumbnails per row.
+     */
+    private int mColumns = 0;
+
+    /**
+     * Number of thumbnails extracted.
+     */
+    private int mExtracted = 0;
+
+    /**
+     * Constructor.
+     * @param input input media
+     * @param output output image, its format is guessed from its name
+     * @param count number of thumbnails
+     * @param width width of thumbnails
+     */
+    public ThumbnailJob(String input, String output, int count, int width)
+    {
+        super(input, output);
+        mCount = Math.max(1, count);
+        mWidth = Math.max(1, width);
+    }
+
+    /**
+     * Set the number of thumbnails per row.
+     * @param columns number of thumbnails per row, 0 to make the contact
+     * sheet about square
+     */
+    public void setColumns(int columns)
+    {
+        mColumns = columns;
+    }
+
+    /**
+     * Extract the thumbnails and write the image.
+     */
+    protected void execute()
+    {
+        IContainer container = IContainer.make();
+        IStreamCoder coder = null;
+        java.util.List<BufferedImage> thumbnails = null;
+
+        if(container.open(getInput(), IContainer.Type.READ, null) < 0)
+        {
+            throw new IllegalArgumentException("Cannot open " + getInput());
+        }
+
+        try
+        {
+            int index = -1;
+
+            for(int i = 0 ; i < container.getNumStreams() && index == -1 ;
+                    i++)
+            {
+                if(container.getStream(i).getStreamCoder().getCodecType() ==
+                        ICodec.Type.CODEC_TYPE_VIDEO)
+                {
+                    index = i;
+                }
+            }
+
+            if(index == -1)
+            {
+                throw new IllegalArgumentException("No video in " +
+                        getInput());
+            }
+
+            coder = container.getStream(index).getStreamCoder();
+            if(coder.open() < 0)
+            {
+                coder = null;
+                throw new IllegalArgumentException("Cannot decode " +
+                        getInput());
+            }
+
+            thumbnails = extract(container, index, coder);
+        }
+        finally
+        {
+            if(coder != null)
+            {
+                coder.close();
+            }
+            container.close();
+        }
+
+        write(thumbnails);
+    }
+
+    /**
+     * Extract the thumbnails.
+     * @param container container of the media
+     * @param index index of the video stream
+     * @param coder opened decoder of the video stream
+     * @return thumbnails
+     */
+    private java.util.List<BufferedImage> extract(IContainer container,
+            int index, IStreamCoder coder)
+    {
+        java.util.List<BufferedImage> thumbnails =
+            new ArrayList<BufferedImage>();
+        long duration = container.getDuration();
+        long start = container.getStartTime();
+        int height = Math.max(1, (int)Math.round((double)mWidth *
+                    coder.getHeight() / coder.getWidth()));
+        IVideoResampler resampler = IVideoResampler.make(mWidth, height,
+                IPixelFormat.Type.BGR24, coder.getWidth(), coder.getHeight(),
+                coder.getPixelType());
+        IConverter converter = MediaCore.createConverter(
+                IPixelFormat.Type.BGR24, mWidth, height);
+        IVideoPicture picture = IVideoPicture.make(coder.getPixelType(),
+                coder.getWidth(), coder.getHeight());
+        IVideoPicture scaled = IVideoPicture.make(IPixelFormat.Type.BGR24,
+                mWidth, height);
+        IPacket packet = IPacket.make();
+
+        if(resampler == null)
+        {
+            throw new IllegalArgumentException("Cannot scale " + getInput());
+        }
+
+        if(duration == Global.NO_PTS || duration <= 0)
+        {
+            throw new IllegalArgumentException("Unknown duration of " +
+                    getInput());
+        }
+
+        if(start == Global.NO_PTS)
+        {
+            start = 0;
+        }
+
+        try
+        {
+            for(int i = 0 ; i < mCount ; i++)
+            {
+                /* middle of each of the mCount parts of the media */
+                long position = start + duration * (2 * i + 1) / (2 * mCount);
+
+                if(container.seekKeyFrame(-1, Long.MIN_VALUE, position,
+                            position, 0) < 0 ||
+                        !decodePicture(container, index, coder, packet,
+                            picture))
+                {
+                    continue;
+                }
+
+                if(resampler.resample(scaled, picture) < 0)
+                {
+                    throw new IllegalArgumentException("Cannot scale " +
+                            getInput());
+                }
+                thumbnails.add(converter.toImage(scaled));
+            }
+        }
+        finally
+        {
+            packet.delete();
+            scaled.delete();
+            picture.delete();
+            converter.delete();
+            resampler.delete();
+        }
+
+        if(thumbnails.isEmpty())
+        {
+            throw new IllegalArgumentException("No picture decoded from " +
+                    getInput());
+        }
+
+        mExtracted = thumbnails.size();
+        return thumbnails;
+    }
+
+    /**
+     * Decode the first complete picture after a seek. Pictures presented
+     * before the key frame sought are dropped: they may still be in the
+     * decoder from before the seek (reordering delay of B-frames).
+     * @param container container of the media
+     * @param index index of the video stream
+     * @param coder opened decoder of the video stream
+     * @param packet packet to read into
+     * @param picture picture to decode into
+     * @return true if a picture has been decoded, false otherwise
+     */
+    private static boolean decodePicture(IContainer container, int index,
+            IStreamCoder coder, IPacket packet, IVideoPicture picture)
+    {
+        long keyFrame = Long.MIN_VALUE;
+        boolean keyFound = false;
+
+        for(int i = 0 ; i < MAX_PACKETS &&
+                container.readNextPacket(packet) >= 0 ; i++)
+        {
+            int offset = 0;
+
+            if(packet.getStreamIndex() != index)
+            {
+                continue;
+            }
+
+            /* decoding starts on the key frame sought */
+            if(!keyFound)
+            {
+                if(!packet.isKey())
+                {
+                    continue;
+                }
+                keyFound = true;
+                keyFrame = getPresentationTime(packet);
+            }
+
+            while(offset < packet.getSize())
+            {
+                int rv = coder.decodeVideo(picture, packet, offset);
+
+                if(rv < 0)
+                {
+                    break;
+                }
+
+                offset += rv;
+                if(picture.isComplete() &&
+                        picture.getTimeStamp() >= keyFrame)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the presentation timestamp of a packet.
+     * @param packet the packet
+     * @return timestamp in microseconds, the decoding timestamp if it is
+     * unknown or Long.MIN_VALUE if packet has no timestamp
+     */
+    private static long getPresentationTime(IPacket packet)
+    {
+        IRational timeBase = packet.getTimeBase();
+
+        if(packet.getPts() == Global.NO_PTS || timeBase == null)
+        {
+            long timeStamp = MediaCore.getPacketTimeStamp(packet);
+
+            return (timeStamp == Global.NO_PTS) ? Long.MIN_VALUE : timeStamp;
+        }
+        return (long)(packet.getPts() * timeBase.getDouble() * 1000000);
+    }
+
+    /**
+     * Tile the thumbnails and write the image.
+     * @param thumbnails thumbnails
+     */
+    private void write(java.util.List<BufferedImage> thumbnails)
+    {
+        String output = getOutput();
+        String format = output.substring(output.lastIndexOf('.') + 1);
+        int width = thumbnails.get(0).getWidth();
+        int height = thumbnails.get(0).getHeight();
+        int columns = (mColumns > 0) ? mColumns :
+            (int)Math.ceil(Math.sqrt(thumbnails.size()));
+        int rows = (thumbnails.size() + columns - 1) / columns;
+        BufferedImage sheet = null;
+        Graphics2D g = null;
+
+        if(thumbnails.size() == 1)
+        {
+            /* poster frame */
+            sheet = thumbnails.get(0);
+        }
+        else
+        {
+            columns = Math.min(columns, thumbnails.size());
+            sheet = new BufferedImage(
+                    columns * (width + SPACING) + SPACING,
+                    rows * (height + SPACING) + SPACING,
+                    BufferedImage.TYPE_3BYTE_BGR);
+            g = sheet.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+            for(int i = 0 ; i < thumbnails.size() ; i++)
+            {
+                g.drawImage(thumbnails.get(i),
+                        SPACING + (i % columns) * (width + SPACING),
+                        SPACING + (i / columns) * (height + SPACING), null);
+            }
+            g.dispose();
+        }
+
+        try
+        {
+            if(!ImageIO.write(sheet, format, new File(output)))
+            {
+                throw new IllegalArgumentException("Unsupported format: " +
+                        format);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Cannot write " + output +
+                    ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getStatistics()
+    {
+        double seconds = getSeconds();
+
+        return String.format("%d thumbnails in %.2f s (%.1f thumbnails/s)",
+                mExtracted, seconds,
+                (seconds > 0) ? mExtracted / seconds : 0);
+    }
+}
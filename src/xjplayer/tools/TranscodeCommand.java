@@ -0,0 +1,250 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.cli.*;
+
+/**
+ * Command line of the headless batch transcoder.
+ *
+ * @author Sebastien Vincent
+ */
+public final class TranscodeCommand
+{
+    /**
+     * Name of the command.
+     */
+    public static final String NAME = "transcode";
+
+    /**
+     * Default output format (file extension).
+     */
+    public static final String DEFAULT_FORMAT = "mp4";
+
+    /**
+     * Constructor.
+     */
+    private TranscodeCommand()
+    {
+    }
+
+    /**
+     * Get the options of the command.
+     * @return options
+     */
+    private static Options getOptions()
+    {
+        Options options = new Options();
+
+        options.addOption("h", "help", false, "print this help");
+        options.addOption("o", "output", true,
+                "output directory (default: current directory)");
+        options.addOption("f", "format", true,
+                "output file extension (default: " + DEFAULT_FORMAT + ")");
+        options.addOption("V", "video-codec", true,
+                "video codec (default: codec of the format)");
+        options.addOption("A", "audio-codec", true,
+                "audio codec (default: codec of the format)");
+        options.addOption("j", "jobs", true,
+                "number of files or segments transcoded concurrently " +
+                "(default: number of processors)");
+        options.addOption("s", "segments", true,
+                "split each file in up to this number of segments " +
+                "starting on key frames, transcoded concurrently and " +
+                "joined by stream copy");
+        return options;
+    }
+
+    /**
+     * Print usage.
+     * @param options options of the command
+     */
+    private static void printUsage(Options options)
+    {
+        new HelpFormatter().printHelp(NAME + " [options] file...", options);
+    }
+
+    /**
+     * Run the command.
+     * @param args arguments of the command
+     * @return true if all files have been transcoded, false otherwise
+     */
+    public static boolean run(String args[])
+    {
+        Options options = getOptions();
+        CommandLine line = null;
+        File dir = null;
+        String format = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int segments = 0;
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        BatchTranscoder transcoder = null;
+        Set<File> outputs = null;
+
+        try
+        {
+            line = new GnuParser().parse(options, args);
+            if(line.hasOption("j"))
+            {
+                threads = Integer.parseInt(line.getOptionValue("j"));
+            }
+            if(line.hasOption("s"))
+            {
+                segments = Integer.parseInt(line.getOptionValue("s"));
+            }
+        }
+        catch(ParseException e)
+        {
+            System.err.println(e.getMessage());
+            printUsage(options);
+            return false;
+        }
+        catch(NumberFormatException e)
+        {
+            System.err.println("Bad number: " + e.getMessage());
+            return false;
+        }
+
+        if(line.hasOption("h") || line.getArgs().length == 0)
+        {
+            printUsage(options);
+            return line.hasOption("h");
+        }
+
+        dir = new File(line.getOptionValue("o", "."));
+        format = line.getOptionValue("f", DEFAULT_FORMAT);
+        outputs = new HashSet<File>();
+        for(String input : line.getArgs())
+        {
+            File output = getOutput(input, dir, format);
+            TranscodeJob job = null;
+
+            if(!checkOutput(input, output, outputs))
+            {
+                return false;
+            }
+
+            job = new TranscodeJob(input, output.getPath());
+
+            job.setVideoCodec(line.getOptionValue("V"));
+            job.setAudioCodec(line.getOptionValue("A"));
+            jobs.add(job);
+        }
+
+        transcoder = new BatchTranscoder(threads);
+        try
+        {
+            if(segments > 0)
+            {
+                return runSegmented(transcoder, jobs, segments);
+            }
+
+            for(MediaJob job : transcoder.run(jobs, System.out))
+            {
+                if(job.isFailed())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            transcoder.shutdown();
+        }
+    }
+
+    /**
+     * Transcode files one after another, each one split in segments
+     * transcoded concurrently.
+     * @param transcoder pool on which segments are transcoded
+     * @param jobs jobs of the whole files
+     * @param segments maximum number of segments per file
+     * @return true if all files have been transcoded, false otherwise
+     * @throws InterruptedException if interrupted
+     */
+    private static boolean runSegmented(BatchTranscoder transcoder,
+            List<TranscodeJob> jobs, int segments) throws InterruptedException
+    {
+        boolean ret = true;
+
+        for(TranscodeJob job : jobs)
+        {
+            ret &= new SegmentTranscoder(job, segments).run(transcoder,
+                    System.out);
+        }
+        return ret;
+    }
+
+    /**
+     * Get the output file of an input.
+     * @param input input media
+     * @param dir output directory
+     * @param format output file extension
+     * @return output file
+     */
+    static File getOutput(String input, File dir, String format)
+    {
+        String name = new File(input).getName();
+        int dot = name.lastIndexOf('.');
+
+        if(dot > 0)
+        {
+            name = name.substring(0, dot);
+        }
+        return new File(dir, name + "." + format);
+    }
+
+    /**
+     * Check the output file of an input: it must neither overwrite the
+     * input nor be the output of another input (same name in another
+     * directory), as jobs write their outputs concurrently. Prints the
+     * error if any.
+     * @param input input media
+     * @param output output file
+     * @param outputs outputs of the previous inputs, output is added to it
+     * @return true if output can be written, false otherwise
+     */
+    static boolean checkOutput(String input, File output, Set<File> outputs)
+    {
+        File file = output.getAbsoluteFile();
+
+        if(file.equals(new File(input).getAbsoluteFile()))
+        {
+            System.err.println("Output would overwrite " + input);
+            return false;
+        }
+
+        if(!outputs.add(file))
+        {
+            System.err.println("Output " + output + " of " + input +
+                    " is the output of another input");
+            return false;
+        }
+        return true;
+    }
+}
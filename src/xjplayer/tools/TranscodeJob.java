@@ -0,0 +1,476 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.util.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Transcoding of one media file with Xuggler's IMediaWriter.
+ *
+ * The output format is guessed from the output file name. Video and audio
+ * streams keep their size, sample rate and channels, and are encoded with
+ * the given codecs or the default codecs of the output format. Other
+ * streams are dropped.
+ *
+ * A job can be restricted to a range of the input that starts on a key
+ * frame, so that a media can be split in segments transcoded in parallel
+ * (see SegmentTranscoder).
+ *
+ * @author Sebastien Vincent
+ */
+public class TranscodeJob extends MediaJob
+{
+    /**
+     * Name of the video codec, null for the default codec of the format.
+     */
+    private String mVideoCodec = null;
+
+    /**
+     * Name of the audio codec, null for the default codec of the format.
+     */
+    private String mAudioCodec = null;
+
+    /**
+     * Start (in microseconds) of the range transcoded.
+     */
+    private long mStart = Long.MIN_VALUE;
+
+    /**
+     * End (in microseconds, excluded) of the range transcoded.
+     */
+    private long mEnd = Long.MAX_VALUE;
+
+    /**
+     * Number of video frames encoded.
+     */
+    private long mVideoFrames = 0;
+
+    /**
+     * Number of audio samples encoded.
+     */
+    private long mAudioSamples = 0;
+
+    /**
+     * Duration (in microseconds) of media encoded.
+     */
+    private long mMediaTime = 0;
+
+    /**
+     * Constructor.
+     * @param input input media
+     * @param output output file
+     */
+    public TranscodeJob(String input, String output)
+    {
+        super(input, output);
+    }
+
+    /**
+     * Set the video codec.
+     * @param codec name of the codec or null for the default codec of the
+     * output format
+     */
+    public void setVideoCodec(String codec)
+    {
+        mVideoCodec = codec;
+    }
+
+    /**
+     * Set the audio codec.
+     * @param codec name of the codec or null for the default codec of the
+     * output format
+     */
+    public void setAudioCodec(String codec)
+    {
+        mAudioCodec = codec;
+    }
+
+    /**
+     * Get the video codec.
+     * @return name of the codec or null for the default codec of the
+     * output format
+     */
+    public String getVideoCodec()
+    {
+        return mVideoCodec;
+    }
+
+    /**
+     * Get the audio codec.
+     * @return name of the codec or null for the default codec of the
+     * output format
+     */
+    public String getAudioCodec()
+    {
+        return mAudioCodec;
+    }
+
+    /**
+     * Restrict transcoding to a range of the input. Media decoded before the
+     * start or from the end are dropped.
+     * @param start start (in microseconds) of the range, it should be the
+     * presentation timestamp of a key frame, Long.MIN_VALUE for the
+     * beginning of media
+     * @param end end (in microseconds, excluded) of the range,
+     * Long.MAX_VALUE for the end of media
+     */
+    public void setRange(long start, long end)
+    {
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Transcode the media.
+     */
+    protected void execute()
+    {
+        IContainer container = IContainer.make();
+        IMediaWriter writer = null;
+        Encoder encoder = null;
+
+        if(container.open(getInput(), IContainer.Type.READ, null) < 0)
+        {
+            throw new IllegalArgumentException("Cannot open " + getInput());
+        }
+
+        try
+        {
+            IMediaReader reader = null;
+
+            if(mStart != Long.MIN_VALUE && container.seekKeyFrame(-1,
+                        Long.MIN_VALUE, mStart, mStart, 0) < 0)
+            {
+                throw new IllegalArgumentException("Cannot seek " +
+                        getInput());
+            }
+
+            reader = ToolFactory.makeReader(container);
+
+            writer = ToolFactory.makeWriter(getOutput());
+            encoder = new Encoder(writer);
+            for(int i = 0 ; i < container.getNumStreams() ; i++)
+            {
+                addStream(writer, i, container.getStream(i).getStreamCoder());
+            }
+
+            reader.addListener(encoder);
+            while(!encoder.isEnded() && reader.readPacket() == null)
+            {
+            }
+        }
+        finally
+        {
+            if(encoder != null)
+            {
+                encoder.close();
+            }
+            if(writer != null && writer.isOpen())
+            {
+                writer.close();
+            }
+            container.close();
+        }
+    }
+
+    /**
+     * Add an output stream for an input stream.
+     * @param writer media writer
+     * @param index index of the input stream
+     * @param coder coder of the input stream
+     */
+    private void addStream(IMediaWriter writer, int index, IStreamCoder coder)
+    {
+        ICodec.Type type = coder.getCodecType();
+
+        if(type == ICodec.Type.CODEC_TYPE_VIDEO)
+        {
+            IRational frameRate = coder.getFrameRate();
+            ICodec codec = getCodec(mVideoCodec, type);
+
+            if(frameRate != null && frameRate.getDouble() > 0)
+            {
+                writer.addVideoStream(index, index, codec, frameRate,
+                        coder.getWidth(), coder.getHeight());
+            }
+            else
+            {
+                writer.addVideoStream(index, index, codec, coder.getWidth(),
+                        coder.getHeight());
+            }
+        }
+        else if(type == ICodec.Type.CODEC_TYPE_AUDIO)
+        {
+            writer.addAudioStream(index, index, getCodec(mAudioCodec, type),
+                    coder.getChannels(), coder.getSampleRate());
+        }
+    }
+
+    /**
+     * Get an encoding codec.
+     * @param name name of the codec, null for the default codec of the
+     * output format
+     * @param type type of the codec
+     * @return codec
+     */
+    private ICodec getCodec(String name, ICodec.Type type)
+    {
+        ICodec codec = (name != null) ?
+            ICodec.findEncodingCodecByName(name) :
+            ICodec.guessEncodingCodec(null, null, getOutput(), null, type);
+
+        if(codec == null)
+        {
+            throw new IllegalArgumentException("No " + type +
+                    " encoder for " + (name != null ? name : getOutput()));
+        }
+        return codec;
+    }
+
+    /**
+     * Get the number of video frames encoded.
+     * @return number of frames
+     */
+    public long getVideoFrames()
+    {
+        return mVideoFrames;
+    }
+
+    /**
+     * Get the number of audio samples encoded.
+     * @return number of samples
+     */
+    public long getAudioSamples()
+    {
+        return mAudioSamples;
+    }
+
+    /**
+     * Get the speed of the job relative to real time.
+     * @return duration of media encoded divided by elapsed time
+     */
+    public double getSpeed()
+    {
+        long elapsed = getElapsedTime();
+
+        return (elapsed > 0) ? mMediaTime * 1000.0 / elapsed : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getStatistics()
+    {
+        double seconds = getSeconds();
+
+        return String.format(
+                "%d frames in %.1f s (%.1f fps, %.2fx, %.1f KB/s)",
+                mVideoFrames, seconds,
+                (seconds > 0) ? mVideoFrames / seconds : 0, getSpeed(),
+                getOutputRate());
+    }
+
+    /**
+     * Listener that encodes decoded media with the writer.
+     *
+     * @author Sebastien Vincent
+     */
+    private class Encoder extends MediaListenerAdapter
+    {
+        /**
+         * Media writer.
+         */
+        private final IMediaWriter mWriter;
+
+        /**
+         * Resamplers of video streams whose pixel format differs from the
+         * encoder one.
+         */
+        private final Map<Integer, IVideoResampler> mResamplers =
+            new HashMap<Integer, IVideoResampler>();
+
+        /**
+         * Timestamp (in microseconds) of the first media encoded.
+         */
+        private long mFirstTimeStamp = Global.NO_PTS;
+
+        /**
+         * Streams that reached the end of the range.
+         */
+        private final Set<Integer> mEnded = new HashSet<Integer>();
+
+        /**
+         * Constructor.
+         * @param writer media writer
+         */
+        public Encoder(IMediaWriter writer)
+        {
+            mWriter = writer;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onVideoPicture(IVideoPictureEvent event)
+        {
+            int index = event.getStreamIndex();
+            IVideoPicture picture = event.getPicture();
+            IVideoResampler resampler = null;
+
+            if(mWriter.getOutputStreamIndex(index) == null ||
+                    !isInRange(index, picture.getTimeStamp()))
+            {
+                return;
+            }
+
+            if(!mResamplers.containsKey(index))
+            {
+                IStreamCoder coder = mWriter.getContainer().getStream(
+                        mWriter.getOutputStreamIndex(index)).getStreamCoder();
+
+                if(coder.getPixelType() != picture.getPixelType())
+                {
+                    resampler = IVideoResampler.make(coder.getWidth(),
+                            coder.getHeight(), coder.getPixelType(),
+                            picture.getWidth(), picture.getHeight(),
+                            picture.getPixelType());
+                }
+                mResamplers.put(index, resampler);
+            }
+
+            resampler = mResamplers.get(index);
+            if(resampler != null)
+            {
+                IVideoPicture out = IVideoPicture.make(
+                        resampler.getOutputPixelFormat(),
+                        resampler.getOutputWidth(),
+                        resampler.getOutputHeight());
+
+                try
+                {
+                    if(resampler.resample(out, picture) < 0)
+                    {
+                        throw new RuntimeException("Cannot resample video");
+                    }
+                    mWriter.encodeVideo(index, out);
+                }
+                finally
+                {
+                    out.delete();
+                }
+            }
+            else
+            {
+                mWriter.encodeVideo(index, picture);
+            }
+
+            mVideoFrames++;
+            onTimeStamp(picture.getTimeStamp());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAudioSamples(IAudioSamplesEvent event)
+        {
+            IAudioSamples samples = event.getAudioSamples();
+
+            if(mWriter.getOutputStreamIndex(event.getStreamIndex()) == null ||
+                    !isInRange(event.getStreamIndex(), samples.getTimeStamp()))
+            {
+                return;
+            }
+
+            mWriter.encodeAudio(event.getStreamIndex(), samples);
+            mAudioSamples += samples.getNumSamples();
+            onTimeStamp(samples.getNextPts());
+        }
+
+        /**
+         * Returns if a timestamp is in the range transcoded, and records
+         * streams that reached the end of the range.
+         * @param index index of the stream
+         * @param timeStamp timestamp in microseconds
+         * @return true if media at timestamp is encoded, false otherwise
+         */
+        private boolean isInRange(int index, long timeStamp)
+        {
+            if(timeStamp == Global.NO_PTS)
+            {
+                return true;
+            }
+
+            if(timeStamp >= mEnd)
+            {
+                mEnded.add(index);
+                return false;
+            }
+            return timeStamp >= mStart;
+        }
+
+        /**
+         * Returns if all output streams reached the end of the range.
+         * @return true if transcoding can stop
+         */
+        public boolean isEnded()
+        {
+            return mEnded.size() == mWriter.getContainer().getNumStreams() &&
+                !mEnded.isEmpty();
+        }
+
+        /**
+         * Update the duration of media encoded.
+         * @param timeStamp timestamp in microseconds
+         */
+        private void onTimeStamp(long timeStamp)
+        {
+            if(timeStamp == Global.NO_PTS)
+            {
+                return;
+            }
+
+            if(mFirstTimeStamp == Global.NO_PTS)
+            {
+                mFirstTimeStamp = timeStamp;
+            }
+            mMediaTime = Math.max(mMediaTime, timeStamp - mFirstTimeStamp);
+        }
+
+        /**
+         * Release the resamplers.
+         */
+        public void close()
+        {
+            for(IVideoResampler resampler : mResamplers.values())
+            {
+                if(resampler != null)
+                {
+                    resampler.delete();
+                }
+            }
+            mResamplers.clear();
+        }
+    }
+}
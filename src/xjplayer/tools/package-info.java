@@ -0,0 +1,5 @@
+/**
+ * This package contains headless tools (transcoding, ...) built on Xuggler.
+ */
+package xjplayer.tools;
+
@@ -0,0 +1,52 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer;
+
+import junit.framework.*;
+
+import xjplayer.tools.*;
+
+/**
+ * Performance regression test suite. It plays and transcodes generated
+ * clips and needs the Xuggler native libraries, so it is run apart from
+ * the unit tests.
+ *
+ * @author Sebastien Vincent
+ */
+public class XJPlayerPerformanceTestSuite
+{
+    /**
+     * Constructor.
+     */
+    public XJPlayerPerformanceTestSuite()
+    {
+    }
+
+    /**
+     * Suite of performance regression tests.
+     * @return the TestSuite containing all performance regression tests
+     */
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(PlaybackRegressionTest.class);
+        suite.addTestSuite(SegmentTranscoderTest.class);
+        return suite;
+    }
+}
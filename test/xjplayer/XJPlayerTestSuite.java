@@ -20,6 +20,10 @@ package xjplayer;
 
 import junit.framework.*;
 
+import xjplayer.io.*;
+import xjplayer.media.*;
+import xjplayer.tools.*;
+
 /**
  * Unit test suite.
  *
@@ -42,6 +46,18 @@ public class XJPlayerTestSuite
     {
         TestSuite suite = new TestSuite();
         suite.addTestSuite(XJPlayerTest.class);
+        suite.addTestSuite(MappedFileProtocolHandlerTest.class);
+        suite.addTestSuite(ReadAheadProtocolHandlerTest.class);
+        suite.addTestSuite(HttpProtocolHandlerTest.class);
+        suite.addTestSuite(AsyncFileWriterTest.class);
+        suite.addTestSuite(JitterBufferTest.class);
+        suite.addTestSuite(AudioRateConverterTest.class);
+        suite.addTestSuite(LatencyHistogramTest.class);
+        suite.addTestSuite(PipelineTraceTest.class);
+        suite.addTestSuite(AsyncVideoListenerTest.class);
+        suite.addTestSuite(FrameCacheTest.class);
+        suite.addTestSuite(TranscodeCommandTest.class);
+        suite.addTestSuite(RemuxCommandTest.class);
         return suite;
     }
 }
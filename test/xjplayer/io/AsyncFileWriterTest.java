@@ -0,0 +1,176 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for AsyncFileWriter.
+ *
+ * @author Sebastien Vincent
+ */
+public class AsyncFileWriterTest extends TestCase
+{
+    /**
+     * Temporary file written by the tests.
+     */
+    private File mFile = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public AsyncFileWriterTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Method executed prior to run tests.
+     * @throws IOException if temporary file cannot be created
+     */
+    @Override
+    protected void setUp() throws IOException
+    {
+        mFile = File.createTempFile("xjplayer", ".ts");
+    }
+
+    /**
+     * Method executed at the end of tests.
+     */
+    @Override
+    protected void tearDown()
+    {
+        mFile.delete();
+    }
+
+    /**
+     * Test that bytes written are in the file once synced.
+     * @throws Exception if file cannot be read
+     */
+    public void testWrite() throws Exception
+    {
+        AsyncFileWriter writer = new AsyncFileWriter(1024, 64);
+        AsyncFileWriter.AsyncChannel channel = writer.open(mFile);
+        byte data[] = new byte[10000];
+
+        new Random(42).nextBytes(data);
+        for(int i = 0 ; i < data.length ; i += 1000)
+        {
+            assertEquals(1000, channel.write(ByteBuffer.wrap(data, i, 1000)));
+        }
+        channel.close();
+        writer.sync();
+
+        assertEquals(0, writer.getDroppedBytes());
+        assertEquals(0, channel.getDroppedBytes());
+        assertEquals(data.length, writer.getWrittenBytes());
+        assertTrue(Arrays.equals(data, readFile()));
+
+        writer.delete(mFile);
+        writer.sync();
+        assertFalse(mFile.exists());
+        writer.shutdown();
+    }
+
+    /**
+     * Test that writes larger than the pool never block and that dropped
+     * bytes are accounted.
+     * @throws Exception if file cannot be read
+     */
+    public void testOverflow() throws Exception
+    {
+        AsyncFileWriter writer = new AsyncFileWriter(16, 2);
+        AsyncFileWriter.AsyncChannel channel = writer.open(mFile);
+        byte data[] = new byte[100000];
+
+        assertEquals(data.length, channel.write(ByteBuffer.wrap(data)));
+        channel.close();
+        writer.sync();
+
+        assertTrue(writer.getDroppedBytes() > 0);
+        assertEquals(writer.getDroppedBytes(), channel.getDroppedBytes());
+        assertEquals(data.length, writer.getDroppedBytes() +
+                writer.getWrittenBytes());
+        assertEquals(writer.getWrittenBytes(), mFile.length());
+        writer.shutdown();
+    }
+
+    /**
+     * Test that a file the I/O thread cannot write is reported failed.
+     * @throws Exception if interrupted
+     */
+    public void testFailure() throws Exception
+    {
+        AsyncFileWriter writer = new AsyncFileWriter(1024, 4);
+        AsyncFileWriter.AsyncChannel channel = writer.open(
+                new File(mFile, "segment.ts"));
+
+        channel.write(ByteBuffer.wrap(new byte[100]));
+        channel.close();
+        writer.sync();
+
+        assertTrue(channel.isFailed());
+        assertEquals(0, channel.getDroppedBytes());
+        writer.shutdown();
+    }
+
+    /**
+     * Test that sync() returns once the writer is shut down.
+     * @throws Exception if interrupted
+     */
+    public void testSyncAfterShutdown() throws Exception
+    {
+        AsyncFileWriter writer = new AsyncFileWriter(1024, 4);
+        AsyncFileWriter.AsyncChannel channel = writer.open(mFile);
+
+        channel.write(ByteBuffer.wrap(new byte[100]));
+        channel.close();
+        writer.shutdown();
+        writer.sync();
+
+        assertFalse(channel.isFailed());
+        assertEquals(100, mFile.length());
+    }
+
+    /**
+     * Read the temporary file.
+     * @return content of the file
+     * @throws IOException if file cannot be read
+     */
+    private byte[] readFile() throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(mFile));
+        byte data[] = new byte[(int)mFile.length()];
+
+        try
+        {
+            in.readFully(data);
+        }
+        finally
+        {
+            in.close();
+        }
+        return data;
+    }
+}
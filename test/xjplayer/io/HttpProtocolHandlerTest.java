@@ -0,0 +1,303 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+import com.sun.net.httpserver.*;
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Unit test for HttpProtocolHandler and DiskChunkCache, against an
+ * embedded HTTP server with artificial latency.
+ *
+ * @author Sebastien Vincent
+ */
+public class HttpProtocolHandlerTest extends TestCase
+{
+    /**
+     * Size of chunks used by the tests.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Latency (in milliseconds) of the server.
+     */
+    private static final long LATENCY = 20;
+
+    /**
+     * Embedded HTTP server.
+     */
+    private HttpServer mServer = null;
+
+    /**
+     * Content of the media.
+     */
+    private volatile byte mData[] = null;
+
+    /**
+     * ETag of the media.
+     */
+    private volatile String mETag = "\"v1\"";
+
+    /**
+     * Number of GET requests received by the server.
+     */
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    /**
+     * Cache directory.
+     */
+    private File mDirectory = null;
+
+    /**
+     * URL of the media.
+     */
+    private String mUrl = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public HttpProtocolHandlerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Method executed prior to run tests.
+     * @throws IOException if server cannot be started
+     */
+    @Override
+    protected void setUp() throws IOException
+    {
+        mData = new byte[100000];
+        new Random(42).nextBytes(mData);
+
+        mDirectory = File.createTempFile("xjplayer", "cache");
+        mDirectory.delete();
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/media.ts", new MediaHandler());
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() +
+            "/media.ts";
+    }
+
+    /**
+     * Method executed at the end of tests.
+     */
+    @Override
+    protected void tearDown()
+    {
+        mServer.stop(0);
+
+        for(File file : mDirectory.listFiles())
+        {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    /**
+     * Read the whole media.
+     * @param handler the handler
+     * @return content read
+     */
+    private byte[] readAll(IURLProtocolHandler handler)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte buf[] = new byte[5000];
+        int len = 0;
+
+        assertEquals(0, handler.open(HttpProtocolHandlerFactory.getURL(mUrl),
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        while((len = handler.read(buf, buf.length)) > 0)
+        {
+            out.write(buf, 0, len);
+        }
+        assertEquals(0, len);
+        handler.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Test reading with range requests, then replaying from the cache,
+     * including from another session.
+     */
+    public void testReadAndReplay()
+    {
+        DiskChunkCache cache = new DiskChunkCache(mDirectory, 1024 * 1024);
+        int chunks = (mData.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        assertTrue(Arrays.equals(mData,
+                    readAll(new HttpProtocolHandler(cache, CHUNK_SIZE))));
+        assertEquals(chunks, mRequests.get());
+
+        /* replay */
+        assertTrue(Arrays.equals(mData,
+                    readAll(new HttpProtocolHandler(cache, CHUNK_SIZE))));
+        assertEquals(chunks, mRequests.get());
+
+        /* new session */
+        cache = new DiskChunkCache(mDirectory, 1024 * 1024);
+        assertEquals(chunks, cache.getCount());
+        assertTrue(Arrays.equals(mData,
+                    readAll(new HttpProtocolHandler(cache, CHUNK_SIZE))));
+        assertEquals(chunks, mRequests.get());
+    }
+
+    /**
+     * Test seeks, only chunks read are fetched.
+     */
+    public void testSeek()
+    {
+        DiskChunkCache cache = new DiskChunkCache(mDirectory, 1024 * 1024);
+        HttpProtocolHandler handler = new HttpProtocolHandler(cache,
+                CHUNK_SIZE);
+        byte buf[] = new byte[100];
+
+        assertEquals(0, handler.open(HttpProtocolHandlerFactory.getURL(mUrl),
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        assertEquals(mData.length, handler.seek(0,
+                    IURLProtocolHandler.SEEK_SIZE));
+        assertEquals(70000, handler.seek(70000,
+                    IURLProtocolHandler.SEEK_SET));
+        assertEquals(100, handler.read(buf, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mData, 70000, 70100),
+                    buf));
+        assertEquals(1, mRequests.get());
+
+        /* back in the same chunk */
+        assertEquals(69990, handler.seek(-110,
+                    IURLProtocolHandler.SEEK_CUR));
+        assertEquals(100, handler.read(buf, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mData, 69990, 70090),
+                    buf));
+        assertEquals(1, mRequests.get());
+        handler.close();
+    }
+
+    /**
+     * Test that chunks of a modified media are not reused.
+     */
+    public void testModifiedMedia()
+    {
+        DiskChunkCache cache = new DiskChunkCache(mDirectory, 1024 * 1024);
+        int chunks = (mData.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        byte data[] = new byte[mData.length];
+
+        readAll(new HttpProtocolHandler(cache, CHUNK_SIZE));
+
+        new Random(43).nextBytes(data);
+        mData = data;
+        mETag = "\"v2\"";
+
+        assertTrue(Arrays.equals(data,
+                    readAll(new HttpProtocolHandler(cache, CHUNK_SIZE))));
+        assertEquals(2 * chunks, mRequests.get());
+    }
+
+    /**
+     * Test LRU eviction of the cache.
+     */
+    public void testEviction()
+    {
+        DiskChunkCache cache = new DiskChunkCache(mDirectory, 3000);
+        byte chunk[] = new byte[1000];
+
+        cache.put("a", chunk);
+        cache.put("b", chunk);
+        cache.put("c", chunk);
+        assertNotNull(cache.get("a"));
+
+        /* b is the least recently used */
+        cache.put("d", chunk);
+        assertEquals(3, cache.getCount());
+        assertEquals(3000, cache.getSize());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    /**
+     * HTTP handler that serves the media with range support and latency.
+     *
+     * @author Sebastien Vincent
+     */
+    private class MediaHandler implements HttpHandler
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            byte data[] = mData;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Headers headers = exchange.getResponseHeaders();
+            int start = 0;
+            int end = data.length - 1;
+            OutputStream out = null;
+
+            try
+            {
+                Thread.sleep(LATENCY);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            headers.set("ETag", mETag);
+            headers.set("Accept-Ranges", "bytes");
+
+            if(exchange.getRequestMethod().equals("HEAD"))
+            {
+                headers.set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+
+            mRequests.incrementAndGet();
+            if(range != null)
+            {
+                String bounds[] = range.substring("bytes=".length())
+                    .split("-");
+
+                start = Integer.parseInt(bounds[0]);
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+                headers.set("Content-Range", "bytes " + start + "-" + end +
+                        "/" + data.length);
+            }
+
+            exchange.sendResponseHeaders((range != null) ? 206 : 200,
+                    end - start + 1);
+            out = exchange.getResponseBody();
+            out.write(data, start, end - start + 1);
+            out.close();
+        }
+    }
+}
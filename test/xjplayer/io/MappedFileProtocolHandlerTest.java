@@ -0,0 +1,176 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Unit test for MappedFileProtocolHandler.
+ *
+ * @author Sebastien Vincent
+ */
+public class MappedFileProtocolHandlerTest extends TestCase
+{
+    /**
+     * Temporary file read by the tests.
+     */
+    private File mFile = null;
+
+    /**
+     * Content of the temporary file.
+     */
+    private byte mData[] = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public MappedFileProtocolHandlerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Method executed prior to run tests.
+     * @throws IOException if temporary file cannot be written
+     */
+    @Override
+    protected void setUp() throws IOException
+    {
+        FileOutputStream out = null;
+
+        mData = new byte[100000];
+        new Random(42).nextBytes(mData);
+        mFile = File.createTempFile("xjplayer", ".bin");
+
+        out = new FileOutputStream(mFile);
+        try
+        {
+            out.write(mData);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Method executed at the end of tests.
+     */
+    @Override
+    protected void tearDown()
+    {
+        mFile.delete();
+    }
+
+    /**
+     * Test file name extraction from URL.
+     */
+    public void testFileName()
+    {
+        assertEquals("/tmp/a.avi",
+                MappedFileProtocolHandler.getFileName("mmap:/tmp/a.avi"));
+        assertEquals("/tmp/a.avi",
+                MappedFileProtocolHandler.getFileName("mmap:///tmp/a.avi"));
+        assertEquals("C:\\a.avi",
+                MappedFileProtocolHandler.getFileName("mmap:C:\\a.avi"));
+    }
+
+    /**
+     * Test sequential reads until end of file.
+     */
+    public void testRead()
+    {
+        MappedFileProtocolHandler handler =
+            new MappedFileProtocolHandler(mFile.getPath());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte buf[] = new byte[4096];
+        int len = 0;
+
+        assertEquals(0, handler.open(null,
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        while((len = handler.read(buf, buf.length)) > 0)
+        {
+            out.write(buf, 0, len);
+        }
+
+        assertEquals(0, len);
+        assertTrue(Arrays.equals(mData, out.toByteArray()));
+        assertEquals(0, handler.close());
+    }
+
+    /**
+     * Test reads across segments.
+     */
+    public void testReadSegments()
+    {
+        MappedFileProtocolHandler handler =
+            new MappedFileProtocolHandler(mFile.getPath(), 1000);
+        byte buf[] = new byte[2500];
+
+        assertEquals(0, handler.open(null,
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        assertEquals(1500, handler.seek(1500, IURLProtocolHandler.SEEK_SET));
+        assertEquals(buf.length, handler.read(buf, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mData, 1500, 4000), buf));
+        handler.close();
+    }
+
+    /**
+     * Test seeks.
+     */
+    public void testSeek()
+    {
+        MappedFileProtocolHandler handler =
+            new MappedFileProtocolHandler(mFile.getPath());
+        byte buf[] = new byte[10];
+
+        assertEquals(0, handler.open(null,
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        assertEquals(mData.length, handler.seek(0,
+                    IURLProtocolHandler.SEEK_SIZE));
+        assertEquals(5000, handler.seek(5000, IURLProtocolHandler.SEEK_SET));
+        assertEquals(10, handler.read(buf, buf.length));
+        assertEquals(mData[5000], buf[0]);
+        assertEquals(5020, handler.seek(10, IURLProtocolHandler.SEEK_CUR));
+        assertEquals(mData.length - 4, handler.seek(-4,
+                    IURLProtocolHandler.SEEK_END));
+        assertEquals(4, handler.read(buf, buf.length));
+        assertEquals(mData[mData.length - 1], buf[3]);
+        assertEquals(-1, handler.seek(-1, IURLProtocolHandler.SEEK_SET));
+        handler.close();
+    }
+
+    /**
+     * Test that write mode is refused.
+     */
+    public void testWriteRefused()
+    {
+        MappedFileProtocolHandler handler =
+            new MappedFileProtocolHandler(mFile.getPath());
+
+        assertEquals(-1, handler.open(null,
+                    IURLProtocolHandler.URL_WRONLY_MODE));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.io;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import com.xuggle.xuggler.io.*;
+
+/**
+ * Unit test for ReadAheadProtocolHandler.
+ *
+ * @author Sebastien Vincent
+ */
+public class ReadAheadProtocolHandlerTest extends TestCase
+{
+    /**
+     * Content of the media.
+     */
+    private byte mData[] = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public ReadAheadProtocolHandlerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Method executed prior to run tests.
+     */
+    @Override
+    protected void setUp()
+    {
+        mData = new byte[200000];
+        new Random(42).nextBytes(mData);
+    }
+
+    /**
+     * Test sequential reads until end of file.
+     */
+    public void testRead()
+    {
+        ReadAheadProtocolHandler handler = new ReadAheadProtocolHandler(
+                new MemoryHandler(mData, 0), 1024, 8, 2048);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte buf[] = new byte[3000];
+        int len = 0;
+
+        assertEquals(0, handler.open("readahead:test",
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        while((len = handler.read(buf, buf.length)) > 0)
+        {
+            out.write(buf, 0, len);
+        }
+
+        assertEquals(0, len);
+        assertTrue(Arrays.equals(mData, out.toByteArray()));
+        assertEquals(0, handler.close());
+    }
+
+    /**
+     * Test seeks inside and outside the ring.
+     */
+    public void testSeek()
+    {
+        ReadAheadProtocolHandler handler = new ReadAheadProtocolHandler(
+                new MemoryHandler(mData, 0), 1024, 8, 4096);
+        byte buf[] = new byte[100];
+
+        assertEquals(0, handler.open("readahead:test",
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        assertEquals(mData.length, handler.seek(0,
+                    IURLProtocolHandler.SEEK_SIZE));
+
+        /* far away */
+        assertEquals(150000, handler.seek(150000,
+                    IURLProtocolHandler.SEEK_SET));
+        assertEquals(100, handler.read(buf, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mData, 150000, 150100),
+                    buf));
+
+        /* backward, still in the ring */
+        assertEquals(150050, handler.seek(-50,
+                    IURLProtocolHandler.SEEK_CUR));
+        assertEquals(100, handler.read(buf, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mData, 150050, 150150),
+                    buf));
+
+        /* end of file */
+        assertEquals(mData.length - 10, handler.seek(-10,
+                    IURLProtocolHandler.SEEK_END));
+        assertEquals(10, handler.read(buf, buf.length));
+        assertEquals(0, handler.read(buf, buf.length));
+        handler.close();
+    }
+
+    /**
+     * Test that a slow source stalls the first reads only and that
+     * statistics account for it.
+     * @throws InterruptedException if interrupted
+     */
+    public void testStatistics() throws InterruptedException
+    {
+        ReadAheadProtocolHandler handler = new ReadAheadProtocolHandler(
+                new MemoryHandler(mData, 5), 1024, 64, 2048);
+        byte buf[] = new byte[512];
+
+        assertEquals(0, handler.open("readahead:test",
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+
+        /* first read waits for the source */
+        assertEquals(buf.length, handler.read(buf, buf.length));
+        assertTrue(handler.getStallTime() > 0);
+        assertTrue(handler.getWindow() > 2048);
+
+        /* let the I/O thread fill the window */
+        Thread.sleep(200);
+        for(int i = 0 ; i < 4 ; i++)
+        {
+            assertEquals(buf.length, handler.read(buf, buf.length));
+        }
+        assertTrue(handler.getHitRate() >= 0.8);
+        handler.close();
+    }
+
+    /**
+     * Test that a source error is reported.
+     */
+    public void testError()
+    {
+        MemoryHandler source = new MemoryHandler(mData, 0);
+        ReadAheadProtocolHandler handler = new ReadAheadProtocolHandler(
+                source, 1024, 8, 2048);
+        byte buf[] = new byte[100];
+
+        source.mFailing = true;
+        assertEquals(0, handler.open("readahead:test",
+                    IURLProtocolHandler.URL_RDONLY_MODE));
+        assertEquals(-1, handler.read(buf, buf.length));
+        handler.close();
+    }
+
+    /**
+     * Protocol handler that reads from memory, optionally slowly.
+     *
+     * @author Sebastien Vincent
+     */
+    private static class MemoryHandler implements IURLProtocolHandler
+    {
+        /**
+         * Content of the media.
+         */
+        private final byte mData[];
+
+        /**
+         * Delay (in milliseconds) of each read.
+         */
+        private final long mDelay;
+
+        /**
+         * Current position.
+         */
+        private int mPosition = 0;
+
+        /**
+         * If reads fail.
+         */
+        private volatile boolean mFailing = false;
+
+        /**
+         * Constructor.
+         * @param data content of the media
+         * @param delay delay (in milliseconds) of each read
+         */
+        public MemoryHandler(byte data[], long delay)
+        {
+            mData = data;
+            mDelay = delay;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int open(String url, int flags)
+        {
+            assertEquals("test", url);
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int read(byte[] buf, int size)
+        {
+            int length = Math.min(size, mData.length - mPosition);
+
+            if(mFailing)
+            {
+                return -1;
+            }
+
+            try
+            {
+                Thread.sleep(mDelay);
+            }
+            catch(InterruptedException e)
+            {
+                return -1;
+            }
+
+            System.arraycopy(mData, mPosition, buf, 0, length);
+            mPosition += length;
+            return length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int write(byte[] buf, int size)
+        {
+            return -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public long seek(long offset, int whence)
+        {
+            if(whence == SEEK_SIZE)
+            {
+                return mData.length;
+            }
+
+            mPosition = (int)offset;
+            return mPosition;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int close()
+        {
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isStreamed(String url, int flags)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import xjplayer.media.event.*;
+
+/**
+ * Unit test for AsyncVideoListener.
+ *
+ * @author Sebastien Vincent
+ */
+public class AsyncVideoListenerTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public AsyncVideoListenerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Test that a slow listener neither blocks the caller nor receives
+     * more than the most recent events.
+     * @throws InterruptedException if interrupted
+     */
+    public void testSlowListener() throws InterruptedException
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch ended = new CountDownLatch(1);
+        final List<Long> received =
+            Collections.synchronizedList(new ArrayList<Long>());
+        AsyncVideoListener listener = new AsyncVideoListener(
+                new VideoListener()
+                {
+                    public void newImage(NewImageEvent event)
+                    {
+                        try
+                        {
+                            release.await();
+                        }
+                        catch(InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        received.add(event.getPts());
+                    }
+
+                    public void endOfVideo(VideoEvent event)
+                    {
+                        ended.countDown();
+                    }
+                }, 2);
+        long start = System.nanoTime();
+
+        for(int i = 0 ; i < 10 ; i++)
+        {
+            listener.newImage(new NewImageEvent(this, null, i));
+        }
+        assertTrue(System.nanoTime() - start <
+                TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS));
+
+        release.countDown();
+        for(int i = 0 ; i < 500 && received.size() < 3 ; i++)
+        {
+            Thread.sleep(10);
+        }
+        listener.endOfVideo(new VideoEvent(this));
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+
+        /* the one being delivered when blocked and the last ones pending */
+        assertEquals(Arrays.asList(0L, 8L, 9L), received);
+        assertEquals(7, listener.getDropped());
+
+        listener.shutdown();
+    }
+
+    /**
+     * Test that the end of video is delivered even when it is followed by a
+     * flood of frames that overflows the queue.
+     * @throws InterruptedException if interrupted
+     */
+    public void testEndOfVideoNotDropped() throws InterruptedException
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch ended = new CountDownLatch(1);
+        AsyncVideoListener listener = new AsyncVideoListener(
+                new VideoListener()
+                {
+                    public void newImage(NewImageEvent event)
+                    {
+                        try
+                        {
+                            release.await();
+                        }
+                        catch(InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    public void endOfVideo(VideoEvent event)
+                    {
+                        ended.countDown();
+                    }
+                }, 2);
+
+        for(int i = 0 ; i < 10 ; i++)
+        {
+            listener.newImage(new NewImageEvent(this, null, i));
+        }
+        listener.endOfVideo(new VideoEvent(this));
+        for(int i = 10 ; i < 100 ; i++)
+        {
+            listener.newImage(new NewImageEvent(this, null, i));
+        }
+
+        release.countDown();
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        /* 100 images: one delivered and one still pending with the end */
+        assertEquals(98, listener.getDropped());
+
+        listener.shutdown();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import junit.framework.*;
+
+/**
+ * Unit test for AudioRateConverter.
+ *
+ * @author Sebastien Vincent
+ */
+public class AudioRateConverterTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public AudioRateConverterTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Create samples.
+     * @param values sample values, interleaved by channel
+     * @return signed 16-bit little-endian samples
+     */
+    private static byte[] toBytes(int... values)
+    {
+        byte data[] = new byte[values.length * 2];
+
+        for(int i = 0 ; i < values.length ; i++)
+        {
+            data[2 * i] = (byte)values[i];
+            data[2 * i + 1] = (byte)(values[i] >> 8);
+        }
+        return data;
+    }
+
+    /**
+     * Get a sample.
+     * @param data signed 16-bit little-endian samples
+     * @param index index of the sample
+     * @return sample value
+     */
+    private static int getSample(byte data[], int index)
+    {
+        return (data[2 * index] & 0xff) | (data[2 * index + 1] << 8);
+    }
+
+    /**
+     * Test that slowing down interpolates between frames of each channel.
+     */
+    public void testSlowDown()
+    {
+        byte data[] = toBytes(0, 1000, 100, -1000, 200, -3000);
+        byte out[] = AudioRateConverter.convert(data, data.length, 2, 0.6);
+
+        assertEquals(5 * 4, out.length);
+        assertEquals(0, getSample(out, 0));
+        assertEquals(1000, getSample(out, 1));
+        assertEquals(50, getSample(out, 2));
+        assertEquals(0, getSample(out, 3));
+        assertEquals(100, getSample(out, 4));
+        assertEquals(-1000, getSample(out, 5));
+        assertEquals(150, getSample(out, 6));
+        assertEquals(-2000, getSample(out, 7));
+        assertEquals(200, getSample(out, 8));
+        assertEquals(-3000, getSample(out, 9));
+    }
+
+    /**
+     * Test that the rate is followed over many buffers and that a
+     * converted sine wave has no discontinuity, within or between buffers.
+     */
+    public void testContinuity()
+    {
+        double rates[] = {0.97, 1.0, 1.03};
+        int frames = 1024;
+
+        for(double rate : rates)
+        {
+            int previous = 0;
+            long total = 0;
+            int maxStep = 0;
+
+            for(int buffer = 0 ; buffer < 100 ; buffer++)
+            {
+                int values[] = new int[frames];
+
+                for(int i = 0 ; i < frames ; i++)
+                {
+                    values[i] = (int)(20000 * Math.sin(
+                                (buffer * frames + i) * 2 * Math.PI / 100));
+                }
+
+                byte data[] = toBytes(values);
+                byte out[] = AudioRateConverter.convert(data, data.length,
+                        1, rate);
+
+                for(int i = 0 ; i < out.length / 2 ; i++)
+                {
+                    int sample = getSample(out, i);
+
+                    if(buffer > 0 || i > 0)
+                    {
+                        maxStep = Math.max(maxStep,
+                                Math.abs(sample - previous));
+                    }
+                    previous = sample;
+                }
+                total += out.length / 2;
+            }
+
+            /* largest step of the sine is 2 * PI * 20000 / 100 */
+            assertTrue("step " + maxStep, maxStep <= 1300);
+            assertEquals(100 * frames / rate, total, 100);
+        }
+    }
+
+    /**
+     * Test buffers too short to interpolate.
+     */
+    public void testShortBuffers()
+    {
+        byte data[] = toBytes(1234);
+
+        assertEquals(0, AudioRateConverter.convert(data, 0, 1, 1.03).length);
+        assertEquals(2, AudioRateConverter.convert(data, 2, 1, 1.03).length);
+        assertEquals(1234, getSample(
+                    AudioRateConverter.convert(data, 2, 1, 0.5), 1));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.awt.image.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for FrameCache.
+ *
+ * @author Sebastien Vincent
+ */
+public class FrameCacheTest extends TestCase
+{
+    /**
+     * Size (in bytes) of the 8x8 RGB images of the GOPs.
+     */
+    private static final long IMAGE_SIZE = 8 * 8 * 3;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public FrameCacheTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Create a GOP of pictures spaced by 40 ms.
+     * @param start timestamp of the first picture
+     * @param count number of pictures
+     * @return GOP
+     */
+    private static FrameCache.Gop makeGop(long start, int count)
+    {
+        SortedMap<Long, BufferedImage> frames =
+            new TreeMap<Long, BufferedImage>();
+
+        for(int i = 0 ; i < count ; i++)
+        {
+            frames.put(start + i * 40000L,
+                    new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR));
+        }
+        return new FrameCache.Gop(frames, start + count * 40000L);
+    }
+
+    /**
+     * Test lookup of the frame displayed at a timestamp.
+     */
+    public void testLookup()
+    {
+        FrameCache cache = new FrameCache(Long.MAX_VALUE);
+        FrameCache.Gop gop = makeGop(1000000, 10);
+
+        cache.put(gop);
+        assertNull(cache.get(999999));
+        assertSame(gop, cache.get(1000000));
+        assertSame(gop, cache.get(1399999));
+        assertNull(cache.get(1400000));
+
+        assertEquals(0, gop.indexOf(1039999));
+        assertEquals(1, gop.indexOf(1040000));
+        assertEquals(9, gop.indexOf(1399999));
+        assertEquals(10 * IMAGE_SIZE, cache.getBytes());
+    }
+
+    /**
+     * Test that the least recently used GOPs are evicted first.
+     */
+    public void testEviction()
+    {
+        FrameCache cache = new FrameCache(25 * IMAGE_SIZE);
+        FrameCache.Gop first = makeGop(0, 10);
+        FrameCache.Gop second = makeGop(400000, 10);
+        FrameCache.Gop third = makeGop(800000, 10);
+
+        cache.put(first);
+        cache.put(second);
+        assertSame(first, cache.get(0));
+
+        /* second is the least recently used */
+        cache.put(third);
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(0));
+        assertNull(cache.get(400000));
+        assertSame(third, cache.get(800000));
+        assertEquals(20 * IMAGE_SIZE, cache.getBytes());
+
+        /* a GOP larger than the cache is still kept alone */
+        cache.put(makeGop(2000000, 30));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(2000000));
+    }
+
+    /**
+     * Test that a GOP larger than the cache is decoded within its size,
+     * keeping the last pictures.
+     */
+    public void testLargeGop()
+    {
+        FrameCache cache = new FrameCache(25 * IMAGE_SIZE);
+        FrameCache.GopBuilder builder =
+            new FrameCache.GopBuilder(cache.getMaxBytes() / 2);
+        FrameCache.Gop gop = null;
+        BufferedImage image = null;
+
+        for(int i = 0 ; i < 250 ; i++)
+        {
+            image = new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR);
+            assertEquals(i >= 12, builder.isFull(image));
+            builder.add(i * 40000L, image);
+            assertTrue(builder.getBytes() <= cache.getMaxBytes() / 2);
+        }
+
+        gop = builder.build(250 * 40000L);
+        cache.put(gop);
+        assertEquals(12, gop.size());
+        assertEquals(238 * 40000L, gop.getStart());
+        assertSame(image, gop.getImage(11));
+        assertNull(cache.get(237 * 40000L));
+        assertSame(gop, cache.get(249 * 40000L));
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+}
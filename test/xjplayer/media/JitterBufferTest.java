@@ -0,0 +1,152 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for JitterBuffer.
+ *
+ * @author Sebastien Vincent
+ */
+public class JitterBufferTest extends TestCase
+{
+    /**
+     * Spacing (in microseconds) of media sent.
+     */
+    private static final long SPACING = 20000;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public JitterBufferTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Test that regular arrival keeps the minimum delay.
+     */
+    public void testSteadyArrival()
+    {
+        JitterBuffer buffer = new JitterBuffer(100000, 2000000);
+
+        for(int i = 0 ; i < 100 ; i++)
+        {
+            buffer.onArrival(i * SPACING, 5000000 + i * SPACING);
+        }
+
+        assertEquals(0, buffer.getJitter());
+        assertEquals(100000, buffer.getTargetDelay());
+        assertEquals(99 * SPACING, buffer.getNewestTimeStamp());
+        assertEquals(1.0, buffer.getRate(100000));
+        assertTrue(buffer.getRate(300000) > 1.0);
+        assertTrue(buffer.getRate(10000) < 1.0);
+        assertFalse(buffer.isOffLiveEdge(100000));
+        assertTrue(buffer.isOffLiveEdge(-1));
+        assertTrue(buffer.isOffLiveEdge(5000000));
+
+        buffer.reset();
+        assertEquals(-1, buffer.getNewestTimeStamp());
+    }
+
+    /**
+     * Test that jittered arrival from a local UDP sender grows the target
+     * delay, within bounds.
+     * @throws Exception if sockets fail
+     */
+    public void testUdpArrival() throws Exception
+    {
+        final DatagramSocket receiver = new DatagramSocket(0,
+                InetAddress.getByName("127.0.0.1"));
+        final int port = receiver.getLocalPort();
+        final int count = 60;
+        JitterBuffer buffer = new JitterBuffer(50000, 500000);
+
+        /* stand-in for a live source: timestamps are regular, sending is
+         * not
+         */
+        Thread sender = new Thread()
+        {
+            public void run()
+            {
+                Random random = new Random(42);
+                DatagramSocket socket = null;
+
+                try
+                {
+                    socket = new DatagramSocket();
+                    for(int i = 0 ; i < count ; i++)
+                    {
+                        ByteArrayOutputStream out =
+                            new ByteArrayOutputStream();
+                        new DataOutputStream(out).writeLong(i * SPACING);
+                        byte data[] = out.toByteArray();
+
+                        socket.send(new DatagramPacket(data, data.length,
+                                    receiver.getLocalAddress(), port));
+                        Thread.sleep(5 + random.nextInt(30));
+                    }
+                }
+                catch(Exception e)
+                {
+                }
+                finally
+                {
+                    if(socket != null)
+                    {
+                        socket.close();
+                    }
+                }
+            }
+        };
+
+        receiver.setSoTimeout(2000);
+        sender.start();
+
+        try
+        {
+            byte data[] = new byte[8];
+
+            for(int i = 0 ; i < count ; i++)
+            {
+                DatagramPacket packet = new DatagramPacket(data, data.length);
+
+                receiver.receive(packet);
+                buffer.onArrival(new DataInputStream(new ByteArrayInputStream(
+                                data)).readLong(), System.nanoTime() / 1000);
+            }
+        }
+        finally
+        {
+            receiver.close();
+            sender.join();
+        }
+
+        assertTrue(buffer.getJitter() > 2000);
+        assertTrue(buffer.getTargetDelay() > 50000);
+        assertTrue(buffer.getTargetDelay() <= 500000);
+        assertEquals((count - 1) * SPACING, buffer.getNewestTimeStamp());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import junit.framework.*;
+
+/**
+ * Unit test for LatencyHistogram.
+ *
+ * @author Sebastien Vincent
+ */
+public class LatencyHistogramTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public LatencyHistogramTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Test bucket placement, mean and percentiles.
+     */
+    public void testRecord()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long counts[] = null;
+
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+
+        /* 98 fast durations (3 us) and 2 slow ones (5 ms) */
+        for(int i = 0 ; i < 98 ; i++)
+        {
+            histogram.record(3000);
+        }
+        histogram.record(5000000);
+        histogram.record(5000000);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        counts = histogram.getCounts();
+        assertEquals(LatencyHistogram.BUCKET_COUNT, counts.length);
+        assertEquals(98, counts[2]);
+        assertEquals(2, counts[13]);
+        assertEquals(1, counts[LatencyHistogram.BUCKET_COUNT - 1]);
+        assertEquals(101, histogram.getCount());
+
+        assertEquals(4, histogram.getPercentile(50));
+        assertEquals(8192, histogram.getPercentile(99));
+        assertEquals(1L << (LatencyHistogram.BUCKET_COUNT - 1),
+                histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+}
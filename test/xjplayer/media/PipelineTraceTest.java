@@ -0,0 +1,113 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.media;
+
+import java.io.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for PipelineTrace.
+ *
+ * @author Sebastien Vincent
+ */
+public class PipelineTraceTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public PipelineTraceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Stop tracing after each test.
+     */
+    protected void tearDown()
+    {
+        PipelineTrace.stop();
+    }
+
+    /**
+     * Test that only the most recent events are kept and dumped in order.
+     * @throws IOException if trace cannot be dumped
+     */
+    public void testRecord() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        String lines[] = null;
+
+        PipelineTrace.start(4);
+        assertTrue(PipelineTrace.isEnabled());
+
+        for(int i = 0 ; i < 6 ; i++)
+        {
+            PipelineTrace.record(PipelineTrace.Stage.DECODE, 1, i * 40000,
+                    i * 1000000L, 2000);
+        }
+        PipelineTrace.stop();
+        assertFalse(PipelineTrace.isEnabled());
+
+        /* ignored once stopped */
+        PipelineTrace.record(PipelineTrace.Stage.DROP, 1, 0, 0, 0);
+
+        PipelineTrace.dump(out);
+        lines = out.toString().split("\r?\n");
+
+        assertEquals(5, lines.length);
+        assertEquals("sequence,thread,stage,stream,timestamp,start,duration",
+                lines[0]);
+
+        for(int i = 0 ; i < 4 ; i++)
+        {
+            String fields[] = lines[i + 1].split(",");
+
+            assertEquals(String.valueOf(i + 2), fields[0]);
+            assertEquals("DECODE", fields[2]);
+            assertEquals("1", fields[3]);
+            assertEquals(String.valueOf((i + 2) * 40000), fields[4]);
+            assertEquals(String.valueOf(i * 1000), fields[5]);
+            assertEquals("2", fields[6]);
+        }
+    }
+
+    /**
+     * Test that per stage totals count all events, overwritten ones
+     * included.
+     */
+    public void testStageTotals()
+    {
+        PipelineTrace.start(2);
+
+        for(int i = 0 ; i < 5 ; i++)
+        {
+            PipelineTrace.record(PipelineTrace.Stage.CONVERT, 0, i, 0, 1000);
+        }
+        PipelineTrace.record(PipelineTrace.Stage.WRITE, 1, 0, 0, 300);
+        PipelineTrace.stop();
+
+        assertEquals(5, PipelineTrace.getCount(PipelineTrace.Stage.CONVERT));
+        assertEquals(5000, PipelineTrace.getTime(PipelineTrace.Stage.CONVERT));
+        assertEquals(1, PipelineTrace.getCount(PipelineTrace.Stage.WRITE));
+        assertEquals(300, PipelineTrace.getTime(PipelineTrace.Stage.WRITE));
+        assertEquals(0, PipelineTrace.getCount(PipelineTrace.Stage.DROP));
+    }
+}
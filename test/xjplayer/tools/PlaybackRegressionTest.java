@@ -0,0 +1,400 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+
+import xjplayer.media.*;
+import xjplayer.media.event.*;
+
+/**
+ * Performance regression test: synthetic clips are played headless
+ * (audio samples discarded, no display) and drop counts, A/V offset and
+ * throughput must stay within thresholds.
+ *
+ * It needs the Xuggler native libraries but no audio device nor display.
+ * The minimum frame rate can be changed with the xjplayer.perf.fps
+ * property for slow machines.
+ *
+ * @author Sebastien Vincent
+ */
+public class PlaybackRegressionTest extends TestCase
+{
+    /**
+     * Largest ratio of video frames dropped at real time.
+     */
+    private static final double MAX_DROP_RATIO = 0.02;
+
+    /**
+     * Largest A/V offset (in microseconds) at real time.
+     */
+    private static final long MAX_AV_OFFSET = 100000;
+
+    /**
+     * Smallest frame rate when the presentation clock is disabled.
+     */
+    private static final int MIN_FPS = Integer.getInteger("xjplayer.perf.fps",
+            200);
+
+    /**
+     * Directory of the generated clips.
+     */
+    private File mDir = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public PlaybackRegressionTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Create the directory of the clips.
+     * @throws IOException if directory cannot be created
+     */
+    @Override
+    protected void setUp() throws IOException
+    {
+        mDir = File.createTempFile("xjplayer", "");
+        mDir.delete();
+        assertTrue(mDir.mkdir());
+    }
+
+    /**
+     * Delete the generated clips.
+     */
+    @Override
+    protected void tearDown()
+    {
+        for(File file : mDir.listFiles())
+        {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    /**
+     * Generate a clip.
+     * @param media clip description
+     * @param name file name, its extension gives the container format
+     * @return clip file
+     */
+    private File generate(SyntheticMedia media, String name)
+    {
+        File file = new File(mDir, name);
+
+        media.write(file);
+        return file;
+    }
+
+    /**
+     * Play a clip at real time and check drops and A/V offset.
+     * @param media clip description
+     * @param file clip file
+     * @param lowMemory true to decode video packets just before their
+     * presentation
+     * @throws InterruptedException if interrupted while playing
+     */
+    private void checkRealTime(SyntheticMedia media, File file,
+            boolean lowMemory) throws InterruptedException
+    {
+        PlaybackBenchmark benchmark = new PlaybackBenchmark(file.getPath());
+
+        benchmark.setClockEnabled(true);
+        benchmark.setLowMemory(lowMemory);
+        benchmark.run();
+
+        assertTrue(benchmark.getReport(), benchmark.getVideoFramesDropped() <=
+                media.getFrameCount() * MAX_DROP_RATIO);
+        assertTrue(benchmark.getReport(), benchmark.getVideoFrames() >=
+                media.getFrameCount() * (1 - MAX_DROP_RATIO));
+        assertEquals(benchmark.getReport(), 0,
+                benchmark.getAudioFramesDropped());
+        assertTrue(benchmark.getReport(), media.getAudioTracks() == 0 ||
+                benchmark.getAudioFrames() > 0);
+        assertTrue(benchmark.getReport(),
+                benchmark.getMaxAVOffset() <= MAX_AV_OFFSET);
+
+        /* played at real time, neither faster nor much slower */
+        assertTrue(benchmark.getReport(), benchmark.getElapsedTime() >=
+                (media.getDuration() - 1) * 1000000000L);
+        assertTrue(benchmark.getReport(), benchmark.getElapsedTime() <=
+                (media.getDuration() + 1) * 1000000000L);
+    }
+
+    /**
+     * Play a clip with the presentation clock disabled and check that
+     * nothing is dropped and throughput is high enough.
+     * @param media clip description
+     * @param file clip file
+     * @param convert true to convert pictures to images
+     * @throws InterruptedException if interrupted while playing
+     */
+    private void checkThroughput(SyntheticMedia media, File file,
+            boolean convert) throws InterruptedException
+    {
+        PlaybackBenchmark benchmark = new PlaybackBenchmark(file.getPath());
+
+        benchmark.setVideoConversion(convert);
+        benchmark.run();
+
+        assertEquals(benchmark.getReport(), 0,
+                benchmark.getVideoFramesDropped());
+        assertTrue(benchmark.getReport(), benchmark.getVideoFrames() >=
+                media.getFrameCount() * (1 - MAX_DROP_RATIO));
+        assertTrue(benchmark.getReport(),
+                benchmark.getFramesPerSecond() >= MIN_FPS);
+    }
+
+    /**
+     * Test real time playback of a clip with one audio track.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testRealTime() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+
+        checkRealTime(media, generate(media, "realtime.avi"), false);
+    }
+
+    /**
+     * Test real time playback in low-memory mode.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testRealTimeLowMemory() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+
+        checkRealTime(media, generate(media, "lowmemory.avi"), true);
+    }
+
+    /**
+     * Test real time playback of a clip with two audio tracks, short
+     * groups of pictures and a higher frame rate.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testRealTimeAudioTracks() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+
+        media.setResolution(640, 360);
+        media.setFrameRate(30);
+        media.setGopSize(12);
+        media.setAudioTracks(2);
+        checkRealTime(media, generate(media, "tracks.avi"), false);
+    }
+
+    /**
+     * Test decode and convert throughput.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testThroughput() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+
+        media.setResolution(640, 480);
+        media.setFrameRate(30);
+        media.setGopSize(12);
+        checkThroughput(media, generate(media, "throughput.avi"), true);
+    }
+
+    /**
+     * Test decode throughput of a video-only clip without conversion.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testDecodeThroughput() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+
+        media.setResolution(640, 480);
+        media.setFrameRate(30);
+        media.setAudioTracks(0);
+        checkThroughput(media, generate(media, "decode.avi"), false);
+    }
+
+    /**
+     * Test that playback resumed after rewinding presents its frames
+     * instead of dropping them as late.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testRewindResume() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+        File file = generate(media, "rewind.avi");
+        final CountDownLatch end = new CountDownLatch(1);
+        MediaControl control = new MediaControl();
+        PlaybackStats stats = control.getMediaCore().getPlaybackStats();
+        long presented = 0;
+
+        control.getMediaCore().setAudioOutput(false);
+        control.addVideoListener(new VideoListener()
+                {
+                    public void newImage(NewImageEvent event)
+                    {
+                    }
+
+                    public void endOfVideo(VideoEvent event)
+                    {
+                        end.countDown();
+                    }
+                });
+
+        try
+        {
+            control.loadMedia(file.getPath());
+            control.start();
+            Thread.sleep(3000);
+
+            assertTrue(control.setTrickPlay(-8));
+            Thread.sleep(500);
+            stats.reset();
+            control.start();
+
+            assertTrue(end.await(media.getDuration() * 2, TimeUnit.SECONDS));
+            presented = stats.getVideoFramesPresented();
+        }
+        finally
+        {
+            control.dispose();
+        }
+
+        /* 4 s rewound from 3 s, the whole clip is played again */
+        assertTrue("presented " + presented, presented >=
+                media.getFrameCount() * (1 - MAX_DROP_RATIO) / 2);
+        assertTrue("dropped " + stats.getVideoFramesDroppedLate(),
+                stats.getVideoFramesDroppedLate() <=
+                media.getFrameCount() * MAX_DROP_RATIO);
+    }
+
+    /**
+     * Test live mode: media arrives paced at real time with jitter and the
+     * core follows it with its live clock, changing its rate instead of
+     * jumping to the live edge or dropping media.
+     * @throws InterruptedException if interrupted while playing
+     */
+    public void testLiveMode() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+        File file = generate(media, "live.avi");
+        final MediaCore core = new MediaCore();
+        final PlaybackStats stats = core.getPlaybackStats();
+        final long maxLatency[] = new long[1];
+        IMediaReader reader = ToolFactory.makeReader(file.getPath());
+        MediaToolAdapter source = new MediaToolAdapter()
+        {
+            /**
+             * Random delay of arrivals, up to 40 ms.
+             */
+            private final Random mJitter = new Random(0);
+
+            /**
+             * Wall clock time (in microseconds) of timestamp 0.
+             */
+            private long mStart = 0;
+
+            /**
+             * Wait for media to arrive as it would from a live source.
+             * @param timeStamp timestamp of the media in microseconds
+             */
+            private void arrive(long timeStamp)
+            {
+                long now = System.nanoTime() / 1000;
+
+                if(mStart == 0)
+                {
+                    mStart = now - timeStamp;
+                }
+
+                long delay = mStart + timeStamp + mJitter.nextInt(40000) -
+                    now;
+
+                try
+                {
+                    if(delay > 0)
+                    {
+                        TimeUnit.MICROSECONDS.sleep(delay);
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                maxLatency[0] = Math.max(maxLatency[0],
+                        core.getLiveLatency());
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onVideoPicture(IVideoPictureEvent event)
+            {
+                arrive(event.getTimeStamp(TimeUnit.MICROSECONDS));
+                super.onVideoPicture(event);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onAudioSamples(IAudioSamplesEvent event)
+            {
+                arrive(event.getTimeStamp(TimeUnit.MICROSECONDS));
+                super.onAudioSamples(event);
+            }
+        };
+
+        core.setLiveMode(true);
+        core.setAudioOutput(false);
+        reader.addListener(source);
+        source.addListener(core);
+
+        while(reader.readPacket() == null)
+        {
+            if(Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+        if(reader.isOpen())
+        {
+            reader.close();
+        }
+
+        assertTrue("latency " + maxLatency[0],
+                maxLatency[0] < 2 * JitterBuffer.DEFAULT_MAX_DELAY);
+        assertTrue("presented " + stats.getVideoFramesPresented(),
+                stats.getVideoFramesPresented() >=
+                media.getFrameCount() * (1 - MAX_DROP_RATIO));
+        assertTrue("dropped " + stats.getVideoFramesDroppedLate(),
+                stats.getVideoFramesDroppedLate() <=
+                media.getFrameCount() * MAX_DROP_RATIO);
+        assertEquals(0, stats.getAudioFramesDroppedLate());
+        assertTrue(stats.getAudioFramesPresented() > 0);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import junit.framework.*;
+
+/**
+ * Unit test for RemuxCommand.
+ *
+ * @author Sebastien Vincent
+ */
+public class RemuxCommandTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public RemuxCommandTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Test parsing of cut times.
+     */
+    public void testParseTime()
+    {
+        assertEquals(1500000, RemuxCommand.parseTime("1.5"));
+        assertEquals(90000000, RemuxCommand.parseTime("1:30"));
+        assertEquals(3723250000L, RemuxCommand.parseTime("01:02:03.25"));
+
+        try
+        {
+            RemuxCommand.parseTime("1:75");
+            fail("Minutes and seconds are below 60");
+        }
+        catch(NumberFormatException e)
+        {
+        }
+
+        try
+        {
+            RemuxCommand.parseTime("1:2:3:4");
+            fail("Only hours, minutes and seconds are allowed");
+        }
+        catch(NumberFormatException e)
+        {
+        }
+    }
+}
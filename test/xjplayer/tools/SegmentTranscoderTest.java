@@ -0,0 +1,135 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+
+import junit.framework.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.mediatool.event.*;
+
+/**
+ * Test of SegmentTranscoder on generated clips. It needs the Xuggler
+ * native libraries.
+ *
+ * @author Sebastien Vincent
+ */
+public class SegmentTranscoderTest extends TestCase
+{
+    /**
+     * Directory of the generated clips.
+     */
+    private File mDir = null;
+
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public SegmentTranscoderTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Create the directory of the clips.
+     * @throws IOException if directory cannot be created
+     */
+    @Override
+    protected void setUp() throws IOException
+    {
+        mDir = File.createTempFile("xjplayer", "");
+        mDir.delete();
+        assertTrue(mDir.mkdir());
+    }
+
+    /**
+     * Delete the generated clips.
+     */
+    @Override
+    protected void tearDown()
+    {
+        for(File file : mDir.listFiles())
+        {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    /**
+     * Count the video frames of a media.
+     * @param file media file
+     * @return number of video pictures decoded
+     */
+    private static int countVideoFrames(File file)
+    {
+        IMediaReader reader = ToolFactory.makeReader(file.getPath());
+        final int count[] = new int[1];
+
+        reader.addListener(new MediaListenerAdapter()
+                {
+                    @Override
+                    public void onVideoPicture(IVideoPictureEvent event)
+                    {
+                        count[0]++;
+                    }
+                });
+
+        while(reader.readPacket() == null)
+        {
+        }
+        if(reader.isOpen())
+        {
+            reader.close();
+        }
+        return count[0];
+    }
+
+    /**
+     * Test that no frame is lost or duplicated at the joins of segments
+     * when pictures are not decoded in presentation order.
+     * @throws InterruptedException if interrupted
+     */
+    public void testJoinWithBFrames() throws InterruptedException
+    {
+        SyntheticMedia media = new SyntheticMedia();
+        File input = new File(mDir, "input.mp4");
+        File output = new File(mDir, "output.mp4");
+        BatchTranscoder transcoder = new BatchTranscoder(4);
+
+        media.setDuration(8);
+        media.setGopSize(12);
+        media.setBFrames(2);
+        media.write(input);
+
+        try
+        {
+            assertTrue(new SegmentTranscoder(new TranscodeJob(
+                            input.getPath(), output.getPath()), 4).run(
+                        transcoder, null));
+        }
+        finally
+        {
+            transcoder.shutdown();
+        }
+
+        assertEquals(media.getFrameCount(), countVideoFrames(input));
+        assertEquals(countVideoFrames(input), countVideoFrames(output));
+    }
+}
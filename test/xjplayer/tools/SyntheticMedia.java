@@ -0,0 +1,337 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+import com.xuggle.mediatool.*;
+import com.xuggle.xuggler.*;
+
+/**
+ * Generator of deterministic clips for tests, so that they do not depend
+ * on sample files.
+ *
+ * Video is a test pattern: color bars, a box moving by 4 pixels per frame
+ * and the frame number drawn as 16 binary blocks (no font is needed).
+ * Audio track N is a sine tone of 440 * (N + 1) Hz. The container format
+ * is guessed from the file extension.
+ *
+ * @author Sebastien Vincent
+ */
+public class SyntheticMedia
+{
+    /**
+     * Colors of the bars.
+     */
+    private static final Color BARS[] = {Color.WHITE, Color.YELLOW,
+        Color.CYAN, Color.GREEN, Color.MAGENTA, Color.RED, Color.BLUE,
+        Color.BLACK};
+
+    /**
+     * Amplitude of the tones.
+     */
+    private static final double AMPLITUDE = 8000;
+
+    /**
+     * Width of the video.
+     */
+    private int mWidth = 320;
+
+    /**
+     * Height of the video.
+     */
+    private int mHeight = 240;
+
+    /**
+     * Frame rate of the video.
+     */
+    private int mFrameRate = 25;
+
+    /**
+     * Video codec.
+     */
+    private ICodec.ID mVideoCodec = ICodec.ID.CODEC_ID_MPEG4;
+
+    /**
+     * Number of pictures in a group of pictures (key frame interval).
+     */
+    private int mGopSize = 25;
+
+    /**
+     * Maximum number of consecutive B-frames, 0 for none.
+     */
+    private int mBFrames = 0;
+
+    /**
+     * Number of audio tracks.
+     */
+    private int mAudioTracks = 1;
+
+    /**
+     * Audio codec.
+     */
+    private ICodec.ID mAudioCodec = ICodec.ID.CODEC_ID_MP2;
+
+    /**
+     * Sample rate of the audio tracks.
+     */
+    private int mSampleRate = 44100;
+
+    /**
+     * Number of channels of the audio tracks.
+     */
+    private int mChannels = 2;
+
+    /**
+     * Duration of the clip in seconds.
+     */
+    private int mDuration = 5;
+
+    /**
+     * Constructor.
+     */
+    public SyntheticMedia()
+    {
+    }
+
+    /**
+     * Set the resolution of the video.
+     * @param width width
+     * @param height height
+     */
+    public void setResolution(int width, int height)
+    {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Set the frame rate of the video.
+     * @param frameRate frames per second
+     */
+    public void setFrameRate(int frameRate)
+    {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * Set the video codec.
+     * @param codec codec identifier
+     */
+    public void setVideoCodec(ICodec.ID codec)
+    {
+        mVideoCodec = codec;
+    }
+
+    /**
+     * Set the key frame interval.
+     * @param gopSize number of pictures in a group of pictures
+     */
+    public void setGopSize(int gopSize)
+    {
+        mGopSize = gopSize;
+    }
+
+    /**
+     * Set the maximum number of consecutive B-frames, so that pictures are
+     * not decoded in presentation order.
+     * @param bFrames number of B-frames, 0 for none
+     */
+    public void setBFrames(int bFrames)
+    {
+        mBFrames = bFrames;
+    }
+
+    /**
+     * Set the audio tracks.
+     * @param tracks number of audio tracks, 0 for none
+     * @param codec codec identifier
+     * @param sampleRate sample rate
+     * @param channels number of channels
+     */
+    public void setAudio(int tracks, ICodec.ID codec, int sampleRate,
+            int channels)
+    {
+        mAudioTracks = tracks;
+        mAudioCodec = codec;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+    }
+
+    /**
+     * Set the number of audio tracks.
+     * @param tracks number of audio tracks, 0 for none
+     */
+    public void setAudioTracks(int tracks)
+    {
+        mAudioTracks = tracks;
+    }
+
+    /**
+     * Set the duration of the clip.
+     * @param duration duration in seconds
+     */
+    public void setDuration(int duration)
+    {
+        mDuration = duration;
+    }
+
+    /**
+     * Get the duration of the clip.
+     * @return duration in seconds
+     */
+    public int getDuration()
+    {
+        return mDuration;
+    }
+
+    /**
+     * Get the number of video frames of the clip.
+     * @return number of video frames
+     */
+    public int getFrameCount()
+    {
+        return mDuration * mFrameRate;
+    }
+
+    /**
+     * Get the number of audio tracks of the clip.
+     * @return number of audio tracks
+     */
+    public int getAudioTracks()
+    {
+        return mAudioTracks;
+    }
+
+    /**
+     * Write the clip.
+     * @param file file to write, its extension gives the container format
+     * @throws RuntimeException if the clip cannot be written
+     */
+    public void write(File file)
+    {
+        IMediaWriter writer = ToolFactory.makeWriter(file.getPath());
+        BufferedImage image = new BufferedImage(mWidth, mHeight,
+                BufferedImage.TYPE_3BYTE_BGR);
+        long samples[] = new long[mAudioTracks];
+
+        try
+        {
+            int index = writer.addVideoStream(0, 0, mVideoCodec,
+                    IRational.make(mFrameRate, 1), mWidth, mHeight);
+
+            IStreamCoder coder =
+                writer.getContainer().getStream(index).getStreamCoder();
+
+            coder.setNumPicturesInGroupOfPictures(mGopSize);
+            if(mBFrames > 0)
+            {
+                coder.setProperty("bf", mBFrames);
+            }
+
+            for(int i = 0 ; i < mAudioTracks ; i++)
+            {
+                writer.addAudioStream(i + 1, i + 1, mAudioCodec, mChannels,
+                        mSampleRate);
+            }
+
+            /* audio of each track covering the frame follows it */
+            for(int frame = 0 ; frame < getFrameCount() ; frame++)
+            {
+                long end = (long)(frame + 1) * mSampleRate / mFrameRate;
+
+                drawPattern(image, frame);
+                writer.encodeVideo(0, image, frame * 1000000L / mFrameRate,
+                        TimeUnit.MICROSECONDS);
+
+                for(int i = 0 ; i < mAudioTracks ; i++)
+                {
+                    writer.encodeAudio(i + 1, getTone(i, samples[i], end),
+                            samples[i] * 1000000L / mSampleRate,
+                            TimeUnit.MICROSECONDS);
+                    samples[i] = end;
+                }
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Draw the test pattern of a frame.
+     * @param image image to draw into
+     * @param frame frame number
+     */
+    private void drawPattern(BufferedImage image, int frame)
+    {
+        Graphics2D g = image.createGraphics();
+        int barWidth = (mWidth + BARS.length - 1) / BARS.length;
+        int box = mHeight / 4;
+        int bit = mWidth / 16;
+
+        for(int i = 0 ; i < BARS.length ; i++)
+        {
+            g.setColor(BARS[i]);
+            g.fillRect(i * barWidth, 0, barWidth, mHeight);
+        }
+
+        /* moving box */
+        g.setColor(Color.GRAY);
+        g.fillRect((frame * 4) % (mWidth - box), (mHeight - box) / 2, box,
+                box);
+
+        /* frame number, most significant bit first */
+        for(int i = 0 ; i < 16 ; i++)
+        {
+            g.setColor((frame & (1 << (15 - i))) != 0 ? Color.WHITE :
+                    Color.BLACK);
+            g.fillRect(i * bit, mHeight - bit, bit, bit);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Get the samples of the tone of an audio track.
+     * @param track index of the audio track
+     * @param start index of the first sample
+     * @param end index of the sample following the last one
+     * @return interleaved 16-bit samples
+     */
+    private short[] getTone(int track, long start, long end)
+    {
+        short ret[] = new short[(int)(end - start) * mChannels];
+        double step = 2 * Math.PI * 440 * (track + 1) / mSampleRate;
+
+        for(long i = start ; i < end ; i++)
+        {
+            short value = (short)(AMPLITUDE * Math.sin(step * i));
+
+            for(int c = 0 ; c < mChannels ; c++)
+            {
+                ret[(int)(i - start) * mChannels + c] = value;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  XJPlayer - Mediaplayer in Java based on Xuggler.
+ *  Copyright (C) 2010 Sebastien Vincent <sebastien.vincent@cppextrem.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/
+ */
+
+package xjplayer.tools;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test for TranscodeCommand.
+ *
+ * @author Sebastien Vincent
+ */
+public class TranscodeCommandTest extends TestCase
+{
+    /**
+     * Unit test Constructor.
+     * @param name name of the testcase
+     */
+    public TranscodeCommandTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Test that outputs overwriting an input or another output are
+     * rejected.
+     */
+    public void testCheckOutput()
+    {
+        File dir = new File("out");
+        Set<File> outputs = new HashSet<File>();
+        String inputs[] = {"a/clip.avi", "b/clip.avi", "a/other.avi",
+            "out/self.mp4"};
+
+        assertTrue(TranscodeCommand.checkOutput(inputs[0],
+                    TranscodeCommand.getOutput(inputs[0], dir, "mp4"),
+                    outputs));
+        assertFalse(TranscodeCommand.checkOutput(inputs[1],
+                    TranscodeCommand.getOutput(inputs[1], dir, "mp4"),
+                    outputs));
+        assertTrue(TranscodeCommand.checkOutput(inputs[2],
+                    TranscodeCommand.getOutput(inputs[2], dir, "mp4"),
+                    outputs));
+        assertFalse(TranscodeCommand.checkOutput(inputs[3],
+                    TranscodeCommand.getOutput(inputs[3], dir, "mp4"),
+                    outputs));
+    }
+}